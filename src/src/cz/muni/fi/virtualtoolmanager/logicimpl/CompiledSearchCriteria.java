@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.SearchCriteria;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * <div>
+ * Class that represents the search criteria prepared for the search of
+ * virtual machines.
+ * <p>
+ * The search criteria are compiled just once per search into the immutable
+ * chain of criteria in the search order. The allowed range of each numeric
+ * criterion (the required value plus the maximum deviation) is computed
+ * during the compilation, so the virtual machines are compared just with
+ * the primitive bounds. The compiled criteria are evaluated by the
+ * {@link cz.muni.fi.virtualtoolmanager.logicimpl.VMCatalog catalog} of virtual
+ * machines.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+final class CompiledSearchCriteria {
+    /** criteria in the search order */
+    private final Criterion[] criteria;
+
+    private CompiledSearchCriteria(Criterion[] criteria){
+        this.criteria = criteria;
+    }
+
+    /**
+     * Compiles the search criteria.
+     * @param searchCriteria required attributes of virtual machines
+     * @param searchOrder search order containing only the specified criteria
+     * @param maxDeviation maximum deviation in percents for the sizes of
+     * hard disk, memory and video memory
+     * @return compiled search criteria
+     */
+    static CompiledSearchCriteria compile(SearchCriteria searchCriteria,
+            List<SearchCriterionType> searchOrder, int maxDeviation){
+        Criterion[] criteria = new Criterion[searchOrder.size()];
+        for(int i = 0; i < criteria.length; ++i){
+            criteria[i] = compile(searchOrder.get(i), searchCriteria, maxDeviation);
+        }
+        return new CompiledSearchCriteria(criteria);
+    }
+
+    private static Criterion compile(SearchCriterionType type, SearchCriteria searchCriteria,
+            int maxDeviation){
+        switch(type){
+            case ID:            return new Criterion(type, searchCriteria.getVmId());
+            case NAME:          return new Criterion(type, searchCriteria.getVmName());
+            case OS_TYPE:       return new Criterion(type, searchCriteria.getTypeOfOS());
+            case OS_IDENTIFIER: return new Criterion(type, searchCriteria.getIdentifierOfOS());
+            case CPU_COUNT:     return exact(type, searchCriteria.getCountOfCPU());
+            case CPU_EXEC_CAP:  return exact(type, searchCriteria.getCpuExecutionCap());
+            case MONITOR_COUNT: return exact(type, searchCriteria.getCountOfMonitors());
+            case HDD_FREE_SPACE:return tolerant(type, searchCriteria.getHardDiskFreeSpaceSize(), maxDeviation);
+            case HDD_TOTAL_SIZE:return tolerant(type, searchCriteria.getHardDiskTotalSize(), maxDeviation);
+            case RAM:           return tolerant(type, searchCriteria.getSizeOfRAM(), maxDeviation);
+            case VRAM:          return tolerant(type, searchCriteria.getSizeOfVRAM(), maxDeviation);
+            default:            throw new IllegalArgumentException("Illegal enumeration "
+                    + "literal of type SearchCriterionType \"" + type + "\" used for "
+                    + "virtual machine search operation.");
+        }
+    }
+
+    private static Criterion exact(SearchCriterionType type, long value){
+        return new Criterion(type, value, value);
+    }
+
+    private static Criterion tolerant(SearchCriterionType type, long value, int maxDeviation){
+        BigDecimal tempNum = new BigDecimal(String.valueOf((value/(double)100)*maxDeviation));
+        long dev = tempNum.setScale(0, RoundingMode.HALF_UP).longValue();
+        return new Criterion(type, value, value + dev);
+    }
+
+    /**
+     * Gets the number of criteria.
+     * @return number of criteria
+     */
+    int size(){
+        return criteria.length;
+    }
+
+    /**
+     * Gets the criterion.
+     * @param index position of the criterion in the search order
+     * @return criterion
+     */
+    Criterion get(int index){
+        return criteria[index];
+    }
+
+    /**
+     * Class that represents one compiled criterion, the numeric criterion is
+     * matched by the virtual machine whose attribute is in the range
+     * <code>[lowerBound, upperBound]</code>, the other criteria are matched
+     * by the virtual machine whose attribute is equal to the required value.
+     */
+    static final class Criterion {
+        private final SearchCriterionType type;
+        private final Object value;
+        private final long lowerBound;
+        private final long upperBound;
+
+        private Criterion(SearchCriterionType type, Object value){
+            this.type = type;
+            this.value = value;
+            this.lowerBound = 0L;
+            this.upperBound = 0L;
+        }
+
+        private Criterion(SearchCriterionType type, long lowerBound, long upperBound){
+            this.type = type;
+            this.value = null;
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+        }
+
+        SearchCriterionType getType(){
+            return type;
+        }
+
+        /**
+         * Checks the criterion is the range of numeric values.
+         * @return true for the numeric criterion, false otherwise
+         */
+        boolean isNumeric(){
+            return value == null;
+        }
+
+        Object getValue(){
+            return value;
+        }
+
+        long getLowerBound(){
+            return lowerBound;
+        }
+
+        long getUpperBound(){
+            return upperBound;
+        }
+    }
+}
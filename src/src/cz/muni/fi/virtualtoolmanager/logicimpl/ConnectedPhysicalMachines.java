@@ -17,7 +17,11 @@ package cz.muni.fi.virtualtoolmanager.logicimpl;
 
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class that is used to hold overview about the all connected physical machines.
@@ -25,14 +29,25 @@ import java.util.List;
  * - it uses static builder factory, but also it has one attribute except the
  * instance attribute. But in a time, there always exists just one instance
  * of this class.
+ * <p>
+ * All the methods of this class are safe to be called from more threads.
+ * The overview is held as an immutable snapshot (hash set for the fast
+ * lookup and list keeping the order in which the physical machines were
+ * connected), which is replaced by a new one on each change (copy-on-write).
+ * Thanks this the queries are not blocked by any lock and the returned list
+ * of connected physical machines never changes under the hands of the caller.
+ * Each change of the overview increments its version, so that the changes can
+ * be simply detected.
  * 
  * @author Tomáš Šmíd
  */
 class ConnectedPhysicalMachines {
     /** The only instance of this class*/
     private static final ConnectedPhysicalMachines INSTANCE = new ConnectedPhysicalMachines();
-    /** list of all connected physical machines */
-    private List<PhysicalMachine> connectedPhysicalMachines = new ArrayList<>();
+    /** actual immutable snapshot of all connected physical machines */
+    private volatile Snapshot snapshot = new Snapshot(new ArrayList<PhysicalMachine>());
+    /** version of the overview, incremented on each change */
+    private final AtomicLong version = new AtomicLong();
     
     /**
      * This method represents so called static builder factory, which is used to
@@ -47,20 +62,32 @@ class ConnectedPhysicalMachines {
     
     /**
      * This method adds a new physical machine to the list of connected physical
-     * machines.
+     * machines. If the physical machine is already present in the list, then
+     * the list is not changed.
      * If there occurs any error it can throw the following exceptions:
      *  • IllegalArgumentException - when the given physical machine is null
      * @param physicalMachine represents the physical machines which is going to
      * be added to the list of connected physical machines
+     * @return true if the physical machine was added, false if it was already
+     * present in the list
      */
-    public void add(PhysicalMachine physicalMachine){
+    public boolean add(PhysicalMachine physicalMachine){
         if(physicalMachine == null){
             throw new IllegalArgumentException("There was made an attempt to add "
                             + "a null physical machine to the list of connected "
                             + "physical machines.");
         }
         
-        connectedPhysicalMachines.add(physicalMachine);
+        synchronized(this){
+            if(snapshot.lookup.contains(physicalMachine)){
+                return false;
+            }
+            List<PhysicalMachine> pms = new ArrayList<>(snapshot.list);
+            pms.add(physicalMachine);
+            snapshot = new Snapshot(pms);
+            version.incrementAndGet();
+        }
+        return true;
     }
     
     /**
@@ -80,7 +107,16 @@ class ConnectedPhysicalMachines {
                             + "physical machines.");
         }
         
-        return connectedPhysicalMachines.remove(physicalMachine);
+        synchronized(this){
+            if(!snapshot.lookup.contains(physicalMachine)){
+                return false;
+            }
+            List<PhysicalMachine> pms = new ArrayList<>(snapshot.list);
+            pms.remove(physicalMachine);
+            snapshot = new Snapshot(pms);
+            version.incrementAndGet();
+            return true;
+        }
     }
     
     /**
@@ -96,14 +132,41 @@ class ConnectedPhysicalMachines {
                             + "out if a null physical machine is connected.");
         }
         
-        return connectedPhysicalMachines.contains(physicalMachine);
+        return snapshot.lookup.contains(physicalMachine);
     }
     
     /**
-     * Gets the list of all connected physical machines.
+     * Gets the list of all connected physical machines. The returned list is
+     * an unmodifiable snapshot of the connected physical machines at the moment
+     * of the method call in the order in which they were connected.
      * @return list of all connected physical machines
      */
     public List<PhysicalMachine> getConnectedPhysicalMachines(){
-        return connectedPhysicalMachines;
+        return snapshot.list;
+    }
+    
+    /**
+     * Gets the version of the list of connected physical machines. The version
+     * is changed each time there is any physical machine added or removed.
+     * @return actual version of the list of connected physical machines
+     */
+    public long getVersion(){
+        return version.get();
+    }
+    
+    /**
+     * Class that represents the immutable snapshot of all connected physical
+     * machines.
+     */
+    private static class Snapshot {
+        /** connected physical machines in the order in which they were connected */
+        private final List<PhysicalMachine> list;
+        /** connected physical machines for the fast lookup */
+        private final Set<PhysicalMachine> lookup;
+        
+        Snapshot(List<PhysicalMachine> physicalMachines){
+            this.list = Collections.unmodifiableList(physicalMachines);
+            this.lookup = new HashSet<>(physicalMachines);
+        }
     }
 }
@@ -16,14 +16,32 @@
 package cz.muni.fi.virtualtoolmanager.logicimpl;
 
 import cz.muni.fi.virtualtoolmanager.pubapi.io.OutputHandler;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.ConnectionRetryPolicy;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.IncompatibleVirtToolAPIVersionException;
 import cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager;
 import cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.ClosingActionType;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.HostHealthState;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * <div>
@@ -34,6 +52,12 @@ import java.util.List;
  * @author Tomáš Šmíd
  */
 public class ConnectionManagerImpl implements ConnectionManager{
+    /** default maximum number of physical machines connected at the same moment */
+    private static final int DEFAULT_MAX_PARALLEL_CONNECTIONS = 16;
+    /** default maximum number of physical machines disconnected at the same moment */
+    private static final int DEFAULT_MAX_PARALLEL_DISCONNECTIONS = 8;
+    /** default maximum age (in milliseconds) of the loaded inventory snapshot, 1 day */
+    private static final long DEFAULT_SNAPSHOT_MAX_AGE = 24L * 60L * 60L * 1000L;
 
     /**
      * <div>
@@ -112,6 +136,201 @@ public class ConnectionManagerImpl implements ConnectionManager{
         return connectTo(physicalMachine,millis,true);
     }
     
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#connectToAsync(PhysicalMachine)
+     * ConnectionManager::connectToAsync(PhysicalMachine)}.
+     * </div>
+     * <div>
+     * This method use the same implementation as the method
+     * {@link #connectToAsync(PhysicalMachine, ConnectionRetryPolicy)} with
+     * the default connection retry policy (3 attempts, exponential backoff
+     * starting at 2 seconds).
+     * </div>
+     * @param physicalMachine represents the physical machine which is going
+     * to be connected
+     * @return future which is completed with the manager of type
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager
+     * VirtualizationToolManager} when the physical machine is connected
+     */
+    @Override
+    public CompletableFuture<VirtualizationToolManager> connectToAsync(PhysicalMachine physicalMachine){
+        return connectToAsync(physicalMachine, new ConnectionRetryPolicy.Builder().build());
+    }
+    
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#connectToAsync(PhysicalMachine, ConnectionRetryPolicy)
+     * ConnectionManager::connectToAsync(PhysicalMachine, ConnectionRetryPolicy)}.
+     * </div>
+     * <div>
+     * <p>
+     * All connection establishment attempts are performed by the shared worker
+     * pool and the waiting time between them is driven by the shared scheduler,
+     * so the calling thread is not blocked at all.
+     * <p>
+     * If there occurs any failure during the processing the connection operation,
+     * there can be thrown the following exception directly:
+     * <ul>
+     * <li><strong>IllegalArgumentException - </strong>thrown when the given
+     * physical machine or retry policy is <code>null</code>
+     * </ul>
+     * The connection failures are not thrown, but the returned future is
+     * completed exceptionally with one of the exceptions described at method
+     * {@link #connectTo(PhysicalMachine)}.
+     * </div>
+     * @param physicalMachine represents the physical machine which is going
+     * to be connected
+     * @param retryPolicy determines the number of attempts and waiting time
+     * between each unsuccessful connection establishment attempt
+     * @return future which is completed with the manager of type
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager
+     * VirtualizationToolManager} when the physical machine is connected
+     */
+    @Override
+    public CompletableFuture<VirtualizationToolManager> connectToAsync(PhysicalMachine physicalMachine,
+            ConnectionRetryPolicy retryPolicy){
+        OutputHandler outputHandler = new OutputHandler();
+        
+        if(physicalMachine == null){
+            throw new IllegalArgumentException("A null physical machine used "
+                    + "for connection operation.");
+        }
+        
+        if(retryPolicy == null){
+            throw new IllegalArgumentException("A null connection retry policy "
+                    + "used for connection operation.");
+        }
+        
+        if(isConnected(physicalMachine)){
+            outputHandler.printMessage("Physical machine " + physicalMachine
+                    + " is already connected.");
+            
+            return CompletableFuture.completedFuture(
+                    new VirtualizationToolManagerImpl(physicalMachine));
+        }
+        outputHandler.printMessage("Connecting to the physical machine "
+                + physicalMachine);
+        
+        return establishConnection(physicalMachine, retryPolicy, true).thenApply(v -> {
+            addPMToListOfConnectedPMs(physicalMachine);
+            outputHandler.printMessage("Physical machine " + physicalMachine
+                    + " has been connected successfully");
+            
+            return new VirtualizationToolManagerImpl(physicalMachine);
+        });
+    }
+    
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#connectToAll(Collection)
+     * ConnectionManager::connectToAll(Collection)}.
+     * </div>
+     * <div>
+     * This method use the same implementation as the method
+     * {@link #connectToAll(Collection, int, ConnectionRetryPolicy)} with
+     * at most 16 physical machines connected at the same moment and the default
+     * connection retry policy.
+     * </div>
+     * @param physicalMachines represents the physical machines which are going
+     * to be connected
+     * @return list of connection results in the same order as the physical
+     * machines were given
+     */
+    @Override
+    public List<OperationResult<PhysicalMachine, VirtualizationToolManager>> connectToAll(
+            Collection<PhysicalMachine> physicalMachines){
+        return connectToAll(physicalMachines, DEFAULT_MAX_PARALLEL_CONNECTIONS,
+                            new ConnectionRetryPolicy.Builder().build());
+    }
+    
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#connectToAll(Collection, int, ConnectionRetryPolicy)
+     * ConnectionManager::connectToAll(Collection, int, ConnectionRetryPolicy)}.
+     * </div>
+     * <div>
+     * <p>
+     * There are started at most <code>maxParallelConnections</code> connection
+     * operations (see {@link #connectToAsync(PhysicalMachine, ConnectionRetryPolicy)})
+     * and each time one of them finishes, there is started the connection
+     * operation of the next physical machine. No thread is blocked by waiting
+     * for the following connection attempt, only the calling thread waits until
+     * all physical machines are processed.
+     * <p>
+     * If there occurs any failure during the processing the connection operation,
+     * there can be thrown the following exception:
+     * <ul>
+     * <li><strong>IllegalArgumentException - </strong>thrown when the given
+     * collection of physical machines, any of the physical machines or the retry
+     * policy is <code>null</code> or the maximum number of parallel connections
+     * is not positive
+     * </ul>
+     * </div>
+     * @param physicalMachines represents the physical machines which are going
+     * to be connected
+     * @param maxParallelConnections maximum number of physical machines being
+     * connected at the same moment
+     * @param retryPolicy determines the number of attempts and waiting time
+     * between each unsuccessful connection establishment attempt
+     * @return list of connection results in the same order as the physical
+     * machines were given
+     */
+    @Override
+    public List<OperationResult<PhysicalMachine, VirtualizationToolManager>> connectToAll(
+            Collection<PhysicalMachine> physicalMachines, int maxParallelConnections,
+            ConnectionRetryPolicy retryPolicy){
+        if(physicalMachines == null){
+            throw new IllegalArgumentException("A null collection of physical "
+                    + "machines used for connection operation.");
+        }
+        
+        if(physicalMachines.contains(null)){
+            throw new IllegalArgumentException("A null physical machine used "
+                    + "for connection operation.");
+        }
+        
+        if(maxParallelConnections < 1){
+            throw new IllegalArgumentException("The maximum number of parallel "
+                    + "connections must be a positive number.");
+        }
+        
+        if(retryPolicy == null){
+            throw new IllegalArgumentException("A null connection retry policy "
+                    + "used for connection operation.");
+        }
+        
+        List<PhysicalMachine> pms = new ArrayList<>(physicalMachines);
+        if(pms.isEmpty()){
+            return new ArrayList<>();
+        }
+        
+        AtomicReferenceArray<OperationResult<PhysicalMachine, VirtualizationToolManager>> results =
+                new AtomicReferenceArray<>(pms.size());
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(pms.size());
+        CompletableFuture<Void> allDone = new CompletableFuture<>();
+        
+        //start the first connection operations, each of them starts the next one when it finishes
+        for(int i = 0; i < Math.min(maxParallelConnections, pms.size()); ++i){
+            connectNext(pms, retryPolicy, nextIndex, remaining, results, allDone);
+        }
+        
+        allDone.join();
+        
+        List<OperationResult<PhysicalMachine, VirtualizationToolManager>> resultList =
+                new ArrayList<>(pms.size());
+        for(int i = 0; i < results.length(); ++i){
+            resultList.add(results.get(i));
+        }
+        
+        return resultList;
+    }
+    
     /**
      * <div>
      * Method that implements the method
@@ -208,36 +427,8 @@ public class ConnectionManagerImpl implements ConnectionManager{
                 break;
             }
             case SHUT_DOWN_RUNNING_VM:{
-                String errMsgBase = "Disconnection operation failure: Virtual "
-                        + "machines could not be shut down";
-                VirtualizationToolManager virtualizationToolManager = null;
-                
-                try{
-                    //try the connection with the PM - if correct,then its running
-                    //VMs can be shut down
-                    virtualizationToolManager = connectTo(physicalMachine,-1,false);
-                }catch(ConnectionFailureException ex){
-                    //remove the PM from list of connected PMs
-                    removePMFromListOfConnectedPMs(physicalMachine);
-                    outputHandler.printMessage("Physical machine " + physicalMachine
-                            + " was disconnected");
-                    throw new ConnectionFailureException(errMsgBase + ", because "
-                            + "there occured one of these problems: 1. Network "
-                            + "connection is not working properly or at all / "
-                            + "2. The VirtualBox web server is not running / "
-                            + "3. One of the key value (IP address, number of "
-                            + "web server port, username or user password) of "
-                            + "the physical machine has been changed and it is "
-                            + "incorrect now.");
-                }catch(IncompatibleVirtToolAPIVersionException ex){
-                    //remove the PM from list of connected PMs
-                    removePMFromListOfConnectedPMs(physicalMachine);
-                    outputHandler.printMessage("Physical machine " + physicalMachine
-                            + " was disconnected");
-                    throw new IncompatibleVirtToolAPIVersionException(errMsgBase
-                            + ", because there has been changed an API version "
-                            + "of VirtualBox and it is incorrect now.");
-                }
+                VirtualizationToolManager virtualizationToolManager =
+                        testConnectionBeforeShutdown(physicalMachine);
                                 
                 try{
                     //shut down all running VMs on the physical machine
@@ -289,12 +480,65 @@ public class ConnectionManagerImpl implements ConnectionManager{
         return connectedPhysicalMachines.isConnected(physicalMachine);
     }
 
+    /**
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#getHostHealthState(PhysicalMachine)
+     * ConnectionManager::getHostHealthState(PhysicalMachine)}.
+     * If there occurs any error during the method is being processed,
+     * the following exceptions can be thrown:
+     * <ul>
+     * <li><strong>IllegalArgumentException - </strong>thrown when the given
+     * physical machine is <code>null</code>
+     * <li><strong>
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException
+     * ConnectionFailureException} - </strong>thrown when the given physical
+     * machine is not connected
+     * </ul>
+     * @param physicalMachine represents the queried physical machine
+     * @return health state of the physical machine
+     */
+    @Override
+    public HostHealthState getHostHealthState(PhysicalMachine physicalMachine) {
+        checkPMIsMonitored(physicalMachine, "health state");
+
+        return HostHealthMonitor.getInstance().getState(physicalMachine);
+    }
+
+    /**
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#getHostLatency(PhysicalMachine)
+     * ConnectionManager::getHostLatency(PhysicalMachine)}.
+     * If there occurs any error during the method is being processed,
+     * the following exceptions can be thrown:
+     * <ul>
+     * <li><strong>IllegalArgumentException - </strong>thrown when the given
+     * physical machine is <code>null</code>
+     * <li><strong>
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException
+     * ConnectionFailureException} - </strong>thrown when the given physical
+     * machine is not connected
+     * </ul>
+     * @param physicalMachine represents the queried physical machine
+     * @return round-trip time in milliseconds of the last successful heartbeat,
+     * -1 if there has not been any successful heartbeat yet
+     */
+    @Override
+    public long getHostLatency(PhysicalMachine physicalMachine) {
+        checkPMIsMonitored(physicalMachine, "latency");
+
+        return HostHealthMonitor.getInstance().getLatency(physicalMachine);
+    }
+
     /**
      * <div>
      * Method implements the method
      * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#getConnectedPhysicalMachines()
      * ConnectionManager::getConnectedPhysicalMachines()}.
      * </div>
+     * <div>
+     * The returned list is an unmodifiable snapshot, it is not changed by
+     * the following connection or disconnection operations.
+     * </div>
      * @return list of all connected physical machines
      */
     @Override
@@ -303,6 +547,139 @@ public class ConnectionManagerImpl implements ConnectionManager{
                 ConnectedPhysicalMachines.getInstance();
         return connectedPhysicalMachines.getConnectedPhysicalMachines();
     }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#saveInventorySnapshot(Path)
+     * ConnectionManager::saveInventorySnapshot(Path)}.
+     * </div>
+     * <div>
+     * The virtual machines of physical machines are got in parallel (at most 16
+     * at the same moment) the same way as by the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#getVirtualMachines()
+     * VirtualizationToolManager::getVirtualMachines()}, so the cached ones are
+     * not retrieved again. The physical machines which do not respond to
+     * the heartbeats or whose virtual machines cannot be got are skipped.
+     * If there occurs any error, then there can be thrown the following exceptions:
+     * <ul>
+     * <li><strong>IllegalArgumentException - </strong>thrown when the given
+     * snapshot file is <code>null</code>
+     * <li><strong>UncheckedIOException - </strong>thrown when the snapshot file
+     * cannot be written
+     * </ul>
+     * </div>
+     * @param snapshotFile represents the file to which the virtual machines are saved
+     * @return number of physical machines whose virtual machines were saved
+     */
+    @Override
+    public int saveInventorySnapshot(Path snapshotFile) {
+        if(snapshotFile == null){
+            throw new IllegalArgumentException("A null file used for inventory "
+                    + "snapshot saving operation.");
+        }
+        
+        List<PhysicalMachine> physicalMachines = new ArrayList<>();
+        for(PhysicalMachine physicalMachine : getConnectedPhysicalMachines()){
+            //the physical machine which does not respond would delay the saving
+            if(!HostHealthMonitor.getInstance().isDown(physicalMachine)){
+                physicalMachines.add(physicalMachine);
+            }
+        }
+        List<OperationResult<PhysicalMachine, List<VirtualMachine>>> results = ParallelOperations.perform(
+                physicalMachines, DEFAULT_MAX_PARALLEL_CONNECTIONS, 0L, "virtualtoolmanager-snapshot-",
+                physicalMachine -> new VirtualizationToolManagerImpl(physicalMachine).getVirtualMachines(),
+                null);
+        
+        Map<PhysicalMachine, List<VirtualMachine>> inventories = new LinkedHashMap<>();
+        for(OperationResult<PhysicalMachine, List<VirtualMachine>> result : results){
+            if(result.isSuccessful()){
+                inventories.put(result.getSubject(), result.getResult());
+            }
+        }
+        
+        try{
+            InventorySnapshotStore.write(snapshotFile, inventories);
+        }catch(IOException ex){
+            throw new UncheckedIOException("Inventory snapshot saving operation "
+                    + "failure: " + ex.getMessage(), ex);
+        }
+        
+        return inventories.size();
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#loadInventorySnapshot(Path)
+     * ConnectionManager::loadInventorySnapshot(Path)}.
+     * </div>
+     * <div>
+     * The snapshot which is older than 1 day is not loaded, see
+     * {@link #loadInventorySnapshot(Path, long)}.
+     * </div>
+     * @param snapshotFile represents the file from which the virtual machines
+     * are loaded
+     * @return number of physical machines whose virtual machines were loaded,
+     * 0 if the file does not exist or it is too old
+     */
+    @Override
+    public int loadInventorySnapshot(Path snapshotFile) {
+        return loadInventorySnapshot(snapshotFile, DEFAULT_SNAPSHOT_MAX_AGE);
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#loadInventorySnapshot(Path, long)
+     * ConnectionManager::loadInventorySnapshot(Path, long)}.
+     * </div>
+     * <div>
+     * The file is memory-mapped and its version, age and checksum are verified
+     * before the virtual machines are loaded. The loaded virtual machines replace
+     * the last known virtual machines loaded before, the too old snapshot just
+     * forgets them.
+     * If there occurs any error, then there can be thrown the following exceptions:
+     * <ul>
+     * <li><strong>IllegalArgumentException - </strong>thrown when the given
+     * snapshot file is <code>null</code> or the maximum age is negative
+     * <li><strong>UncheckedIOException - </strong>thrown when the snapshot file
+     * cannot be read, it has an unsupported version or it is corrupted
+     * </ul>
+     * </div>
+     * @param snapshotFile represents the file from which the virtual machines
+     * are loaded
+     * @param maxAge represents the maximum age of the snapshot in milliseconds,
+     * 0 means the snapshot of any age is loaded
+     * @return number of physical machines whose virtual machines were loaded,
+     * 0 if the file does not exist or it is too old
+     */
+    @Override
+    public int loadInventorySnapshot(Path snapshotFile, long maxAge) {
+        if(snapshotFile == null){
+            throw new IllegalArgumentException("A null file used for inventory "
+                    + "snapshot loading operation.");
+        }
+        if(maxAge < 0){
+            throw new IllegalArgumentException("A negative maximum age used for "
+                    + "inventory snapshot loading operation.");
+        }
+        
+        if(!Files.exists(snapshotFile)){
+            return 0;
+        }
+        
+        Map<PhysicalMachine, List<VirtualMachine>> inventories;
+        try{
+            inventories = InventorySnapshotStore.read(snapshotFile, maxAge);
+        }catch(IOException ex){
+            throw new UncheckedIOException("Inventory snapshot loading operation "
+                    + "failure: " + ex.getMessage(), ex);
+        }
+        InventorySnapshot.getInstance().load(inventories);
+        
+        return inventories.size();
+    }
     
     /**
      * <div>
@@ -311,19 +688,92 @@ public class ConnectionManagerImpl implements ConnectionManager{
      * ConnectionManager::close()}.
      * </div>
      * <div>
-     * In this method is called for each connected physical machine the
-     * disconnection method {@link #disconnectFrom(PhysicalMachine, ClosingActionType)}
-     * with closing action set up to shut down all running virtual machines on 
-     * a particular physical machine.
+     * In this method is called for each physical machine connected at the moment
+     * of the method call the disconnection method
+     * {@link #disconnectFrom(PhysicalMachine, ClosingActionType)} with closing
+     * action set up to shut down all running virtual machines on a particular
+     * physical machine. The physical machines are disconnected in parallel
+     * (at most 8 at the same moment). If any disconnection fails, then the first
+     * failure (in the order of connection of physical machines) is thrown after
+     * all physical machines are processed.
      * </div>
      */
     @Override
     public void close() {
-        while(!getConnectedPhysicalMachines().isEmpty()){
-            
-            disconnectFrom(getConnectedPhysicalMachines().get(0),
-                    ClosingActionType.SHUT_DOWN_RUNNING_VM);
+        //this manager is not captured by the operation itself, so that there is
+        //called just the public disconnection method of this manager
+        final ConnectionManager connectionManager = this;
+        List<OperationResult<PhysicalMachine, Void>> results = ParallelOperations.perform(
+                getConnectedPhysicalMachines(), DEFAULT_MAX_PARALLEL_DISCONNECTIONS, 0L,
+                "virtualtoolmanager-disconnect-", physicalMachine -> {
+                    connectionManager.disconnectFrom(physicalMachine,
+                            ClosingActionType.SHUT_DOWN_RUNNING_VM);
+                    return null;
+                }, null);
+        
+        for(OperationResult<PhysicalMachine, Void> result : results){
+            if(!result.isSuccessful()){
+                throw result.getFailure();
+            }
+        }
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager#close(int, int, long)
+     * ConnectionManager::close(int, int, long)}.
+     * </div>
+     * <div>
+     * <p>
+     * Each physical machine connected at the moment of the method call is
+     * disconnected the same way as by the method
+     * {@link #disconnectFrom(PhysicalMachine, ClosingActionType)} with closing
+     * action set up to shut down all running virtual machines, but its virtual
+     * machines are shut down by the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#close(int, long)
+     * VirtualizationToolManager::close(int, long)}.
+     * <p>
+     * The physical machines whose disconnection has not been started before
+     * the timeout elapses are just removed from the list of connected physical
+     * machines. The physical machines which are being disconnected at that moment
+     * are left to finish the disconnection in the background.
+     * <p>
+     * If there occurs any failure before the physical machines are processed,
+     * there can be thrown the following exception:
+     * <ul>
+     * <li><strong>IllegalArgumentException - </strong>thrown when the maximum
+     * number of parallel operations is not positive or the timeout is negative
+     * </ul>
+     * </div>
+     * @param maxParallelDisconnections maximum number of physical machines which
+     * are being disconnected at the same moment
+     * @param maxParallelShutdowns maximum number of virtual machines of one physical
+     * machine which are being shut down at the same moment
+     * @param timeout time in milliseconds after which the operation is finished,
+     * 0 means there is no time limit
+     * @return list of disconnection results of physical machines, each successful
+     * result holds the results of particular virtual machines
+     */
+    @Override
+    public List<OperationResult<PhysicalMachine, List<OperationResult<VirtualMachine, String>>>> close(
+            int maxParallelDisconnections, int maxParallelShutdowns, long timeout) {
+        if(maxParallelDisconnections < 1 || maxParallelShutdowns < 1){
+            throw new IllegalArgumentException("The maximum number of parallel "
+                    + "operations of closing operation must be a positive number.");
         }
+        
+        if(timeout < 0){
+            throw new IllegalArgumentException("The timeout of closing operation "
+                    + "must not be negative.");
+        }
+        
+        long deadline = System.currentTimeMillis() + timeout;
+        return ParallelOperations.perform(getConnectedPhysicalMachines(),
+                maxParallelDisconnections, timeout, "virtualtoolmanager-disconnect-",
+                physicalMachine -> shutDownAndDisconnect(physicalMachine,
+                        maxParallelShutdowns, (timeout == 0 ? 0L : deadline)),
+                physicalMachine -> disconnectWithoutShutdown(physicalMachine));
     }
     
     private void setOutputStreams(PrintStream printStream){
@@ -376,11 +826,23 @@ public class ConnectionManagerImpl implements ConnectionManager{
                     + physicalMachine);
         }
         
-        establishConnection(physicalMachine, millis);
+        //there are made 3 attempts with the constant waiting time between them
+        //or just one attempt when the waiting time is -1
+        long delay = (millis == -1 ? 0L : millis);
+        ConnectionRetryPolicy retryPolicy = new ConnectionRetryPolicy.Builder()
+                .maxAttempts(millis == -1 ? 1 : 3)
+                .initialDelay(delay)
+                .maxDelay(delay)
+                .backoffMultiplier(1.0)
+                .jitter(0.0)
+                .build();
+        
+        //the first attempt is made by the calling thread, the calling thread
+        //just waits (it does not loop) while the following attempts are made
+        waitForConnection(establishConnection(physicalMachine, retryPolicy, false));
         
         if(doStandardConnection){
-            ConnectedPhysicalMachines connectedPhysicalMachines = ConnectedPhysicalMachines.getInstance();
-            connectedPhysicalMachines.add(physicalMachine);
+            addPMToListOfConnectedPMs(physicalMachine);
             outputHandler.printMessage("Physical machine " + physicalMachine
                     + " has been connected successfully");
         }
@@ -390,44 +852,317 @@ public class ConnectionManagerImpl implements ConnectionManager{
     
     /**
      * Method that ensures performing of all necessary attempts to establish the
-     * connection with the physical machine.
+     * connection with the physical machine. The attempts are not made in a loop
+     * by one thread, but each following attempt is scheduled by the shared
+     * scheduler after the waiting time determined by the retry policy and it is
+     * performed by one of the threads from the shared worker pool. Thanks this
+     * there is no thread blocked (or even looping) during the waiting time.
      * @param physicalMachine represents the physical machine which is going to
      * be connected
-     * @param millis waiting time in milliseconds between each unsuccessful
-     * connection establishment attempt
+     * @param retryPolicy determines the number of attempts and waiting time
+     * between each unsuccessful connection establishment attempt
+     * @param async if <code>true</code> then even the first attempt is performed
+     * by the worker pool, otherwise it is performed by the calling thread
+     * @return future which is completed when the connection is established or
+     * completed exceptionally with the exception of the last attempt
      */
-    private void establishConnection(PhysicalMachine physicalMachine, long millis){
-        //number of attempts for connection establishment, max. number of attempts 
-        //is 3 (set up the start value)
-        int attempt = (millis == -1 ? 3 : 1);        
+    private CompletableFuture<Void> establishConnection(PhysicalMachine physicalMachine,
+            ConnectionRetryPolicy retryPolicy, boolean async){
         NativeVBoxAPIConnection nativeVBoxAPIConnection = new NativeVBoxAPIConnection();
+        CompletableFuture<Void> result = new CompletableFuture<>();
         
-        //max. 3 attempts to try to connect to the physical machine
-        do{
-            try {
-                //connect to the physical machine
-                nativeVBoxAPIConnection.connectTo(physicalMachine);
-                break;
-            } catch (ConnectionFailureException ex) {
-                ++attempt;
-                if(attempt >= 4){
-                    throw ex;
-                }else{
-                    //set the end time, to which the system current time must get to stop looping,
-                    //with parameter millis which represents max wait time for pause between each
-                    //connection establishment attempt
-                    long endTime = System.currentTimeMillis() + millis;
-                    while(System.currentTimeMillis() < endTime){
-                        //loop about millis/1000 seconds
-                    }
-                }             
+        if(async){
+            SharedExecutors.getWorkerPool().execute(() -> attemptConnection(
+                    nativeVBoxAPIConnection, physicalMachine, retryPolicy, 1, result));
+        }else{
+            attemptConnection(nativeVBoxAPIConnection, physicalMachine, retryPolicy, 1, result);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Method that performs one connection establishment attempt. If the attempt
+     * fails and the number of attempts is not exhausted, then the following
+     * attempt is scheduled.
+     * @param nativeVBoxAPIConnection object used for the connection establishment
+     * @param physicalMachine represents the physical machine which is going to
+     * be connected
+     * @param retryPolicy determines the number of attempts and waiting time
+     * between each unsuccessful connection establishment attempt
+     * @param attempt order of the actual attempt
+     * @param result future which is completed by the last attempt
+     */
+    private void attemptConnection(NativeVBoxAPIConnection nativeVBoxAPIConnection,
+            PhysicalMachine physicalMachine, ConnectionRetryPolicy retryPolicy,
+            int attempt, CompletableFuture<Void> result){
+        try{
+            //connect to the physical machine
+            nativeVBoxAPIConnection.connectTo(physicalMachine);
+            result.complete(null);
+        }catch(ConnectionFailureException ex){
+            if(attempt >= retryPolicy.getMaxAttempts()){
+                result.completeExceptionally(ex);
+                return;
+            }
+            
+            //the next attempt is performed by the worker pool after the waiting time
+            Runnable nextAttempt = () -> SharedExecutors.getWorkerPool().execute(() ->
+                    attemptConnection(nativeVBoxAPIConnection, physicalMachine,
+                                      retryPolicy, attempt + 1, result));
+            long delay = getRetryDelay(retryPolicy, attempt + 1);
+            if(delay > 0){
+                SharedExecutors.getScheduler().schedule(nextAttempt, delay, TimeUnit.MILLISECONDS);
+            }else{
+                nextAttempt.run();
             }
-        }while(attempt < 4);
+        }catch(RuntimeException ex){
+            //any other failure (e.g. incompatible API version) is not worth trying again
+            result.completeExceptionally(ex);
+        }
     }
     
+    /**
+     * Method that computes the waiting time before the required attempt including
+     * its random part.
+     * @param retryPolicy determines the waiting time
+     * @param attempt order of the attempt
+     * @return waiting time in milliseconds
+     */
+    private long getRetryDelay(ConnectionRetryPolicy retryPolicy, int attempt){
+        long delay = retryPolicy.getDelayBeforeAttempt(attempt);
+        if(delay == 0 || retryPolicy.getJitter() == 0.0){
+            return delay;
+        }
+        
+        //randomly shorten or prolong the waiting time by at most jitter fraction
+        double random = 2 * ThreadLocalRandom.current().nextDouble() - 1;
+        return Math.max(0L, delay + (long) (delay * retryPolicy.getJitter() * random));
+    }
+    
+    /**
+     * Method that starts the connection operation of the next not yet processed
+     * physical machine within the bulk connection operation. When the connection
+     * operation finishes, its result is stored and the next physical machine is
+     * processed.
+     * @param physicalMachines all physical machines which are going to be connected
+     * @param retryPolicy determines the number of attempts and waiting time
+     * between each unsuccessful connection establishment attempt
+     * @param nextIndex index of the next not yet processed physical machine
+     * @param remaining number of not yet finished connection operations
+     * @param results results of finished connection operations
+     * @param allDone future which is completed when all physical machines are processed
+     */
+    private void connectNext(List<PhysicalMachine> physicalMachines, ConnectionRetryPolicy retryPolicy,
+            AtomicInteger nextIndex, AtomicInteger remaining,
+            AtomicReferenceArray<OperationResult<PhysicalMachine, VirtualizationToolManager>> results,
+            CompletableFuture<Void> allDone){
+        int index = nextIndex.getAndIncrement();
+        if(index >= physicalMachines.size()){
+            return;
+        }
+        
+        PhysicalMachine physicalMachine = physicalMachines.get(index);
+        CompletableFuture<VirtualizationToolManager> connection;
+        try{
+            connection = connectToAsync(physicalMachine, retryPolicy);
+        }catch(RuntimeException ex){
+            connection = new CompletableFuture<>();
+            connection.completeExceptionally(ex);
+        }
+        
+        //the next physical machine is processed by the worker pool, so that there
+        //is no deep recursion when the connection operations finish immediately
+        connection.whenCompleteAsync((vtm, ex) -> {
+            if(ex == null){
+                results.set(index, OperationResult.success(physicalMachine, vtm));
+            }else{
+                results.set(index, OperationResult.failure(physicalMachine, getCause(ex)));
+            }
+            
+            if(remaining.decrementAndGet() == 0){
+                allDone.complete(null);
+            }else{
+                connectNext(physicalMachines, retryPolicy, nextIndex, remaining, results, allDone);
+            }
+        }, SharedExecutors.getWorkerPool());
+    }
+    
+    /**
+     * Method that gets the original exception wrapped by the future.
+     * @param throwable exception with which the future was completed
+     * @return original exception
+     */
+    private RuntimeException getCause(Throwable throwable){
+        Throwable cause = throwable;
+        if(cause instanceof CompletionException && cause.getCause() != null){
+            cause = cause.getCause();
+        }
+        if(cause instanceof RuntimeException){
+            return (RuntimeException) cause;
+        }
+        return new CompletionException(cause);
+    }
+    
+    /**
+     * Method that waits until the connection establishment is finished and
+     * rethrows the exception of the last unsuccessful attempt.
+     * @param connection future representing the connection establishment
+     */
+    private void waitForConnection(CompletableFuture<Void> connection){
+        try{
+            connection.join();
+        }catch(CompletionException ex){
+            if(ex.getCause() instanceof Error){
+                throw (Error) ex.getCause();
+            }
+            throw getCause(ex);
+        }
+    }
+    
+    /**
+     * Method that shuts down all running virtual machines of the physical machine
+     * in parallel and then disconnects the physical machine. It is used by
+     * the method {@link #close(int, int, long)}.
+     * @param physicalMachine represents the physical machine which is going to
+     * be disconnected
+     * @param maxParallelShutdowns maximum number of virtual machines which are
+     * being shut down at the same moment
+     * @param deadline time in milliseconds (since the epoch) when the closing
+     * operation should be finished, 0 means there is no time limit
+     * @return results of particular virtual machines
+     */
+    private List<OperationResult<VirtualMachine, String>> shutDownAndDisconnect(
+            PhysicalMachine physicalMachine, int maxParallelShutdowns, long deadline){
+        OutputHandler outputHandler = new OutputHandler();
+        
+        if(!isConnected(physicalMachine)){
+            throw new ConnectionFailureException("Disconnection operation failure: "
+                    + "Physical machine " + physicalMachine + " cannot be "
+                    + "disconnected, because it is not connected.");
+        }
+        
+        outputHandler.printMessage("Disconnecting from the physical machine " + physicalMachine);
+        
+        VirtualizationToolManager virtualizationToolManager =
+                testConnectionBeforeShutdown(physicalMachine);
+        List<OperationResult<VirtualMachine, String>> results;
+        try{
+            //the virtual machines get the rest of time left for the whole operation
+            long timeout = (deadline == 0 ? 0L
+                    : Math.max(1L, deadline - System.currentTimeMillis()));
+            results = virtualizationToolManager.close(maxParallelShutdowns, timeout);
+        }finally{
+            //always remove the PM from list of connected PMs
+            removePMFromListOfConnectedPMs(physicalMachine);
+        }
+        
+        outputHandler.printMessage("Physical machine " + physicalMachine
+                + " was disconnected");
+        return results;
+    }
+    
+    /**
+     * Method that disconnects the physical machine without shutting down its
+     * virtual machines. It is used for the physical machines whose disconnection
+     * was not started before the deadline of the closing operation.
+     * @param physicalMachine represents the physical machine which is going to
+     * be disconnected
+     */
+    private void disconnectWithoutShutdown(PhysicalMachine physicalMachine){
+        try{
+            disconnectFrom(physicalMachine, ClosingActionType.NONE);
+        }catch(ConnectionFailureException ex){
+            //the physical machine has already been disconnected
+        }
+    }
+
+    /**
+     * Method that tests the connection with the physical machine before its
+     * running virtual machines are shut down as a part of the disconnection
+     * operation. If the connection test fails, then the physical machine is
+     * removed from the list of connected physical machines.
+     * @param physicalMachine represents the physical machine which is going to
+     * be disconnected
+     * @return manager of type {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager
+     * VirtualizationToolManager} for shutting down the virtual machines
+     */
+    private VirtualizationToolManager testConnectionBeforeShutdown(PhysicalMachine physicalMachine){
+        OutputHandler outputHandler = new OutputHandler();
+        String errMsgBase = "Disconnection operation failure: Virtual "
+                + "machines could not be shut down";
+        
+        try{
+            //try the connection with the PM - if correct,then its running
+            //VMs can be shut down
+            return connectTo(physicalMachine,-1,false);
+        }catch(ConnectionFailureException ex){
+            //remove the PM from list of connected PMs
+            removePMFromListOfConnectedPMs(physicalMachine);
+            outputHandler.printMessage("Physical machine " + physicalMachine
+                    + " was disconnected");
+            throw new ConnectionFailureException(errMsgBase + ", because "
+                    + "there occured one of these problems: 1. Network "
+                    + "connection is not working properly or at all / "
+                    + "2. The VirtualBox web server is not running / "
+                    + "3. One of the key value (IP address, number of "
+                    + "web server port, username or user password) of "
+                    + "the physical machine has been changed and it is "
+                    + "incorrect now.");
+        }catch(IncompatibleVirtToolAPIVersionException ex){
+            //remove the PM from list of connected PMs
+            removePMFromListOfConnectedPMs(physicalMachine);
+            outputHandler.printMessage("Physical machine " + physicalMachine
+                    + " was disconnected");
+            throw new IncompatibleVirtToolAPIVersionException(errMsgBase
+                    + ", because there has been changed an API version "
+                    + "of VirtualBox and it is incorrect now.");
+        }
+    }
+
+    /**
+     * Method that ensures the physical machine which has been connected is
+     * added to the list of connected physical machines (the list ignores
+     * the physical machine which is already present, so it is added just once
+     * even if it is connected by more threads at the same moment).
+     * @param physicalMachine represents the physical machine which is going to
+     * be added to the list of connected physical machines
+     */
+    private void addPMToListOfConnectedPMs(PhysicalMachine physicalMachine){
+        ConnectedPhysicalMachines connectedPhysicalMachines = ConnectedPhysicalMachines.getInstance();
+        if(connectedPhysicalMachines.add(physicalMachine)){
+            //the health and the changes of virtual machines of the newly connected
+            //physical machine are checked in the background
+            HostHealthMonitor.getInstance().start(physicalMachine);
+            VMInventoryWatcher.getInstance().start(physicalMachine);
+        }
+    }
+
+    /**
+     * Method that checks the physical machine whose health is queried is not
+     * null and it is connected (only the connected physical machines are monitored).
+     * @param physicalMachine represents the queried physical machine
+     * @param queryName name of the queried health property used in error messages
+     */
+    private void checkPMIsMonitored(PhysicalMachine physicalMachine, String queryName){
+        if(physicalMachine == null){
+            throw new IllegalArgumentException("A null physical machine used "
+                    + "for query operation of physical machine " + queryName + ".");
+        }
+
+        if(!isConnected(physicalMachine)){
+            throw new ConnectionFailureException("Physical machine " + physicalMachine
+                    + " is not connected, so its " + queryName + " is not monitored.");
+        }
+    }
+
     /**
      * Method that ensures the physical machine which is being disconnected is
-     * also removed from the list of connected physical machines.
+     * also removed from the list of connected physical machines. The physical
+     * machine can be disconnected by more threads at the same time (e.g. by
+     * the closing of this API and by the failed operation), so the physical
+     * machine which has already been removed by another thread is considered
+     * to be disconnected and its cleanup is left to that thread.
      * @param physicalMachine represents the physical machines which is going to
      * be deleted from the list of connected physical machines
      */
@@ -435,9 +1170,17 @@ public class ConnectionManagerImpl implements ConnectionManager{
         ConnectedPhysicalMachines connectedPhysicalMachines = ConnectedPhysicalMachines.getInstance();
         
         if(!connectedPhysicalMachines.remove(physicalMachine)){
-            throw new IllegalStateException("Physical machine " + physicalMachine
-                    + "was not removed successfully from the list of connected "
-                    + "physical machines despite its presence in this list.");
+            return;
         }
+        
+        //stop the heartbeats and the watching of virtual machines, log off all idle
+        //sessions with the disconnected physical machine and forget its virtual machines
+        HostHealthMonitor.getInstance().stop(physicalMachine);
+        VMInventoryWatcher.getInstance().stop(physicalMachine);
+        VBoxSessionPool.getInstance().closeSessions(physicalMachine);
+        VMInventoryCache.getInstance().remove(physicalMachine);
+        VMMetadataCache.getInstance().invalidate(physicalMachine);
+        VMDirectory.getInstance().removeAll(physicalMachine);
+        VMLookupMissCache.getInstance().remove(physicalMachine);
     }
 }
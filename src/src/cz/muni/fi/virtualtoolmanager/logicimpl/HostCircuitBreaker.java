@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.virtualbox_4_3.VBoxException;
+
+/**
+ * <div>
+ * Class that represents the circuit breaker in front of the logon to VirtualBox
+ * web servers. There is one circuit for each physical machine and it can be
+ * in one of these states:
+ * <ul>
+ * <li>CLOSED - the logon attempts are permitted, the consecutive failed
+ * attempts are counted and when their number reaches the failure threshold,
+ * the circuit is opened
+ * <li>OPEN - the logon attempts are rejected immediately (without waiting for
+ * the connection timeout) until the probe interval elapses
+ * <li>HALF_OPEN - the probe interval elapsed and there is just one logon attempt
+ * (probe) permitted, the others are still rejected; the successful probe closes
+ * the circuit, the failed one opens it again for the next probe interval
+ * </ul>
+ * So the operations with more physical machines are not stalled by one
+ * physical machine whose web server is not running.
+ * <p>
+ * There is just one breaker, so all the connection attempts to the same
+ * physical machine share one circuit. Each circuit is guarded by its own lock,
+ * so the attempts to different physical machines never wait for each other,
+ * and no lock is held during the logon attempt itself.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+class HostCircuitBreaker {
+    /** The only instance of this class */
+    private static final HostCircuitBreaker INSTANCE = new HostCircuitBreaker();
+    /** default number of failed logon attempts in a row after which is the circuit opened */
+    static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    /** default time (in milliseconds) after which is the opened circuit probed */
+    static final long DEFAULT_PROBE_INTERVAL = 30000L;
+
+    /**
+     * Enumeration of the circuit states.
+     */
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /** circuits of all physical machines with which there was any logon attempt */
+    private final ConcurrentMap<PhysicalMachine, Circuit> circuits = new ConcurrentHashMap<>();
+    /** number of failed logon attempts in a row after which is the circuit opened */
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    /** time (in milliseconds) after which is the opened circuit probed */
+    private volatile long probeInterval = DEFAULT_PROBE_INTERVAL;
+
+    /**
+     * This method represents so called static builder factory, which is used to
+     * get the instance of this class.
+     * @return object of type of this class
+     */
+    public static HostCircuitBreaker getInstance(){
+        return INSTANCE;
+    }
+
+    private HostCircuitBreaker(){ }
+
+    /**
+     * This method asks for the permission of the logon attempt with the physical
+     * machine. Each permitted attempt must be followed by the call of method
+     * recordSuccess() or recordFailure().
+     * If there occurs any error it can throw the following exceptions:
+     *  • VBoxException - when the circuit of the physical machine is open
+     * or there is already the probe in progress
+     * @param physicalMachine represents the physical machine with which
+     * the logon is going to be attempted
+     */
+    public void acquirePermission(PhysicalMachine physicalMachine){
+        Circuit circuit = getCircuit(physicalMachine);
+        synchronized(circuit){
+            switch(circuit.state){
+                case CLOSED: return;
+                case OPEN:{
+                    if(System.currentTimeMillis() - circuit.openedAt >= probeInterval){
+                        //this attempt is the probe, others must wait for its result
+                        circuit.state = State.HALF_OPEN;
+                        return;
+                    }
+                    break;
+                }
+                default: break;
+            }
+        }
+
+        throw new VBoxException("The physical machine " + physicalMachine
+                + " has not responded to the last connection attempts, "
+                + "the following attempt is not permitted yet.");
+    }
+
+    /**
+     * This method records the successful logon attempt and closes the circuit.
+     * @param physicalMachine represents the physical machine with which
+     * the logon was attempted
+     */
+    public void recordSuccess(PhysicalMachine physicalMachine){
+        Circuit circuit = circuits.get(physicalMachine);
+        if(circuit == null){
+            return;
+        }
+        synchronized(circuit){
+            circuit.state = State.CLOSED;
+            circuit.consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * This method records the failed logon attempt. If it was the probe or if
+     * there is reached the failure threshold, then the circuit is opened.
+     * @param physicalMachine represents the physical machine with which
+     * the logon was attempted
+     */
+    public void recordFailure(PhysicalMachine physicalMachine){
+        Circuit circuit = getCircuit(physicalMachine);
+        synchronized(circuit){
+            ++circuit.consecutiveFailures;
+            if(circuit.state == State.HALF_OPEN
+                    || circuit.consecutiveFailures >= failureThreshold){
+                circuit.state = State.OPEN;
+                circuit.openedAt = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Gets the actual state of the circuit of the physical machine.
+     * @param physicalMachine represents the queried physical machine
+     * @return state of the circuit, CLOSED if there was not any logon attempt yet
+     */
+    public State getState(PhysicalMachine physicalMachine){
+        Circuit circuit = circuits.get(physicalMachine);
+        if(circuit == null){
+            return State.CLOSED;
+        }
+        synchronized(circuit){
+            return circuit.state;
+        }
+    }
+
+    /**
+     * Checks the logon attempt with the physical machine would be rejected
+     * at the moment. This method does not change the state of the circuit.
+     * @param physicalMachine represents the queried physical machine
+     * @return true if the circuit is open and the probe interval has not
+     * elapsed yet or if there is the probe in progress, false otherwise
+     */
+    public boolean isRejecting(PhysicalMachine physicalMachine){
+        Circuit circuit = circuits.get(physicalMachine);
+        if(circuit == null){
+            return false;
+        }
+        synchronized(circuit){
+            return circuit.state == State.HALF_OPEN
+                    || (circuit.state == State.OPEN
+                        && System.currentTimeMillis() - circuit.openedAt < probeInterval);
+        }
+    }
+
+    /**
+     * This method closes the circuits of all physical machines and forgets them.
+     */
+    public void clear(){
+        circuits.clear();
+    }
+
+    /**
+     * Sets the number of failed logon attempts in a row after which is the circuit opened.
+     * @param failureThreshold number of failed attempts, must be positive
+     */
+    public void setFailureThreshold(int failureThreshold){
+        if(failureThreshold < 1){
+            throw new IllegalArgumentException("The number of failed connection "
+                    + "attempts must be a positive number.");
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Sets the time after which is the opened circuit probed.
+     * @param probeInterval time in milliseconds, must not be negative
+     */
+    public void setProbeInterval(long probeInterval){
+        if(probeInterval < 0){
+            throw new IllegalArgumentException("The probe interval must be "
+                    + "a non-negative number.");
+        }
+        this.probeInterval = probeInterval;
+    }
+
+    private Circuit getCircuit(PhysicalMachine physicalMachine){
+        Circuit circuit = circuits.get(physicalMachine);
+        if(circuit == null){
+            Circuit newCircuit = new Circuit();
+            circuit = circuits.putIfAbsent(physicalMachine, newCircuit);
+            if(circuit == null){
+                circuit = newCircuit;
+            }
+        }
+        return circuit;
+    }
+
+    /**
+     * Class that represents the circuit of one physical machine, all its
+     * attributes are guarded by the circuit itself.
+     */
+    private static class Circuit {
+        /** actual state of the circuit */
+        private State state = State.CLOSED;
+        /** number of failed logon attempts in a row */
+        private int consecutiveFailures;
+        /** time in milliseconds when the circuit was opened last time */
+        private long openedAt;
+    }
+}
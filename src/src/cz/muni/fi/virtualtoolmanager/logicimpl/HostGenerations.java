@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <div>
+ * Class that holds the generations of physical machines for the caches which
+ * must not store the data retrieved while there was any change of them.
+ * The cache gets the generation of physical machine before the retrieve and
+ * stores the retrieved data only if the generation has not changed since then.
+ * <p>
+ * All generations are taken from one growing counter, so the generation
+ * of physical machine never returns to any of its previous values. Only
+ * the generations of physical machines changed since the last clearing are
+ * held, all the other physical machines share the generation of the last
+ * clearing, so there is not held anything for the disconnected physical machine
+ * once the generations are cleared.
+ * <p>
+ * The methods of this class are not synchronized, they must be called while
+ * the monitor of the cache which owns the object of this class is held.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+final class HostGenerations {
+    /** generations of physical machines changed since the last clearing */
+    private final Map<PhysicalMachine, Long> generations = new HashMap<>();
+    /** the last generation given to any physical machine */
+    private long lastGeneration;
+    /** generation of physical machines which have not been changed since
+     * the last clearing, it is greater than all the forgotten generations */
+    private long clearedGeneration;
+
+    /**
+     * Gets the actual generation of the physical machine.
+     * @param physicalMachine represents the queried physical machine
+     * @return actual generation of the physical machine
+     */
+    long get(PhysicalMachine physicalMachine){
+        Long generation = generations.get(physicalMachine);
+        return (generation == null ? clearedGeneration : generation);
+    }
+
+    /**
+     * Gives the new generation to the physical machine.
+     * @param physicalMachine represents the changed physical machine
+     */
+    void increase(PhysicalMachine physicalMachine){
+        generations.put(physicalMachine, ++lastGeneration);
+    }
+
+    /**
+     * Gives the new generation to all physical machines and forgets
+     * the generations of all of them.
+     */
+    void clear(){
+        generations.clear();
+        clearedGeneration = ++lastGeneration;
+    }
+}
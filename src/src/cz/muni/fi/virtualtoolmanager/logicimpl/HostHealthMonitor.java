@@ -0,0 +1,313 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.HostHealthState;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.virtualbox_4_3.VirtualBoxManager;
+
+/**
+ * <div>
+ * Class that is used to monitor the health of all connected physical machines.
+ * <p>
+ * For each connected physical machine there is periodically performed
+ * a heartbeat - one cheap remote call (query for the VirtualBox API version)
+ * through the session borrowed from the
+ * {@link cz.muni.fi.virtualtoolmanager.logicimpl.VBoxSessionPool session pool}.
+ * The round-trip time of the heartbeat is recorded and the physical machine
+ * is marked as:
+ * <ul>
+ * <li>HEALTHY - when the heartbeat was successful and fast enough
+ * <li>DEGRADED - when the heartbeat was successful, but slower than the latency
+ * threshold, or when the heartbeat failed, but not enough times in a row
+ * <li>DOWN - when the heartbeat failed more times in a row, the operations with
+ * such a physical machine fail immediately
+ * </ul>
+ * The heartbeats are triggered by the shared scheduler and performed by
+ * the shared worker pool, there is never more than one heartbeat of one
+ * physical machine in progress.
+ * <p>
+ * There is just one monitor, so each monitored physical machine has one
+ * periodic heartbeat however many managers use it. The health records are held
+ * in a concurrent map and their states are read without any lock, so checking
+ * the state before each operation never waits for a heartbeat in progress.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+class HostHealthMonitor {
+    /** The only instance of this class */
+    private static final HostHealthMonitor INSTANCE = new HostHealthMonitor();
+    /** default time (in milliseconds) between two heartbeats of one physical machine */
+    static final long DEFAULT_HEARTBEAT_INTERVAL = 10000L;
+    /** default round-trip time (in milliseconds) above which is the physical machine degraded */
+    static final long DEFAULT_DEGRADED_LATENCY_THRESHOLD = 2000L;
+    /** default number of failed heartbeats in a row after which is the physical machine down */
+    static final int DEFAULT_DOWN_FAILURE_THRESHOLD = 2;
+
+    /** health records of all monitored physical machines */
+    private final ConcurrentMap<PhysicalMachine, HealthRecord> records = new ConcurrentHashMap<>();
+    /** time (in milliseconds) between two heartbeats of one physical machine */
+    private volatile long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+    /** round-trip time (in milliseconds) above which is the physical machine degraded */
+    private volatile long degradedLatencyThreshold = DEFAULT_DEGRADED_LATENCY_THRESHOLD;
+    /** number of failed heartbeats in a row after which is the physical machine down */
+    private volatile int downFailureThreshold = DEFAULT_DOWN_FAILURE_THRESHOLD;
+
+    /**
+     * This method represents so called static builder factory, which is used to
+     * get the instance of this class.
+     * @return object of type of this class
+     */
+    public static HostHealthMonitor getInstance(){
+        return INSTANCE;
+    }
+
+    private HostHealthMonitor(){ }
+
+    /**
+     * This method starts the monitoring of the newly connected physical machine.
+     * The physical machine is considered to be healthy (it has just been connected)
+     * and the first heartbeat is performed after the heartbeat interval.
+     * If the physical machine is already monitored, then its health record
+     * is reset.
+     * @param physicalMachine represents the physical machine which should be monitored
+     */
+    public void start(PhysicalMachine physicalMachine){
+        HealthRecord record = new HealthRecord();
+        HealthRecord previous = records.put(physicalMachine, record);
+        if(previous != null){
+            previous.cancel();
+        }
+
+        long interval = heartbeatInterval;
+        if(interval > 0){
+            record.heartbeat = SharedExecutors.getScheduler().scheduleWithFixedDelay(
+                    () -> triggerHeartbeat(physicalMachine, record),
+                    interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * This method stops the monitoring of the physical machine and forgets
+     * its health record. It is typically called as a part of physical machine
+     * disconnection operation.
+     * @param physicalMachine represents the physical machine which should not
+     * be monitored anymore
+     */
+    public void stop(PhysicalMachine physicalMachine){
+        HealthRecord record = records.remove(physicalMachine);
+        if(record != null){
+            record.cancel();
+        }
+    }
+
+    /**
+     * This method stops the monitoring of all physical machines.
+     */
+    public void clear(){
+        for(PhysicalMachine physicalMachine : records.keySet()){
+            stop(physicalMachine);
+        }
+    }
+
+    /**
+     * Gets the health state of the physical machine found out by the last heartbeats.
+     * @param physicalMachine represents the queried physical machine
+     * @return health state, the physical machine which is not monitored or
+     * has not been checked by any heartbeat yet is considered to be healthy
+     */
+    public HostHealthState getState(PhysicalMachine physicalMachine){
+        HealthRecord record = records.get(physicalMachine);
+        return (record == null ? HostHealthState.HEALTHY : record.state);
+    }
+
+    /**
+     * Checks the physical machine is considered to be down.
+     * @param physicalMachine represents the queried physical machine
+     * @return true if the physical machine is down, false otherwise
+     */
+    public boolean isDown(PhysicalMachine physicalMachine){
+        return getState(physicalMachine) == HostHealthState.DOWN;
+    }
+
+    /**
+     * Gets the round-trip time of the last successful heartbeat of the physical machine.
+     * @param physicalMachine represents the queried physical machine
+     * @return round-trip time in milliseconds, -1 if there has not been any
+     * successful heartbeat yet
+     */
+    public long getLatency(PhysicalMachine physicalMachine){
+        HealthRecord record = records.get(physicalMachine);
+        return (record == null ? -1L : record.latency);
+    }
+
+    /**
+     * Sets the time between two heartbeats of one physical machine. The new
+     * interval is used for the physical machines whose monitoring starts later.
+     * @param heartbeatInterval interval in milliseconds, value 0 disables
+     * the periodic heartbeats
+     */
+    public void setHeartbeatInterval(long heartbeatInterval){
+        if(heartbeatInterval < 0){
+            throw new IllegalArgumentException("The heartbeat interval must be "
+                    + "a non-negative number.");
+        }
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Sets the round-trip time above which is the physical machine degraded.
+     * @param degradedLatencyThreshold latency threshold in milliseconds
+     */
+    public void setDegradedLatencyThreshold(long degradedLatencyThreshold){
+        if(degradedLatencyThreshold < 0){
+            throw new IllegalArgumentException("The latency threshold must be "
+                    + "a non-negative number.");
+        }
+        this.degradedLatencyThreshold = degradedLatencyThreshold;
+    }
+
+    /**
+     * Sets the number of failed heartbeats in a row after which is the physical
+     * machine down.
+     * @param downFailureThreshold number of failed heartbeats, must be positive
+     */
+    public void setDownFailureThreshold(int downFailureThreshold){
+        if(downFailureThreshold < 1){
+            throw new IllegalArgumentException("The number of failed heartbeats "
+                    + "must be a positive number.");
+        }
+        this.downFailureThreshold = downFailureThreshold;
+    }
+
+    /**
+     * This method performs one heartbeat of the physical machine by the calling
+     * thread and updates its health record.
+     * @param physicalMachine represents the physical machine which should be checked
+     * @return health state of the physical machine after the heartbeat
+     */
+    HostHealthState heartbeat(PhysicalMachine physicalMachine){
+        HealthRecord record = records.get(physicalMachine);
+        if(record == null){
+            return HostHealthState.HEALTHY;
+        }
+        return heartbeat(physicalMachine, record);
+    }
+
+    /**
+     * Performs one heartbeat of the physical machine and updates the given
+     * health record, unless the physical machine has been reconnected (its
+     * record has been replaced) while the heartbeat was in progress.
+     */
+    private HostHealthState heartbeat(PhysicalMachine physicalMachine, HealthRecord record){
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        long startTime = System.nanoTime();
+        boolean successful;
+        try{
+            //the heartbeat must get through even if the physical machine is down
+            VirtualBoxManager virtualBoxManager = sessionPool.acquireIgnoringHealth(physicalMachine);
+            try{
+                virtualBoxManager.getVBox().getAPIVersion();
+            }catch(RuntimeException ex){
+                sessionPool.invalidate(virtualBoxManager);
+                throw ex;
+            }
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            successful = true;
+        }catch(RuntimeException ex){
+            successful = false;
+        }
+
+        //the result of heartbeat of the previous connection must not affect the new one
+        if(records.get(physicalMachine) != record){
+            return record.state;
+        }
+        if(successful){
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            record.recordSuccess(latency, degradedLatencyThreshold);
+        }else{
+            record.recordFailure(downFailureThreshold);
+        }
+        return record.state;
+    }
+
+    /**
+     * Hands the heartbeat over to the worker pool, unless the previous heartbeat
+     * of the same physical machine is still in progress. If the physical machine
+     * is not connected anymore, then its monitoring is stopped.
+     * @param physicalMachine represents the physical machine which should be checked
+     * @param record health record of the physical machine
+     */
+    private void triggerHeartbeat(PhysicalMachine physicalMachine, HealthRecord record){
+        if(!ConnectedPhysicalMachines.getInstance().isConnected(physicalMachine)){
+            records.remove(physicalMachine, record);
+            record.cancel();
+            return;
+        }
+
+        if(record.inProgress.compareAndSet(false, true)){
+            SharedExecutors.getWorkerPool().execute(() -> {
+                try{
+                    heartbeat(physicalMachine, record);
+                }finally{
+                    record.inProgress.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Class that represents the health record of one monitored physical machine.
+     */
+    private static class HealthRecord {
+        /** actual health state */
+        private volatile HostHealthState state = HostHealthState.HEALTHY;
+        /** round-trip time in milliseconds of the last successful heartbeat */
+        private volatile long latency = -1L;
+        /** number of failed heartbeats in a row */
+        private int consecutiveFailures;
+        /** flag that there is the heartbeat in progress */
+        private final AtomicBoolean inProgress = new AtomicBoolean();
+        /** periodic heartbeat task */
+        private volatile ScheduledFuture<?> heartbeat;
+
+        synchronized void recordSuccess(long latency, long degradedLatencyThreshold){
+            this.latency = latency;
+            this.consecutiveFailures = 0;
+            this.state = (latency > degradedLatencyThreshold ? HostHealthState.DEGRADED
+                                                             : HostHealthState.HEALTHY);
+        }
+
+        synchronized void recordFailure(int downFailureThreshold){
+            ++consecutiveFailures;
+            this.state = (consecutiveFailures >= downFailureThreshold ? HostHealthState.DOWN
+                                                                      : HostHealthState.DEGRADED);
+        }
+
+        void cancel(){
+            ScheduledFuture<?> task = heartbeat;
+            if(task != null){
+                task.cancel(false);
+            }
+        }
+    }
+}
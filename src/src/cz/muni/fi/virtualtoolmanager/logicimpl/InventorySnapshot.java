@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <div>
+ * Class that holds the last known (stale) inventories of physical machines
+ * loaded from the snapshot file by
+ * {@link cz.muni.fi.virtualtoolmanager.logicimpl.InventorySnapshotStore
+ * InventorySnapshotStore}.
+ * <p>
+ * The stale inventory of physical machine is used only until the actual
+ * virtual machines are retrieved from the physical machine for the first time,
+ * then it is forgotten. The physical machines are identified by their IP address,
+ * web server port and username, because the snapshot does not contain the user
+ * passwords.
+ * <p>
+ * There is just one holder, because the snapshot is loaded once for
+ * the whole application. Its methods are synchronized, so the stale inventory
+ * of each physical machine is refreshed by just one thread, even if it is
+ * queried by more threads at the same moment.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+class InventorySnapshot {
+    /** The only instance of this class */
+    private static final InventorySnapshot INSTANCE = new InventorySnapshot();
+
+    /** stale inventories, the keys are the keys of physical machines */
+    private final Map<String, List<VirtualMachine>> inventories = new HashMap<>();
+    /** keys of physical machines whose inventory is being refreshed */
+    private final Set<String> refreshedPhysicalMachines = new HashSet<>();
+
+    /**
+     * This method represents so called static builder factory, which is used to
+     * get the instance of this class.
+     * @return object of type of this class
+     */
+    public static InventorySnapshot getInstance(){
+        return INSTANCE;
+    }
+
+    private InventorySnapshot(){ }
+
+    /**
+     * This method replaces all the held stale inventories by the loaded ones.
+     * @param loadedInventories inventories loaded from the snapshot file
+     */
+    public synchronized void load(Map<PhysicalMachine, List<VirtualMachine>> loadedInventories){
+        inventories.clear();
+        for(Map.Entry<PhysicalMachine, List<VirtualMachine>> inventory : loadedInventories.entrySet()){
+            inventories.put(getKey(inventory.getKey()), new ArrayList<>(inventory.getValue()));
+        }
+    }
+
+    /**
+     * Gets the stale inventory of the physical machine.
+     * @param physicalMachine represents the queried physical machine
+     * @return new list of the last known virtual machines whose host machine
+     * is the given physical machine, null if there is no stale inventory
+     */
+    public synchronized List<VirtualMachine> get(PhysicalMachine physicalMachine){
+        List<VirtualMachine> inventory = inventories.get(getKey(physicalMachine));
+        if(inventory == null){
+            return null;
+        }
+
+        //the loaded virtual machines have the host machine without password
+        List<VirtualMachine> virtualMachines = new ArrayList<>(inventory.size());
+        for(VirtualMachine virtualMachine : inventory){
+            virtualMachines.add(withHostMachine(virtualMachine, physicalMachine));
+        }
+        return virtualMachines;
+    }
+
+    /**
+     * Checks whether there is held the stale inventory of the physical machine.
+     * @param physicalMachine represents the queried physical machine
+     * @return true if the stale inventory is held, false otherwise
+     */
+    public synchronized boolean contains(PhysicalMachine physicalMachine){
+        return inventories.containsKey(getKey(physicalMachine));
+    }
+
+    /**
+     * This method marks the stale inventory of the physical machine as being
+     * refreshed, so it is refreshed just once even if it is queried by more
+     * threads at the same moment.
+     * @param physicalMachine represents the physical machine whose inventory
+     * should be refreshed
+     * @return true if the refresh should be started by the caller, false if
+     * there is no stale inventory or it is already being refreshed
+     */
+    public synchronized boolean startRefresh(PhysicalMachine physicalMachine){
+        String key = getKey(physicalMachine);
+        return inventories.containsKey(key) && refreshedPhysicalMachines.add(key);
+    }
+
+    /**
+     * This method forgets the stale inventory of the physical machine, it is
+     * called when the refresh of inventory is finished (successfully or not).
+     * @param physicalMachine represents the physical machine whose inventory
+     * has been refreshed
+     */
+    public synchronized void remove(PhysicalMachine physicalMachine){
+        String key = getKey(physicalMachine);
+        inventories.remove(key);
+        refreshedPhysicalMachines.remove(key);
+    }
+
+    /**
+     * This method forgets the stale inventories of all physical machines.
+     */
+    public synchronized void clear(){
+        inventories.clear();
+        refreshedPhysicalMachines.clear();
+    }
+
+    private static String getKey(PhysicalMachine physicalMachine){
+        return physicalMachine.getAddressIP() + ":" + physicalMachine.getPortOfVTWebServer()
+                + ":" + physicalMachine.getUsername();
+    }
+
+    private static VirtualMachine withHostMachine(VirtualMachine virtualMachine,
+            PhysicalMachine physicalMachine){
+        VirtualMachine.Builder builder = new VirtualMachine.Builder(virtualMachine.getId(),
+                virtualMachine.getName(), physicalMachine);
+        //only the present attributes are set, the builder would replace null by the default value
+        if(virtualMachine.getCountOfCPU() != null){
+            builder.countOfCPU(virtualMachine.getCountOfCPU());
+        }
+        if(virtualMachine.getCountOfMonitors() != null){
+            builder.countOfMonitors(virtualMachine.getCountOfMonitors());
+        }
+        if(virtualMachine.getCPUExecutionCap() != null){
+            builder.cpuExecutionCap(virtualMachine.getCPUExecutionCap());
+        }
+        if(virtualMachine.getHardDiskFreeSpaceSize() != null){
+            builder.hardDiskFreeSpaceSize(virtualMachine.getHardDiskFreeSpaceSize());
+        }
+        if(virtualMachine.getHardDiskTotalSize() != null){
+            builder.hardDiskTotalSize(virtualMachine.getHardDiskTotalSize());
+        }
+        if(virtualMachine.getSizeOfRAM() != null){
+            builder.sizeOfRAM(virtualMachine.getSizeOfRAM());
+        }
+        if(virtualMachine.getSizeOfVRAM() != null){
+            builder.sizeOfVRAM(virtualMachine.getSizeOfVRAM());
+        }
+        if(virtualMachine.getTypeOfOS() != null){
+            builder.typeOfOS(virtualMachine.getTypeOfOS());
+        }
+        if(virtualMachine.getIdentifierOfOS() != null){
+            builder.identifierOfOS(virtualMachine.getIdentifierOfOS());
+        }
+
+        return builder.build();
+    }
+}
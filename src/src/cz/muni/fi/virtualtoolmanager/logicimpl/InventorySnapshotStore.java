@@ -0,0 +1,324 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * <div>
+ * Class that is used to store the inventories of physical machines (their
+ * virtual machines with all attributes) to the binary file and to load them
+ * back, so the last known virtual machines are available right after the start
+ * of application without any call of VirtualBox web server.
+ * <p>
+ * The file consists of the header and the payload:
+ * <ul>
+ * <li>header - magic number, version of format, time of saving (in milliseconds),
+ * length of payload in bytes and CRC32 checksum of payload
+ * <li>payload - number of physical machines, then for each physical machine its
+ * IP address, web server port, username and the number of its virtual machines
+ * followed by the virtual machines (id, name, bit mask of present numeric
+ * attributes, the present numeric attributes, type and identifier of OS)
+ * </ul>
+ * The user passwords are never stored, so the loaded physical machines have
+ * an empty password and they have to be matched with the connected ones by
+ * their IP address, port and username.
+ * <p>
+ * The file is written through a file channel to the temporary file which then
+ * replaces the original file, so there never remains a partially written file.
+ * The file is memory-mapped when it is loaded. The snapshot which is older
+ * than the required maximum age (by its time of saving) is not loaded at all,
+ * its virtual machines would be too far from the actual ones.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+final class InventorySnapshotStore {
+    /** magic number at the beginning of each snapshot file ("VTMI") */
+    static final int MAGIC = 0x56544D49;
+    /** actual version of the snapshot format */
+    static final int FORMAT_VERSION = 1;
+    /** length of the header in bytes */
+    static final int HEADER_LENGTH = 24;
+    /** mark of the null string */
+    private static final int NULL_STRING = -1;
+
+    private InventorySnapshotStore(){ }
+
+    /**
+     * This method writes the inventories of physical machines to the file,
+     * the original content of file is replaced.
+     * @param snapshotFile the file to which are the inventories written
+     * @param inventories virtual machines of particular physical machines
+     * @throws IOException when the file cannot be written
+     */
+    static void write(Path snapshotFile, Map<PhysicalMachine, List<VirtualMachine>> inventories)
+            throws IOException {
+        byte[] payload = getPayload(inventories);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(System.currentTimeMillis())
+              .putInt(payload.length).putInt((int) crc.getValue());
+        header.flip();
+
+        Path absoluteFile = snapshotFile.toAbsolutePath();
+        Path tempFile = absoluteFile.resolveSibling(absoluteFile.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer payloadBuffer = ByteBuffer.wrap(payload);
+            while(header.hasRemaining() || payloadBuffer.hasRemaining()){
+                channel.write(new ByteBuffer[]{header, payloadBuffer});
+            }
+            channel.force(true);
+        }
+
+        try{
+            Files.move(tempFile, absoluteFile, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }catch(AtomicMoveNotSupportedException ex){
+            Files.move(tempFile, absoluteFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * This method reads the inventories of physical machines from the file
+     * no matter how old the snapshot is.
+     * @param snapshotFile the file from which are the inventories read
+     * @return virtual machines of particular physical machines in the same
+     * order as they were written
+     * @throws IOException when the file cannot be read, it is not a snapshot
+     * file, it has an unsupported version or it is corrupted
+     */
+    static Map<PhysicalMachine, List<VirtualMachine>> read(Path snapshotFile) throws IOException {
+        return read(snapshotFile, 0L);
+    }
+
+    /**
+     * This method reads the inventories of physical machines from the file,
+     * unless the snapshot is older than the maximum age.
+     * @param snapshotFile the file from which are the inventories read
+     * @param maxAge maximum age of the snapshot in milliseconds, 0 means
+     * the snapshot of any age is read
+     * @return virtual machines of particular physical machines in the same
+     * order as they were written, empty map if the snapshot is too old
+     * @throws IOException when the file cannot be read, it is not a snapshot
+     * file, it has an unsupported version or it is corrupted
+     */
+    static Map<PhysicalMachine, List<VirtualMachine>> read(Path snapshotFile, long maxAge)
+            throws IOException {
+        MappedByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)){
+            if(channel.size() < HEADER_LENGTH){
+                throw new IOException("The file " + snapshotFile + " is not a snapshot "
+                        + "of virtual machines, it is too short.");
+            }
+            //the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+
+        if(buffer.getInt() != MAGIC){
+            throw new IOException("The file " + snapshotFile + " is not a snapshot "
+                    + "of virtual machines.");
+        }
+        int version = buffer.getInt();
+        if(version != FORMAT_VERSION){
+            throw new IOException("The snapshot of virtual machines " + snapshotFile
+                    + " has an unsupported version " + version + ", the supported "
+                    + "version is " + FORMAT_VERSION + ".");
+        }
+        long savedAt = buffer.getLong();
+        if(maxAge > 0L && System.currentTimeMillis() - savedAt > maxAge){
+            //the payload of too old snapshot is not even verified
+            return new LinkedHashMap<>();
+        }
+        int payloadLength = buffer.getInt();
+        int checksum = buffer.getInt();
+        if(payloadLength < 0 || payloadLength != buffer.remaining()){
+            throw new IOException("The snapshot of virtual machines " + snapshotFile
+                    + " is corrupted, its length does not match.");
+        }
+
+        ByteBuffer payload = buffer.slice();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if((int) crc.getValue() != checksum){
+            throw new IOException("The snapshot of virtual machines " + snapshotFile
+                    + " is corrupted, its checksum does not match.");
+        }
+
+        try{
+            return readInventories(payload);
+        }catch(BufferUnderflowException | IllegalArgumentException ex){
+            throw new IOException("The snapshot of virtual machines " + snapshotFile
+                    + " is corrupted.", ex);
+        }
+    }
+
+    private static byte[] getPayload(Map<PhysicalMachine, List<VirtualMachine>> inventories)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(inventories.size());
+        for(Map.Entry<PhysicalMachine, List<VirtualMachine>> inventory : inventories.entrySet()){
+            PhysicalMachine physicalMachine = inventory.getKey();
+            writeString(output, physicalMachine.getAddressIP());
+            writeString(output, physicalMachine.getPortOfVTWebServer());
+            writeString(output, physicalMachine.getUsername());
+            output.writeInt(inventory.getValue().size());
+            for(VirtualMachine virtualMachine : inventory.getValue()){
+                writeVirtualMachine(output, virtualMachine);
+            }
+        }
+        output.flush();
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeVirtualMachine(DataOutputStream output, VirtualMachine virtualMachine)
+            throws IOException {
+        output.writeLong(virtualMachine.getId().getMostSignificantBits());
+        output.writeLong(virtualMachine.getId().getLeastSignificantBits());
+        writeString(output, virtualMachine.getName());
+
+        Long[] values = getNumericAttributes(virtualMachine);
+        int presentValues = 0;
+        for(int i = 0; i < values.length; ++i){
+            if(values[i] != null){
+                presentValues |= (1 << i);
+            }
+        }
+        output.writeShort(presentValues);
+        for(Long value : values){
+            if(value != null){
+                output.writeLong(value);
+            }
+        }
+
+        writeString(output, virtualMachine.getTypeOfOS());
+        writeString(output, virtualMachine.getIdentifierOfOS());
+    }
+
+    private static Long[] getNumericAttributes(VirtualMachine virtualMachine){
+        //the order of attributes is a part of the snapshot format
+        return new Long[]{virtualMachine.getCountOfCPU(), virtualMachine.getCountOfMonitors(),
+                          virtualMachine.getCPUExecutionCap(), virtualMachine.getHardDiskFreeSpaceSize(),
+                          virtualMachine.getHardDiskTotalSize(), virtualMachine.getSizeOfRAM(),
+                          virtualMachine.getSizeOfVRAM()};
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if(value == null){
+            output.writeInt(NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static Map<PhysicalMachine, List<VirtualMachine>> readInventories(ByteBuffer payload){
+        Map<PhysicalMachine, List<VirtualMachine>> inventories = new LinkedHashMap<>();
+        int numOfPMs = payload.getInt();
+        for(int i = 0; i < numOfPMs; ++i){
+            PhysicalMachine physicalMachine = new PhysicalMachine(readString(payload),
+                    readString(payload), readString(payload), "");
+            int numOfVMs = payload.getInt();
+            List<VirtualMachine> virtualMachines = new ArrayList<>(Math.min(numOfVMs, payload.remaining()));
+            for(int j = 0; j < numOfVMs; ++j){
+                virtualMachines.add(readVirtualMachine(payload, physicalMachine));
+            }
+            inventories.put(physicalMachine, virtualMachines);
+        }
+
+        return inventories;
+    }
+
+    private static VirtualMachine readVirtualMachine(ByteBuffer payload, PhysicalMachine physicalMachine){
+        UUID id = new UUID(payload.getLong(), payload.getLong());
+        VirtualMachine.Builder builder = new VirtualMachine.Builder(id, readString(payload), physicalMachine);
+        int presentValues = payload.getShort();
+        //only the present attributes are set, the builder would replace null by the default value
+        for(int i = 0; i < 7; ++i){
+            if((presentValues & (1 << i)) != 0){
+                setNumericAttribute(builder, i, payload.getLong());
+            }
+        }
+        String typeOfOS = readString(payload);
+        if(typeOfOS != null){
+            builder.typeOfOS(typeOfOS);
+        }
+        String identifierOfOS = readString(payload);
+        if(identifierOfOS != null){
+            builder.identifierOfOS(identifierOfOS);
+        }
+
+        return builder.build();
+    }
+
+    private static void setNumericAttribute(VirtualMachine.Builder builder, int index, Long value){
+        switch(index){
+            case 0 : builder.countOfCPU(value);
+                     break;
+            case 1 : builder.countOfMonitors(value);
+                     break;
+            case 2 : builder.cpuExecutionCap(value);
+                     break;
+            case 3 : builder.hardDiskFreeSpaceSize(value);
+                     break;
+            case 4 : builder.hardDiskTotalSize(value);
+                     break;
+            case 5 : builder.sizeOfRAM(value);
+                     break;
+            default: builder.sizeOfVRAM(value);
+        }
+    }
+
+    private static String readString(ByteBuffer payload){
+        int length = payload.getInt();
+        if(length == NULL_STRING){
+            return null;
+        }
+        if(length < 0 || length > payload.remaining()){
+            throw new IllegalArgumentException("Invalid length of string " + length + ".");
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -46,8 +46,10 @@ class NativeVBoxAPIConnection {
      * <p>
      * If the connection operation is finished successfully, then the physical
      * machine is disconnected, but still acts like a connected one and can be
-     * used for virtual machines remote control (before each virtual machine 
-     * operation is made a new connection to the physical machine).
+     * used for virtual machines remote control (each virtual machine operation
+     * borrows a session with the physical machine from the
+     * {@link cz.muni.fi.virtualtoolmanager.logicimpl.VBoxSessionPool session pool}
+     * and a new connection is made only when there is no idle session available).
      * <p>
      * If the required physical machine and its virtualization tool VirtualBox
      * cannot be used for the virtual machine remote control, then it is caused
@@ -80,23 +82,19 @@ class NativeVBoxAPIConnection {
      * on this physical machine remotely
      */ 
     void connectTo(PhysicalMachine physicalMachine){
-            //url of the physical machine used for connecting to it
-            String url = getURL(physicalMachine);
+            //pool of sessions with VirtualBox web servers, the connection
+            //is always tested with a brand new session
+            VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
             //object from the native VirtualBox API which manages
             //the connection establishment
-            VirtualBoxManager virtualBoxManager =
-                    VirtualBoxManager.createInstance(null);
+            VirtualBoxManager virtualBoxManager;
             
             try{
                 //connect to the VirtualBox web server which should be running
-                //on the physical machine physicalMachine
-                virtualBoxManager.connect(url, physicalMachine.getUsername(),
-                                          physicalMachine.getUserPassword());
+                //on the physical machine physicalMachine (when the connection
+                //fails, the session pool ends the connection and cleans up after itself)
+                virtualBoxManager = sessionPool.open(physicalMachine);
             }catch (VBoxException ex){//there occured some problem while connecting to the physical machine
-                //ends the connection (if successful) with the physical
-                //machine and cleans up after itself
-                virtualBoxManager.disconnect();
-                virtualBoxManager.cleanup();
                 throw new ConnectionFailureException("Connection operation failure: "
                         + "Unable to establish a connection with a physical machine "
                         + physicalMachine + ". Most probably there occured one of "
@@ -114,8 +112,7 @@ class NativeVBoxAPIConnection {
             //check the VirtualBox API version is correct
             if(!vbox.getAPIVersion().equals("4_3")){
                 //ends the connection with the physical machine and cleans up after itself
-                virtualBoxManager.disconnect();
-                virtualBoxManager.cleanup();
+                sessionPool.invalidate(virtualBoxManager);
                 throw new IncompatibleVirtToolAPIVersionException("Incompatible "
                         + "version of VirtualBox API: The required VirtualBox "
                         + "API version is 4_3, but the actual VirtualBox API "
@@ -125,31 +122,11 @@ class NativeVBoxAPIConnection {
                         + physicalMachine + " has not been connected.");
             }
             
-            //ends the connection with the physical machine and cleans up after 
-            //itself - now the physical machine becomes one of the successfully
-            //connected physical machines and there is possible to work with 
-            //virtual machines located on this physical machine
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
-    }
-    
-    /**
-     * This method creates the correct form of url from the given IP address
-     * and the port number of the VirtualBox web server. Thanks this method
-     * it is possible to connect to the physical machine and its VirtualBox
-     * web server with IPv4 or IPv6.
-     * 
-     * @param physicalMachine represents the physical machine whose IP address
-     * and port number of VirtualBox web server will be used for new url creation
-     * @return newly created url defining the physical machine
-     */
-    private String getURL(PhysicalMachine physicalMachine){
-        if(physicalMachine.getAddressIP().contains(".")){
-            return "http://" + physicalMachine.getAddressIP() + ":"
-                    + physicalMachine.getPortOfVTWebServer();
-        }
-        
-        return "http://[" + physicalMachine.getAddressIP() + "]:"
-                + physicalMachine.getPortOfVTWebServer();
+            //gives the session back (it is kept for the following virtual machine
+            //operations only when the physical machine is already connected,
+            //otherwise the connection is ended) - now the physical machine becomes
+            //one of the successfully connected physical machines and there is
+            //possible to work with virtual machines located on this physical machine
+            sessionPool.release(physicalMachine, virtualBoxManager);
     }
 }
@@ -24,7 +24,15 @@ import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.UnknownPortRuleException;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.UnknownVirtualMachineException;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.FrontEndType;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.ProtocolType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import org.virtualbox_4_3.IConsole;
 import org.virtualbox_4_3.IMachine;
 import org.virtualbox_4_3.INATEngine;
@@ -36,7 +44,6 @@ import org.virtualbox_4_3.LockType;
 import org.virtualbox_4_3.MachineState;
 import org.virtualbox_4_3.NATProtocol;
 import org.virtualbox_4_3.NetworkAttachmentType;
-import org.virtualbox_4_3.SessionState;
 import org.virtualbox_4_3.VBoxException;
 import org.virtualbox_4_3.VirtualBoxManager;
 
@@ -52,6 +59,8 @@ import org.virtualbox_4_3.VirtualBoxManager;
  * @author Tomáš Šmíd
  */
 class NativeVBoxAPIMachine {
+    /** result code of VirtualBox error reporting that the object was not found */
+    private static final int VBOX_E_OBJECT_NOT_FOUND = 0x80BB0001;
     
     /**
      * This method starts a particular virtual machine with the specified
@@ -77,37 +86,11 @@ class NativeVBoxAPIMachine {
      * started
      */
     public void startVM(VirtualMachine virtualMachine, FrontEndType frontEndType){ 
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
-        IMachine vboxMachine = null;
-        int[] errMsgNum = {0, 1};
-        
-        try{
-            //get the required VM from VirtualBox
-            vboxMachine = getVBoxMachine(virtualBoxManager, virtualMachine, errMsgNum);
-        }catch (ConnectionFailureException | UnknownVirtualMachineException ex){
-            //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
-            throw ex;
-        }
-        
-        //check the VM is accessible - its source files are not missing nor corrupted
-        //- and thus there can be performed any operation with it (if the VM is not accessible, then
-        //the VM can be just unregistered (removed from the list of all known VMs to VirtualBox))
-        if(!vboxMachine.getAccessible()){
-            //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
-            throw new UnexpectedVMStateException(getErrorMessage(2, virtualMachine)
-                                    + vboxMachine.getAccessError().getText());
-        }
-        
-        //check the VM has not been started yet
-        switch(vboxMachine.getState()){
-            case Running:
-            case Paused : throw new UnexpectedVMStateException(getErrorMessage(3, virtualMachine));
-            default     : break;
-        }
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+        //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+        VirtualBoxManager virtualBoxManager = getVirtualBoxManager(virtualMachine, new int[]{0, 1});
+        IMachine vboxMachine = getStartableVBoxMachine(virtualBoxManager, virtualMachine);
         
         //all conditions for starting VM are met - start the VM
         ISession session = virtualBoxManager.getSessionObject();
@@ -115,26 +98,19 @@ class NativeVBoxAPIMachine {
         try{
             IProgress progress = vboxMachine.launchVMProcess(session, type, "");
             //wait while the starting operation is finished
-            while(!progress.getCompleted()){
-                virtualBoxManager.waitForEvents(0l);
-                progress.waitForCompletion(200);
-            }
+            VBoxStateWaiter.waitForCompletion(progress);
             //check the starting operation has been finished successfully
             if(progress.getResultCode() == 0){
-                while(vboxMachine.getState() != MachineState.Running){
-                    //just loop until the condition is true
-                } 
+                VBoxStateWaiter.waitForMachineState(virtualBoxManager, vboxMachine, MachineState.Running);
             }else{                
                 //operation was not finished successfully, unlock machine and do 
                 //the clean up after performed operation(s)
-                virtualBoxManager.disconnect();
-                virtualBoxManager.cleanup();
+                sessionPool.release(physicalMachine, virtualBoxManager);
                 throw new UnexpectedVMStateException(getErrorMessage(4, virtualMachine));               
             }
         }catch(VBoxException ex){
             //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             //VM cannot be started now, because there is another process which is using the VM now
             //(that process locked the VM for itself)
             throw new UnexpectedVMStateException(getErrorMessage(5, virtualMachine));
@@ -143,8 +119,79 @@ class NativeVBoxAPIMachine {
         //operation finished successfully (VM is running now), now release the VM for another processes
         //and do the after operation(s) clean up
         session.unlockMachine();
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
+        sessionPool.release(physicalMachine, virtualBoxManager);
+    }
+    
+    /**
+     * This method starts a particular virtual machine with the specified
+     * front-end type asynchronously. Only the checks of the virtual machine
+     * and the call which launches the virtual machine process are performed
+     * by the given executor, the progress of the start up is then queried
+     * by {@link cz.muni.fi.virtualtoolmanager.logicimpl.VBoxStateWaiter
+     * VBoxStateWaiter} without holding any thread. The borrowed session
+     * is given back when the start up is finished.
+     * The returned future is completed exceptionally with the same exceptions
+     * which are thrown by the method {@link #startVM(VirtualMachine, FrontEndType)
+     * startVM}.
+     * @param virtualMachine represents the virtual machine which is going to be
+     * started
+     * @param frontEndType type of the front-end of the started virtual machine
+     * @param executor executor which performs the short remote calls before
+     * the start up
+     * @return future which is completed when the virtual machine is running
+     */
+    public CompletableFuture<Void> startVMAsync(final VirtualMachine virtualMachine,
+            final FrontEndType frontEndType, Executor executor){
+        final CompletableFuture<Void> start = new CompletableFuture<>();
+        executor.execute(() -> {
+            VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+            PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+            VirtualBoxManager virtualBoxManager;
+            IMachine vboxMachine;
+            try{
+                virtualBoxManager = getVirtualBoxManager(virtualMachine, new int[]{0, 1});
+                vboxMachine = getStartableVBoxMachine(virtualBoxManager, virtualMachine);
+            }catch(RuntimeException ex){
+                start.completeExceptionally(ex);
+                return;
+            }
+            
+            ISession session;
+            IProgress progress;
+            try{
+                session = virtualBoxManager.getSessionObject();
+                progress = vboxMachine.launchVMProcess(session, frontEndType.toString().toLowerCase(), "");
+            }catch(VBoxException ex){
+                sessionPool.release(physicalMachine, virtualBoxManager);
+                start.completeExceptionally(new UnexpectedVMStateException(getErrorMessage(5, virtualMachine)));
+                return;
+            }
+            
+            VBoxStateWaiter.whenCompleted(progress)
+                    .thenCompose(ignored -> {
+                        //check the starting operation has been finished successfully
+                        if(progress.getResultCode() != 0){
+                            throw new UnexpectedVMStateException(getErrorMessage(4, virtualMachine));
+                        }
+                        return VBoxStateWaiter.whenMachineState(vboxMachine, MachineState.Running);
+                    })
+                    //VM is running now, release the VM for another processes
+                    .thenRun(session::unlockMachine)
+                    .whenComplete((ignored, ex) -> {
+                        sessionPool.release(physicalMachine, virtualBoxManager);
+                        if(ex == null){
+                            start.complete(null);
+                            return;
+                        }
+                        Throwable failure = (ex instanceof CompletionException ? ex.getCause() : ex);
+                        //any other failure means the VM cannot be started now, because there is
+                        //another process which is using the VM now
+                        start.completeExceptionally(failure instanceof UnexpectedVMStateException ? failure
+                                : new UnexpectedVMStateException(getErrorMessage(5, virtualMachine)));
+                    });
+        });
+        
+        return start;
     }
     
     /**
@@ -174,38 +221,11 @@ class NativeVBoxAPIMachine {
      * shut down
      */
     public void shutDownVM(VirtualMachine virtualMachine){
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
-        IMachine vboxMachine = null;
-        int[] errMsgNum = {6, 7};
-        
-        try{
-            //get the required VM from VirtualBox
-            vboxMachine = getVBoxMachine(virtualBoxManager, virtualMachine, errMsgNum);
-        }catch (ConnectionFailureException | UnknownVirtualMachineException ex){
-            //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
-            throw ex;
-        }
-        
-        //check the VM is accessible - its source files are not missing nor corrupted
-        //- and thus there can be performed any operation with it (if the VM is not accessible, then
-        //the VM can be just unregistered (removed from the list of all known VMs to VirtualBox))
-        if(!vboxMachine.getAccessible()){
-            //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
-            throw new UnexpectedVMStateException(getErrorMessage(8, virtualMachine)
-                                    + vboxMachine.getAccessError().getText());
-        }
-        
-        //check the VM is in a required state for VM shutdown operation
-        switch(vboxMachine.getState()){
-            case Running:
-            case Paused : 
-            case Stuck  : break;
-            default     : throw new UnexpectedVMStateException(getErrorMessage(9, virtualMachine));
-        }
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+        //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+        VirtualBoxManager virtualBoxManager = getVirtualBoxManager(virtualMachine, new int[]{6, 7});
+        IMachine vboxMachine = getRunningVBoxMachine(virtualBoxManager, virtualMachine);
         
         //all conditions for VM shutdown are met - VM can be shut down
         ISession session = virtualBoxManager.getSessionObject();
@@ -216,10 +236,7 @@ class NativeVBoxAPIMachine {
         IConsole console = session.getConsole();
         //shut the VM down
         IProgress progress = console.powerDown();
-        while(!progress.getCompleted()){
-            virtualBoxManager.waitForEvents(0l);
-            progress.waitForCompletion(200);
-        }
+        VBoxStateWaiter.waitForCompletion(progress);
         
         try{
             //release the VM for another processes and wait while the VM is 
@@ -231,29 +248,95 @@ class NativeVBoxAPIMachine {
             //had finished the session unlocked machine, the call session.unlockMachine()
             //is performed for sure in order to ensure that the machine surely would not stay locked
         }
-        while(session.getState() != SessionState.Unlocked){
-            //just loop until the condition is true
-        }
+        VBoxStateWaiter.waitForSessionUnlocked(virtualBoxManager, session);
         
         if(progress != null){
             if(progress.getResultCode() != 0){
                 //get error info
                 String nativeAPIErrorInfo = progress.getErrorInfo().getText();
                 //operation finished successfully - do the clean up after performed operation(s)
-                virtualBoxManager.disconnect();
-                virtualBoxManager.cleanup();
+                sessionPool.release(physicalMachine, virtualBoxManager);
                 throw new UnexpectedVMStateException(getErrorMessage(10, virtualMachine) + nativeAPIErrorInfo);
             }
         }
         
-        while(vboxMachine.getState() != MachineState.PoweredOff){
-            //just loop until the condition is true
-        }
+        VBoxStateWaiter.waitForMachineState(virtualBoxManager, vboxMachine, MachineState.PoweredOff);
         
         
         //operation finished successfully - do the clean up after performed operation(s)
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
+        sessionPool.release(physicalMachine, virtualBoxManager);
+    }
+    
+    /**
+     * This method shuts down a particular virtual machine asynchronously.
+     * Only the checks of the virtual machine and the call which powers
+     * the virtual machine down are performed by the given executor,
+     * the progress of the shutdown is then queried by
+     * {@link cz.muni.fi.virtualtoolmanager.logicimpl.VBoxStateWaiter
+     * VBoxStateWaiter} without holding any thread. The borrowed session
+     * is given back when the shutdown is finished.
+     * The returned future is completed exceptionally with the same exceptions
+     * which are thrown by the method {@link #shutDownVM(VirtualMachine) shutDownVM}.
+     * @param virtualMachine represents the virtual machine which is going to be
+     * shut down
+     * @param executor executor which performs the short remote calls before
+     * the shutdown
+     * @return future which is completed when the virtual machine is powered off
+     */
+    public CompletableFuture<Void> shutDownVMAsync(final VirtualMachine virtualMachine, Executor executor){
+        final CompletableFuture<Void> shutdown = new CompletableFuture<>();
+        executor.execute(() -> {
+            VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+            PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+            VirtualBoxManager virtualBoxManager;
+            IMachine vboxMachine;
+            try{
+                virtualBoxManager = getVirtualBoxManager(virtualMachine, new int[]{6, 7});
+                vboxMachine = getRunningVBoxMachine(virtualBoxManager, virtualMachine);
+            }catch(RuntimeException ex){
+                shutdown.completeExceptionally(ex);
+                return;
+            }
+            
+            ISession session;
+            IProgress progress;
+            try{
+                session = virtualBoxManager.getSessionObject();
+                vboxMachine.lockMachine(session, LockType.Shared);
+                progress = session.getConsole().powerDown();
+            }catch(RuntimeException ex){
+                sessionPool.release(physicalMachine, virtualBoxManager);
+                shutdown.completeExceptionally(ex);
+                return;
+            }
+            
+            VBoxStateWaiter.whenCompleted(progress)
+                    .thenCompose(ignored -> {
+                        try{
+                            session.unlockMachine();
+                        }catch(VBoxException ex){
+                            //machine has already been unlocked by the session after powerDown() operation
+                        }
+                        return VBoxStateWaiter.whenSessionUnlocked(session);
+                    })
+                    .thenCompose(ignored -> {
+                        if(progress.getResultCode() != 0){
+                            throw new UnexpectedVMStateException(getErrorMessage(10, virtualMachine)
+                                                                 + progress.getErrorInfo().getText());
+                        }
+                        return VBoxStateWaiter.whenMachineState(vboxMachine, MachineState.PoweredOff);
+                    })
+                    .whenComplete((ignored, ex) -> {
+                        sessionPool.release(physicalMachine, virtualBoxManager);
+                        if(ex == null){
+                            shutdown.complete(null);
+                        }else{
+                            shutdown.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+                        }
+                    });
+        });
+        
+        return shutdown;
     }
     
     /**
@@ -277,17 +360,19 @@ class NativeVBoxAPIMachine {
      * @param portRule represents a new port-forwarding rule
      */
     public void addPortRule(VirtualMachine virtualMachine, PortRule portRule){
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
         IMachine vboxMachine = null;
         int[] errMsgNum = {11, 12};
+        //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+        VirtualBoxManager virtualBoxManager = getVirtualBoxManager(virtualMachine, errMsgNum);
         
         try{
             //get the required VM from VirtualBox
             vboxMachine = getVBoxMachine(virtualBoxManager, virtualMachine, errMsgNum);
-        }catch (ConnectionFailureException | UnknownVirtualMachineException ex){
-            //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+        }catch (UnknownVirtualMachineException ex){
+            //just give the session back after performed operation(s)
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw ex;
         }
         
@@ -295,8 +380,7 @@ class NativeVBoxAPIMachine {
         INetworkAdapter netAdapter = vboxMachine.getNetworkAdapter(0L);
         if(netAdapter.getAttachmentType() != NetworkAttachmentType.NAT){
             //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw new UnexpectedVMStateException(getErrorMessage(13, virtualMachine));
         }
         
@@ -311,8 +395,7 @@ class NativeVBoxAPIMachine {
                               guestIP, portRule.getGuestPort());
         
         //operation finished successfully - do the clean up after performed operation(s)
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
+        sessionPool.release(physicalMachine, virtualBoxManager);
     }
     
     /**
@@ -337,17 +420,19 @@ class NativeVBoxAPIMachine {
      * @param ruleName  represents a port-forwarding rule which will be deleted
      */
     public void deletePortRule(VirtualMachine virtualMachine, String ruleName){
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
         IMachine vboxMachine = null;
         int[] errMsgNum = {14, 15};
+        //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+        VirtualBoxManager virtualBoxManager = getVirtualBoxManager(virtualMachine, errMsgNum);
         
         try{
             //get the required VM from VirtualBox
             vboxMachine = getVBoxMachine(virtualBoxManager, virtualMachine, errMsgNum);
-        }catch (ConnectionFailureException | UnknownVirtualMachineException ex){
-            //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+        }catch (UnknownVirtualMachineException ex){
+            //just give the session back after performed operation(s)
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw ex;
         }
         
@@ -355,8 +440,7 @@ class NativeVBoxAPIMachine {
         INetworkAdapter netAdapter = vboxMachine.getNetworkAdapter(0L);
         if(netAdapter.getAttachmentType() != NetworkAttachmentType.NAT){
             //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw new UnexpectedVMStateException(getErrorMessage(16, virtualMachine));
         }
         //get NAT engine thanks to it there can be a port-forwarding rule deleted
@@ -367,15 +451,13 @@ class NativeVBoxAPIMachine {
             natEngine.removeRedirect(ruleName);
         }catch(VBoxException ex){
             //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw new UnknownPortRuleException(getErrorMessage(17, virtualMachine) + ruleName
                                             + ". Nonexistent port-forwarding rule cannot be deleted.");
         }
         
         //operation finished successfully - do the clean up after performed operation(s)
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
+        sessionPool.release(physicalMachine, virtualBoxManager);
     }
     
     /**
@@ -399,23 +481,27 @@ class NativeVBoxAPIMachine {
      * given virtual machine
      */
     public List<String> getPortRules(VirtualMachine virtualMachine){
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
         IMachine vboxMachine = null;
         int[] errMsgNum = {18, 19};
+        //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+        VirtualBoxManager virtualBoxManager = getVirtualBoxManager(virtualMachine, errMsgNum);
         
         try{
             //get the required VM from VirtualBox
             vboxMachine = getVBoxMachine(virtualBoxManager, virtualMachine, errMsgNum);
-        }catch (ConnectionFailureException | UnknownVirtualMachineException ex){
-            //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+        }catch (UnknownVirtualMachineException ex){
+            //just give the session back after performed operation(s)
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw ex;
         }
         
         //get network adapter of VM and check if it is of a required type
         INetworkAdapter netAdapter = vboxMachine.getNetworkAdapter(0L);
         if(netAdapter.getAttachmentType() != NetworkAttachmentType.NAT){
+            //just do the clean up after performed operation(s)
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw new UnexpectedVMStateException(getErrorMessage(20, virtualMachine));
         }
         
@@ -425,8 +511,7 @@ class NativeVBoxAPIMachine {
         List<String> redirects = natEngine.getRedirects();
         
         //operation finished successfully - do the clean up after performed operation(s)
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
+        sessionPool.release(physicalMachine, virtualBoxManager);
         
         return redirects;
     }
@@ -452,17 +537,19 @@ class NativeVBoxAPIMachine {
      * @return actual virtual machine state as string
      */
     public String getVMState(VirtualMachine virtualMachine){
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
         IMachine vboxMachine = null;
         int[] errMsgNum = {21, 22};
+        //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+        VirtualBoxManager virtualBoxManager = getVirtualBoxManager(virtualMachine, errMsgNum);
         
         try{
             //get the required VM from VirtualBox
             vboxMachine = getVBoxMachine(virtualBoxManager, virtualMachine, errMsgNum);
-        }catch (ConnectionFailureException | UnknownVirtualMachineException ex){
-            //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+        }catch (UnknownVirtualMachineException ex){
+            //just give the session back after performed operation(s)
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw ex;
         }
         
@@ -471,8 +558,7 @@ class NativeVBoxAPIMachine {
         //the VM can be just unregistered (removed from the list of all known VMs to VirtualBox))
         if(!vboxMachine.getAccessible()){
             //just do the clean up after performed operation(s)
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw new UnexpectedVMStateException(getErrorMessage(23, virtualMachine)
                                     + vboxMachine.getAccessError().getText());
         }
@@ -481,12 +567,106 @@ class NativeVBoxAPIMachine {
         String vmState = vboxMachine.getState().name();
         
         //operation finished successfully - do the clean up after performed operation(s)
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
+        sessionPool.release(physicalMachine, virtualBoxManager);
         
         return vmState;
     }
     
+    /**
+     * This method gets the actual states of virtual machines of a particular
+     * physical machine at once. The states are retrieved by one call of
+     * IVirtualBox::getMachineStates() within one borrowed session, but each
+     * virtual machine still costs one call of VirtualBox web server before
+     * (IMachine::getId() when all the virtual machines are queried,
+     * IVirtualBox::findMachine() when the given ones are queried), so there
+     * are N + 1 (or N + 2) calls instead of 2N calls of the method getVMState().
+     * The virtual machines which are not registered on the physical machine
+     * are not present in the returned map.
+     * If there occurs any error there can be thrown one of the following
+     * exceptions:
+     * 1)ConnectionFailureException - thrown when there occured any connection
+     * problem (invalid physical machine attribute values, not running web server,
+     * network connection not working properly or at all) when the native VirtualBox
+     * manager object is being retrieved
+     * 2)UnknownVirtualMachineException - thrown when there occured any error
+     * of VirtualBox while the virtual machines or their states were being retrieved
+     * @param physicalMachine represents the physical machine whose virtual
+     * machines are queried
+     * @param virtualMachines represents the queried virtual machines of the
+     * physical machine, null means all the registered virtual machines
+     * @return map of actual virtual machine states as strings, the keys are
+     * the ids of virtual machines
+     */
+    public Map<UUID, String> getVMStates(PhysicalMachine physicalMachine,
+            Collection<VirtualMachine> virtualMachines){
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        VirtualBoxManager virtualBoxManager;
+        
+        try{
+            //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+            virtualBoxManager = sessionPool.acquire(physicalMachine);
+        }catch(VBoxException ex){
+            throw new ConnectionFailureException("Connection operation failure "
+                    + "while trying to find out the states of virtual machines "
+                    + "on physical machine " + physicalMachine + ": Unable to "
+                    + "connect to the physical machine.");
+        }
+        
+        IVirtualBox vbox = virtualBoxManager.getVBox();
+        List<UUID> ids = new ArrayList<>();
+        List<IMachine> vboxMachines = new ArrayList<>();
+        try{
+            if(virtualMachines == null){
+                for(IMachine vboxMachine : vbox.getMachines()){
+                    ids.add(UUID.fromString(vboxMachine.getId()));
+                    vboxMachines.add(vboxMachine);
+                }
+            }else{
+                for(VirtualMachine virtualMachine : virtualMachines){
+                    IMachine vboxMachine = findVBoxMachine(vbox, virtualMachine);
+                    //the unknown virtual machine just does not have any state
+                    if(vboxMachine != null){
+                        ids.add(virtualMachine.getId());
+                        vboxMachines.add(vboxMachine);
+                    }
+                }
+            }
+        }catch(VBoxException ex){
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            throw new UnknownVirtualMachineException("Virtual machine states "
+                    + "finding out operation failure: Virtual machines of physical "
+                    + "machine " + physicalMachine + " could not be retrieved -> "
+                    + ex.getMessage());
+        }
+        
+        Map<UUID, String> vmStates = new LinkedHashMap<>();
+        if(vboxMachines.isEmpty()){
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            return vmStates;
+        }
+        
+        List<MachineState> states;
+        try{
+            //all the states are retrieved by one call of web server
+            states = vbox.getMachineStates(vboxMachines);
+        }catch(VBoxException ex){
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            throw new UnknownVirtualMachineException("Virtual machine states "
+                    + "finding out operation failure: States of virtual machines "
+                    + "on physical machine " + physicalMachine + " could not be "
+                    + "retrieved -> " + ex.getMessage());
+        }
+        
+        for(int i = 0; i < ids.size(); ++i){
+            vmStates.put(ids.get(i), states.get(i).name());
+        }
+        
+        //operation finished successfully - do the clean up after performed operation(s)
+        sessionPool.release(physicalMachine, virtualBoxManager);
+        
+        return vmStates;
+    }
+    
     /**
      * Gets the error message placed in array of messages on a given index.
      * @param index index of a required error message in array
@@ -528,6 +708,132 @@ class NativeVBoxAPIMachine {
         return errMessages[index];
     }
     
+    /**
+     * Borrows the session with VirtualBox web server of the physical machine
+     * on which the virtual machine is located.
+     * @param virtualMachine virtual machine whose physical machine should be connected
+     * @param errMsgNum array of integers determining the error messages
+     * @return native VirtualBox manager which must be given back to the session pool
+     */
+    private VirtualBoxManager getVirtualBoxManager(VirtualMachine virtualMachine, int[] errMsgNum){
+        try{
+            return VBoxSessionPool.getInstance().acquire(virtualMachine.getHostMachine());
+        }catch(VBoxException ex){
+            //there occured any connection problem, the required operation cannot be finished successfully
+            throw new ConnectionFailureException(getErrorMessage(errMsgNum[0], virtualMachine));
+        }
+    }
+    
+    /**
+     * Retrieves the native VirtualBox virtual machine instance which can be
+     * started. The session is given back when the virtual machine cannot be started.
+     * @param virtualBoxManager borrowed native VirtualBox manager
+     * @param virtualMachine virtual machine which is going to be started
+     * @return native VirtualBox virtual machine instance
+     */
+    private IMachine getStartableVBoxMachine(VirtualBoxManager virtualBoxManager,
+            VirtualMachine virtualMachine){
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+        IMachine vboxMachine = null;
+        
+        try{
+            //get the required VM from VirtualBox
+            vboxMachine = getVBoxMachine(virtualBoxManager, virtualMachine, new int[]{0, 1});
+        }catch (UnknownVirtualMachineException ex){
+            //just give the session back after performed operation(s)
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            throw ex;
+        }
+        
+        //check the VM is accessible - its source files are not missing nor corrupted
+        //- and thus there can be performed any operation with it (if the VM is not accessible, then
+        //the VM can be just unregistered (removed from the list of all known VMs to VirtualBox))
+        if(!vboxMachine.getAccessible()){
+            //just do the clean up after performed operation(s)
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            throw new UnexpectedVMStateException(getErrorMessage(2, virtualMachine)
+                                    + vboxMachine.getAccessError().getText());
+        }
+        
+        //check the VM has not been started yet
+        switch(vboxMachine.getState()){
+            case Running:
+            case Paused : sessionPool.release(physicalMachine, virtualBoxManager);
+                          throw new UnexpectedVMStateException(getErrorMessage(3, virtualMachine));
+            default     : break;
+        }
+        
+        return vboxMachine;
+    }
+    
+    /**
+     * Retrieves the native VirtualBox virtual machine instance which can be
+     * shut down. The session is given back when the virtual machine cannot be
+     * shut down.
+     * @param virtualBoxManager borrowed native VirtualBox manager
+     * @param virtualMachine virtual machine which is going to be shut down
+     * @return native VirtualBox virtual machine instance
+     */
+    private IMachine getRunningVBoxMachine(VirtualBoxManager virtualBoxManager,
+            VirtualMachine virtualMachine){
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+        IMachine vboxMachine = null;
+        
+        try{
+            //get the required VM from VirtualBox
+            vboxMachine = getVBoxMachine(virtualBoxManager, virtualMachine, new int[]{6, 7});
+        }catch (UnknownVirtualMachineException ex){
+            //just give the session back after performed operation(s)
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            throw ex;
+        }
+        
+        //check the VM is accessible - its source files are not missing nor corrupted
+        //- and thus there can be performed any operation with it (if the VM is not accessible, then
+        //the VM can be just unregistered (removed from the list of all known VMs to VirtualBox))
+        if(!vboxMachine.getAccessible()){
+            //just do the clean up after performed operation(s)
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            throw new UnexpectedVMStateException(getErrorMessage(8, virtualMachine)
+                                    + vboxMachine.getAccessError().getText());
+        }
+        
+        //check the VM is in a required state for VM shutdown operation
+        switch(vboxMachine.getState()){
+            case Running:
+            case Paused : 
+            case Stuck  : break;
+            default     : sessionPool.release(physicalMachine, virtualBoxManager);
+                          throw new UnexpectedVMStateException(getErrorMessage(9, virtualMachine));
+        }
+        
+        return vboxMachine;
+    }
+    
+    /**
+     * Finds the native VirtualBox virtual machine instance.
+     * @param vbox native VirtualBox instance
+     * @param virtualMachine virtual machine whose native instance should be found
+     * @return native VirtualBox virtual machine instance, null if the virtual
+     * machine is not registered
+     * @throws VBoxException when the virtual machine could not be looked up
+     * (e.g. the connection was broken)
+     */
+    private IMachine findVBoxMachine(IVirtualBox vbox, VirtualMachine virtualMachine){
+        try{
+            return vbox.findMachine(virtualMachine.getId().toString());
+        }catch(VBoxException ex){
+            //only the virtual machine which is not registered has no state,
+            //any other failure must not be hidden as an empty result
+            if(ex.getResultCode() == VBOX_E_OBJECT_NOT_FOUND){
+                return null;
+            }
+            throw ex;
+        }
+    }
+    
     /**
      * Retrieves the native VirtualBox virtual machine instance which can be used
      * for further processing. 
@@ -538,19 +844,6 @@ class NativeVBoxAPIMachine {
      */
     private IMachine getVBoxMachine(VirtualBoxManager virtualBoxManager,
             VirtualMachine virtualMachine, int[] errMsgNum){
-        String url = getURL(virtualMachine.getHostMachine());
-        String username = virtualMachine.getHostMachine().getUsername();
-        String userPassword = virtualMachine.getHostMachine().getUserPassword();
-        
-        //connect to the VirtualBox web server which should be running on physical 
-        //machine virtualMachine.getHostMachine()
-        try{
-            virtualBoxManager.connect(url, username, userPassword);
-        }catch(VBoxException ex){
-            //there occured any connection problem, the required operation cannot be finished successfully
-            throw new ConnectionFailureException(getErrorMessage(errMsgNum[0], virtualMachine));
-        }
-        
         //get the instance of VirtualBox in order to retrieve the required VM
         IVirtualBox vbox = virtualBoxManager.getVBox();
         IMachine vboxMachine = null;
@@ -564,24 +857,4 @@ class NativeVBoxAPIMachine {
         
         return vboxMachine;
     }
-    
-    /**
-     * This method creates the correct form of url from the given IP address
-     * and the port number of the VirtualBox web server. Thanks this method
-     * it is possible to connect to the physical machine and its VirtualBox
-     * web server with IPv4 or IPv6.
-     * 
-     * @param physicalMachine represents the physical machine whose IP address
-     * and port number of VirtualBox web server will be used for new url creation
-     * @return newly created url defining the physical machine
-     */
-    private String getURL(PhysicalMachine physicalMachine){
-        if(physicalMachine.getAddressIP().contains(".")){
-            return "http://" + physicalMachine.getAddressIP() + ":"
-                    + physicalMachine.getPortOfVTWebServer();
-        }
-        
-        return "http://[" + physicalMachine.getAddressIP() + "]:"
-                + physicalMachine.getPortOfVTWebServer();
-    }
 }
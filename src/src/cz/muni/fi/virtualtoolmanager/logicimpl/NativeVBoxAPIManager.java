@@ -16,16 +16,26 @@
 package cz.muni.fi.virtualtoolmanager.logicimpl;
 
 import cz.muni.fi.virtualtoolmanager.pubapi.io.OutputHandler;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.UnexpectedVMStateException;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.UnknownVirtualMachineException;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.CloneType;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.LongConsumer;
 import org.virtualbox_4_3.CleanupMode;
 import org.virtualbox_4_3.CloneMode;
 import org.virtualbox_4_3.CloneOptions;
@@ -57,6 +67,64 @@ import org.virtualbox_4_3.VirtualBoxManager;
  * @author Tomáš Šmíd
  */
 class NativeVBoxAPIManager {
+    /** all the attributes of virtual machine */
+    private static final Set<SearchCriterionType> ALL_ATTRIBUTES = EnumSet.allOf(SearchCriterionType.class);
+    /** default maximum number of virtual machines of one physical machine converted at once */
+    static final int DEFAULT_CONVERSION_PARALLELISM = 8;
+    
+    /** maximum number of virtual machines converted at once for the physical machines
+     * whose number differs from the default one */
+    private static final Map<PhysicalMachine, Integer> conversionParallelisms = new ConcurrentHashMap<>();
+    /** maximum number of virtual machines of one physical machine converted at once */
+    private static volatile int defaultConversionParallelism = DEFAULT_CONVERSION_PARALLELISM;
+    
+    /**
+     * Sets the maximum number of virtual machines of one physical machine which
+     * are converted at once while all virtual machines are being retrieved.
+     * @param parallelism positive number of virtual machines, 1 means
+     * the virtual machines are converted one after another
+     */
+    static void setConversionParallelism(int parallelism){
+        checkConversionParallelism(parallelism);
+        defaultConversionParallelism = parallelism;
+    }
+    
+    /**
+     * Sets the maximum number of virtual machines of the given physical machine
+     * which are converted at once, it takes precedence over the number set by
+     * the method {@link #setConversionParallelism(int)}. It is set by
+     * the method {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#setConversionParallelism(int)
+     * VirtualizationToolManager::setConversionParallelism(int)}.
+     * @param physicalMachine physical machine to which the number applies
+     * @param parallelism positive number of virtual machines, 0 means the number
+     * set for all the physical machines is used again
+     */
+    static void setConversionParallelism(PhysicalMachine physicalMachine, int parallelism){
+        if(parallelism == 0){
+            conversionParallelisms.remove(physicalMachine);
+            return;
+        }
+        checkConversionParallelism(parallelism);
+        conversionParallelisms.put(physicalMachine, parallelism);
+    }
+    
+    /**
+     * Gets the maximum number of virtual machines of the given physical machine
+     * which are converted at once.
+     * @param physicalMachine queried physical machine
+     * @return positive number of virtual machines
+     */
+    static int getConversionParallelism(PhysicalMachine physicalMachine){
+        Integer parallelism = conversionParallelisms.get(physicalMachine);
+        return (parallelism == null ? defaultConversionParallelism : parallelism);
+    }
+    
+    private static void checkConversionParallelism(int parallelism){
+        if(parallelism < 1){
+            throw new IllegalArgumentException("The maximum number of virtual "
+                    + "machines converted at once must be a positive number.");
+        }
+    }
     
     /**
      * This method registers the required virtual machine at VirtualBox hypervisor.
@@ -83,17 +151,14 @@ class NativeVBoxAPIManager {
      * been registered), false if the virtual machine has already been registered
      */
     public boolean registerVirtualMachine(PhysicalMachine physicalMachine, String name){
-        //get the url for the PM connection
-        String url = getURL(physicalMachine);
         boolean vmIsRegistered = true;
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        VirtualBoxManager virtualBoxManager;
         
         try{
-            //connect to VirtualBox web server
-            virtualBoxManager.connect(url, physicalMachine.getUsername(), physicalMachine.getUserPassword());
+            //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+            virtualBoxManager = sessionPool.acquire(physicalMachine);
         }catch(VBoxException ex){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
             throw new ConnectionFailureException(getErrorMessage(0, physicalMachine, name));
         }
         
@@ -116,8 +181,7 @@ class NativeVBoxAPIManager {
                         + "\\" + name + "\\" + name + ".vbox");
             }catch(VBoxException ex){
                 String defaultMachineFolder = systemProperties.getDefaultMachineFolder();                
-                virtualBoxManager.disconnect();
-                virtualBoxManager.cleanup();
+                sessionPool.release(physicalMachine, virtualBoxManager);
                 if(ex.getMessage().contains("(Path not found.)")){
                     throw new UnknownVirtualMachineException(getErrorMessage(
                             1, physicalMachine, name, defaultMachineFolder));
@@ -135,13 +199,11 @@ class NativeVBoxAPIManager {
             //register the virtual machine
             vbox.registerMachine(vboxMachine);
             
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             return true;
         }
         
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
+        sessionPool.release(physicalMachine, virtualBoxManager);
         return false;
     }
     
@@ -161,16 +223,13 @@ class NativeVBoxAPIManager {
      * @return retrieved virtual machine 
      */
     public VirtualMachine getVirtualMachine(PhysicalMachine physicalMachine, String nameOrId){
-        //get the url for PM connection
-        String url = getURL(physicalMachine);
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        VirtualBoxManager virtualBoxManager;
         
         try{
-            //connect to VirtualBox web server
-            virtualBoxManager.connect(url, physicalMachine.getUsername(), physicalMachine.getUserPassword());
+            //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+            virtualBoxManager = sessionPool.acquire(physicalMachine);
         }catch(VBoxException ex){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
             throw new ConnectionFailureException(getErrorMessage(3, physicalMachine, nameOrId));
         }
         
@@ -179,8 +238,7 @@ class NativeVBoxAPIManager {
         try{
             vboxMachine = vbox.findMachine(nameOrId);
         }catch(VBoxException ex){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             //without error message - in this case has not to be VM found
             throw new UnknownVirtualMachineException();
         }
@@ -189,8 +247,7 @@ class NativeVBoxAPIManager {
         IGuestOSType guestOSType = vbox.getGuestOSType(vboxMachine.getOSTypeId());
         VirtualMachine virtualMachine = getConvertedVM(vboxMachine, guestOSType, physicalMachine);
         
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
+        sessionPool.release(physicalMachine, virtualBoxManager);
         return virtualMachine;
     }
     
@@ -210,16 +267,36 @@ class NativeVBoxAPIManager {
      * @return list of all registered virtual machines on the physical machine
      */
     public List<VirtualMachine> getAllVirtualMachines(PhysicalMachine physicalMachine){
-        //get the url for PM connection
-        String url = getURL(physicalMachine);
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
+        return getAllVirtualMachines(physicalMachine, ALL_ATTRIBUTES);
+    }
+    
+    /**
+     * This method retrieves all virtual machines from a remote physical
+     * machine, but only the required attributes of virtual machines are
+     * retrieved (the id and the name are retrieved always), the other
+     * attributes stay <code>null</code>. Each attribute is a remote call
+     * of VirtualBox web server for each virtual machine (the hard disk sizes
+     * even more calls), so the retrieve is much faster if only a few
+     * attributes are required. More virtual machines are converted at once
+     * (see {@link #setConversionParallelism(PhysicalMachine, int)}), the order
+     * of returned virtual machines is the same as VirtualBox returns them.
+     * If there occurs any error, then the same exceptions as in the method
+     * {@link #getAllVirtualMachines(PhysicalMachine)} can be thrown.
+     *  
+     * @param physicalMachine physical machine from which all virtual machines
+     * should be retrieved
+     * @param attributes attributes of virtual machines which should be retrieved
+     * @return list of all registered virtual machines on the physical machine
+     */
+    public List<VirtualMachine> getAllVirtualMachines(PhysicalMachine physicalMachine,
+            Set<SearchCriterionType> attributes){
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        VirtualBoxManager virtualBoxManager;
         
         try{
-            //connect to VirtualBox web server
-            virtualBoxManager.connect(url, physicalMachine.getUsername(), physicalMachine.getUserPassword());
+            //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+            virtualBoxManager = sessionPool.acquire(physicalMachine);
         }catch(VBoxException ex){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
             throw new ConnectionFailureException(getErrorMessage(4, physicalMachine, ""));
         }
         
@@ -228,26 +305,31 @@ class NativeVBoxAPIManager {
         try{
             vboxMachines = vbox.getMachines();
         }catch(VBoxException ex){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw new UnknownVirtualMachineException(getErrorMessage(5, physicalMachine, "") + ex.getMessage());
         }
         
         if(vboxMachines.isEmpty()){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             return new ArrayList<>();
         }        
         
-        //get all VirtualBox virtual machines as new API virtual machine objects
-        List<VirtualMachine> virtualMachines = new ArrayList<>();
-        for(IMachine vboxMachine : vboxMachines){
-            IGuestOSType guestOSType = vbox.getGuestOSType(vboxMachine.getOSTypeId());
-            virtualMachines.add(getConvertedVM(vboxMachine, guestOSType, physicalMachine));
-        }
+        //get all VirtualBox virtual machines as new API virtual machine objects, each attribute
+        //is a call of web server, so more virtual machines are converted at once by the shared pool
+        List<OperationResult<IMachine, VirtualMachine>> results = ParallelOperations.perform(
+                SharedExecutors.getConversionPool(), vboxMachines, getConversionParallelism(physicalMachine),
+                vboxMachine -> getConvertedVM(vboxMachine, vbox, physicalMachine, attributes));
+        
+        sessionPool.release(physicalMachine, virtualBoxManager);
         
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
+        //the results are in the same order as the native virtual machines
+        List<VirtualMachine> virtualMachines = new ArrayList<>(results.size());
+        for(OperationResult<IMachine, VirtualMachine> result : results){
+            if(!result.isSuccessful()){
+                throw result.getFailure();
+            }
+            virtualMachines.add(result.getResult());
+        }
         return virtualMachines;
     }
     
@@ -271,61 +353,20 @@ class NativeVBoxAPIManager {
      * @param virtualMachine virtual machine which should be removed
      */
     public void removeVirtualMachine(VirtualMachine virtualMachine){
-        //get the url for PM connection
-        String url = getURL(virtualMachine.getHostMachine());
-        String username = virtualMachine.getHostMachine().getUsername();
-        String userPassword = virtualMachine.getHostMachine().getUserPassword();
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
-        
-        try{
-            //connect to VirtualBox web server
-            virtualBoxManager.connect(url, username, userPassword);
-        }catch(VBoxException ex){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
-            throw new ConnectionFailureException(getErrorMessage(6, virtualMachine.getHostMachine(),
-                                                 virtualMachine.getName()));
-        }
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+        VirtualBoxManager virtualBoxManager = acquireSession(virtualMachine, 6);
+        IMachine vboxMachine = getRemovableVBoxMachine(virtualBoxManager, virtualMachine);
         
-        IVirtualBox vbox = virtualBoxManager.getVBox();        
-        IMachine vboxMachine = null;
-        try{
-            //get the VirtualBox virtual machine instance
-            vboxMachine = vbox.findMachine(virtualMachine.getId().toString());
-        }catch(VBoxException ex){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
-            throw new UnknownVirtualMachineException(getErrorMessage(7, virtualMachine.getHostMachine(),
-                                                     virtualMachine.getName()));
-        }
-        
-        //check the virtual machine is accessible and can be removed
-        if(!vboxMachine.getAccessible()){
-            try{
-                vboxMachine.unregister(CleanupMode.DetachAllReturnHardDisksOnly);
-            }catch(VBoxException ex){
-                virtualBoxManager.disconnect();
-                virtualBoxManager.cleanup();
-                /*machine was not registered -> this should not normally happen, because if the machine
-                was not registered, then the VBoxException would be invoked earlier at vbox.findMachine()*/
-                throw new IllegalStateException(ex);
-            }
-        }else{            
-            //check the virtual machine is powered off
-            if(vboxMachine.getState() != MachineState.PoweredOff){
-                virtualBoxManager.disconnect();
-                virtualBoxManager.cleanup();
-                throw new UnexpectedVMStateException(getErrorMessage(8, virtualMachine.getHostMachine(),
-                                                     virtualMachine.getName()));
-            }
-
-            if(isLinkedClone(vboxMachine, vbox)){                
+        //inaccessible virtual machine has already been unregistered
+        if(vboxMachine != null){
+            if(isLinkedClone(vboxMachine, virtualBoxManager.getVBox())){                
                 try{
                     //remove virtual machine as a child of some another VM
                     removeVMAsSnapshot(vboxMachine, virtualBoxManager);
                 }catch(UnexpectedVMStateException ex){
-                    virtualBoxManager.disconnect();
-                    virtualBoxManager.cleanup();
+                    sessionPool.release(physicalMachine, virtualBoxManager);
                     throw ex;
                 }
             }else{
@@ -333,15 +374,83 @@ class NativeVBoxAPIManager {
                     //remove VM as a top unit (it is not child, but can have children)
                     removeVMAsStandaloneUnit(vboxMachine, virtualBoxManager);
                 }catch(UnexpectedVMStateException ex){
-                    virtualBoxManager.disconnect();
-                    virtualBoxManager.cleanup();
+                    sessionPool.release(physicalMachine, virtualBoxManager);
                     throw ex;
                 }
             }
         }
         
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
+        sessionPool.release(physicalMachine, virtualBoxManager);
+    }
+    
+    /**
+     * This method removes the specified virtual machine on a remote physical
+     * machine asynchronously. The checks of the virtual machine, the removal
+     * of its linked clones and the call which deletes its configuration files
+     * are performed by the given executor, the progress of the deletion is then
+     * queried by {@link cz.muni.fi.virtualtoolmanager.logicimpl.VBoxStateWaiter
+     * VBoxStateWaiter} without holding any thread. The borrowed session is given
+     * back when the removal is finished.
+     * The returned future is completed exceptionally with the same exceptions
+     * which are thrown by the method {@link #removeVirtualMachine(VirtualMachine)
+     * removeVirtualMachine}.
+     * @param virtualMachine virtual machine which should be removed
+     * @param executor executor which performs the remote calls before
+     * the deletion of configuration files
+     * @return future which is completed when the virtual machine is removed
+     */
+    public CompletableFuture<Void> removeVirtualMachineAsync(final VirtualMachine virtualMachine,
+            final Executor executor){
+        final CompletableFuture<Void> removal = new CompletableFuture<>();
+        executor.execute(() -> {
+            PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+            VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+            VirtualBoxManager virtualBoxManager;
+            IMachine vboxMachine;
+            try{
+                virtualBoxManager = acquireSession(virtualMachine, 6);
+                vboxMachine = getRemovableVBoxMachine(virtualBoxManager, virtualMachine);
+            }catch(RuntimeException ex){
+                removal.completeExceptionally(ex);
+                return;
+            }
+            
+            //inaccessible virtual machine has already been unregistered
+            if(vboxMachine == null){
+                sessionPool.release(physicalMachine, virtualBoxManager);
+                removal.complete(null);
+                return;
+            }
+            
+            CompletableFuture<Void> configDeletion;
+            try{
+                if(isLinkedClone(vboxMachine, virtualBoxManager.getVBox())){
+                    String machineName = vboxMachine.getName();
+                    IMedium parentMedium = prepareRemovalAsSnapshot(vboxMachine, virtualBoxManager);
+                    //the snapshot which is the base of linked clone is deleted after the clone itself
+                    configDeletion = removeVBoxMachineAsync(vboxMachine).thenRunAsync(() ->
+                            deleteSnapshot(parentMedium, virtualBoxManager, machineName), executor);
+                }else{
+                    prepareRemovalAsStandaloneUnit(vboxMachine, virtualBoxManager);
+                    configDeletion = removeVBoxMachineAsync(vboxMachine);
+                }
+            }catch(RuntimeException ex){
+                sessionPool.release(physicalMachine, virtualBoxManager);
+                removal.completeExceptionally(ex);
+                return;
+            }
+            
+            configDeletion.whenComplete((ignored, ex) -> {
+                sessionPool.release(physicalMachine, virtualBoxManager);
+                if(ex == null){
+                    removal.complete(null);
+                }else{
+                    removal.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+                }
+            });
+        });
+        
+        return removal;
     }
     
     /**
@@ -369,34 +478,177 @@ class NativeVBoxAPIManager {
      * @return cloned virtual machine
      */
     public VirtualMachine createVMClone(VirtualMachine virtualMachine, CloneType cloneType){
-        String url = getURL(virtualMachine.getHostMachine());
-        String username = virtualMachine.getHostMachine().getUsername();
-        String userPassword = virtualMachine.getHostMachine().getUserPassword();
-        VirtualBoxManager virtualBoxManager = VirtualBoxManager.createInstance(null);
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+        VirtualBoxManager virtualBoxManager = acquireSession(virtualMachine, 9);
+        CloneOperation cloneOperation = startCloning(virtualBoxManager, virtualMachine, cloneType);
+        
+        try{
+            VBoxStateWaiter.waitForCompletion(cloneOperation.progress, 1000, getCloningProgressReporter());
+        }catch(VBoxException ex){
+            RuntimeException failure = getCloningFailure(ex, cloneOperation.progress, virtualMachine);
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            throw failure;
+        }
+        
+        try{
+            return finishCloning(virtualBoxManager, virtualMachine, cloneOperation);
+        }finally{
+            sessionPool.release(physicalMachine, virtualBoxManager);
+        }
+    }
+    
+    /**
+     * This method creates a particular virtual machine clone asynchronously.
+     * The checks of the virtual machine, the snapshot of the linked clone and
+     * the call which starts the cloning are performed by the given executor,
+     * the progress of the cloning is then queried by
+     * {@link cz.muni.fi.virtualtoolmanager.logicimpl.VBoxStateWaiter
+     * VBoxStateWaiter} without holding any thread. When the cloning is finished,
+     * the clone is registered and converted by the given executor and
+     * the borrowed session is given back.
+     * The returned future is completed exceptionally with the same exceptions
+     * which are thrown by the method {@link #createVMClone(VirtualMachine, CloneType)
+     * createVMClone}.
+     * @param virtualMachine original virtual machine which should be cloned
+     * @param cloneType type of clone which should be created
+     * @param executor executor which performs the remote calls before and after
+     * the cloning
+     * @return future which is completed with the cloned virtual machine
+     */
+    public CompletableFuture<VirtualMachine> createVMCloneAsync(final VirtualMachine virtualMachine,
+            final CloneType cloneType, final Executor executor){
+        final CompletableFuture<VirtualMachine> cloning = new CompletableFuture<>();
+        executor.execute(() -> {
+            PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+            VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+            VirtualBoxManager virtualBoxManager;
+            CloneOperation cloneOperation;
+            try{
+                virtualBoxManager = acquireSession(virtualMachine, 9);
+                cloneOperation = startCloning(virtualBoxManager, virtualMachine, cloneType);
+            }catch(RuntimeException ex){
+                cloning.completeExceptionally(ex);
+                return;
+            }
+            
+            VBoxStateWaiter.whenCompleted(cloneOperation.progress, 1000, getCloningProgressReporter())
+                    .whenComplete((ignored, ex) -> {
+                        if(ex == null){
+                            return;
+                        }
+                        RuntimeException failure = (ex instanceof VBoxException
+                                ? getCloningFailure((VBoxException) ex, cloneOperation.progress, virtualMachine)
+                                : new UnexpectedVMStateException(ex));
+                        sessionPool.release(physicalMachine, virtualBoxManager);
+                        cloning.completeExceptionally(failure);
+                    })
+                    .thenRunAsync(() -> {
+                        VirtualMachine vmClone;
+                        try{
+                            vmClone = finishCloning(virtualBoxManager, virtualMachine, cloneOperation);
+                        }catch(RuntimeException ex){
+                            sessionPool.release(physicalMachine, virtualBoxManager);
+                            cloning.completeExceptionally(ex);
+                            return;
+                        }
+                        sessionPool.release(physicalMachine, virtualBoxManager);
+                        cloning.complete(vmClone);
+                    }, executor);
+        });
         
+        return cloning;
+    }
+    
+    /**
+     * Borrows a session with VirtualBox web server of the physical machine
+     * on which the virtual machine is located.
+     * @param virtualMachine virtual machine which is going to be processed
+     * @param errMsgIndex index of the error message used when the connection fails
+     * @return borrowed native VirtualBox manager
+     */
+    private VirtualBoxManager acquireSession(VirtualMachine virtualMachine, int errMsgIndex){
         try{
-            virtualBoxManager.connect(url, username, userPassword);
+            //borrow a session with VirtualBox web server (connect to it if there is no idle one)
+            return VBoxSessionPool.getInstance().acquire(virtualMachine.getHostMachine());
         }catch(VBoxException ex){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
-            throw new ConnectionFailureException(getErrorMessage(9, virtualMachine.getHostMachine(),
+            throw new ConnectionFailureException(getErrorMessage(errMsgIndex, virtualMachine.getHostMachine(),
                                                  virtualMachine.getName()));
         }
+    }
+    
+    /**
+     * Retrieves the native VirtualBox virtual machine instance which can be
+     * removed. The inaccessible virtual machine is just unregistered.
+     * The session is given back when the virtual machine cannot be removed.
+     * @param virtualBoxManager borrowed native VirtualBox manager
+     * @param virtualMachine virtual machine which should be removed
+     * @return native VirtualBox virtual machine instance, null if the virtual
+     * machine was inaccessible and it has already been unregistered
+     */
+    private IMachine getRemovableVBoxMachine(VirtualBoxManager virtualBoxManager,
+            VirtualMachine virtualMachine){
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        IVirtualBox vbox = virtualBoxManager.getVBox();        
+        IMachine vboxMachine = null;
+        try{
+            //get the VirtualBox virtual machine instance
+            vboxMachine = vbox.findMachine(virtualMachine.getId().toString());
+        }catch(VBoxException ex){
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            throw new UnknownVirtualMachineException(getErrorMessage(7, virtualMachine.getHostMachine(),
+                                                     virtualMachine.getName()));
+        }
         
+        //check the virtual machine is accessible and can be removed
+        if(!vboxMachine.getAccessible()){
+            try{
+                vboxMachine.unregister(CleanupMode.DetachAllReturnHardDisksOnly);
+            }catch(VBoxException ex){
+                sessionPool.release(physicalMachine, virtualBoxManager);
+                /*machine was not registered -> this should not normally happen, because if the machine
+                was not registered, then the VBoxException would be invoked earlier at vbox.findMachine()*/
+                throw new IllegalStateException(ex);
+            }
+            return null;
+        }
+        
+        //check the virtual machine is powered off
+        if(vboxMachine.getState() != MachineState.PoweredOff){
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            throw new UnexpectedVMStateException(getErrorMessage(8, virtualMachine.getHostMachine(),
+                                                 virtualMachine.getName()));
+        }
+        
+        return vboxMachine;
+    }
+    
+    /**
+     * Checks the virtual machine can be cloned and starts the cloning operation.
+     * The session is given back when the cloning cannot be started.
+     * @param virtualBoxManager borrowed native VirtualBox manager
+     * @param virtualMachine original virtual machine which should be cloned
+     * @param cloneType type of clone which should be created
+     * @return started cloning operation
+     */
+    private CloneOperation startCloning(VirtualBoxManager virtualBoxManager,
+            VirtualMachine virtualMachine, CloneType cloneType){
+        PhysicalMachine physicalMachine = virtualMachine.getHostMachine();
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
         IVirtualBox vbox = virtualBoxManager.getVBox();        
         IMachine vboxMachine = null;
         try{
             vboxMachine = vbox.findMachine(virtualMachine.getId().toString());
         }catch(VBoxException ex){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw new UnknownVirtualMachineException(getErrorMessage(10, virtualMachine.getHostMachine(),
                                                      virtualMachine.getName()));
         }
         
         if(!vboxMachine.getAccessible()){
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
+            sessionPool.release(physicalMachine, virtualBoxManager);
             throw new UnexpectedVMStateException(getErrorMessage(11, virtualMachine.getHostMachine(),
                                                  virtualMachine.getName()) + vboxMachine.getAccessError().getText());
         }
@@ -406,10 +658,16 @@ class NativeVBoxAPIManager {
             case Saved     :
             case Running   :
             case Paused    : break;
-            default        : throw new UnexpectedVMStateException(getErrorMessage(12, virtualMachine.getHostMachine(),
+            default        : sessionPool.release(physicalMachine, virtualBoxManager);
+                             throw new UnexpectedVMStateException(getErrorMessage(12, virtualMachine.getHostMachine(),
                                                                   virtualMachine.getName()));
-        }        
-        checkMediumStateForCloning(vboxMachine);
+        }
+        try{
+            checkMediumStateForCloning(vboxMachine);
+        }catch(UnexpectedVMStateException ex){
+            sessionPool.release(physicalMachine, virtualBoxManager);
+            throw ex;
+        }
         
         String cloneName = getNewCloneName(vboxMachine.getName(), vbox, cloneType, vboxMachine.getOSTypeId());
         
@@ -417,23 +675,19 @@ class NativeVBoxAPIManager {
         if(cloneType == CloneType.LINKED){
             ISession session = virtualBoxManager.getSessionObject();
             try{
-                takeSnapshot(vboxMachine,session,cloneName);
+                takeSnapshot(vboxMachine,session,cloneName,virtualBoxManager);
             }catch(VBoxException ex){
                 if(session.getState() == SessionState.Locked){
                     session.unlockMachine();
-                    while(session.getState() != SessionState.Unlocked){
-                        //do nothing, just loop until the condition is true
-                    }
+                    VBoxStateWaiter.waitForSessionUnlocked(virtualBoxManager, session);
                 }
-                virtualBoxManager.disconnect();
-                virtualBoxManager.cleanup();
+                sessionPool.release(physicalMachine, virtualBoxManager);
                 throw new UnexpectedVMStateException("Cloning virtual machine " 
                         + virtualMachine + " on physical machine " 
                         + virtualMachine.getHostMachine() + " failure: " 
                         + ex.getMessage());
             }catch(UnexpectedVMStateException ex){
-                virtualBoxManager.disconnect();
-                virtualBoxManager.cleanup();
+                sessionPool.release(physicalMachine, virtualBoxManager);
                 throw ex;
             }
             ISnapshot snapshot = vboxMachine.getCurrentSnapshot();
@@ -448,49 +702,70 @@ class NativeVBoxAPIManager {
         CloneMode cloneMode = getCloneMode(cloneType);
         
         IProgress progress = clonableVBoxMachine.cloneTo(vboxMachineClone, cloneMode, cloneOptions);        
-        Long progressPercent = 0L;
-        OutputHandler outputHandler = new OutputHandler();
-        try{
-            while(!progress.getCompleted()){
-                if(progress.getPercent() > progressPercent){
-                    progressPercent = progress.getPercent();
-                    outputHandler.printMessage("Cloning progress > " + progressPercent + "%");
-                }
-            }
-        }catch(VBoxException ex){
-            if(ex.getMessage().contains("connect")){
-                String nativeAPIErrorInfo = "No more error info";
-                if(progress.getResultCode() != 0){
-                     nativeAPIErrorInfo = progress.getErrorInfo().getText();
-                }
-                virtualBoxManager.disconnect();
-                virtualBoxManager.cleanup();
-                throw new ConnectionFailureException(getErrorMessage(13, virtualMachine.getHostMachine(),
-                                                        virtualMachine.getName()) + nativeAPIErrorInfo);
-            }
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
-            throw new UnexpectedVMStateException(ex);
-        }
-        
+        return new CloneOperation(vboxMachineClone, progress);
+    }
+    
+    /**
+     * Checks the completed cloning operation has been finished successfully,
+     * registers the clone and converts it.
+     * @param virtualBoxManager borrowed native VirtualBox manager
+     * @param virtualMachine original virtual machine which was cloned
+     * @param cloneOperation completed cloning operation
+     * @return cloned virtual machine
+     */
+    private VirtualMachine finishCloning(VirtualBoxManager virtualBoxManager,
+            VirtualMachine virtualMachine, CloneOperation cloneOperation){
+        IVirtualBox vbox = virtualBoxManager.getVBox();
+        IProgress progress = cloneOperation.progress;
         if(progress.getResultCode() != 0){
             String nativeAPIErrorInfo = progress.getErrorInfo().getText();
-            virtualBoxManager.disconnect();
-            virtualBoxManager.cleanup();
             throw new UnexpectedVMStateException(getErrorMessage(14, virtualMachine.getHostMachine(),
                                                      virtualMachine.getName()) + nativeAPIErrorInfo);
         }
         
+        IMachine vboxMachineClone = cloneOperation.vboxMachineClone;
         vboxMachineClone.saveSettings();        
         vbox.registerMachine(vboxMachineClone);
         
         IGuestOSType guestOSType = vbox.getGuestOSType(vboxMachineClone.getOSTypeId());
-        VirtualMachine vmClone = getConvertedVM(vboxMachineClone, guestOSType, virtualMachine.getHostMachine());
-        
-        virtualBoxManager.disconnect();
-        virtualBoxManager.cleanup();
-        
-        return vmClone;
+        return getConvertedVM(vboxMachineClone, guestOSType, virtualMachine.getHostMachine());
+    }
+    
+    /**
+     * Converts the failure of waiting for the cloning operation to the exception
+     * thrown by this class.
+     * @param ex the failure of waiting
+     * @param progress the progress of cloning operation
+     * @param virtualMachine original virtual machine which was being cloned
+     * @return exception which describes the failure
+     */
+    private RuntimeException getCloningFailure(VBoxException ex, IProgress progress,
+            VirtualMachine virtualMachine){
+        if(ex.getMessage().contains("connect")){
+            String nativeAPIErrorInfo = "No more error info";
+            if(progress.getResultCode() != 0){
+                 nativeAPIErrorInfo = progress.getErrorInfo().getText();
+            }
+            return new ConnectionFailureException(getErrorMessage(13, virtualMachine.getHostMachine(),
+                                                    virtualMachine.getName()) + nativeAPIErrorInfo);
+        }
+        return new UnexpectedVMStateException(ex);
+    }
+    
+    /**
+     * Creates the listener which prints the percentage of the cloning operation
+     * completion whenever it grows.
+     * @return listener of the cloning operation progress
+     */
+    private LongConsumer getCloningProgressReporter(){
+        final long[] progressPercent = {0L};
+        final OutputHandler outputHandler = new OutputHandler();
+        return percent -> {
+            if(percent > progressPercent[0]){
+                progressPercent[0] = percent;
+                outputHandler.printMessage("Cloning progress > " + progressPercent[0] + "%");
+            }
+        };
     }
     
     private String getErrorMessage(int index, PhysicalMachine physicalMachine, String vmNameOrId){
@@ -522,26 +797,6 @@ class NativeVBoxAPIManager {
         return errMessages[index];
     }
     
-    /**
-     * This method creates the correct form of url from the given IP address
-     * and the port number of the VirtualBox web server. Thanks this method
-     * it is possible to connect to the physical machine and its VirtualBox
-     * web server with IPv4 or IPv6.
-     * 
-     * @param physicalMachine represents the physical machine whose IP address
-     * and port number of VirtualBox web server will be used for new url creation
-     * @return newly created url defining the physical machine
-     */
-    private String getURL(PhysicalMachine physicalMachine){
-        if(physicalMachine.getAddressIP().contains(".")){
-            return "http://" + physicalMachine.getAddressIP() + ":"
-                    + physicalMachine.getPortOfVTWebServer();
-        }
-        
-        return "http://[" + physicalMachine.getAddressIP() + "]:"
-                + physicalMachine.getPortOfVTWebServer();
-    }
-    
     private IMedium getVMHardDisk(IMachine vboxMachine){
         List<IMediumAttachment> medAttachs = vboxMachine.getMediumAttachmentsOfController("SATA");
         if(medAttachs.isEmpty()){
@@ -558,6 +813,75 @@ class NativeVBoxAPIManager {
         return medium;
     }
     
+    /**
+     * Converts the native VirtualBox virtual machine to the API virtual machine,
+     * only the required attributes are retrieved from VirtualBox web server.
+     * The guest OS type is taken from the metadata cache of physical machine
+     * if it is there.
+     */
+    private VirtualMachine getConvertedVM(IMachine vboxMachine, IVirtualBox vbox,
+            PhysicalMachine physicalMachine, Set<SearchCriterionType> attributes){
+        VirtualMachine.Builder builder = new VirtualMachine.Builder(UUID.fromString(vboxMachine.getId()),
+                                                                    vboxMachine.getName(), physicalMachine);
+        if(attributes.contains(SearchCriterionType.CPU_COUNT)){
+            builder.countOfCPU(vboxMachine.getCPUCount());
+        }
+        if(attributes.contains(SearchCriterionType.MONITOR_COUNT)){
+            builder.countOfMonitors(vboxMachine.getMonitorCount());
+        }
+        if(attributes.contains(SearchCriterionType.CPU_EXEC_CAP)){
+            builder.cpuExecutionCap(vboxMachine.getCPUExecutionCap());
+        }
+        if(attributes.contains(SearchCriterionType.RAM)){
+            builder.sizeOfRAM(vboxMachine.getMemorySize());
+        }
+        if(attributes.contains(SearchCriterionType.VRAM)){
+            builder.sizeOfVRAM(vboxMachine.getVRAMSize());
+        }
+        if(attributes.contains(SearchCriterionType.OS_TYPE)
+                || attributes.contains(SearchCriterionType.OS_IDENTIFIER)){
+            //both attributes are got from one guest OS type object
+            VMMetadataCache.GuestOSType guestOSType = getGuestOSType(vboxMachine, vbox, physicalMachine);
+            builder.typeOfOS(guestOSType.getFamilyId()).identifierOfOS(guestOSType.getId());
+        }
+        if(attributes.contains(SearchCriterionType.HDD_FREE_SPACE)
+                || attributes.contains(SearchCriterionType.HDD_TOTAL_SIZE)){
+            IMedium medium = getVMHardDisk(vboxMachine);
+            if(medium == null){
+                //the virtual machine without hard disk has both sizes 0 like
+                //the virtual machine converted with all its attributes
+                builder.hardDiskTotalSize(null).hardDiskFreeSpaceSize(null);
+            }else{
+                //the allocated size is retrieved only if the free space is required
+                Long logicalSize = medium.getLogicalSize();
+                builder.hardDiskTotalSize(logicalSize);
+                if(attributes.contains(SearchCriterionType.HDD_FREE_SPACE)){
+                    builder.hardDiskFreeSpaceSize(logicalSize - medium.getSize());
+                }
+            }
+        }
+        
+        return builder.build();
+    }
+    
+    /**
+     * Gets the guest OS type of the virtual machine, it is retrieved from
+     * VirtualBox web server only if it is not cached yet.
+     */
+    private VMMetadataCache.GuestOSType getGuestOSType(IMachine vboxMachine, IVirtualBox vbox,
+            PhysicalMachine physicalMachine){
+        VMMetadataCache metadataCache = VMMetadataCache.getInstance();
+        String osTypeId = vboxMachine.getOSTypeId();
+        VMMetadataCache.GuestOSType guestOSType = metadataCache.getGuestOSType(physicalMachine, osTypeId);
+        if(guestOSType == null){
+            IGuestOSType vboxGuestOSType = vbox.getGuestOSType(osTypeId);
+            guestOSType = metadataCache.putGuestOSType(physicalMachine, osTypeId,
+                    vboxGuestOSType.getFamilyId(), vboxGuestOSType.getId());
+        }
+        
+        return guestOSType;
+    }
+    
     private VirtualMachine getConvertedVM(IMachine vboxMachine,
             IGuestOSType guestOSType, PhysicalMachine physicalMachine){
         IMedium medium = getVMHardDisk(vboxMachine);
@@ -618,9 +942,7 @@ class NativeVBoxAPIManager {
                            //this machine concurrently and VM removal operation cannot be performed correctly with guarantee
                            am.lockMachine(session, LockType.Write);
                            session.unlockMachine();
-                           while(session.getState() != SessionState.Unlocked){
-
-                           }
+                           VBoxStateWaiter.waitForSessionUnlocked(vbm, session);
                         }catch(VBoxException ex){
                             throw new UnexpectedVMStateException("Virtual machine removal operation failure: "
                                     + "With linked clone \"" + am.getName() + "\" is working another process at the moment. "
@@ -698,6 +1020,16 @@ class NativeVBoxAPIManager {
     
     private void removeVMAsSnapshot(IMachine vboxMachine, VirtualBoxManager vbm){
         String machineName = vboxMachine.getName();
+        IMedium parentMedium = prepareRemovalAsSnapshot(vboxMachine, vbm);
+        removeVBoxMachine(vboxMachine);
+        deleteSnapshot(parentMedium, vbm, machineName);
+    }
+    
+    /**
+     * Checks the linked clone can be removed and removes its own linked clones.
+     * @return medium of the snapshot which is the base of the linked clone
+     */
+    private IMedium prepareRemovalAsSnapshot(IMachine vboxMachine, VirtualBoxManager vbm){
         IMedium medium = getVMHardDisk(vboxMachine);
         IMedium parentMedium;
         
@@ -711,8 +1043,7 @@ class NativeVBoxAPIManager {
         checkMediumStateForDeletion(medium, vbm);
         checkLinkedCloneChildrenState(medium, vbm, null);
         removeLinkedCloneChildren(medium,vbm);
-        removeVBoxMachine(vboxMachine);
-        deleteSnapshot(parentMedium, vbm, machineName);
+        return parentMedium;
     }
     
     private void removeLinkedCloneChildren(IMedium medium, VirtualBoxManager vbm){
@@ -751,22 +1082,51 @@ class NativeVBoxAPIManager {
     private void removeVBoxMachine(IMachine vboxMachine){
         List<IMedium> mediums = vboxMachine.unregister(CleanupMode.DetachAllReturnHardDisksOnly);
         IProgress progress = vboxMachine.deleteConfig(mediums);
-        while(!progress.getCompleted()){
-            progress.waitForCompletion(200);
-        }
+        VBoxStateWaiter.waitForCompletion(progress);
         if(progress.getResultCode() != 0){
             progress = vboxMachine.deleteConfig(null);
-            while(!progress.getCompleted()){
-                progress.waitForCompletion(200);
-            }
+            VBoxStateWaiter.waitForCompletion(progress);
             if(progress.getResultCode() != 0){
-                throw new UnexpectedVMStateException("Virtual machine removal operation failure: "
-                        + "Failed to correctly remove configuration files of VM \"" + vboxMachine.getName() + "\".");
+                throw getConfigDeletionFailure(vboxMachine);
             }
         }
     }
     
+    /**
+     * Unregisters the virtual machine and deletes its configuration files,
+     * the progress of the deletion is queried without holding any thread.
+     * @return future which is completed when the configuration files are deleted
+     */
+    private CompletableFuture<Void> removeVBoxMachineAsync(final IMachine vboxMachine){
+        List<IMedium> mediums = vboxMachine.unregister(CleanupMode.DetachAllReturnHardDisksOnly);
+        final IProgress progress = vboxMachine.deleteConfig(mediums);
+        return VBoxStateWaiter.whenCompleted(progress).thenCompose(ignored -> {
+            if(progress.getResultCode() == 0){
+                return CompletableFuture.completedFuture(null);
+            }
+            final IProgress retryProgress = vboxMachine.deleteConfig(null);
+            return VBoxStateWaiter.whenCompleted(retryProgress).thenRun(() -> {
+                if(retryProgress.getResultCode() != 0){
+                    throw getConfigDeletionFailure(vboxMachine);
+                }
+            });
+        });
+    }
+    
+    private UnexpectedVMStateException getConfigDeletionFailure(IMachine vboxMachine){
+        return new UnexpectedVMStateException("Virtual machine removal operation failure: "
+                + "Failed to correctly remove configuration files of VM \"" + vboxMachine.getName() + "\".");
+    }
+    
     private void removeVMAsStandaloneUnit(IMachine vboxMachine, VirtualBoxManager vbm){
+        prepareRemovalAsStandaloneUnit(vboxMachine, vbm);
+        removeVBoxMachine(vboxMachine);
+    }
+    
+    /**
+     * Checks the virtual machine can be removed and removes its linked clones.
+     */
+    private void prepareRemovalAsStandaloneUnit(IMachine vboxMachine, VirtualBoxManager vbm){
         IMedium medium = getVMHardDisk(vboxMachine);
         
         if(medium != null){
@@ -783,7 +1143,6 @@ class NativeVBoxAPIManager {
             checkLinkedCloneChildrenState(medium, vbm, null);
             removeLinkedCloneChildren(medium,vbm);
         }
-        removeVBoxMachine(vboxMachine);
     }
     
     private void deleteSnapshot(IMedium parentMedium, VirtualBoxManager vbm, String machineName){
@@ -808,25 +1167,19 @@ class NativeVBoxAPIManager {
                     parentMachine.lockMachine(session, LockType.Shared);
                     IConsole console = session.getConsole();
                     IProgress progress = console.deleteSnapshot(snapshot.getId());
-                    while(!progress.getCompleted()){
-                        //do nothing, just loop until condition is true
-                    }
+                    VBoxStateWaiter.waitForCompletion(progress);
                     if(progress.getResultCode() != 0){
                         String errMsg = progress.getErrorInfo().getText();
                         try{
                             session.unlockMachine();
-                            while(session.getState() != SessionState.Unlocked){
-                                //do nothing, just loop until the condition is true
-                            }
+                            VBoxStateWaiter.waitForSessionUnlocked(vbm, session);
                         }catch(VBoxException ex){
                             //not necessary to manage this exception, just means the machine has already been unlocked
                         }
                         throw new UnexpectedVMStateException("Virtual machine removal operation failure: " + errMsg);
                     }
                     session.unlockMachine();
-                    while(session.getState() != SessionState.Unlocked){
-                        //do nothing, just loop until the condition is true
-                    }
+                    VBoxStateWaiter.waitForSessionUnlocked(vbm, session);
                 }catch(VBoxException ex){
                     throw new UnexpectedVMStateException("Virtual machine removal operation failure: " + ex.getMessage());
                 }
@@ -941,20 +1294,17 @@ class NativeVBoxAPIManager {
         return cloneName;
     }
     
-    private void takeSnapshot(IMachine vboxMachine, ISession session, String cloneName){
+    private void takeSnapshot(IMachine vboxMachine, ISession session, String cloneName,
+            VirtualBoxManager virtualBoxManager){
         vboxMachine.lockMachine(session, LockType.Shared);
         IConsole console = session.getConsole();
         IProgress progress = console.takeSnapshot("Linked Base For " + vboxMachine.getName() 
                                                 + " and " + cloneName, null);
-        while(!progress.getCompleted()){
-            //do nothing, just loop until snapshot is created
-        }
+        VBoxStateWaiter.waitForCompletion(progress);
         if(progress.getResultCode() != 0){
             try{
                 session.unlockMachine();
-                while(session.getState() != SessionState.Unlocked){
-                    //do nothing, just loop until the condition is true
-                }
+                VBoxStateWaiter.waitForSessionUnlocked(virtualBoxManager, session);
             }catch(VBoxException ex){
                 //session was already unlocked, do nothing
             }            
@@ -963,9 +1313,7 @@ class NativeVBoxAPIManager {
         }
         
         session.unlockMachine();
-        while(session.getState() != SessionState.Unlocked){
-            //do nothing, just loop until the condition is true
-        }
+        VBoxStateWaiter.waitForSessionUnlocked(virtualBoxManager, session);
     }
     
     private List<CloneOptions> getCloneOptions(CloneType cloneType){
@@ -987,4 +1335,19 @@ class NativeVBoxAPIManager {
             default                                 : return CloneMode.MachineState;
         }
     }
+    
+    /**
+     * Cloning operation which has been started, but it may not be finished yet.
+     */
+    private static final class CloneOperation {
+        /** the clone which is being created */
+        final IMachine vboxMachineClone;
+        /** the progress of the cloning */
+        final IProgress progress;
+        
+        CloneOperation(IMachine vboxMachineClone, IProgress progress){
+            this.vboxMachineClone = vboxMachineClone;
+            this.progress = progress;
+        }
+    }
 }
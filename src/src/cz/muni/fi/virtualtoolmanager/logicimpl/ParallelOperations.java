@@ -0,0 +1,259 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
+import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.OperationTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <div>
+ * Class that is used to perform one operation for more subjects in parallel
+ * (e.g. shut down of all running virtual machines of one physical machine or
+ * disconnection of all connected physical machines).
+ * <p>
+ * The operations are performed by the threads dedicated to one call of method
+ * {@link #perform(List, int, long, String, Function, Consumer) perform()},
+ * so the nested parallel operations (virtual machines of physical machines
+ * being disconnected in parallel) can never exhaust the threads of each other.
+ * <p>
+ * The short and frequent operations (e.g. conversions of virtual machines)
+ * are performed by the method {@link #perform(Executor, List, int, Function)
+ * perform()} with the shared executor instead, so there are not created any
+ * threads for each call. The calling thread takes part in such operations,
+ * so they are finished even if all the threads of shared executor are busy.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+final class ParallelOperations {
+    /** the operation of the subject has not been started yet */
+    private static final int NOT_STARTED = 0;
+    /** the operation of the subject has been started */
+    private static final int STARTED = 1;
+    /** the operation of the subject was skipped because of the deadline */
+    private static final int SKIPPED = 2;
+
+    private ParallelOperations(){ }
+
+    /**
+     * This method performs the operation for each given subject, there are
+     * performed at most the required number of operations at once. The method
+     * waits until all the operations are finished or until the deadline.
+     * The operations which have not been started before the deadline are
+     * skipped, the operations which are in progress at the deadline are left
+     * to finish in the background.
+     * @param <S> type of subject of the operation
+     * @param <R> type of result of the operation
+     * @param subjects subjects for which should be the operation performed
+     * @param maxParallelOperations maximum number of operations performed at once
+     * @param timeout time in milliseconds after which there is not waited for
+     * the operations anymore, 0 means there is waited until all the operations
+     * are finished
+     * @param threadNamePrefix prefix of names of threads performing the operations
+     * @param operation the operation which should be performed for each subject
+     * @param skippedOperationHandler handler called for each subject whose
+     * operation was skipped because of the deadline, can be null
+     * @return list of operation results in the same order as the subjects were
+     * given, the operations not finished before the deadline are reported as
+     * failed with the exception of type OperationTimeoutException
+     */
+    static <S, R> List<OperationResult<S, R>> perform(List<S> subjects, int maxParallelOperations,
+            long timeout, String threadNamePrefix, Function<S, R> operation,
+            Consumer<S> skippedOperationHandler){
+        List<OperationResult<S, R>> results = new ArrayList<>(subjects.size());
+        if(subjects.isEmpty()){
+            return results;
+        }
+
+        int numOfThreads = Math.min(maxParallelOperations, subjects.size());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numOfThreads, numOfThreads,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                SharedExecutors.daemonThreadFactory(threadNamePrefix));
+        AtomicIntegerArray states = new AtomicIntegerArray(subjects.size());
+        List<Future<R>> futures = new ArrayList<>(subjects.size());
+        try{
+            for(int i = 0; i < subjects.size(); ++i){
+                final int index = i;
+                final S subject = subjects.get(i);
+                futures.add(executor.submit(() -> {
+                    //the subject which was skipped because of the deadline is not touched
+                    if(!states.compareAndSet(index, NOT_STARTED, STARTED)){
+                        return null;
+                    }
+                    return operation.apply(subject);
+                }));
+            }
+        }finally{
+            //the threads end as soon as all the submitted operations are finished
+            executor.shutdown();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        boolean deadlineReached = false;
+        for(int i = 0; i < subjects.size(); ++i){
+            S subject = subjects.get(i);
+            Future<R> future = futures.get(i);
+            if(!deadlineReached){
+                try{
+                    R result = (timeout == 0 ? future.get()
+                            : future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+                    results.add(OperationResult.<S, R>success(subject, result));
+                    continue;
+                }catch(ExecutionException ex){
+                    results.add(OperationResult.<S, R>failure(subject, toRuntimeException(ex.getCause())));
+                    continue;
+                }catch(TimeoutException ex){
+                    deadlineReached = true;
+                }catch(InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                    deadlineReached = true;
+                }
+            }
+            results.add(getResultAfterDeadline(subject, future, states, i, skippedOperationHandler));
+        }
+
+        return results;
+    }
+
+    /**
+     * This method performs the operation for each given subject by the threads
+     * of the shared executor and by the calling thread, there are performed
+     * at most the required number of operations at once. The method waits
+     * until all the operations are finished.
+     * @param <S> type of subject of the operation
+     * @param <R> type of result of the operation
+     * @param executor shared executor which helps the calling thread
+     * @param subjects subjects for which should be the operation performed
+     * @param maxParallelOperations maximum number of operations performed at once
+     * @param operation the operation which should be performed for each subject
+     * @return list of operation results in the same order as the subjects were
+     * given
+     */
+    static <S, R> List<OperationResult<S, R>> perform(Executor executor, List<S> subjects,
+            int maxParallelOperations, Function<S, R> operation){
+        List<OperationResult<S, R>> results = new ArrayList<>(subjects.size());
+        if(subjects.isEmpty()){
+            return results;
+        }
+
+        Object[] values = new Object[subjects.size()];
+        Throwable[] failures = new Throwable[subjects.size()];
+        AtomicInteger nextIndex = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(subjects.size());
+        //each performer takes the next subject until there is none left
+        Runnable performer = () -> {
+            for(int i = nextIndex.getAndIncrement(); i < subjects.size(); i = nextIndex.getAndIncrement()){
+                try{
+                    values[i] = operation.apply(subjects.get(i));
+                }catch(RuntimeException | Error ex){
+                    failures[i] = ex;
+                }finally{
+                    finished.countDown();
+                }
+            }
+        };
+        int numOfHelpers = Math.min(maxParallelOperations, subjects.size()) - 1;
+        for(int i = 0; i < numOfHelpers; ++i){
+            try{
+                executor.execute(performer);
+            }catch(RejectedExecutionException ex){
+                //the calling thread performs the rest of operations itself
+                break;
+            }
+        }
+        performer.run();
+
+        //the helpers which have not started yet find no subject, so there is
+        //waited just for the operations in progress
+        boolean interrupted = false;
+        while(true){
+            try{
+                finished.await();
+                break;
+            }catch(InterruptedException ex){
+                interrupted = true;
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+
+        for(int i = 0; i < subjects.size(); ++i){
+            if(failures[i] == null){
+                @SuppressWarnings("unchecked")
+                R result = (R) values[i];
+                results.add(OperationResult.<S, R>success(subjects.get(i), result));
+            }else{
+                results.add(OperationResult.<S, R>failure(subjects.get(i), toRuntimeException(failures[i])));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Gets the result of the operation after there was reached the deadline.
+     * If the operation has not been started yet, then it is skipped.
+     */
+    private static <S, R> OperationResult<S, R> getResultAfterDeadline(S subject,
+            Future<R> future, AtomicIntegerArray states, int index,
+            Consumer<S> skippedOperationHandler){
+        if(states.compareAndSet(index, NOT_STARTED, SKIPPED)){
+            if(skippedOperationHandler != null){
+                skippedOperationHandler.accept(subject);
+            }
+            return OperationResult.failure(subject, new OperationTimeoutException("The operation "
+                    + "for " + subject + " was not started before the deadline."));
+        }
+
+        if(future.isDone()){
+            try{
+                return OperationResult.success(subject, future.get());
+            }catch(ExecutionException ex){
+                return OperationResult.failure(subject, toRuntimeException(ex.getCause()));
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return OperationResult.failure(subject, new OperationTimeoutException("The operation "
+                + "for " + subject + " was not finished before the deadline."));
+    }
+
+    private static RuntimeException toRuntimeException(Throwable throwable){
+        if(throwable instanceof RuntimeException){
+            return (RuntimeException) throwable;
+        }
+        if(throwable instanceof Error){
+            throw (Error) throwable;
+        }
+        return new RuntimeException(throwable);
+    }
+}
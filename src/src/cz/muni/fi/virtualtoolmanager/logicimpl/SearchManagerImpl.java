@@ -15,20 +15,35 @@
  */
 package cz.muni.fi.virtualtoolmanager.logicimpl;
 
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.SearchCriteria;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.SearchResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException;
+import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.OperationTimeoutException;
 import cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager;
 import cz.muni.fi.virtualtoolmanager.pubapi.managers.SearchManager;
 import cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchMode;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Class that provide the implementation of methods declared in
@@ -38,6 +53,17 @@ import java.util.UUID;
  * @author Tomáš Šmíd
  */
 public class SearchManagerImpl implements SearchManager{
+    
+    /** Represents the default time (in milliseconds) for which is waited for
+     * the virtual machines of one physical machine */
+    static final long DEFAULT_HOST_TIMEOUT = 30000L;
+    /** Represents the maximum number of physical machines which are queried
+     * for their virtual machines at the same moment */
+    private static final int MAX_PARALLEL_HOSTS = 16;
+    /** States of the physical machine searched by the asynchronous search */
+    private static final int HOST_SEARCHING = 0;
+    private static final int HOST_RETRIEVED = 1;
+    private static final int HOST_TIMED_OUT = 2;
 
     /** Represents the maximum deviation which is used for both search modes and
      * for hard disks values and memory and video memory, thanks to this attribute
@@ -77,6 +103,11 @@ public class SearchManagerImpl implements SearchManager{
      * in client search order will be ordered according to implicit setting and
      * appended to the explicitly set up search order. If the search order is not
      * specified, then there will be used the whole default search order.
+     * Only the attributes of virtual machines which are specified in the search
+     * criteria are retrieved from the connected physical machines.
+     * The virtual machines of all connected physical machines are retrieved
+     * at the same time and there is waited for each of them at most 30 seconds,
+     * the physical machines which do not respond in time or fail are skipped.
      * If there occurs any error, then there can be thrown the following exceptions:
      * <ul>
      * <li><strong>IllegalArgumentException - </strong>thrown when the given
@@ -93,29 +124,211 @@ public class SearchManagerImpl implements SearchManager{
     @Override
     public List<VirtualMachine> search(SearchCriteria searchCriteria, SearchMode mode,
                                        List<SearchCriterionType> searchOrder) {
+        return new ArrayList<>(search(searchCriteria, mode, searchOrder,
+                                      DEFAULT_HOST_TIMEOUT).getVirtualMachines());
+    }
+    
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.SearchManager#search(SearchCriteria, SearchMode, List, long)
+     * SearchManager::search(SearchCriteria, SearchMode, List, long)}.
+     * </div>
+     * <div>
+     * This method is implemented the same as the method
+     * {@link #search(SearchCriteria, SearchMode, List)}, so the search takes
+     * as long as the retrieve of virtual machines of the slowest physical machine
+     * which responds in time. At most 16 physical machines are queried at
+     * the same moment and the time for physical machine is measured since its
+     * virtual machines start to be retrieved, so the physical machine waiting
+     * for a free thread cannot time out. The physical machines which do not respond to
+     * the heartbeats are not queried at all and they are reported as failed.
+     * If there occurs any error, then there can be thrown the same exceptions
+     * as by the method {@link #search(SearchCriteria, SearchMode, List)},
+     * IllegalArgumentException is thrown also when the given time is negative.
+     * </div>
+     * @param searchCriteria defines what properties must have the searched
+     * virtual machine
+     * @param mode defines how precise the searching will be used
+     * @param searchOrder defines the priority of each search criterion
+     * @param hostTimeout time in milliseconds for which is waited for each
+     * physical machine, 0 means there is waited until all of them respond
+     * @return matched virtual machines and the physical machines which were
+     * not searched
+     */
+    @Override
+    public SearchResult search(SearchCriteria searchCriteria, SearchMode mode,
+                               List<SearchCriterionType> searchOrder, long hostTimeout) {
         ConnectionManager connectionManager = new ConnectionManagerImpl();        
         
         validateSearchCriteria(searchCriteria);
         validateSearchMode(mode);
+        validateHostTimeout(hostTimeout);
         
         if(connectionManager.getConnectedPhysicalMachines().isEmpty()){
-            return new ArrayList<>();
+            return new SearchResult(new ArrayList<>(), new ArrayList<>());
         }
         
-        List<VirtualMachine> virtualMachines = getAllAvailableVMs();
-        if(virtualMachines.isEmpty()){
-            return new ArrayList<>();
+        List<SearchCriterionType> finalSearchOrder = getFinalSearchOrder(searchOrder, searchCriteria);
+        
+        //only the searched attributes are retrieved from the physical machines
+        Set<SearchCriterionType> attributes = EnumSet.noneOf(SearchCriterionType.class);
+        attributes.addAll(finalSearchOrder);
+        List<OperationResult<PhysicalMachine, Void>> failures = new ArrayList<>();
+        List<VMCatalog> catalogs = getAllAvailableCatalogs(attributes, hostTimeout, failures);
+        
+        //the criteria are compiled once for all virtual machines
+        CompiledSearchCriteria compiledCriteria = CompiledSearchCriteria.compile(searchCriteria,
+                                                                                 finalSearchOrder, maxDeviation);
+        return new SearchResult(VMCatalog.filter(catalogs, compiledCriteria, mode), failures);
+    }
+    
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.SearchManager#searchAsync(SearchCriteria, SearchMode, List, long, Consumer)
+     * SearchManager::searchAsync(SearchCriteria, SearchMode, List, long, Consumer)}.
+     * </div>
+     * <div>
+     * The virtual machines of each connected physical machine are retrieved
+     * and filtered by the threads created for this search, at most 16 physical
+     * machines are queried at the same moment. The time for physical machine
+     * is measured since its virtual machines start to be retrieved, so
+     * the physical machine waiting for a free thread cannot time out. When
+     * the time for physical machine elapses, the physical machine is reported as failed with
+     * the exception of type
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.OperationTimeoutException
+     * OperationTimeoutException} and its virtual machines are never given to
+     * the consumer, even if they are retrieved later. If the consumer throws
+     * an exception, then the physical machine whose virtual machine was being
+     * consumed is reported as failed with that exception.
+     * IllegalArgumentException is thrown immediately for the same invalid
+     * arguments as by the method {@link #search(SearchCriteria, SearchMode, List, long)}
+     * and for the <code>null</code> consumer.
+     * </div>
+     * @param searchCriteria defines what properties must have the searched
+     * virtual machine
+     * @param mode defines how precise the searching will be used
+     * @param searchOrder defines the priority of each search criterion
+     * @param hostTimeout time in milliseconds for which is waited for each
+     * physical machine, 0 means there is waited until all of them respond
+     * @param matchConsumer consumer of the matched virtual machines
+     * @return future which is completed when all physical machines are searched
+     * or timed out
+     */
+    @Override
+    public CompletableFuture<SearchResult> searchAsync(SearchCriteria searchCriteria, SearchMode mode,
+            List<SearchCriterionType> searchOrder, long hostTimeout,
+            Consumer<VirtualMachine> matchConsumer) {
+        ConnectionManager connectionManager = new ConnectionManagerImpl();
+        
+        validateSearchCriteria(searchCriteria);
+        validateSearchMode(mode);
+        validateHostTimeout(hostTimeout);
+        if(matchConsumer == null){
+            throw new IllegalArgumentException("A null consumer of matched virtual "
+                    + "machines used for virtual machine search operation.");
         }
         
-        if(isSearchOrderValid(searchOrder)){
-            List<SearchCriterionType> tempSearchOrder = removeNullAndDuplicitValues(searchOrder);
-            searchOrder = completeSearchOrder(tempSearchOrder);
-        }else{
-            searchOrder = getDefaultSearchOrder();
-        }        
-        List<SearchCriterionType> finalSearchOrder = filterSearchOrder(searchOrder,searchCriteria);
+        List<SearchCriterionType> finalSearchOrder = getFinalSearchOrder(searchOrder, searchCriteria);
+        Set<SearchCriterionType> attributes = EnumSet.noneOf(SearchCriterionType.class);
+        attributes.addAll(finalSearchOrder);
+        CompiledSearchCriteria compiledCriteria = CompiledSearchCriteria.compile(searchCriteria,
+                                                                                 finalSearchOrder, maxDeviation);
+        
+        List<PhysicalMachine> physicalMachines = new ArrayList<>(connectionManager.getConnectedPhysicalMachines());
+        List<CompletableFuture<List<VirtualMachine>>> hostSearches = new ArrayList<>(physicalMachines.size());
+        ThreadPoolExecutor searchExecutor = null;
+        if(!physicalMachines.isEmpty()){
+            searchExecutor = createSearchExecutor(physicalMachines.size());
+        }
+        //the consumer is called by one thread at a time
+        MatchDelivery matchDelivery = new MatchDelivery(matchConsumer);
+        try{
+            for(PhysicalMachine physicalMachine : physicalMachines){
+                hostSearches.add(searchHost(physicalMachine, attributes, hostTimeout, mode,
+                                            compiledCriteria, matchDelivery, searchExecutor));
+            }
+        }finally{
+            //the threads end as soon as all the host searches are finished
+            if(searchExecutor != null){
+                searchExecutor.shutdown();
+            }
+        }
+        
+        return CompletableFuture.allOf(hostSearches.toArray(new CompletableFuture<?>[hostSearches.size()]))
+                .handle((ignored, ex) -> {
+                    List<VirtualMachine> matchedVMs = new ArrayList<>();
+                    List<OperationResult<PhysicalMachine, Void>> failures = new ArrayList<>();
+                    for(int i = 0; i < physicalMachines.size(); ++i){
+                        CompletableFuture<List<VirtualMachine>> hostSearch = hostSearches.get(i);
+                        if(hostSearch.isCompletedExceptionally()){
+                            failures.add(OperationResult.<PhysicalMachine, Void>failure(
+                                    physicalMachines.get(i), getHostSearchFailure(hostSearch)));
+                        }else{
+                            matchedVMs.addAll(hostSearch.join());
+                        }
+                    }
+                    return new SearchResult(matchedVMs, failures);
+                });
+    }
+    
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.SearchManager#findAnywhere(UUID)
+     * SearchManager::findAnywhere(UUID)}.
+     * </div>
+     * <div>
+     * If the virtual machine is known from the previous operations and its
+     * physical machine is still connected, then it is returned without any call
+     * of VirtualBox web server. Otherwise the virtual machine is searched on
+     * the connected physical machines one by one, the physical machines which
+     * do not respond to the heartbeats or which cannot be accessed are skipped.
+     * If there occurs any error, then there can be thrown the following exception:
+     * <ul>
+     * <li><strong>IllegalArgumentException - </strong>thrown when the given
+     * id is <code>null</code>
+     * </ul>
+     * </div>
+     * @param id represents the id of the searched virtual machine
+     * @return found virtual machine, <code>null</code> if it was not found
+     */
+    @Override
+    public VirtualMachine findAnywhere(UUID id) {
+        if(id == null){
+            throw new IllegalArgumentException("A null id of virtual machine "
+                    + "used for virtual machine search operation by id.");
+        }
         
-        return findAllSuitableVMs(virtualMachines,mode,finalSearchOrder,searchCriteria);
+        return findAnywhere(VMDirectory.getInstance().get(id), id.toString());
+    }
+    
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.SearchManager#findAnywhere(String)
+     * SearchManager::findAnywhere(String)}.
+     * </div>
+     * <div>
+     * This method is implemented the same as the method {@link #findAnywhere(UUID)}.
+     * If there occurs any error, then there can be thrown the following exception:
+     * <ul>
+     * <li><strong>IllegalArgumentException - </strong>thrown when the given
+     * name is <code>null</code> or empty
+     * </ul>
+     * </div>
+     * @param name represents the name of the searched virtual machine
+     * @return found virtual machine, <code>null</code> if it was not found
+     */
+    @Override
+    public VirtualMachine findAnywhere(String name) {
+        if(name == null || name.trim().isEmpty()){
+            throw new IllegalArgumentException("A null or empty name of virtual "
+                    + "machine used for virtual machine search operation by name.");
+        }
+        
+        return findAnywhere(VMDirectory.getInstance().get(name), name);
     }
     
     public void setMaxDeviation(int deviation){
@@ -223,28 +436,208 @@ public class SearchManagerImpl implements SearchManager{
         }
     }
     
-    private List<VirtualMachine> getAllAvailableVMs(){        
-        List<VirtualMachine> virtualMachines = new ArrayList<>();
+    private void validateHostTimeout(long hostTimeout){
+        if(hostTimeout < 0){
+            throw new IllegalArgumentException("A negative time for which is "
+                    + "waited for physical machine used for virtual machine "
+                    + "search operation.");
+        }
+    }
+    
+    private List<SearchCriterionType> getFinalSearchOrder(List<SearchCriterionType> searchOrder,
+                                                          SearchCriteria searchCriteria){
+        if(isSearchOrderValid(searchOrder)){
+            List<SearchCriterionType> tempSearchOrder = removeNullAndDuplicitValues(searchOrder);
+            searchOrder = completeSearchOrder(tempSearchOrder);
+        }else{
+            searchOrder = getDefaultSearchOrder();
+        }
+        return filterSearchOrder(searchOrder,searchCriteria);
+    }
+    
+    private CompletableFuture<List<VirtualMachine>> searchHost(PhysicalMachine physicalMachine,
+            Set<SearchCriterionType> attributes, long hostTimeout, SearchMode mode,
+            CompiledSearchCriteria compiledCriteria, MatchDelivery matchDelivery,
+            Executor searchExecutor){
+        CompletableFuture<List<VirtualMachine>> hostSearch = new CompletableFuture<>();
+        retrieveCatalog(physicalMachine, attributes, hostTimeout, searchExecutor)
+                .whenComplete((catalog, ex) -> {
+                    if(ex != null){
+                        hostSearch.completeExceptionally(ex);
+                        return;
+                    }
+                    try{
+                        matchDelivery.deliver(catalog.filter(compiledCriteria, mode), hostSearch);
+                    }catch(RuntimeException | Error filterEx){
+                        hostSearch.completeExceptionally(filterEx);
+                    }
+                });
+        return hostSearch;
+    }
+    
+    /**
+     * Retrieves the catalog of physical machine by the search executor. The time
+     * for physical machine elapses only since its retrieve is started, so
+     * the physical machine waiting for a free thread cannot time out. Either
+     * the retrieved catalog or the timeout completes the returned future.
+     */
+    private CompletableFuture<VMCatalog> retrieveCatalog(PhysicalMachine physicalMachine,
+            Set<SearchCriterionType> attributes, long hostTimeout, Executor searchExecutor){
+        CompletableFuture<VMCatalog> retrieve = new CompletableFuture<>();
+        //the physical machine which does not respond to the heartbeats is not queried
+        if(HostHealthMonitor.getInstance().isDown(physicalMachine)){
+            retrieve.completeExceptionally(new ConnectionFailureException("Physical machine "
+                    + physicalMachine + " does not respond to the heartbeats."));
+            return retrieve;
+        }
+        
+        //either the retrieved catalog or the timeout completes the retrieve,
+        //the loser of the state transition does nothing
+        AtomicInteger state = new AtomicInteger(HOST_SEARCHING);
+        searchExecutor.execute(() -> {
+            //the time for physical machine elapses only when its retrieve is running
+            ScheduledFuture<?> timeout = null;
+            if(hostTimeout > 0){
+                timeout = SharedExecutors.getScheduler().schedule(() -> {
+                    if(state.compareAndSet(HOST_SEARCHING, HOST_TIMED_OUT)){
+                        retrieve.completeExceptionally(new OperationTimeoutException("The search "
+                                + "of " + physicalMachine + " was not finished before the deadline."));
+                    }
+                }, hostTimeout, TimeUnit.MILLISECONDS);
+            }
+            try{
+                VMCatalog catalog = getCatalog(physicalMachine, attributes);
+                if(state.compareAndSet(HOST_SEARCHING, HOST_RETRIEVED)){
+                    retrieve.complete(catalog);
+                }
+            }catch(RuntimeException ex){
+                if(state.compareAndSet(HOST_SEARCHING, HOST_RETRIEVED)){
+                    retrieve.completeExceptionally(ex);
+                }
+            }catch(Error ex){
+                //the search must not wait for the physical machine forever
+                retrieve.completeExceptionally(ex);
+                throw ex;
+            }finally{
+                if(timeout != null){
+                    timeout.cancel(false);
+                }
+            }
+        });
+        
+        return retrieve;
+    }
+    
+    /**
+     * Creates the threads dedicated to one search, they do not take the threads
+     * of the shared worker pool, so the search never waits behind the heartbeats
+     * and the other remote calls. There are created at most 16 threads, they end
+     * as soon as the executor is shut down and all the retrieves are finished.
+     */
+    private static ThreadPoolExecutor createSearchExecutor(int numOfPhysicalMachines){
+        int numOfThreads = Math.min(MAX_PARALLEL_HOSTS, numOfPhysicalMachines);
+        return new ThreadPoolExecutor(numOfThreads, numOfThreads,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                SharedExecutors.daemonThreadFactory("virtualtoolmanager-search-"));
+    }
+    
+    private RuntimeException getHostSearchFailure(CompletableFuture<?> hostSearch){
+        try{
+            hostSearch.join();
+        }catch(CompletionException ex){
+            if(ex.getCause() instanceof RuntimeException){
+                return (RuntimeException) ex.getCause();
+            }
+            return ex;
+        }catch(RuntimeException ex){
+            return ex;
+        }
+        return new IllegalStateException("The search of physical machine was not failed.");
+    }
+    
+    private List<VMCatalog> getAllAvailableCatalogs(Set<SearchCriterionType> attributes,
+                                                    long hostTimeout,
+                                                    List<OperationResult<PhysicalMachine, Void>> failures){
+        List<VMCatalog> catalogs = new ArrayList<>();
         ConnectionManager connectionManager = new ConnectionManagerImpl();
-        int index = 0;
-        int numOfPMs = connectionManager.getConnectedPhysicalMachines().size();
+        List<PhysicalMachine> physicalMachines = new ArrayList<>(connectionManager.getConnectedPhysicalMachines());
+        List<CompletableFuture<VMCatalog>> retrieves = new ArrayList<>(physicalMachines.size());
+        if(physicalMachines.isEmpty()){
+            return catalogs;
+        }
         
-        do{
-            PhysicalMachine physicalMachine = connectionManager.getConnectedPhysicalMachines().get(index);
-            VirtualizationToolManager virtualizationToolManager = new VirtualizationToolManagerImpl(physicalMachine);
-            List<VirtualMachine> tempVMs = virtualizationToolManager.getVirtualMachines();
-            if(!tempVMs.isEmpty()){
-                virtualMachines.addAll(tempVMs);
+        //more physical machines are queried at once, so the search does not wait
+        //for the sum of their response times, the time for each physical machine
+        //elapses only since its retrieve is started
+        ThreadPoolExecutor searchExecutor = createSearchExecutor(physicalMachines.size());
+        try{
+            for(PhysicalMachine physicalMachine : physicalMachines){
+                retrieves.add(retrieveCatalog(physicalMachine, attributes, hostTimeout, searchExecutor));
             }
-            if(numOfPMs == connectionManager.getConnectedPhysicalMachines().size()){
-                ++index;                
+        }finally{
+            searchExecutor.shutdown();
+        }
+        CompletableFuture.allOf(retrieves.toArray(new CompletableFuture<?>[retrieves.size()]))
+                .handle((ignored, ex) -> null).join();
+        
+        //the catalogs are filtered together, because the tolerant search mode
+        //depends on the virtual machines of all physical machines
+        for(int i = 0; i < physicalMachines.size(); ++i){
+            CompletableFuture<VMCatalog> retrieve = retrieves.get(i);
+            if(retrieve.isCompletedExceptionally()){
+                failures.add(OperationResult.<PhysicalMachine, Void>failure(physicalMachines.get(i),
+                                                                         getHostSearchFailure(retrieve)));
             }else{
-                numOfPMs = connectionManager.getConnectedPhysicalMachines().size();
+                catalogs.add(retrieve.join());
             }
-        }while(index < numOfPMs);
+        }
+        
+        return catalogs;
+    }
+    
+    /**
+     * Gets the catalog of virtual machines of the physical machine, the catalog
+     * of the cached inventory is shared by all searches. The retrieved virtual
+     * machines are cached, so the next search uses their catalog, there is
+     * built a new one only when they could not be cached. Such catalog indexes
+     * just the searched attributes, because it is never searched again.
+     */
+    private static VMCatalog getCatalog(PhysicalMachine physicalMachine,
+                                        Set<SearchCriterionType> attributes){
+        VMInventoryCache inventoryCache = VMInventoryCache.getInstance();
+        VMCatalog catalog = inventoryCache.getCatalog(physicalMachine, attributes);
+        if(catalog != null){
+            return catalog;
+        }
+        VirtualizationToolManager virtualizationToolManager = new VirtualizationToolManagerImpl(physicalMachine);
+        List<VirtualMachine> virtualMachines = virtualizationToolManager.getVirtualMachines(attributes);
+        catalog = inventoryCache.getCatalog(physicalMachine, attributes);
+        return (catalog != null ? catalog : VMCatalog.of(virtualMachines));
+    }
+    
+    private VirtualMachine findAnywhere(VirtualMachine knownVM, String nameOrId){
+        ConnectionManager connectionManager = new ConnectionManagerImpl();
+        if(knownVM != null && connectionManager.isConnected(knownVM.getHostMachine())){
+            return knownVM;
+        }
         
+        for(PhysicalMachine physicalMachine : connectionManager.getConnectedPhysicalMachines()){
+            if(HostHealthMonitor.getInstance().isDown(physicalMachine)){
+                continue;
+            }
+            VirtualizationToolManager virtualizationToolManager = new VirtualizationToolManagerImpl(physicalMachine);
+            try{
+                //the found virtual machine is added to the directory
+                VirtualMachine virtualMachine = virtualizationToolManager.findVirtualMachineByName(nameOrId);
+                if(virtualMachine != null){
+                    return virtualMachine;
+                }
+            }catch(ConnectionFailureException ex){
+                //the physical machine has been disconnected, the others are searched
+            }
+        }
         
-        return virtualMachines;
+        return null;
     }
     
     private boolean isSearchOrderValid(List<SearchCriterionType> searchOrder){
@@ -356,132 +749,49 @@ public class SearchManagerImpl implements SearchManager{
         return searchOrder;
     }
     
-    private List<VirtualMachine> findAllSuitableVMs(List<VirtualMachine> virtualMachines, SearchMode mode,
-                                                    List<SearchCriterionType> searchOrder,
-                                                    SearchCriteria searchCriteria){
-        List<VirtualMachine> matchedVMs = virtualMachines;
-        boolean someMatchedVM = false;
+    /**
+     * Class that gives the matched virtual machines of physical machines
+     * to the consumer of asynchronous search. The matches are queued and
+     * the thread which finds the queue empty consumes them until the queue
+     * is empty again, so the consumer is called by one thread at a time
+     * without holding any lock and the other threads never wait for it.
+     */
+    private static final class MatchDelivery {
+        /** consumer of the matched virtual machines */
+        private final Consumer<VirtualMachine> matchConsumer;
+        /** matches of physical machines which wait for the consumer */
+        private final Queue<Runnable> deliveries = new ConcurrentLinkedQueue<>();
+        /** number of queued deliveries including the one being consumed */
+        private final AtomicInteger pendingDeliveries = new AtomicInteger();
         
-        for(SearchCriterionType scType : searchOrder){
-            List<VirtualMachine> tempMatchedVMs = new ArrayList<>();
-            for(VirtualMachine virtualMachine : virtualMachines){                
-                switch(scType){
-                    case ID:{
-                        if(virtualMachine.getId().equals(searchCriteria.getVmId())){
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    case NAME:{
-                        if(virtualMachine.getName().equals(searchCriteria.getVmName())){
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    case OS_TYPE:{
-                        if(virtualMachine.getTypeOfOS().equals(searchCriteria.getTypeOfOS())){
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    case OS_IDENTIFIER:{
-                        if(virtualMachine.getIdentifierOfOS().equals(searchCriteria.getIdentifierOfOS())){
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    case CPU_COUNT:{
-                        if(virtualMachine.getCountOfCPU() == searchCriteria.getCountOfCPU()){
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    case CPU_EXEC_CAP:{
-                        if(virtualMachine.getCPUExecutionCap() == searchCriteria.getCpuExecutionCap()){
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    case HDD_FREE_SPACE:{
-                        BigDecimal tempNum = new BigDecimal(String.valueOf((searchCriteria.getHardDiskFreeSpaceSize()/(double)100)*maxDeviation));
-                        long dev = tempNum.setScale(0, RoundingMode.HALF_UP).longValue();
-                        if(virtualMachine.getHardDiskFreeSpaceSize() >= searchCriteria.getHardDiskFreeSpaceSize() &&
-                                virtualMachine.getHardDiskFreeSpaceSize() <= (searchCriteria.getHardDiskFreeSpaceSize() + dev)){
-
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    case HDD_TOTAL_SIZE:{
-                        BigDecimal tempNum = new BigDecimal(String.valueOf((searchCriteria.getHardDiskTotalSize()/(double)100)*maxDeviation));
-                        long dev = tempNum.setScale(0, RoundingMode.HALF_UP).longValue();
-                        if(virtualMachine.getHardDiskTotalSize() >= searchCriteria.getHardDiskTotalSize() &&
-                                virtualMachine.getHardDiskTotalSize() <= (searchCriteria.getHardDiskTotalSize() + dev)){
-
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    case RAM:{
-                        BigDecimal tempNum = new BigDecimal(String.valueOf((searchCriteria.getSizeOfRAM()/(double)100)*maxDeviation));
-                        long dev = tempNum.setScale(0, RoundingMode.HALF_UP).longValue();
-                        if(virtualMachine.getSizeOfRAM() >= searchCriteria.getSizeOfRAM() && 
-                                virtualMachine.getSizeOfRAM() <= (searchCriteria.getSizeOfRAM() + dev)){
-
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    case VRAM:{
-                        BigDecimal tempNum = new BigDecimal(String.valueOf((searchCriteria.getSizeOfVRAM()/(double)100)*maxDeviation));
-                        long dev = tempNum.setScale(0, RoundingMode.HALF_UP).longValue();
-                        if(virtualMachine.getSizeOfVRAM() >= searchCriteria.getSizeOfVRAM() &&
-                                virtualMachine.getSizeOfVRAM() <= (searchCriteria.getSizeOfVRAM() + dev)){
-
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    case MONITOR_COUNT:{
-                        if(virtualMachine.getCountOfMonitors() == searchCriteria.getCountOfMonitors()){
-                            tempMatchedVMs.add(virtualMachine);
-                        }
-                        break;
-                    }
-
-                    default: return new ArrayList<>();
-                }
-            }
-            if(tempMatchedVMs.isEmpty()){
-                if(mode == SearchMode.ABSOLUTE_EQUALITY){
-                    return new ArrayList<>();
-                }
-            }else{                
-                List<VirtualMachine> backupMatchedVMs = matchedVMs;
-                matchedVMs.retainAll(tempMatchedVMs);
-                if(matchedVMs.isEmpty()){
-                    if(mode == SearchMode.ABSOLUTE_EQUALITY){
-                        return matchedVMs;//empty array of VMs
-                    }else{
-                        matchedVMs = backupMatchedVMs;
+        MatchDelivery(Consumer<VirtualMachine> matchConsumer){
+            this.matchConsumer = matchConsumer;
+        }
+        
+        /**
+         * Gives the matches to the consumer and then completes the host search
+         * with them, the host search is completed exceptionally when
+         * the consumer fails.
+         */
+        void deliver(List<VirtualMachine> matchedVMs, CompletableFuture<List<VirtualMachine>> hostSearch){
+            deliveries.add(() -> {
+                try{
+                    for(VirtualMachine virtualMachine : matchedVMs){
+                        matchConsumer.accept(virtualMachine);
                     }
+                    hostSearch.complete(matchedVMs);
+                }catch(RuntimeException | Error ex){
+                    //the failure of consumer does not stop the other deliveries
+                    hostSearch.completeExceptionally(ex);
                 }
-                if(!someMatchedVM){
-                    someMatchedVM = true;
-                }
+            });
+            if(pendingDeliveries.getAndIncrement() != 0){
+                //the thread which consumes the other matches consumes these as well
+                return;
             }
+            do{
+                deliveries.poll().run();
+            }while(pendingDeliveries.decrementAndGet() != 0);
         }
-        
-        return (someMatchedVM ? matchedVMs : new ArrayList<>());
     }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <div>
+ * Class that holds the executors shared by all managers of this API.
+ * <p>
+ * There are four executors:
+ * <ul>
+ * <li>scheduler - it is used just to trigger delayed or periodic tasks
+ * (e.g. the following connection establishment attempt), the triggered task
+ * must not block the scheduler, it should hand over the blocking work
+ * to the worker pool
+ * <li>worker pool - bounded pool of threads which perform the blocking
+ * remote calls of VirtualBox API
+ * <li>operation pool - bounded pool of threads which perform the long lasting
+ * asynchronous operations with virtual machines (e.g. cloning or the background
+ * refresh of the inventory loaded from the snapshot), so these
+ * operations never delay the short calls (e.g. heartbeats) of the worker pool
+ * <li>conversion pool - bounded pool of threads which help to convert
+ * the retrieved virtual machines, the conversions of all physical machines
+ * share it, so there are not created any threads for each retrieve
+ * </ul>
+ * All threads are daemon threads, so they never prevent the application from
+ * exiting. The executors are created lazily when they are used for the first time.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+final class SharedExecutors {
+    /** number of threads of the worker pool */
+    private static final int WORKER_POOL_SIZE = Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+
+    private SharedExecutors(){ }
+
+    /**
+     * Gets the shared scheduler.
+     * @return scheduler used for triggering delayed and periodic tasks
+     */
+    static ScheduledExecutorService getScheduler(){
+        return SchedulerHolder.SCHEDULER;
+    }
+
+    /**
+     * Gets the shared worker pool.
+     * @return bounded pool of threads for blocking remote calls
+     */
+    static ExecutorService getWorkerPool(){
+        return WorkerPoolHolder.WORKER_POOL;
+    }
+
+    /**
+     * Gets the shared pool for asynchronous operations with virtual machines.
+     * @return bounded pool of threads for long lasting operations
+     */
+    static ExecutorService getOperationPool(){
+        return OperationPoolHolder.OPERATION_POOL;
+    }
+
+    /**
+     * Gets the shared pool for conversions of virtual machines.
+     * @return bounded pool of threads for conversions of virtual machines
+     */
+    static ExecutorService getConversionPool(){
+        return ConversionPoolHolder.CONVERSION_POOL;
+    }
+
+    /**
+     * Creates the thread factory which creates the daemon threads with
+     * the required name prefix.
+     * @param namePrefix prefix of names of newly created threads
+     * @return new thread factory
+     */
+    static ThreadFactory daemonThreadFactory(final String namePrefix){
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        return new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable runnable){
+                Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /** Lazily initialized holder of the scheduler */
+    private static class SchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+        private static ScheduledExecutorService createScheduler(){
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                    daemonThreadFactory("virtualtoolmanager-scheduler-"));
+            //cancelled tasks (e.g. stopped heartbeats) are not held until their delay elapses
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    /** Lazily initialized holder of the worker pool */
+    private static class WorkerPoolHolder {
+        private static final ExecutorService WORKER_POOL = createWorkerPool();
+
+        private static ExecutorService createWorkerPool(){
+            ThreadPoolExecutor workerPool = new ThreadPoolExecutor(WORKER_POOL_SIZE, WORKER_POOL_SIZE,
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    daemonThreadFactory("virtualtoolmanager-worker-"));
+            //idle threads are not held forever
+            workerPool.allowCoreThreadTimeOut(true);
+            return workerPool;
+        }
+    }
+
+    /** Lazily initialized holder of the operation pool */
+    private static class OperationPoolHolder {
+        private static final ExecutorService OPERATION_POOL = createOperationPool();
+
+        private static ExecutorService createOperationPool(){
+            ThreadPoolExecutor operationPool = new ThreadPoolExecutor(WORKER_POOL_SIZE, WORKER_POOL_SIZE,
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    daemonThreadFactory("virtualtoolmanager-operation-"));
+            //idle threads are not held forever
+            operationPool.allowCoreThreadTimeOut(true);
+            return operationPool;
+        }
+    }
+
+    /** Lazily initialized holder of the conversion pool */
+    private static class ConversionPoolHolder {
+        private static final ExecutorService CONVERSION_POOL = createConversionPool();
+
+        private static ExecutorService createConversionPool(){
+            ThreadPoolExecutor conversionPool = new ThreadPoolExecutor(WORKER_POOL_SIZE, WORKER_POOL_SIZE,
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    daemonThreadFactory("virtualtoolmanager-vm-conversion-"));
+            //idle threads are not held forever
+            conversionPool.allowCoreThreadTimeOut(true);
+            return conversionPool;
+        }
+    }
+}
@@ -0,0 +1,627 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.virtualbox_4_3.SessionState;
+import org.virtualbox_4_3.VBoxException;
+import org.virtualbox_4_3.VirtualBoxManager;
+
+/**
+ * <div>
+ * Class that is used to hold already logged on sessions with VirtualBox web
+ * servers of the connected physical machines, so that there is not necessary
+ * to perform the complete logon (createInstance() + connect()) and logoff
+ * (disconnect() + cleanup()) handshake for each virtual machine operation.
+ * <p>
+ * The sessions are held per physical machine. A session is borrowed by the method
+ * {@link #acquire(cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine) acquire()}
+ * and after the operation is finished it must be given back by the method
+ * {@link #release(cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine, org.virtualbox_4_3.VirtualBoxManager)
+ * release()}. The pool ensures the following:
+ * <ul>
+ * <li>the most recently returned session is borrowed first (it is the most
+ * probably still valid one)
+ * <li>for each physical machine there is held at most the maximum number
+ * of idle sessions, the redundant sessions are logged off
+ * <li>for each physical machine there are logged on at most the maximum number
+ * of sessions (borrowed and idle ones together), the thread which needs a new
+ * session when there are already too many of them waits until any session
+ * of the physical machine is given back or logged off, but at most the session
+ * wait timeout
+ * <li>idle sessions which were not used longer than the idle timeout are
+ * logged off (the eviction is performed lazily when the pool is used, so there
+ * is no background thread needed)
+ * <li>a returned session is validated (its session object must not hold
+ * any virtual machine locked) and a session which was idle for a longer time is
+ * validated before it is borrowed again, invalid sessions are logged off
+ * </ul>
+ * There is just one pool, so the sessions logged on by one manager can be
+ * borrowed by any other manager of the same physical machine. The idle sessions
+ * and the settings are guarded by the lock of the pool, but the remote calls
+ * (logon, logoff, validation) are never performed while holding it, so one
+ * slow web server does not delay borrowing the sessions of other physical machines.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+class VBoxSessionPool {
+    /** The only instance of this class */
+    private static final VBoxSessionPool INSTANCE = new VBoxSessionPool();
+    /** default maximum number of idle sessions held for one physical machine */
+    static final int DEFAULT_MAX_IDLE_SESSIONS = 4;
+    /** default time (in milliseconds) after which an idle session is logged off */
+    static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+    /** default time (in milliseconds) of idleness after which a session is validated before borrowing */
+    static final long DEFAULT_VALIDATION_INTERVAL = 10000L;
+    /** default maximum number of sessions (borrowed and idle) of one physical machine */
+    static final int DEFAULT_MAX_SESSIONS = 16;
+    /** default time (in milliseconds) for which is waited for a session when there are too many of them */
+    static final long DEFAULT_SESSION_WAIT_TIMEOUT = 30000L;
+
+    /** idle sessions for each physical machine, the most recently returned one is the first */
+    private final Map<PhysicalMachine, Deque<PooledSession>> idleSessions = new HashMap<>();
+    /** numbers of logged on sessions (borrowed and idle) of physical machines */
+    private final Map<PhysicalMachine, Integer> sessionsCounts = new HashMap<>();
+    /** physical machines of the logged on sessions, used when the session is logged off */
+    private final Map<VirtualBoxManager, PhysicalMachine> sessionOwners = new IdentityHashMap<>();
+    /** maximum number of idle sessions held for one physical machine */
+    private int maxIdleSessions = DEFAULT_MAX_IDLE_SESSIONS;
+    /** maximum number of sessions (borrowed and idle) of one physical machine */
+    private int maxSessions = DEFAULT_MAX_SESSIONS;
+    /** time (in milliseconds) for which is waited for a session when there are too many of them */
+    private long sessionWaitTimeout = DEFAULT_SESSION_WAIT_TIMEOUT;
+    /** time (in milliseconds) after which an idle session is logged off */
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    /** time (in milliseconds) of idleness after which a session is validated before borrowing */
+    private long validationInterval = DEFAULT_VALIDATION_INTERVAL;
+
+    /**
+     * This method represents so called static builder factory, which is used to
+     * get the instance of this class.
+     * @return object of type of this class
+     */
+    public static VBoxSessionPool getInstance(){
+        return INSTANCE;
+    }
+
+    private VBoxSessionPool(){ }
+
+    /**
+     * This method borrows a logged on session with the VirtualBox web server
+     * of the given physical machine. If there is any valid idle session held
+     * for the physical machine, then it is used, otherwise there is established
+     * a new one. When there are already logged on the maximum number of sessions
+     * of the physical machine, then it is waited until any of them is given back
+     * or logged off.
+     * If there occurs any error it can throw the following exceptions:
+     *  • IllegalArgumentException - when the given physical machine is null
+     *  • VBoxException - when there cannot be established a new session with
+     * the physical machine, when there is no session available before the session
+     * wait timeout elapses or when the physical machine is considered to be
+     * down by the {@link cz.muni.fi.virtualtoolmanager.logicimpl.HostHealthMonitor
+     * health monitor} or its {@link cz.muni.fi.virtualtoolmanager.logicimpl.HostCircuitBreaker
+     * circuit} is open (the caller is responsible for its conversion to
+     * the appropriate API exception)
+     * @param physicalMachine represents the physical machine whose session
+     * is required
+     * @return logged on native VirtualBox manager, which must be given back
+     * by the method release() after the operation is finished
+     */
+    public VirtualBoxManager acquire(PhysicalMachine physicalMachine){
+        if(physicalMachine == null){
+            throw new IllegalArgumentException("There was made an attempt to "
+                    + "acquire a session with a null physical machine.");
+        }
+        //there is no need to wait for the connection timeout with the host
+        //which did not respond to the last heartbeats
+        if(HostHealthMonitor.getInstance().isDown(physicalMachine)
+                || HostCircuitBreaker.getInstance().isRejecting(physicalMachine)){
+            throw new VBoxException("The physical machine " + physicalMachine
+                    + " is not responding.");
+        }
+
+        return acquireIgnoringHealth(physicalMachine);
+    }
+
+    /**
+     * This method borrows a logged on session with the VirtualBox web server
+     * of the given physical machine regardless of its health state. It is used
+     * by the health monitor heartbeats, which must get through to the physical
+     * machine which is considered to be down.
+     * If there occurs any error it can throw the following exceptions:
+     *  • VBoxException - when there cannot be established a new session with
+     * the physical machine or when there is no session available before
+     * the session wait timeout elapses
+     * @param physicalMachine represents the physical machine whose session
+     * is required
+     * @return logged on native VirtualBox manager, which must be given back
+     * by the method release() after the operation is finished
+     */
+    VirtualBoxManager acquireIgnoringHealth(PhysicalMachine physicalMachine){
+        long deadline = System.currentTimeMillis() + getSessionWaitTimeout();
+        while(true){
+            PooledSession pooledSession;
+            while((pooledSession = pollIdleSession(physicalMachine)) != null){
+                //session which was not used for a longer time could have been
+                //already invalidated on the server side (web server session timeout)
+                if(System.currentTimeMillis() - pooledSession.lastUsed < validationInterval
+                        || isAlive(pooledSession.virtualBoxManager)){
+                    return pooledSession.virtualBoxManager;
+                }
+                close(pooledSession.virtualBoxManager);
+            }
+            //the session given back while waiting is borrowed instead of the new one
+            if(reserveSession(physicalMachine, deadline, true)){
+                return logOn(physicalMachine);
+            }
+        }
+    }
+
+    /**
+     * This method establishes a brand new session with the VirtualBox web server
+     * of the given physical machine regardless the idle sessions. It is used
+     * when the connection itself is being tested. The returned session can be
+     * given back to the pool by the method release() as any other borrowed session.
+     * When there are already logged on the maximum number of sessions of
+     * the physical machine, then the least recently used idle session is logged
+     * off, or it is waited until any borrowed session is given back or logged off.
+     * If there occurs any error it can throw the following exceptions:
+     *  • VBoxException - when there cannot be established the session with
+     * the physical machine, when there is no session available before
+     * the session wait timeout elapses or when the logon attempt is rejected
+     * by the circuit breaker of the physical machine
+     * @param physicalMachine represents the physical machine with which should
+     * be a new session established
+     * @return logged on native VirtualBox manager
+     */
+    public VirtualBoxManager open(PhysicalMachine physicalMachine){
+        reserveSession(physicalMachine, System.currentTimeMillis() + getSessionWaitTimeout(), false);
+        return logOn(physicalMachine);
+    }
+
+    /**
+     * Logs on a new session with the physical machine whose place among
+     * the sessions of the physical machine has already been reserved.
+     * The place is freed when the logon fails.
+     */
+    private VirtualBoxManager logOn(PhysicalMachine physicalMachine){
+        HostCircuitBreaker circuitBreaker = HostCircuitBreaker.getInstance();
+        try{
+            //fails immediately if the physical machine has not responded lately
+            circuitBreaker.acquirePermission(physicalMachine);
+        }catch(RuntimeException ex){
+            freeSession(physicalMachine);
+            throw ex;
+        }
+
+        VirtualBoxManager virtualBoxManager = null;
+        boolean connected = false;
+        try{
+            virtualBoxManager = VirtualBoxManager.createInstance(null);
+            virtualBoxManager.connect(getURL(physicalMachine), physicalMachine.getUsername(),
+                                      physicalMachine.getUserPassword());
+            connected = true;
+        }finally{
+            //any failure (even an error) must end the probe, otherwise the circuit
+            //would stay half open and reject all the following attempts forever
+            if(!connected){
+                circuitBreaker.recordFailure(physicalMachine);
+                freeSession(physicalMachine);
+                //ends the connection (if successful) and cleans up after itself
+                if(virtualBoxManager != null){
+                    logOff(virtualBoxManager);
+                }
+            }
+        }
+
+        synchronized(this){
+            sessionOwners.put(virtualBoxManager, physicalMachine);
+        }
+        circuitBreaker.recordSuccess(physicalMachine);
+        return virtualBoxManager;
+    }
+
+    /**
+     * This method gives the borrowed session back to the pool. The session is
+     * validated first - if it is not usable anymore (the connection was broken
+     * or its session object holds a virtual machine locked), or if there are
+     * already held enough idle sessions for the physical machine, or if
+     * the physical machine is not connected anymore, then the session is
+     * logged off instead.
+     * @param physicalMachine represents the physical machine the session belongs to
+     * @param virtualBoxManager the borrowed session
+     */
+    public void release(PhysicalMachine physicalMachine, VirtualBoxManager virtualBoxManager){
+        if(virtualBoxManager == null){
+            return;
+        }
+        if(physicalMachine == null || !isReusable(virtualBoxManager)
+                || !ConnectedPhysicalMachines.getInstance().isConnected(physicalMachine)){
+            close(virtualBoxManager);
+            return;
+        }
+
+        List<VirtualBoxManager> redundant = new ArrayList<>();
+        synchronized(this){
+            Deque<PooledSession> sessions = idleSessions.get(physicalMachine);
+            if(sessions == null){
+                sessions = new ArrayDeque<>();
+                idleSessions.put(physicalMachine, sessions);
+            }
+            sessions.addFirst(new PooledSession(virtualBoxManager, System.currentTimeMillis()));
+            while(sessions.size() > maxIdleSessions){
+                redundant.add(sessions.removeLast().virtualBoxManager);
+            }
+            //the thread waiting for a session can borrow this one
+            notifyAll();
+        }
+
+        for(VirtualBoxManager vbm : redundant){
+            close(vbm);
+        }
+    }
+
+    /**
+     * This method logs off the borrowed session without giving it back to the pool.
+     * It should be used when the session is known to be broken.
+     * @param virtualBoxManager the borrowed session which should be discarded
+     */
+    public void invalidate(VirtualBoxManager virtualBoxManager){
+        if(virtualBoxManager != null){
+            close(virtualBoxManager);
+        }
+    }
+
+    /**
+     * This method logs off all idle sessions of the given physical machine.
+     * It is typically called as a part of physical machine disconnection operation.
+     * @param physicalMachine represents the physical machine whose sessions
+     * should be logged off
+     */
+    public void closeSessions(PhysicalMachine physicalMachine){
+        Deque<PooledSession> sessions;
+        synchronized(this){
+            sessions = idleSessions.remove(physicalMachine);
+        }
+
+        if(sessions != null){
+            for(PooledSession pooledSession : sessions){
+                close(pooledSession.virtualBoxManager);
+            }
+        }
+    }
+
+    /**
+     * This method logs off all idle sessions of all physical machines.
+     * The borrowed sessions are not counted to the maximum number of sessions
+     * anymore.
+     */
+    public void clear(){
+        List<PhysicalMachine> physicalMachines;
+        synchronized(this){
+            physicalMachines = new ArrayList<>(idleSessions.keySet());
+        }
+
+        for(PhysicalMachine physicalMachine : physicalMachines){
+            closeSessions(physicalMachine);
+        }
+        synchronized(this){
+            sessionsCounts.clear();
+            sessionOwners.clear();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Gets the number of idle sessions held for the given physical machine.
+     * @param physicalMachine represents the queried physical machine
+     * @return number of idle sessions
+     */
+    public synchronized int getIdleSessionsCount(PhysicalMachine physicalMachine){
+        Deque<PooledSession> sessions = idleSessions.get(physicalMachine);
+        return (sessions == null ? 0 : sessions.size());
+    }
+
+    /**
+     * Sets the maximum number of idle sessions held for one physical machine.
+     * @param maxIdleSessions maximum number of idle sessions, value 0 disables
+     * pooling at all
+     */
+    public synchronized void setMaxIdleSessions(int maxIdleSessions){
+        if(maxIdleSessions < 0){
+            throw new IllegalArgumentException("The maximum number of idle "
+                    + "sessions must be a non-negative number.");
+        }
+        this.maxIdleSessions = maxIdleSessions;
+    }
+
+    /**
+     * Sets the maximum number of sessions (borrowed and idle) of one physical
+     * machine.
+     * @param maxSessions maximum number of sessions, must be positive
+     */
+    public synchronized void setMaxSessions(int maxSessions){
+        if(maxSessions < 1){
+            throw new IllegalArgumentException("The maximum number of sessions "
+                    + "must be a positive number.");
+        }
+        this.maxSessions = maxSessions;
+        //the waiting threads can fit in the higher maximum
+        notifyAll();
+    }
+
+    /**
+     * Sets the time for which is waited for a session of the physical machine
+     * which has already logged on the maximum number of sessions.
+     * @param sessionWaitTimeout session wait timeout in milliseconds, 0 means
+     * there is not waited at all
+     */
+    public synchronized void setSessionWaitTimeout(long sessionWaitTimeout){
+        if(sessionWaitTimeout < 0){
+            throw new IllegalArgumentException("The session wait timeout must be "
+                    + "a non-negative number.");
+        }
+        this.sessionWaitTimeout = sessionWaitTimeout;
+    }
+
+    /**
+     * Sets the time after which an idle session is logged off. It should be
+     * shorter than the session timeout of the VirtualBox web server.
+     * @param idleTimeout idle timeout in milliseconds
+     */
+    public synchronized void setIdleTimeout(long idleTimeout){
+        if(idleTimeout < 0){
+            throw new IllegalArgumentException("The idle timeout must be "
+                    + "a non-negative number.");
+        }
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Sets the time of idleness after which a session is validated before it
+     * is borrowed again.
+     * @param validationInterval validation interval in milliseconds
+     */
+    public synchronized void setValidationInterval(long validationInterval){
+        if(validationInterval < 0){
+            throw new IllegalArgumentException("The validation interval must be "
+                    + "a non-negative number.");
+        }
+        this.validationInterval = validationInterval;
+    }
+
+    private synchronized long getSessionWaitTimeout(){
+        return sessionWaitTimeout;
+    }
+
+    /**
+     * Reserves the place for a new session of the physical machine. When there
+     * are already logged on the maximum number of sessions, then it is waited
+     * until any of them is given back or logged off.
+     * @param physicalMachine represents the physical machine whose session
+     * will be logged on
+     * @param deadline time in milliseconds after which it is not waited anymore
+     * @param idleSessionIsEnough true if the idle session can be borrowed
+     * instead of the new one, false if the least recently used idle session
+     * should be logged off to make place for the new one
+     * @return true if the place was reserved, false if there is an idle session
+     * which can be borrowed
+     */
+    private boolean reserveSession(PhysicalMachine physicalMachine, long deadline,
+            boolean idleSessionIsEnough){
+        VirtualBoxManager evicted = null;
+        synchronized(this){
+            while(getSessionsCount(physicalMachine) >= maxSessions){
+                Deque<PooledSession> sessions = idleSessions.get(physicalMachine);
+                if(sessions != null && !sessions.isEmpty()){
+                    if(idleSessionIsEnough){
+                        return false;
+                    }
+                    //the idle session gives its place to the new one
+                    evicted = sessions.removeLast().virtualBoxManager;
+                    if(sessions.isEmpty()){
+                        idleSessions.remove(physicalMachine);
+                    }
+                    sessionOwners.remove(evicted);
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0){
+                    throw new VBoxException("There are already logged on " + maxSessions
+                            + " sessions with the physical machine " + physicalMachine + ".");
+                }
+                try{
+                    wait(remaining);
+                }catch(InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                    throw new VBoxException("The waiting for a session with the physical "
+                            + "machine " + physicalMachine + " was interrupted.");
+                }
+            }
+            if(evicted == null){
+                sessionsCounts.put(physicalMachine, getSessionsCount(physicalMachine) + 1);
+            }
+        }
+
+        if(evicted != null){
+            logOff(evicted);
+        }
+        return true;
+    }
+
+    /**
+     * Frees the place of the session of the physical machine which was logged
+     * off or whose logon failed, so the waiting thread can take it.
+     */
+    private synchronized void freeSession(PhysicalMachine physicalMachine){
+        int count = getSessionsCount(physicalMachine);
+        if(count <= 1){
+            sessionsCounts.remove(physicalMachine);
+        }else{
+            sessionsCounts.put(physicalMachine, count - 1);
+        }
+        notifyAll();
+    }
+
+    private int getSessionsCount(PhysicalMachine physicalMachine){
+        Integer count = sessionsCounts.get(physicalMachine);
+        return (count == null ? 0 : count);
+    }
+
+    /**
+     * Removes the most recently returned idle session of the physical machine
+     * from the pool. Sessions which exceeded the idle timeout are logged off.
+     * @param physicalMachine represents the physical machine whose idle session
+     * is required
+     * @return idle session or null if there is not any
+     */
+    private PooledSession pollIdleSession(PhysicalMachine physicalMachine){
+        List<VirtualBoxManager> expired = new ArrayList<>();
+        PooledSession pooledSession = null;
+        synchronized(this){
+            Deque<PooledSession> sessions = idleSessions.get(physicalMachine);
+            if(sessions != null){
+                long now = System.currentTimeMillis();
+                //the oldest sessions are at the end of deque
+                Iterator<PooledSession> it = sessions.descendingIterator();
+                while(it.hasNext()){
+                    PooledSession ps = it.next();
+                    if(now - ps.lastUsed < idleTimeout){
+                        break;
+                    }
+                    it.remove();
+                    expired.add(ps.virtualBoxManager);
+                }
+                pooledSession = sessions.pollFirst();
+                if(sessions.isEmpty()){
+                    idleSessions.remove(physicalMachine);
+                }
+            }
+        }
+
+        for(VirtualBoxManager vbm : expired){
+            close(vbm);
+        }
+
+        return pooledSession;
+    }
+
+    /**
+     * Checks the session can be given back to the pool - it is still logged on
+     * and its session object does not hold any virtual machine locked.
+     * @param virtualBoxManager checked session
+     * @return true if the session can be reused, false otherwise
+     */
+    private boolean isReusable(VirtualBoxManager virtualBoxManager){
+        try{
+            return virtualBoxManager.getSessionObject().getState() == SessionState.Unlocked;
+        }catch(RuntimeException ex){
+            return false;
+        }
+    }
+
+    /**
+     * Checks the idle session is still logged on the VirtualBox web server.
+     * @param virtualBoxManager checked session
+     * @return true if the session is still usable, false otherwise
+     */
+    private boolean isAlive(VirtualBoxManager virtualBoxManager){
+        try{
+            return virtualBoxManager.getVBox().getAPIVersion() != null;
+        }catch(RuntimeException ex){
+            return false;
+        }
+    }
+
+    /**
+     * Logs off the session and frees its place among the sessions of its
+     * physical machine.
+     * @param virtualBoxManager session which should be logged off
+     */
+    private void close(VirtualBoxManager virtualBoxManager){
+        PhysicalMachine physicalMachine;
+        synchronized(this){
+            physicalMachine = sessionOwners.remove(virtualBoxManager);
+        }
+        if(physicalMachine != null){
+            freeSession(physicalMachine);
+        }
+        logOff(virtualBoxManager);
+    }
+
+    /**
+     * Logs off the session and cleans up after it. Any error is ignored, because
+     * the session is not going to be used anymore.
+     * @param virtualBoxManager session which should be logged off
+     */
+    private void logOff(VirtualBoxManager virtualBoxManager){
+        try{
+            virtualBoxManager.disconnect();
+        }catch(RuntimeException ex){
+            //session has already been broken, there is nothing to log off
+        }
+        try{
+            virtualBoxManager.cleanup();
+        }catch(RuntimeException ex){
+            //nothing to clean up
+        }
+    }
+
+    /**
+     * This method creates the correct form of url from the given IP address
+     * and the port number of the VirtualBox web server. Thanks this method
+     * it is possible to connect to the physical machine and its VirtualBox
+     * web server with IPv4 or IPv6.
+     *
+     * @param physicalMachine represents the physical machine whose IP address
+     * and port number of VirtualBox web server will be used for new url creation
+     * @return newly created url defining the physical machine
+     */
+    private String getURL(PhysicalMachine physicalMachine){
+        if(physicalMachine.getAddressIP().contains(".")){
+            return "http://" + physicalMachine.getAddressIP() + ":"
+                    + physicalMachine.getPortOfVTWebServer();
+        }
+
+        return "http://[" + physicalMachine.getAddressIP() + "]:"
+                + physicalMachine.getPortOfVTWebServer();
+    }
+
+    /**
+     * Class that represents one idle session held in the pool together with
+     * the time of its last use.
+     */
+    private static class PooledSession {
+        /** logged on native VirtualBox manager */
+        private final VirtualBoxManager virtualBoxManager;
+        /** time (in milliseconds) when the session was given back to the pool */
+        private final long lastUsed;
+
+        PooledSession(VirtualBoxManager virtualBoxManager, long lastUsed){
+            this.virtualBoxManager = virtualBoxManager;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
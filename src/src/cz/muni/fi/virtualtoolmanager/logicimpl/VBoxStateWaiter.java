@@ -0,0 +1,284 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import org.virtualbox_4_3.IEvent;
+import org.virtualbox_4_3.IEventListener;
+import org.virtualbox_4_3.IEventSource;
+import org.virtualbox_4_3.IMachine;
+import org.virtualbox_4_3.IProgress;
+import org.virtualbox_4_3.ISession;
+import org.virtualbox_4_3.MachineState;
+import org.virtualbox_4_3.SessionState;
+import org.virtualbox_4_3.VBoxEventType;
+import org.virtualbox_4_3.VBoxException;
+import org.virtualbox_4_3.VirtualBoxManager;
+
+/**
+ * <div>
+ * Class that is used to wait until the virtual machine, the session or
+ * the progress of some VirtualBox operation reaches the required state.
+ * <p>
+ * Each query of the state is a remote call of VirtualBox web server, so
+ * the state is not queried repeatedly without any pause. Instead of that:
+ * <ul>
+ * <li>the waiting for the state of virtual machine or session is driven by
+ * the VirtualBox events (OnMachineStateChanged, OnSessionStateChanged) -
+ * the state is queried again only when there comes a relevant event (or after
+ * the event waiting time elapses, so that no change can be missed)
+ * <li>if the events are not available, then the state is queried with
+ * the pauses which are prolonged after each query (exponential backoff)
+ * <li>the waiting for the progress of operation uses the blocking method
+ * IProgress::waitForCompletion() of VirtualBox itself
+ * </ul>
+ * The asynchronous operations do not hold any thread while they are waiting.
+ * Their state is queried by the worker pool and the following query is
+ * triggered by the shared scheduler after the pause, which is prolonged after
+ * each query as well.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+final class VBoxStateWaiter {
+    /** time (in milliseconds) for which the web server holds the request for a new event */
+    private static final int EVENT_WAIT_TIMEOUT = 1000;
+    /** the first pause (in milliseconds) between two state queries when events are not available */
+    private static final long INITIAL_POLL_INTERVAL = 10L;
+    /** the longest pause (in milliseconds) between two state queries when events are not available */
+    private static final long MAX_POLL_INTERVAL = 1000L;
+    /** the first time (in milliseconds) for which is waited for the progress completion */
+    private static final int INITIAL_PROGRESS_WAIT = 200;
+    /** the longest time (in milliseconds) for which is waited for the progress completion */
+    private static final int MAX_PROGRESS_WAIT = 2000;
+
+    private VBoxStateWaiter(){ }
+
+    /**
+     * This method waits until the virtual machine reaches the required state.
+     * @param virtualBoxManager session with the VirtualBox web server of
+     * the physical machine on which the virtual machine is located
+     * @param vboxMachine the native virtual machine
+     * @param state the required state of the virtual machine
+     */
+    static void waitForMachineState(VirtualBoxManager virtualBoxManager,
+            final IMachine vboxMachine, final MachineState state){
+        waitUntil(virtualBoxManager, () -> vboxMachine.getState() == state,
+                  VBoxEventType.OnMachineStateChanged);
+    }
+
+    /**
+     * This method waits until the session does not hold any virtual machine locked.
+     * @param virtualBoxManager session with the VirtualBox web server whose
+     * session object is being unlocked
+     * @param session the session object which is being unlocked
+     */
+    static void waitForSessionUnlocked(VirtualBoxManager virtualBoxManager, final ISession session){
+        waitUntil(virtualBoxManager, () -> session.getState() == SessionState.Unlocked,
+                  VBoxEventType.OnSessionStateChanged);
+    }
+
+    /**
+     * This method waits until the progress of VirtualBox operation is completed.
+     * @param progress the progress of VirtualBox operation
+     */
+    static void waitForCompletion(IProgress progress){
+        int timeout = INITIAL_PROGRESS_WAIT;
+        while(!progress.getCompleted()){
+            //the web server holds the request until the operation is completed
+            //or the timeout elapses, so longer timeout does not delay the return
+            progress.waitForCompletion(timeout);
+            timeout = Math.min(2 * timeout, MAX_PROGRESS_WAIT);
+        }
+    }
+
+    /**
+     * This method waits until the progress of VirtualBox operation is completed
+     * and reports the percentage of completion regularly.
+     * @param progress the progress of VirtualBox operation
+     * @param reportInterval time in milliseconds between two reports
+     * @param percentListener listener which gets the percentage of completion
+     */
+    static void waitForCompletion(IProgress progress, int reportInterval,
+            LongConsumer percentListener){
+        while(!progress.getCompleted()){
+            progress.waitForCompletion(reportInterval);
+            percentListener.accept(progress.getPercent());
+        }
+    }
+
+    /**
+     * This method waits asynchronously until the virtual machine reaches
+     * the required state.
+     * @param vboxMachine the native virtual machine
+     * @param state the required state of the virtual machine
+     * @return future which is completed when the virtual machine reaches
+     * the required state or completed exceptionally with the exception
+     * of the state query
+     */
+    static CompletableFuture<Void> whenMachineState(final IMachine vboxMachine, final MachineState state){
+        return pollAsync(() -> vboxMachine.getState() == state,
+                         INITIAL_POLL_INTERVAL, MAX_POLL_INTERVAL, null);
+    }
+
+    /**
+     * This method waits asynchronously until the session does not hold any
+     * virtual machine locked.
+     * @param session the session object which is being unlocked
+     * @return future which is completed when the session is unlocked or
+     * completed exceptionally with the exception of the state query
+     */
+    static CompletableFuture<Void> whenSessionUnlocked(final ISession session){
+        return pollAsync(() -> session.getState() == SessionState.Unlocked,
+                         INITIAL_POLL_INTERVAL, MAX_POLL_INTERVAL, null);
+    }
+
+    /**
+     * This method waits asynchronously until the progress of VirtualBox
+     * operation is completed.
+     * @param progress the progress of VirtualBox operation
+     * @return future which is completed when the operation is completed or
+     * completed exceptionally with the exception of the progress query
+     */
+    static CompletableFuture<Void> whenCompleted(final IProgress progress){
+        return pollAsync(progress::getCompleted, INITIAL_PROGRESS_WAIT, MAX_PROGRESS_WAIT, null);
+    }
+
+    /**
+     * This method waits asynchronously until the progress of VirtualBox
+     * operation is completed and reports the percentage of completion regularly.
+     * @param progress the progress of VirtualBox operation
+     * @param reportInterval time in milliseconds between two reports
+     * @param percentListener listener which gets the percentage of completion
+     * @return future which is completed when the operation is completed or
+     * completed exceptionally with the exception of the progress query
+     */
+    static CompletableFuture<Void> whenCompleted(final IProgress progress, long reportInterval,
+            final LongConsumer percentListener){
+        return pollAsync(progress::getCompleted, reportInterval, reportInterval,
+                         () -> percentListener.accept(progress.getPercent()));
+    }
+
+    /**
+     * This method checks the condition by the worker pool until it is met,
+     * the following check is triggered by the scheduler after the pause which
+     * is doubled after each check until it reaches its maximum.
+     * @param onPending action performed after each check which is not met,
+     * it can be <code>null</code>
+     */
+    private static CompletableFuture<Void> pollAsync(BooleanSupplier condition, long pollInterval,
+            long maxPollInterval, Runnable onPending){
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        SharedExecutors.getWorkerPool().execute(() ->
+                checkAsync(condition, pollInterval, maxPollInterval, onPending, result));
+        return result;
+    }
+
+    private static void checkAsync(BooleanSupplier condition, long pollInterval,
+            long maxPollInterval, Runnable onPending, CompletableFuture<Void> result){
+        try{
+            if(condition.getAsBoolean()){
+                result.complete(null);
+                return;
+            }
+            if(onPending != null){
+                onPending.run();
+            }
+        }catch(RuntimeException ex){
+            result.completeExceptionally(ex);
+            return;
+        }
+
+        //the scheduler just hands the following check over to the worker pool
+        long nextPollInterval = Math.min(2 * pollInterval, maxPollInterval);
+        SharedExecutors.getScheduler().schedule(() -> SharedExecutors.getWorkerPool().execute(() ->
+                checkAsync(condition, nextPollInterval, maxPollInterval, onPending, result)),
+                pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method waits until the condition is met, the condition is checked
+     * again after each event of the given type or after the pause.
+     */
+    private static void waitUntil(VirtualBoxManager virtualBoxManager,
+            BooleanSupplier condition, VBoxEventType eventType){
+        if(condition.getAsBoolean()){
+            return;
+        }
+
+        IEventSource eventSource = null;
+        IEventListener listener = null;
+        try{
+            eventSource = virtualBoxManager.getVBox().getEventSource();
+            listener = eventSource.createListener();
+            //passive listener - the events are fetched by this thread
+            eventSource.registerListener(listener, Arrays.asList(eventType), false);
+        }catch(RuntimeException ex){
+            //events are not available (e.g. older web server), the state is queried
+            //with the prolonged pauses
+            unregisterQuietly(eventSource, listener);
+            listener = null;
+        }
+
+        if(listener == null){
+            pollUntil(condition);
+            return;
+        }
+
+        try{
+            do{
+                IEvent event = eventSource.getEvent(listener, EVENT_WAIT_TIMEOUT);
+                if(event != null){
+                    eventSource.eventProcessed(listener, event);
+                }
+            }while(!condition.getAsBoolean());
+        }finally{
+            unregisterQuietly(eventSource, listener);
+        }
+    }
+
+    /**
+     * This method checks the condition repeatedly, the pause between two checks
+     * is doubled after each check until it reaches its maximum.
+     */
+    private static void pollUntil(BooleanSupplier condition){
+        long pollInterval = INITIAL_POLL_INTERVAL;
+        do{
+            try{
+                Thread.sleep(pollInterval);
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                throw new VBoxException("Waiting for the state change was interrupted.");
+            }
+            pollInterval = Math.min(2 * pollInterval, MAX_POLL_INTERVAL);
+        }while(!condition.getAsBoolean());
+    }
+
+    private static void unregisterQuietly(IEventSource eventSource, IEventListener listener){
+        if(eventSource == null || listener == null){
+            return;
+        }
+        try{
+            eventSource.unregisterListener(listener);
+        }catch(RuntimeException ex){
+            //the listener is released by the web server after its timeout anyway
+        }
+    }
+}
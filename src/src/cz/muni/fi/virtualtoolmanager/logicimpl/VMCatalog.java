@@ -0,0 +1,353 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * <div>
+ * Class that holds the virtual machines of one physical machine in the columnar
+ * form, so they can be searched without touching each virtual machine object.
+ * <p>
+ * Each numeric attribute of virtual machines is held in its own array of
+ * primitive values together with the sorted index, which is the array of
+ * positions ordered by the values. The range of values is found in the index
+ * by the binary search, so the criterion is evaluated in O(log n + k) time,
+ * where k is the number of matched virtual machines. The id, the name and
+ * the type and the identifier of OS are indexed by the hash index of their
+ * distinct values. The missing attribute (which was not retrieved) never
+ * matches any criterion.
+ * <p>
+ * The column or the index of attribute is built when the attribute is searched
+ * for the first time, so the catalog which is searched just once (e.g. for
+ * the inventory which is not cached) does not index the attributes which are
+ * not in the search criteria.
+ * <p>
+ * Each criterion is evaluated into the set of positions of matched virtual
+ * machines, the sets of the following criteria are intersected in the search
+ * order. The criterion which is not matched by any of the remaining virtual
+ * machines ends the search in the mode
+ * {@link cz.muni.fi.virtualtoolmanager.pubapi.types.SearchMode#ABSOLUTE_EQUALITY
+ * ABSOLUTE_EQUALITY} without any result and it is ignored in the mode
+ * {@link cz.muni.fi.virtualtoolmanager.pubapi.types.SearchMode#TOLERANT TOLERANT}.
+ * <p>
+ * The catalog is immutable (only its columns and indexes are built lazily),
+ * so it can be searched by more threads at once.
+ * The removal of virtual machine creates the new catalog which shares
+ * the columns and the indexes with the original one, only the removed
+ * position is excluded from all the searches.
+ * <p>
+ * The removal is the only change which is applied to the existing catalog.
+ * The other changes of virtual machines (e.g. the registration or the changed
+ * settings) are not reported with the new values of attributes, so they always
+ * lead to the new retrieve of all virtual machines of the physical machine
+ * and to the new catalog, whose columns and indexes are built again when they
+ * are searched.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+final class VMCatalog {
+    /** value of the missing numeric attribute, the searched values are never negative */
+    private static final long MISSING_VALUE = Long.MIN_VALUE;
+    /** numeric attributes of virtual machines by their types */
+    private static final Map<SearchCriterionType, Function<VirtualMachine, Long>> NUMERIC_ATTRIBUTES =
+            new EnumMap<>(SearchCriterionType.class);
+    /** id and string attributes of virtual machines by their types */
+    private static final Map<SearchCriterionType, Function<VirtualMachine, Object>> HASHED_ATTRIBUTES =
+            new EnumMap<>(SearchCriterionType.class);
+
+    static {
+        NUMERIC_ATTRIBUTES.put(SearchCriterionType.CPU_COUNT, VirtualMachine::getCountOfCPU);
+        NUMERIC_ATTRIBUTES.put(SearchCriterionType.MONITOR_COUNT, VirtualMachine::getCountOfMonitors);
+        NUMERIC_ATTRIBUTES.put(SearchCriterionType.CPU_EXEC_CAP, VirtualMachine::getCPUExecutionCap);
+        NUMERIC_ATTRIBUTES.put(SearchCriterionType.RAM, VirtualMachine::getSizeOfRAM);
+        NUMERIC_ATTRIBUTES.put(SearchCriterionType.VRAM, VirtualMachine::getSizeOfVRAM);
+        NUMERIC_ATTRIBUTES.put(SearchCriterionType.HDD_FREE_SPACE, VirtualMachine::getHardDiskFreeSpaceSize);
+        NUMERIC_ATTRIBUTES.put(SearchCriterionType.HDD_TOTAL_SIZE, VirtualMachine::getHardDiskTotalSize);
+        HASHED_ATTRIBUTES.put(SearchCriterionType.ID, VirtualMachine::getId);
+        HASHED_ATTRIBUTES.put(SearchCriterionType.NAME, VirtualMachine::getName);
+        HASHED_ATTRIBUTES.put(SearchCriterionType.OS_TYPE, VirtualMachine::getTypeOfOS);
+        HASHED_ATTRIBUTES.put(SearchCriterionType.OS_IDENTIFIER, VirtualMachine::getIdentifierOfOS);
+    }
+
+    /** virtual machines in the order of positions, including the removed ones */
+    private final List<VirtualMachine> virtualMachines;
+    /** numeric attributes of virtual machines which have been searched */
+    private final ConcurrentMap<SearchCriterionType, NumericColumn> numericColumns;
+    /** hash indexes of the id and the string attributes which have been searched */
+    private final ConcurrentMap<SearchCriterionType, HashIndex> hashIndexes;
+    /** positions of virtual machines which have not been removed */
+    private final BitSet present;
+
+    private VMCatalog(List<VirtualMachine> virtualMachines){
+        this.virtualMachines = Collections.unmodifiableList(new ArrayList<>(virtualMachines));
+        this.numericColumns = new ConcurrentHashMap<>();
+        this.hashIndexes = new ConcurrentHashMap<>();
+        this.present = new BitSet(this.virtualMachines.size());
+        this.present.set(0, this.virtualMachines.size());
+    }
+
+    private VMCatalog(VMCatalog catalog, BitSet present){
+        this.virtualMachines = catalog.virtualMachines;
+        this.numericColumns = catalog.numericColumns;
+        this.hashIndexes = catalog.hashIndexes;
+        this.present = present;
+    }
+
+    /**
+     * Creates the catalog of the virtual machines.
+     * @param virtualMachines virtual machines of one physical machine
+     * @return new catalog
+     */
+    static VMCatalog of(List<VirtualMachine> virtualMachines){
+        return new VMCatalog(virtualMachines);
+    }
+
+    /**
+     * Gets the column of the numeric attribute, the column is built when it is
+     * required for the first time and then shared by all the searches.
+     */
+    private NumericColumn getNumericColumn(SearchCriterionType type){
+        return numericColumns.computeIfAbsent(type, key -> {
+            Function<VirtualMachine, Long> attribute = NUMERIC_ATTRIBUTES.get(key);
+            long[] values = new long[virtualMachines.size()];
+            for(int i = 0; i < values.length; ++i){
+                Long value = attribute.apply(virtualMachines.get(i));
+                values[i] = (value == null ? MISSING_VALUE : value);
+            }
+            return new NumericColumn(values);
+        });
+    }
+
+    /**
+     * Gets the hash index of the attribute, the index is built when it is
+     * required for the first time and then shared by all the searches.
+     */
+    private HashIndex getHashIndex(SearchCriterionType type){
+        return hashIndexes.computeIfAbsent(type, key -> {
+            Function<VirtualMachine, Object> attribute = HASHED_ATTRIBUTES.get(key);
+            Map<Object, BitSet> positions = new HashMap<>();
+            for(int i = 0; i < virtualMachines.size(); ++i){
+                Object value = attribute.apply(virtualMachines.get(i));
+                if(value != null){
+                    positions.computeIfAbsent(value, v -> new BitSet()).set(i);
+                }
+            }
+            return new HashIndex(positions);
+        });
+    }
+
+    /**
+     * Creates the catalog without the virtual machine. The columns and
+     * the indexes are not rebuilt, they are shared with this catalog, including
+     * those which are built later.
+     * @param id represents the id of removed virtual machine
+     * @return new catalog without the virtual machine, this catalog if it
+     * does not contain the virtual machine
+     */
+    VMCatalog without(UUID id){
+        BitSet removed = getHashIndex(SearchCriterionType.ID).positions.get(id);
+        if(removed == null || !removed.intersects(present)){
+            return this;
+        }
+        BitSet newPresent = (BitSet) present.clone();
+        newPresent.andNot(removed);
+        return new VMCatalog(this, newPresent);
+    }
+
+    /**
+     * Gets the number of virtual machines.
+     * @return number of virtual machines
+     */
+    int size(){
+        return present.cardinality();
+    }
+
+    /**
+     * Gets all virtual machines.
+     * @return new list of virtual machines in the order of positions
+     */
+    List<VirtualMachine> getVirtualMachines(){
+        List<VirtualMachine> presentVMs = new ArrayList<>(present.cardinality());
+        for(int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)){
+            presentVMs.add(virtualMachines.get(i));
+        }
+        return presentVMs;
+    }
+
+    /**
+     * Evaluates the criterion for all virtual machines.
+     * @param criterion compiled search criterion
+     * @return new set of positions of the matched virtual machines
+     */
+    BitSet select(CompiledSearchCriteria.Criterion criterion){
+        BitSet matches;
+        if(criterion.isNumeric()){
+            matches = getNumericColumn(criterion.getType()).select(criterion.getLowerBound(),
+                                                                     criterion.getUpperBound());
+        }else{
+            BitSet positions = getHashIndex(criterion.getType()).positions.get(criterion.getValue());
+            matches = (positions == null ? new BitSet() : (BitSet) positions.clone());
+        }
+        matches.and(present);
+        return matches;
+    }
+
+    /**
+     * Searches the virtual machines of this catalog.
+     * @param compiledCriteria compiled search criteria
+     * @param mode mode of the search
+     * @return new list of the matched virtual machines
+     */
+    List<VirtualMachine> filter(CompiledSearchCriteria compiledCriteria, SearchMode mode){
+        return filter(Collections.singletonList(this), compiledCriteria, mode);
+    }
+
+    /**
+     * Searches the virtual machines of all the catalogs as if they were one
+     * catalog, so the criterion is ignored in the tolerant mode only when it
+     * is not matched by the virtual machines of any catalog.
+     * @param catalogs catalogs of physical machines
+     * @param compiledCriteria compiled search criteria
+     * @param mode mode of the search
+     * @return new list of the matched virtual machines in the order of catalogs
+     */
+    static List<VirtualMachine> filter(List<VMCatalog> catalogs, CompiledSearchCriteria compiledCriteria,
+            SearchMode mode){
+        BitSet[] candidates = new BitSet[catalogs.size()];
+        for(int i = 0; i < candidates.length; ++i){
+            candidates[i] = (BitSet) catalogs.get(i).present.clone();
+        }
+        boolean someMatchedVM = false;
+
+        BitSet[] matches = new BitSet[candidates.length];
+        for(int c = 0; c < compiledCriteria.size(); ++c){
+            CompiledSearchCriteria.Criterion criterion = compiledCriteria.get(c);
+            boolean anyMatch = false;
+            for(int i = 0; i < candidates.length; ++i){
+                matches[i] = catalogs.get(i).select(criterion);
+                matches[i].and(candidates[i]);
+                anyMatch |= !matches[i].isEmpty();
+            }
+            if(!anyMatch){
+                if(mode == SearchMode.ABSOLUTE_EQUALITY){
+                    return new ArrayList<>();
+                }
+                //the criterion is ignored in the tolerant mode
+                continue;
+            }
+            //the matches become the candidates for the next criterion
+            BitSet[] tempCandidates = candidates;
+            candidates = matches;
+            matches = tempCandidates;
+            someMatchedVM = true;
+        }
+
+        List<VirtualMachine> matchedVMs = new ArrayList<>();
+        if(!someMatchedVM){
+            return matchedVMs;
+        }
+        for(int i = 0; i < candidates.length; ++i){
+            List<VirtualMachine> catalogVMs = catalogs.get(i).virtualMachines;
+            for(int j = candidates[i].nextSetBit(0); j >= 0; j = candidates[i].nextSetBit(j + 1)){
+                matchedVMs.add(catalogVMs.get(j));
+            }
+        }
+        return matchedVMs;
+    }
+
+    /**
+     * Class that represents the numeric attribute with its sorted index.
+     * The index is built only by the sort of primitive values, the positions
+     * of equal values stay in their original order.
+     */
+    private static final class NumericColumn {
+        /** values of virtual machines in the ascending order */
+        private final long[] sortedValues;
+        /** positions of virtual machines in the ascending order of values */
+        private final int[] sortedPositions;
+
+        NumericColumn(long[] values){
+            this.sortedValues = values.clone();
+            Arrays.sort(sortedValues);
+            //each position is placed behind the preceding positions of the same
+            //value, which start at the first index of that value
+            int[] placedPositions = new int[values.length];
+            this.sortedPositions = new int[values.length];
+            for(int i = 0; i < values.length; ++i){
+                int firstIndex = firstNotLess(values[i]);
+                sortedPositions[firstIndex + placedPositions[firstIndex]++] = i;
+            }
+        }
+
+        /**
+         * Finds the virtual machines whose values are within the range.
+         */
+        BitSet select(long lowerBound, long upperBound){
+            BitSet matches = new BitSet(sortedPositions.length);
+            for(int i = firstNotLess(lowerBound); i < sortedValues.length
+                    && sortedValues[i] <= upperBound; ++i){
+                matches.set(sortedPositions[i]);
+            }
+            return matches;
+        }
+
+        /**
+         * Gets the first index in the sorted values whose value is not less
+         * than the given value.
+         */
+        private int firstNotLess(long value){
+            int low = 0;
+            int high = sortedValues.length;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(sortedValues[middle] < value){
+                    low = middle + 1;
+                }else{
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Class that represents the hash index of attribute.
+     */
+    private static final class HashIndex {
+        /** positions of virtual machines by the distinct values */
+        private final Map<Object, BitSet> positions;
+
+        HashIndex(Map<Object, BitSet> positions){
+            this.positions = positions;
+        }
+    }
+}
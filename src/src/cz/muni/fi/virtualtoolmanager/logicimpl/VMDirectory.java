@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <div>
+ * Class that holds the directory of all known virtual machines of all connected
+ * physical machines, so it is possible to find out which physical machine owns
+ * the virtual machine with the given id or name without querying each physical
+ * machine.
+ * <p>
+ * The directory is filled by each retrieve of all virtual machines of physical
+ * machine (the virtual machines of physical machine are replaced), by each
+ * found or cloned virtual machine and it is cleaned when the virtual machine
+ * is removed or unregistered or when the physical machine is disconnected.
+ * The directory does not have to be complete, the virtual machine registered
+ * outside of this API is not known until it is retrieved.
+ * <p>
+ * There is just one directory, so the virtual machine retrieved by one
+ * manager can be found by any other manager. The lookups read the concurrent
+ * maps without any lock, so they never wait for the retrieve which is replacing
+ * the virtual machines of physical machine; the changes are serialized by
+ * the lock of the directory, so the maps are never left inconsistent.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+class VMDirectory {
+    /** The only instance of this class */
+    private static final VMDirectory INSTANCE = new VMDirectory();
+
+    /** known virtual machines, the keys are their ids */
+    private final Map<UUID, VirtualMachine> virtualMachinesById = new ConcurrentHashMap<>();
+    /** ids of known virtual machines, the keys are their names */
+    private final Map<String, Set<UUID>> idsByName = new ConcurrentHashMap<>();
+    /** ids of known virtual machines, the keys are their physical machines */
+    private final Map<PhysicalMachine, Set<UUID>> idsByPhysicalMachine = new ConcurrentHashMap<>();
+
+    /**
+     * This method represents so called static builder factory, which is used to
+     * get the instance of this class.
+     * @return object of type of this class
+     */
+    public static VMDirectory getInstance(){
+        return INSTANCE;
+    }
+
+    private VMDirectory(){ }
+
+    /**
+     * Gets the known virtual machine with the given id.
+     * @param id represents the id of the queried virtual machine
+     * @return known virtual machine, null if it is not known
+     */
+    public VirtualMachine get(UUID id){
+        return virtualMachinesById.get(id);
+    }
+
+    /**
+     * Gets the known virtual machine with the given name.
+     * @param name represents the name of the queried virtual machine
+     * @return known virtual machine, null if it is not known; if there are known
+     * more virtual machines with the same name, then any of them is returned
+     */
+    public VirtualMachine get(String name){
+        Set<UUID> ids = idsByName.get(name);
+        if(ids == null){
+            return null;
+        }
+        for(UUID id : ids){
+            VirtualMachine virtualMachine = virtualMachinesById.get(id);
+            if(virtualMachine != null){
+                return virtualMachine;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This method adds the virtual machine to the directory or replaces
+     * the known one with the same id.
+     * @param virtualMachine represents the added virtual machine
+     */
+    public synchronized void put(VirtualMachine virtualMachine){
+        VirtualMachine knownVM = virtualMachinesById.put(virtualMachine.getId(), virtualMachine);
+        if(knownVM != null){
+            removeFromIndexes(knownVM);
+        }
+        idsByName.computeIfAbsent(virtualMachine.getName(), name -> ConcurrentHashMap.newKeySet())
+                 .add(virtualMachine.getId());
+        idsByPhysicalMachine.computeIfAbsent(virtualMachine.getHostMachine(),
+                host -> ConcurrentHashMap.newKeySet()).add(virtualMachine.getId());
+    }
+
+    /**
+     * This method replaces all the known virtual machines of the physical
+     * machine by the newly retrieved ones.
+     * @param physicalMachine represents the physical machine whose virtual
+     * machines were retrieved
+     * @param virtualMachines all the virtual machines of the physical machine
+     */
+    public synchronized void putAll(PhysicalMachine physicalMachine,
+            Collection<VirtualMachine> virtualMachines){
+        Set<UUID> retrievedIds = new HashSet<>();
+        for(VirtualMachine virtualMachine : virtualMachines){
+            retrievedIds.add(virtualMachine.getId());
+            put(virtualMachine);
+        }
+
+        Set<UUID> knownIds = idsByPhysicalMachine.get(physicalMachine);
+        if(knownIds != null){
+            for(UUID id : new HashSet<>(knownIds)){
+                if(!retrievedIds.contains(id)){
+                    remove(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method removes the virtual machine from the directory.
+     * @param id represents the id of removed virtual machine
+     */
+    public synchronized void remove(UUID id){
+        VirtualMachine knownVM = virtualMachinesById.remove(id);
+        if(knownVM != null){
+            removeFromIndexes(knownVM);
+        }
+    }
+
+    /**
+     * This method removes all the virtual machines of the physical machine
+     * from the directory.
+     * @param physicalMachine represents the physical machine whose virtual
+     * machines should be forgotten
+     */
+    public synchronized void removeAll(PhysicalMachine physicalMachine){
+        Set<UUID> knownIds = idsByPhysicalMachine.get(physicalMachine);
+        if(knownIds == null){
+            return;
+        }
+        for(UUID id : new HashSet<>(knownIds)){
+            remove(id);
+        }
+    }
+
+    /**
+     * This method forgets all the known virtual machines.
+     */
+    public synchronized void clear(){
+        virtualMachinesById.clear();
+        idsByName.clear();
+        idsByPhysicalMachine.clear();
+    }
+
+    private void removeFromIndexes(VirtualMachine virtualMachine){
+        removeFromIndex(idsByName, virtualMachine.getName(), virtualMachine.getId());
+        removeFromIndex(idsByPhysicalMachine, virtualMachine.getHostMachine(), virtualMachine.getId());
+    }
+
+    private static <K> void removeFromIndex(Map<K, Set<UUID>> index, K key, UUID id){
+        Set<UUID> ids = index.get(key);
+        if(ids != null){
+            ids.remove(id);
+            if(ids.isEmpty()){
+                index.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * <div>
+ * Class that holds the lists of virtual machines (inventories) of physical
+ * machines, so the virtual machines of one physical machine do not have to be
+ * retrieved and converted from the VirtualBox web server again and again.
+ * <p>
+ * The inventory of physical machine is valid until its time to live elapses
+ * or until it is invalidated explicitly (after any operation which changes
+ * the set of registered virtual machines). Each invalidation also increases
+ * the generation of physical machine, so the inventory which was being
+ * retrieved while there was the invalidation is never stored (it could miss
+ * the change which caused the invalidation).
+ * <p>
+ * The inventory of physical machine which is watched by the
+ * {@link cz.muni.fi.virtualtoolmanager.logicimpl.VMInventoryWatcher inventory
+ * watcher} does not expire, because the watcher invalidates it as soon as
+ * VirtualBox reports any change of its virtual machines.
+ * <p>
+ * The inventory can hold the virtual machines with only some of their
+ * attributes (e.g. retrieved for the search). Such inventory is returned only
+ * to the queries which require no other attributes, and it never replaces
+ * the valid inventory with more attributes.
+ * <p>
+ * There is just one cache, so the inventory retrieved by one manager is
+ * used by all the managers and searches of the same physical machine. All its
+ * methods hold the lock of the cache only for the bookkeeping, the catalogs are
+ * built outside of it.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+class VMInventoryCache {
+    /** The only instance of this class */
+    private static final VMInventoryCache INSTANCE = new VMInventoryCache();
+    /** default time (in milliseconds) for which the inventory is valid */
+    static final long DEFAULT_TIME_TO_LIVE = 5000L;
+    /** attributes of the complete virtual machines */
+    private static final Set<SearchCriterionType> ALL_ATTRIBUTES =
+            Collections.unmodifiableSet(EnumSet.allOf(SearchCriterionType.class));
+
+    /** inventories of physical machines */
+    private final Map<PhysicalMachine, Inventory> inventories = new HashMap<>();
+    /** generations of physical machines, changed by each invalidation */
+    private final HostGenerations generations = new HostGenerations();
+    /** physical machines whose changes are reported by the inventory watcher */
+    private final Set<PhysicalMachine> watchedPhysicalMachines = new HashSet<>();
+    /** time (in milliseconds) for which the inventory is valid, 0 means no caching */
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    /**
+     * This method represents so called static builder factory, which is used to
+     * get the instance of this class.
+     * @return object of type of this class
+     */
+    public static VMInventoryCache getInstance(){
+        return INSTANCE;
+    }
+
+    private VMInventoryCache(){ }
+
+    /**
+     * Gets the valid inventory of the physical machine with all the attributes
+     * of virtual machines.
+     * @param physicalMachine represents the queried physical machine
+     * @return new list of the cached virtual machines, null if there is no
+     * valid inventory of the physical machine
+     */
+    public synchronized List<VirtualMachine> get(PhysicalMachine physicalMachine){
+        return get(physicalMachine, ALL_ATTRIBUTES);
+    }
+
+    /**
+     * Gets the valid inventory of the physical machine which holds at least
+     * the required attributes of virtual machines.
+     * @param physicalMachine represents the queried physical machine
+     * @param attributes required attributes of virtual machines
+     * @return new list of the cached virtual machines, null if there is no
+     * valid inventory of the physical machine with the required attributes
+     */
+    public synchronized List<VirtualMachine> get(PhysicalMachine physicalMachine,
+            Set<SearchCriterionType> attributes){
+        Inventory inventory = getValidInventory(physicalMachine);
+        if(inventory == null || !inventory.attributes.containsAll(attributes)){
+            return null;
+        }
+        return new ArrayList<>(inventory.virtualMachines);
+    }
+
+    /**
+     * Gets the columnar catalog of the valid inventory of the physical machine
+     * with all the attributes of virtual machines.
+     * @param physicalMachine represents the queried physical machine
+     * @return catalog of the cached virtual machines, null if there is no
+     * valid inventory of the physical machine
+     */
+    public VMCatalog getCatalog(PhysicalMachine physicalMachine){
+        return getCatalog(physicalMachine, ALL_ATTRIBUTES);
+    }
+
+    /**
+     * Gets the columnar catalog of the valid inventory of the physical machine
+     * which holds at least the required attributes of virtual machines.
+     * The catalog is built with the first query and then shared by all the
+     * searches until the inventory is replaced or invalidated. It is built
+     * without holding the lock of this cache, so the other queries do not wait
+     * for it, and it is kept only if the inventory has not been changed meanwhile.
+     * @param physicalMachine represents the queried physical machine
+     * @param attributes required attributes of virtual machines
+     * @return catalog of the cached virtual machines, null if there is no
+     * valid inventory of the physical machine with the required attributes
+     */
+    public VMCatalog getCatalog(PhysicalMachine physicalMachine,
+            Set<SearchCriterionType> attributes){
+        Inventory inventory;
+        long generation;
+        synchronized(this){
+            inventory = getValidInventory(physicalMachine);
+            if(inventory == null || !inventory.attributes.containsAll(attributes)){
+                return null;
+            }
+            if(inventory.catalog != null){
+                return inventory.catalog;
+            }
+            generation = generations.get(physicalMachine);
+        }
+
+        //the list of cached virtual machines is never modified, so it can be read without the lock
+        VMCatalog catalog = VMCatalog.of(inventory.virtualMachines);
+        synchronized(this){
+            if(inventory.catalog != null){
+                //the catalog was built by another query meanwhile
+                return inventory.catalog;
+            }
+            if(generation == generations.get(physicalMachine)
+                    && inventories.get(physicalMachine) == inventory){
+                inventory.catalog = catalog;
+            }
+            return catalog;
+        }
+    }
+
+    /**
+     * Gets the actual generation of the physical machine. It must be called
+     * before the inventory is retrieved and then given to the method
+     * {@link #put(PhysicalMachine, List, Set, long) put()}.
+     * @param physicalMachine represents the queried physical machine
+     * @return actual generation of the physical machine
+     */
+    public synchronized long getGeneration(PhysicalMachine physicalMachine){
+        return generations.get(physicalMachine);
+    }
+
+    /**
+     * This method stores the newly retrieved inventory of the physical machine
+     * with all the attributes of virtual machines, unless the physical machine
+     * has been invalidated since the retrieve started.
+     * @param physicalMachine represents the physical machine whose virtual
+     * machines were retrieved
+     * @param virtualMachines retrieved virtual machines
+     * @param generation generation of the physical machine got before
+     * the retrieve started
+     */
+    public synchronized void put(PhysicalMachine physicalMachine,
+            List<VirtualMachine> virtualMachines, long generation){
+        put(physicalMachine, virtualMachines, ALL_ATTRIBUTES, generation);
+    }
+
+    /**
+     * This method stores the newly retrieved inventory of the physical machine,
+     * unless the physical machine has been invalidated since the retrieve
+     * started or there is the valid inventory with more attributes.
+     * @param physicalMachine represents the physical machine whose virtual
+     * machines were retrieved
+     * @param virtualMachines retrieved virtual machines
+     * @param attributes attributes which were retrieved for virtual machines
+     * @param generation generation of the physical machine got before
+     * the retrieve started
+     */
+    public synchronized void put(PhysicalMachine physicalMachine,
+            List<VirtualMachine> virtualMachines, Set<SearchCriterionType> attributes,
+            long generation){
+        if(timeToLive == 0L || generation != getGeneration(physicalMachine)){
+            return;
+        }
+        Inventory inventory = getValidInventory(physicalMachine);
+        if(inventory != null && inventory.attributes.containsAll(attributes)
+                && !attributes.containsAll(inventory.attributes)){
+            //the projection does not replace the inventory with more attributes
+            return;
+        }
+        inventories.put(physicalMachine, new Inventory(new ArrayList<>(virtualMachines),
+                                                       copyOf(attributes),
+                                                       System.currentTimeMillis()));
+    }
+
+    /**
+     * This method forgets the inventory of the physical machine, so the next
+     * query retrieves the virtual machines from VirtualBox web server again.
+     * @param physicalMachine represents the physical machine whose set of
+     * virtual machines was changed or which was disconnected
+     */
+    public synchronized void invalidate(PhysicalMachine physicalMachine){
+        inventories.remove(physicalMachine);
+        generations.increase(physicalMachine);
+    }
+
+    /**
+     * This method forgets the inventory and the generation of the physical
+     * machine, so there is not held anything for the disconnected physical
+     * machine. The generations of all physical machines are changed, because
+     * the forgotten generation must not be given again.
+     * @param physicalMachine represents the disconnected physical machine
+     */
+    public synchronized void remove(PhysicalMachine physicalMachine){
+        inventories.remove(physicalMachine);
+        watchedPhysicalMachines.remove(physicalMachine);
+        generations.clear();
+    }
+
+    /**
+     * This method removes just one virtual machine from the inventory of
+     * the physical machine (e.g. when VirtualBox reports the virtual machine
+     * has been unregistered), the rest of inventory stays valid. The catalog
+     * of the inventory is updated without rebuilding its indexes.
+     * @param physicalMachine represents the physical machine from which was
+     * the virtual machine removed
+     * @param id represents the id of removed virtual machine
+     */
+    public synchronized void removeVirtualMachine(PhysicalMachine physicalMachine, UUID id){
+        Inventory inventory = inventories.get(physicalMachine);
+        //the inventory which is being retrieved could still contain the virtual machine
+        generations.increase(physicalMachine);
+        if(inventory == null){
+            return;
+        }
+
+        List<VirtualMachine> virtualMachines = new ArrayList<>(inventory.virtualMachines);
+        for(Iterator<VirtualMachine> it = virtualMachines.iterator(); it.hasNext(); ){
+            if(it.next().getId().equals(id)){
+                it.remove();
+            }
+        }
+        Inventory newInventory = new Inventory(virtualMachines, inventory.attributes,
+                                               inventory.loadedAt);
+        if(inventory.catalog != null){
+            //the indexes of catalog are kept, the virtual machine is just excluded from them
+            newInventory.catalog = inventory.catalog.without(id);
+        }
+        inventories.put(physicalMachine, newInventory);
+    }
+
+    /**
+     * This method sets whether the changes of virtual machines of the physical
+     * machine are reported by the inventory watcher.
+     * @param physicalMachine represents the physical machine
+     * @param watched true if the changes are reported, so the inventory of
+     * physical machine does not expire, false otherwise
+     */
+    public synchronized void setWatched(PhysicalMachine physicalMachine, boolean watched){
+        if(watched){
+            watchedPhysicalMachines.add(physicalMachine);
+        }else{
+            watchedPhysicalMachines.remove(physicalMachine);
+        }
+    }
+
+    /**
+     * This method forgets the inventories of all physical machines.
+     */
+    public synchronized void clear(){
+        inventories.clear();
+        watchedPhysicalMachines.clear();
+        generations.clear();
+    }
+
+    /**
+     * Sets the time for which the inventory is valid.
+     * @param timeToLive time in milliseconds, 0 means the inventories are not
+     * cached at all, must not be negative
+     */
+    public synchronized void setTimeToLive(long timeToLive){
+        if(timeToLive < 0){
+            throw new IllegalArgumentException("The time to live of virtual "
+                    + "machine inventory must be a non-negative number.");
+        }
+        this.timeToLive = timeToLive;
+        if(timeToLive == 0L){
+            clear();
+        }
+    }
+
+    /**
+     * Gets the inventory of the physical machine, the expired inventory is
+     * forgotten.
+     */
+    private Inventory getValidInventory(PhysicalMachine physicalMachine){
+        Inventory inventory = inventories.get(physicalMachine);
+        if(inventory == null){
+            return null;
+        }
+        if(!watchedPhysicalMachines.contains(physicalMachine)
+                && System.currentTimeMillis() - inventory.loadedAt >= timeToLive){
+            inventories.remove(physicalMachine);
+            return null;
+        }
+        return inventory;
+    }
+
+    private static Set<SearchCriterionType> copyOf(Set<SearchCriterionType> attributes){
+        return (attributes.isEmpty() ? EnumSet.noneOf(SearchCriterionType.class)
+                                     : EnumSet.copyOf(attributes));
+    }
+
+    /**
+     * Class that represents the cached inventory of one physical machine.
+     */
+    private static class Inventory {
+        /** cached virtual machines */
+        private final List<VirtualMachine> virtualMachines;
+        /** attributes which were retrieved for the cached virtual machines */
+        private final Set<SearchCriterionType> attributes;
+        /** time in milliseconds when the virtual machines were retrieved */
+        private final long loadedAt;
+        /** catalog of the cached virtual machines, built with the first search */
+        private VMCatalog catalog;
+
+        Inventory(List<VirtualMachine> virtualMachines, Set<SearchCriterionType> attributes,
+                long loadedAt){
+            this.virtualMachines = virtualMachines;
+            this.attributes = attributes;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * <div>
+ * Class that deduplicates the concurrent retrieves of virtual machines
+ * (inventories) of one physical machine.
+ * <p>
+ * The first thread which needs the inventory performs the retrieve itself,
+ * the other threads which need the same inventory meanwhile just wait for its
+ * result (or its exception), so the VirtualBox web server is queried just once.
+ * The retrieve is shared only by the threads which ask for it with the same
+ * generation of physical machine got from the
+ * {@link cz.muni.fi.virtualtoolmanager.logicimpl.VMInventoryCache inventory cache},
+ * so the thread never gets the inventory which was being retrieved while
+ * there was any change of virtual machines it could know about. The thread
+ * which needs only some attributes of virtual machines can also share
+ * the retrieve of virtual machines with all the attributes.
+ * <p>
+ * There is just one registry of the retrieves in progress, so the retrieve
+ * can be shared by all the managers of the same physical machine. The registry
+ * is locked only while the retrieve is looked up, started or finished; the retrieve
+ * itself and the waiting for its result are performed without the lock.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+class VMInventoryFetches {
+    /** The only instance of this class */
+    private static final VMInventoryFetches INSTANCE = new VMInventoryFetches();
+
+    /** retrieves of inventories which are in progress */
+    private final Map<FetchKey, CompletableFuture<List<VirtualMachine>>> fetches = new HashMap<>();
+    /** number of threads which wait for the result of retrieve of another thread */
+    private int waiters;
+
+    /**
+     * This method represents so called static builder factory, which is used to
+     * get the instance of this class.
+     * @return object of type of this class
+     */
+    public static VMInventoryFetches getInstance(){
+        return INSTANCE;
+    }
+
+    private VMInventoryFetches(){ }
+
+    /**
+     * Gets the inventory of the physical machine. If the same inventory is
+     * being retrieved by another thread, then this method waits for its result,
+     * otherwise the given retrieve is performed by the calling thread.
+     * @param physicalMachine represents the physical machine whose virtual
+     * machines are retrieved
+     * @param attributes required attributes of virtual machines
+     * @param generation generation of the physical machine got before
+     * the retrieve is required
+     * @param fetcher performs the retrieve, it is called at most once
+     * @return new list of the retrieved virtual machines
+     */
+    public List<VirtualMachine> fetch(PhysicalMachine physicalMachine,
+            Set<SearchCriterionType> attributes, long generation,
+            Supplier<List<VirtualMachine>> fetcher){
+        FetchKey key = new FetchKey(physicalMachine, attributes, generation);
+        CompletableFuture<List<VirtualMachine>> fetch;
+        boolean owner = false;
+        synchronized(this){
+            fetch = fetches.get(key);
+            if(fetch == null && !key.allAttributes()){
+                fetch = fetches.get(new FetchKey(physicalMachine,
+                        EnumSet.allOf(SearchCriterionType.class), generation));
+            }
+            if(fetch == null){
+                fetch = new CompletableFuture<>();
+                fetches.put(key, fetch);
+                owner = true;
+            }else{
+                waiters++;
+            }
+        }
+
+        if(owner){
+            try{
+                List<VirtualMachine> virtualMachines = fetcher.get();
+                fetch.complete(virtualMachines);
+                return new ArrayList<>(virtualMachines);
+            }catch(RuntimeException | Error ex){
+                fetch.completeExceptionally(ex);
+                throw ex;
+            }finally{
+                synchronized(this){
+                    fetches.remove(key);
+                }
+            }
+        }
+
+        try{
+            return new ArrayList<>(fetch.join());
+        }catch(CompletionException ex){
+            if(ex.getCause() instanceof Error){
+                throw (Error) ex.getCause();
+            }
+            if(ex.getCause() instanceof RuntimeException){
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }finally{
+            synchronized(this){
+                waiters--;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of threads which wait for the result of retrieve
+     * of another thread.
+     * @return number of waiting threads
+     */
+    synchronized int waiters(){
+        return waiters;
+    }
+
+    /**
+     * Gets the number of retrieves which are in progress.
+     * @return number of retrieves in progress
+     */
+    synchronized int size(){
+        return fetches.size();
+    }
+
+    /**
+     * Class that identifies the retrieve of inventory.
+     */
+    private static final class FetchKey {
+        private final PhysicalMachine physicalMachine;
+        private final Set<SearchCriterionType> attributes;
+        private final long generation;
+
+        FetchKey(PhysicalMachine physicalMachine, Set<SearchCriterionType> attributes,
+                long generation){
+            this.physicalMachine = physicalMachine;
+            this.attributes = (attributes.isEmpty() ? EnumSet.noneOf(SearchCriterionType.class)
+                                                    : EnumSet.copyOf(attributes));
+            this.generation = generation;
+        }
+
+        boolean allAttributes(){
+            return attributes.size() == SearchCriterionType.values().length;
+        }
+
+        @Override
+        public boolean equals(Object obj){
+            if(this == obj){
+                return true;
+            }
+            if(!(obj instanceof FetchKey)){
+                return false;
+            }
+            FetchKey other = (FetchKey) obj;
+            return generation == other.generation
+                    && physicalMachine.equals(other.physicalMachine)
+                    && attributes.equals(other.attributes);
+        }
+
+        @Override
+        public int hashCode(){
+            return Objects.hash(physicalMachine, attributes, generation);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.virtualbox_4_3.IEvent;
+import org.virtualbox_4_3.IEventListener;
+import org.virtualbox_4_3.IEventSource;
+import org.virtualbox_4_3.IMachineRegisteredEvent;
+import org.virtualbox_4_3.VBoxEventType;
+import org.virtualbox_4_3.VirtualBoxManager;
+
+/**
+ * <div>
+ * Class that is used to keep the cached inventories of connected physical
+ * machines current.
+ * <p>
+ * For each connected physical machine there is registered the passive
+ * listener of VirtualBox events through a dedicated session. The events are
+ * periodically fetched and each of them updates the
+ * {@link cz.muni.fi.virtualtoolmanager.logicimpl.VMInventoryCache inventory cache}:
+ * <ul>
+ * <li>the unregistered virtual machine is just removed from the cached inventory
+ * and from the {@link cz.muni.fi.virtualtoolmanager.logicimpl.VMDirectory
+ * directory of virtual machines}
+ * <li>any other change (newly registered virtual machine, changed settings,
+ * snapshots or media of virtual machine) evicts the whole inventory
+ * of physical machine and its virtual machines in the directory, so they are
+ * retrieved again by the next query, and the
+ * {@link cz.muni.fi.virtualtoolmanager.logicimpl.VMLookupMissCache recently
+ * missed virtual machines} of physical machine are looked up again as well
+ * </ul>
+ * The unregistrations are applied even after the eviction by the same fetch.
+ * The starts and the shutdowns of virtual machines are not watched, so they
+ * never evict the inventory.
+ * While the listener is registered, the inventory of physical machine does not
+ * expire, so the queries are served locally. When the listener cannot be
+ * registered or the events cannot be fetched, the inventory is evicted and it
+ * expires as usual until the listener is registered again by the next fetch.
+ * <p>
+ * The fetches are triggered by the shared scheduler and performed by the shared
+ * worker pool, there is never more than one fetch of one physical machine
+ * in progress.
+ * <p>
+ * There is just one watcher, so each physical machine has at most one
+ * registered listener and one dedicated session. The subscriptions are held
+ * in a concurrent map and the fetch of events is serialized by the lock of
+ * the subscription, so the fetches of different physical machines run in parallel.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+class VMInventoryWatcher {
+    /** The only instance of this class */
+    private static final VMInventoryWatcher INSTANCE = new VMInventoryWatcher();
+    /** default time (in milliseconds) between two fetches of events of one physical machine */
+    static final long DEFAULT_FETCH_INTERVAL = 1000L;
+    /** maximum number of events processed by one fetch */
+    private static final int MAX_EVENTS_PER_FETCH = 1000;
+    /** types of events which report the change of cached attributes of virtual
+     * machines, the change of machine state is not watched, because the state
+     * is not held by the cached virtual machines */
+    private static final List<VBoxEventType> WATCHED_EVENT_TYPES = Arrays.asList(
+            VBoxEventType.OnMachineRegistered, VBoxEventType.OnMachineDataChanged,
+            VBoxEventType.OnSnapshotTaken, VBoxEventType.OnSnapshotDeleted,
+            VBoxEventType.OnMediumRegistered, VBoxEventType.OnMediumChanged,
+            VBoxEventType.OnStorageDeviceChanged);
+
+    /** subscriptions of all watched physical machines */
+    private final ConcurrentMap<PhysicalMachine, Subscription> subscriptions = new ConcurrentHashMap<>();
+    /** time (in milliseconds) between two fetches of events of one physical machine */
+    private volatile long fetchInterval = DEFAULT_FETCH_INTERVAL;
+
+    /**
+     * This method represents so called static builder factory, which is used to
+     * get the instance of this class.
+     * @return object of type of this class
+     */
+    public static VMInventoryWatcher getInstance(){
+        return INSTANCE;
+    }
+
+    private VMInventoryWatcher(){ }
+
+    /**
+     * This method starts the watching of the newly connected physical machine.
+     * The listener is registered by the first fetch after the fetch interval.
+     * If the physical machine is already watched, then its watching is restarted.
+     * @param physicalMachine represents the physical machine which should be watched
+     */
+    public void start(PhysicalMachine physicalMachine){
+        Subscription subscription = new Subscription();
+        Subscription previous = subscriptions.put(physicalMachine, subscription);
+        if(previous != null){
+            close(physicalMachine, previous);
+        }
+
+        long interval = fetchInterval;
+        if(interval > 0){
+            subscription.fetch = SharedExecutors.getScheduler().scheduleWithFixedDelay(
+                    () -> triggerFetch(physicalMachine, subscription),
+                    interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * This method stops the watching of the physical machine, its listener
+     * is unregistered in the background. It is typically called as a part of
+     * physical machine disconnection operation.
+     * @param physicalMachine represents the physical machine which should not
+     * be watched anymore
+     */
+    public void stop(PhysicalMachine physicalMachine){
+        Subscription subscription = subscriptions.remove(physicalMachine);
+        if(subscription != null){
+            close(physicalMachine, subscription);
+        }
+    }
+
+    /**
+     * This method stops the watching of all physical machines.
+     */
+    public void clear(){
+        for(PhysicalMachine physicalMachine : subscriptions.keySet()){
+            stop(physicalMachine);
+        }
+    }
+
+    /**
+     * Sets the time between two fetches of events of one physical machine.
+     * The new interval is used for the physical machines whose watching starts later.
+     * @param fetchInterval interval in milliseconds, value 0 disables the watching
+     */
+    public void setFetchInterval(long fetchInterval){
+        if(fetchInterval < 0){
+            throw new IllegalArgumentException("The event fetch interval must be "
+                    + "a non-negative number.");
+        }
+        this.fetchInterval = fetchInterval;
+    }
+
+    /**
+     * This method performs one fetch of events of the physical machine by
+     * the calling thread. If the listener is not registered yet, then it is
+     * registered first.
+     * @param physicalMachine represents the physical machine whose events
+     * should be fetched
+     * @return true if the physical machine is watched after the fetch,
+     * false otherwise
+     */
+    boolean fetch(PhysicalMachine physicalMachine){
+        Subscription subscription = subscriptions.get(physicalMachine);
+        if(subscription == null){
+            return false;
+        }
+
+        VMInventoryCache inventoryCache = VMInventoryCache.getInstance();
+        synchronized(subscription){
+            if(subscription.closed){
+                return false;
+            }
+            try{
+                if(subscription.listener == null){
+                    subscribe(physicalMachine, subscription);
+                    //the changes before the registration of listener are not known
+                    evict(physicalMachine);
+                    inventoryCache.setWatched(physicalMachine, true);
+                }
+                processEvents(physicalMachine, subscription);
+                return true;
+            }catch(RuntimeException ex){
+                //the inventory cannot be trusted anymore, the listener is registered again
+                //by the next fetch
+                inventoryCache.setWatched(physicalMachine, false);
+                evict(physicalMachine);
+                unsubscribe(physicalMachine, subscription, false);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Registers the passive listener of events through a dedicated session.
+     */
+    private void subscribe(PhysicalMachine physicalMachine, Subscription subscription){
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        VirtualBoxManager virtualBoxManager = sessionPool.open(physicalMachine);
+        subscription.virtualBoxManager = virtualBoxManager;
+        subscription.eventSource = virtualBoxManager.getVBox().getEventSource();
+        IEventListener listener = subscription.eventSource.createListener();
+        subscription.eventSource.registerListener(listener, WATCHED_EVENT_TYPES, false);
+        subscription.listener = listener;
+    }
+
+    /**
+     * Fetches all waiting events without blocking and updates the inventory
+     * of the physical machine according to them.
+     */
+    private void processEvents(PhysicalMachine physicalMachine, Subscription subscription){
+        boolean evicted = false;
+        for(int i = 0; i < MAX_EVENTS_PER_FETCH; ++i){
+            IEvent event = subscription.eventSource.getEvent(subscription.listener, 0);
+            if(event == null){
+                return;
+            }
+            //the unregistration is applied even after the eviction, so the virtual machine
+            //cannot stay in the directory when it is put there again by a concurrent retrieve
+            if(!processUnregistration(physicalMachine, event) && !evicted){
+                //one eviction is enough for all the following events of this fetch
+                evict(physicalMachine);
+                evicted = true;
+            }
+            subscription.eventSource.eventProcessed(subscription.listener, event);
+        }
+    }
+
+    /**
+     * Evicts the inventory of the physical machine together with its virtual
+     * machines in the directory and the names and ids known to be missing.
+     */
+    private void evict(PhysicalMachine physicalMachine){
+        VMInventoryCache.getInstance().invalidate(physicalMachine);
+        VMLookupMissCache.getInstance().invalidate(physicalMachine);
+        VMDirectory.getInstance().removeAll(physicalMachine);
+    }
+
+    /**
+     * Removes the unregistered virtual machine from the inventory.
+     * @return true if the event was the unregistration of virtual machine and it
+     * was processed, false if the whole inventory should be evicted
+     */
+    private boolean processUnregistration(PhysicalMachine physicalMachine, IEvent event){
+        if(event.getType() != VBoxEventType.OnMachineRegistered){
+            return false;
+        }
+        try{
+            IMachineRegisteredEvent registeredEvent = IMachineRegisteredEvent.queryInterface(event);
+            if(registeredEvent.getRegistered()){
+                return false;
+            }
+            UUID id = UUID.fromString(registeredEvent.getMachineId());
+            VMInventoryCache.getInstance().removeVirtualMachine(physicalMachine, id);
+            VMDirectory.getInstance().remove(id);
+            return true;
+        }catch(RuntimeException ex){
+            //the details of event are not available, the inventory is evicted
+            return false;
+        }
+    }
+
+    /**
+     * Unregisters the listener and gives the dedicated session back (or closes
+     * it when it is broken). The physical machine is not watched anymore.
+     */
+    private void unsubscribe(PhysicalMachine physicalMachine, Subscription subscription,
+            boolean healthy){
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+        VirtualBoxManager virtualBoxManager = subscription.virtualBoxManager;
+        if(healthy && subscription.listener != null){
+            try{
+                subscription.eventSource.unregisterListener(subscription.listener);
+            }catch(RuntimeException ex){
+                healthy = false;
+            }
+        }
+        if(virtualBoxManager != null){
+            if(healthy){
+                sessionPool.release(physicalMachine, virtualBoxManager);
+            }else{
+                sessionPool.invalidate(virtualBoxManager);
+            }
+        }
+        subscription.virtualBoxManager = null;
+        subscription.eventSource = null;
+        subscription.listener = null;
+    }
+
+    /**
+     * Cancels the periodic fetches and unregisters the listener in the background.
+     */
+    private void close(PhysicalMachine physicalMachine, Subscription subscription){
+        subscription.closed = true;
+        subscription.cancel();
+        VMInventoryCache.getInstance().setWatched(physicalMachine, false);
+        SharedExecutors.getWorkerPool().execute(() -> {
+            synchronized(subscription){
+                unsubscribe(physicalMachine, subscription, true);
+                //the fetch which was in progress could have marked it as watched again
+                if(!subscriptions.containsKey(physicalMachine)){
+                    VMInventoryCache.getInstance().setWatched(physicalMachine, false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hands the fetch over to the worker pool, unless the previous fetch
+     * of the same physical machine is still in progress. If the physical machine
+     * is not connected anymore, then its watching is stopped.
+     * @param physicalMachine represents the physical machine whose events should
+     * be fetched
+     * @param subscription subscription of the physical machine
+     */
+    private void triggerFetch(PhysicalMachine physicalMachine, Subscription subscription){
+        if(!ConnectedPhysicalMachines.getInstance().isConnected(physicalMachine)){
+            if(subscriptions.remove(physicalMachine, subscription)){
+                close(physicalMachine, subscription);
+            }
+            subscription.cancel();
+            return;
+        }
+
+        if(subscription.inProgress.compareAndSet(false, true)){
+            SharedExecutors.getWorkerPool().execute(() -> {
+                try{
+                    fetch(physicalMachine);
+                }finally{
+                    subscription.inProgress.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Class that represents the subscription of one watched physical machine,
+     * the listener attributes are guarded by the subscription itself.
+     */
+    private static class Subscription {
+        /** flag that the watching of physical machine has been stopped */
+        private volatile boolean closed;
+        /** flag that there is the fetch in progress */
+        private final AtomicBoolean inProgress = new AtomicBoolean();
+        /** periodic fetch task */
+        private volatile ScheduledFuture<?> fetch;
+        /** dedicated session through which the events are fetched */
+        private VirtualBoxManager virtualBoxManager;
+        /** event source of the VirtualBox web server */
+        private IEventSource eventSource;
+        /** registered passive listener, null if it is not registered */
+        private IEventListener listener;
+
+        void cancel(){
+            ScheduledFuture<?> task = fetch;
+            if(task != null){
+                task.cancel(false);
+            }
+        }
+    }
+}
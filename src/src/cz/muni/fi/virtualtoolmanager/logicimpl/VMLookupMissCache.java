@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * <div>
+ * Class that holds the names and ids of virtual machines which were recently
+ * not found on physical machines, so the repeated lookups of virtual machine
+ * which does not exist are answered without the call of VirtualBox web server.
+ * <p>
+ * The miss is valid only for a short time or until it is invalidated (after
+ * any virtual machine is registered or cloned on the physical machine or
+ * VirtualBox reports any change of virtual machines). Each invalidation also
+ * increases the generation of physical machine, so the miss which was being
+ * found out while there was the invalidation is never stored.
+ * <p>
+ * There is just one cache, so the miss found out by one manager saves
+ * the remote lookup of any other manager of the same physical machine. All its
+ * methods are synchronized, none of them calls the VirtualBox web server.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+class VMLookupMissCache {
+    /** The only instance of this class */
+    private static final VMLookupMissCache INSTANCE = new VMLookupMissCache();
+    /** default time (in milliseconds) for which the miss is valid */
+    static final long DEFAULT_TIME_TO_LIVE = 2000L;
+    /** maximum number of misses held for one physical machine */
+    static final int MAX_MISSES_PER_PM = 1024;
+
+    /** misses of physical machines, the values are the times of misses in milliseconds */
+    private final Map<PhysicalMachine, Map<String, Long>> misses = new HashMap<>();
+    /** generations of physical machines, changed by each invalidation */
+    private final HostGenerations generations = new HostGenerations();
+    /** time (in milliseconds) for which the miss is valid, 0 means no caching */
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    /**
+     * This method represents so called static builder factory, which is used to
+     * get the instance of this class.
+     * @return object of type of this class
+     */
+    public static VMLookupMissCache getInstance(){
+        return INSTANCE;
+    }
+
+    private VMLookupMissCache(){ }
+
+    /**
+     * Checks whether the virtual machine was recently not found on the physical
+     * machine.
+     * @param physicalMachine represents the queried physical machine
+     * @param nameOrId name or id of the virtual machine
+     * @return true if there is a valid miss of the virtual machine, false otherwise
+     */
+    public synchronized boolean isMissing(PhysicalMachine physicalMachine, String nameOrId){
+        Map<String, Long> pmMisses = misses.get(physicalMachine);
+        if(pmMisses == null){
+            return false;
+        }
+        Long missedAt = pmMisses.get(nameOrId);
+        if(missedAt == null){
+            return false;
+        }
+        if(System.currentTimeMillis() - missedAt >= timeToLive){
+            pmMisses.remove(nameOrId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the actual generation of the physical machine. It must be called
+     * before the virtual machine is looked up and then given to the method
+     * {@link #put(PhysicalMachine, String, long) put()}.
+     * @param physicalMachine represents the queried physical machine
+     * @return actual generation of the physical machine
+     */
+    public synchronized long getGeneration(PhysicalMachine physicalMachine){
+        return generations.get(physicalMachine);
+    }
+
+    /**
+     * This method stores the miss of the virtual machine, unless the physical
+     * machine has been invalidated since the lookup started.
+     * @param physicalMachine represents the physical machine on which the virtual
+     * machine was not found
+     * @param nameOrId name or id of the virtual machine
+     * @param generation generation of the physical machine got before
+     * the lookup started
+     */
+    public synchronized void put(PhysicalMachine physicalMachine, String nameOrId, long generation){
+        if(timeToLive == 0L || generation != getGeneration(physicalMachine)){
+            return;
+        }
+        Map<String, Long> pmMisses = misses.computeIfAbsent(physicalMachine, pm -> new HashMap<>());
+        long now = System.currentTimeMillis();
+        if(pmMisses.size() >= MAX_MISSES_PER_PM){
+            //the expired misses are removed first, then all of them if it is not enough
+            for(Iterator<Long> it = pmMisses.values().iterator(); it.hasNext(); ){
+                if(now - it.next() >= timeToLive){
+                    it.remove();
+                }
+            }
+            if(pmMisses.size() >= MAX_MISSES_PER_PM){
+                pmMisses.clear();
+            }
+        }
+        pmMisses.put(nameOrId, now);
+    }
+
+    /**
+     * This method forgets all the misses of the physical machine, so the next
+     * lookups query the VirtualBox web server again.
+     * @param physicalMachine represents the physical machine whose set of
+     * virtual machines was changed or which was disconnected
+     */
+    public synchronized void invalidate(PhysicalMachine physicalMachine){
+        misses.remove(physicalMachine);
+        generations.increase(physicalMachine);
+    }
+
+    /**
+     * This method forgets the misses and the generation of the physical
+     * machine, so there is not held anything for the disconnected physical
+     * machine. The generations of all physical machines are changed, because
+     * the forgotten generation must not be given again.
+     * @param physicalMachine represents the disconnected physical machine
+     */
+    public synchronized void remove(PhysicalMachine physicalMachine){
+        misses.remove(physicalMachine);
+        generations.clear();
+    }
+
+    /**
+     * This method forgets the misses of all physical machines.
+     */
+    public synchronized void clear(){
+        misses.clear();
+        generations.clear();
+    }
+
+    /**
+     * Sets the time for which the miss is valid.
+     * @param timeToLive time in milliseconds, 0 means the misses are not
+     * cached at all, must not be negative
+     */
+    public synchronized void setTimeToLive(long timeToLive){
+        if(timeToLive < 0){
+            throw new IllegalArgumentException("The time to live of virtual "
+                    + "machine lookup miss must be a non-negative number.");
+        }
+        this.timeToLive = timeToLive;
+        if(timeToLive == 0L){
+            clear();
+        }
+    }
+}
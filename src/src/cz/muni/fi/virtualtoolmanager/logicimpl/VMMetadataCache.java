@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <div>
+ * Class that holds the metadata which are shared by more virtual machines
+ * of one physical machine, so they do not have to be retrieved from
+ * the VirtualBox web server for each converted virtual machine. These are
+ * the guest OS types, there are only a few dozen of them on each physical
+ * machine and they never change while the physical machine is connected,
+ * so they are held until the physical machine is disconnected.
+ * <p>
+ * The sizes of hard disk media are not held. Each virtual machine has its own
+ * medium (the linked clones have their own differencing media) and its
+ * allocated size grows while the virtual machine is running, so the cached
+ * sizes would rarely be used and they would save just two calls.
+ * <p>
+ * There is just one cache, so the guest OS types are retrieved once for each
+ * physical machine, not once for each manager. The conversions of virtual
+ * machines use it from the threads of the conversion pool, so all its methods
+ * are synchronized; they never call the VirtualBox web server.
+ * </div>
+ *
+ * @author Tomáš Šmíd
+ */
+class VMMetadataCache {
+    /** The only instance of this class */
+    private static final VMMetadataCache INSTANCE = new VMMetadataCache();
+
+    /** guest OS types of physical machines, the keys are the OS type ids */
+    private final Map<PhysicalMachine, Map<String, GuestOSType>> guestOSTypes = new HashMap<>();
+
+    /**
+     * This method represents so called static builder factory, which is used to
+     * get the instance of this class.
+     * @return object of type of this class
+     */
+    public static VMMetadataCache getInstance(){
+        return INSTANCE;
+    }
+
+    private VMMetadataCache(){ }
+
+    /**
+     * Gets the cached guest OS type of the physical machine.
+     * @param physicalMachine represents the queried physical machine
+     * @param osTypeId id of the guest OS type
+     * @return cached guest OS type, null if it is not cached
+     */
+    public synchronized GuestOSType getGuestOSType(PhysicalMachine physicalMachine, String osTypeId){
+        Map<String, GuestOSType> hostOSTypes = guestOSTypes.get(physicalMachine);
+        return (hostOSTypes == null ? null : hostOSTypes.get(osTypeId));
+    }
+
+    /**
+     * This method stores the guest OS type of the physical machine.
+     * @param physicalMachine represents the physical machine of the guest OS type
+     * @param osTypeId id of the guest OS type under which it is queried
+     * @param familyId id of the family of the guest OS type
+     * @param id id of the guest OS type as VirtualBox reports it
+     * @return the stored guest OS type
+     */
+    public synchronized GuestOSType putGuestOSType(PhysicalMachine physicalMachine,
+            String osTypeId, String familyId, String id){
+        GuestOSType guestOSType = new GuestOSType(familyId, id);
+        guestOSTypes.computeIfAbsent(physicalMachine, host -> new HashMap<>())
+                    .put(osTypeId, guestOSType);
+        return guestOSType;
+    }
+
+    /**
+     * This method forgets all the metadata of the physical machine. It is
+     * typically called when the physical machine is disconnected.
+     * @param physicalMachine represents the disconnected physical machine
+     */
+    public synchronized void invalidate(PhysicalMachine physicalMachine){
+        guestOSTypes.remove(physicalMachine);
+    }
+
+    /**
+     * This method forgets the metadata of all physical machines.
+     */
+    public synchronized void clear(){
+        guestOSTypes.clear();
+    }
+
+    /**
+     * Class that represents the cached guest OS type.
+     */
+    static final class GuestOSType {
+        /** id of the family of guest OS type */
+        private final String familyId;
+        /** id of guest OS type */
+        private final String id;
+
+        GuestOSType(String familyId, String id){
+            this.familyId = familyId;
+            this.id = id;
+        }
+
+        String getFamilyId(){
+            return familyId;
+        }
+
+        String getId(){
+            return id;
+        }
+    }
+}
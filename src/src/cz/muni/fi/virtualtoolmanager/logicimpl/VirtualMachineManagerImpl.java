@@ -16,6 +16,8 @@
 package cz.muni.fi.virtualtoolmanager.logicimpl;
 
 import cz.muni.fi.virtualtoolmanager.pubapi.io.OutputHandler;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PortRule;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException;
@@ -27,7 +29,15 @@ import cz.muni.fi.virtualtoolmanager.pubapi.types.FrontEndType;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.ProtocolType;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * Class that provide the implementation of methods declared in
@@ -37,6 +47,14 @@ import java.util.List;
  * @author Tomáš Šmíd
  */
 public class VirtualMachineManagerImpl implements VirtualMachineManager{
+    /** default maximum number of virtual machines processed on one host machine
+     * at the same moment, it equals the number of idle sessions held by the session
+     * pool, so each host worker reuses the session of the previous operation */
+    static final int DEFAULT_MAX_PARALLEL_OPERATIONS_PER_HOST = VBoxSessionPool.DEFAULT_MAX_IDLE_SESSIONS;
+    /** maximum number of host machines processed at the same moment by one bulk
+     * operation, so the operation never runs more than this number multiplied
+     * by the number of parallel operations per host of threads */
+    private static final int MAX_PARALLEL_HOSTS = 8;
     
     /**
      * <div>
@@ -78,24 +96,8 @@ public class VirtualMachineManagerImpl implements VirtualMachineManager{
     @Override
     public void startVM(VirtualMachine virtualMachine, FrontEndType frontEndType) {
         OutputHandler outputHandler = new OutputHandler();
-        
-        if(virtualMachine == null){
-            throw new IllegalArgumentException("A null virtual machine used for "
-                    + "virtual machine starting operation.");
-        }
-        
-        if(frontEndType == null){
-            throw new IllegalArgumentException("A null front-end type used for "
-                    + "virtual machine starting operation.");
-        }
-        
         ConnectionManager connectionManager = new ConnectionManagerImpl();
-        if(!connectionManager.isConnected(virtualMachine.getHostMachine())){
-            throw new ConnectionFailureException("Virtual machine starting "
-                    + "operation failure: Virtual machine " + virtualMachine
-                    + " cannot be started, because its host machine "
-                    + virtualMachine.getHostMachine() + " is not connected.");
-        }
+        checkVMCanBeStarted(virtualMachine, frontEndType, connectionManager);
         
         outputHandler.printMessage("Starting virtual machine " + virtualMachine);
         
@@ -147,19 +149,8 @@ public class VirtualMachineManagerImpl implements VirtualMachineManager{
     @Override
     public void shutDownVM(VirtualMachine virtualMachine) {
         OutputHandler outputHandler = new OutputHandler();
-        
-        if(virtualMachine == null){
-            throw new IllegalArgumentException("A null virtual machine used for "
-                    + "virtual machine shutdown operation.");
-        }
-        
         ConnectionManager connectionManager = new ConnectionManagerImpl();
-        if(!connectionManager.isConnected(virtualMachine.getHostMachine())){
-            throw new ConnectionFailureException("Virtual machine shutdown "
-                    + "operation failure: Virtual machine " + virtualMachine
-                    + " cannot be shut down, because its host machine "
-                    + virtualMachine.getHostMachine() + " is not connected.");
-        }
+        checkVMCanBeShutDown(virtualMachine, connectionManager);
         
         outputHandler.printMessage("Shutting down virtual machine " + virtualMachine);
         
@@ -174,6 +165,245 @@ public class VirtualMachineManagerImpl implements VirtualMachineManager{
         outputHandler.printMessage("Virtual machine " + virtualMachine + " is powered off");
     }
 
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#startVMAsync(VirtualMachine, FrontEndType)
+     * VirtualMachineManager::startVMAsync(VirtualMachine, FrontEndType)}.
+     * </div>
+     * <div>
+     * This method uses the implementation of method
+     * {@link #startVMAsync(VirtualMachine, FrontEndType, Executor)} with
+     * the shared pool for virtual machine operations.
+     * </div>
+     * @param virtualMachine virtual machine which should be started
+     * @param frontEndType type of front-end used for virtual machine
+     * @return future which is completed when the virtual machine is running
+     */
+    @Override
+    public CompletableFuture<Void> startVMAsync(VirtualMachine virtualMachine, FrontEndType frontEndType) {
+        return startVMAsync(virtualMachine, frontEndType, SharedExecutors.getOperationPool());
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#startVMAsync(VirtualMachine, FrontEndType, Executor)
+     * VirtualMachineManager::startVMAsync(VirtualMachine, FrontEndType, Executor)}.
+     * </div>
+     * <div>
+     * The given executor performs just the short remote calls which check
+     * the virtual machine and launch its process, no thread is held while
+     * the virtual machine is being started. The returned future is completed
+     * exceptionally with the same exceptions which are thrown by the method
+     * {@link #startVM(VirtualMachine, FrontEndType)}, but if the given executor
+     * is <code>null</code>, then there is thrown IllegalArgumentException immediately.
+     * </div>
+     * @param virtualMachine virtual machine which should be started
+     * @param frontEndType type of front-end used for virtual machine
+     * @param executor executor which performs the remote calls before the start up
+     * @return future which is completed when the virtual machine is running
+     */
+    @Override
+    public CompletableFuture<Void> startVMAsync(final VirtualMachine virtualMachine,
+            final FrontEndType frontEndType, Executor executor) {
+        checkExecutorIsNull(executor, "virtual machine starting operation.");
+        final OutputHandler outputHandler = new OutputHandler();
+        final ConnectionManager connectionManager = new ConnectionManagerImpl();
+        try{
+            checkVMCanBeStarted(virtualMachine, frontEndType, connectionManager);
+        }catch(RuntimeException ex){
+            CompletableFuture<Void> start = new CompletableFuture<>();
+            start.completeExceptionally(ex);
+            return start;
+        }
+        
+        outputHandler.printMessage("Starting virtual machine " + virtualMachine);
+        
+        return new NativeVBoxAPIMachine().startVMAsync(virtualMachine, frontEndType, executor)
+                .whenComplete((ignored, ex) -> {
+                    if(ex == null){
+                        outputHandler.printMessage("Virtual machine " + virtualMachine + " is running");
+                    }else{
+                        disconnectOnConnectionFailure(ex, virtualMachine, connectionManager);
+                    }
+                });
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#shutDownVMAsync(VirtualMachine)
+     * VirtualMachineManager::shutDownVMAsync(VirtualMachine)}.
+     * </div>
+     * <div>
+     * This method uses the implementation of method
+     * {@link #shutDownVMAsync(VirtualMachine, Executor)} with the shared pool
+     * for virtual machine operations.
+     * </div>
+     * @param virtualMachine virtual machine which should be shut down
+     * @return future which is completed when the virtual machine is powered off
+     */
+    @Override
+    public CompletableFuture<Void> shutDownVMAsync(VirtualMachine virtualMachine) {
+        return shutDownVMAsync(virtualMachine, SharedExecutors.getOperationPool());
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#shutDownVMAsync(VirtualMachine, Executor)
+     * VirtualMachineManager::shutDownVMAsync(VirtualMachine, Executor)}.
+     * </div>
+     * <div>
+     * The given executor performs just the short remote calls which check
+     * the virtual machine and power it down, no thread is held while
+     * the virtual machine is being shut down. The returned future is completed
+     * exceptionally with the same exceptions which are thrown by the method
+     * {@link #shutDownVM(VirtualMachine)}, but if the given executor is
+     * <code>null</code>, then there is thrown IllegalArgumentException immediately.
+     * </div>
+     * @param virtualMachine virtual machine which should be shut down
+     * @param executor executor which performs the remote calls before the shutdown
+     * @return future which is completed when the virtual machine is powered off
+     */
+    @Override
+    public CompletableFuture<Void> shutDownVMAsync(final VirtualMachine virtualMachine, Executor executor) {
+        checkExecutorIsNull(executor, "virtual machine shutdown operation.");
+        final OutputHandler outputHandler = new OutputHandler();
+        final ConnectionManager connectionManager = new ConnectionManagerImpl();
+        try{
+            checkVMCanBeShutDown(virtualMachine, connectionManager);
+        }catch(RuntimeException ex){
+            CompletableFuture<Void> shutdown = new CompletableFuture<>();
+            shutdown.completeExceptionally(ex);
+            return shutdown;
+        }
+        
+        outputHandler.printMessage("Shutting down virtual machine " + virtualMachine);
+        
+        return new NativeVBoxAPIMachine().shutDownVMAsync(virtualMachine, executor)
+                .whenComplete((ignored, ex) -> {
+                    if(ex == null){
+                        outputHandler.printMessage("Virtual machine " + virtualMachine + " is powered off");
+                    }else{
+                        disconnectOnConnectionFailure(ex, virtualMachine, connectionManager);
+                    }
+                });
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#startVMs(Collection, FrontEndType)
+     * VirtualMachineManager::startVMs(Collection, FrontEndType)}.
+     * </div>
+     * <div>
+     * This method uses the implementation of method
+     * {@link #startVMs(Collection, FrontEndType, int)} with the default number
+     * of virtual machines started on one host machine at the same moment.
+     * </div>
+     * @param virtualMachines virtual machines which should be started
+     * @param frontEndType type of front-end used for virtual machines
+     * @return list of results in the same order as the virtual machines were given
+     */
+    @Override
+    public List<OperationResult<VirtualMachine, Void>> startVMs(Collection<VirtualMachine> virtualMachines,
+            FrontEndType frontEndType) {
+        return startVMs(virtualMachines, frontEndType, DEFAULT_MAX_PARALLEL_OPERATIONS_PER_HOST);
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#startVMs(Collection, FrontEndType, int)
+     * VirtualMachineManager::startVMs(Collection, FrontEndType, int)}.
+     * </div>
+     * <div>
+     * Each virtual machine is started by the method {@link #startVM(VirtualMachine, FrontEndType)},
+     * so the result of each virtual machine holds the same exception which
+     * would be thrown by that method. The sessions with VirtualBox web servers
+     * are borrowed from the session pool, so the following operations on one
+     * host machine reuse the sessions of the previous ones.
+     * If there occurs any error in the given arguments, then there is thrown
+     * IllegalArgumentException - when the given collection or any of its virtual
+     * machines or the given front-end type is <code>null</code> or when
+     * the given maximum number of parallel operations is not positive.
+     * </div>
+     * @param virtualMachines virtual machines which should be started
+     * @param frontEndType type of front-end used for virtual machines
+     * @param maxParallelOperationsPerHost maximum number of virtual machines
+     * started on one host machine at the same moment
+     * @return list of results in the same order as the virtual machines were given
+     */
+    @Override
+    public List<OperationResult<VirtualMachine, Void>> startVMs(Collection<VirtualMachine> virtualMachines,
+            final FrontEndType frontEndType, int maxParallelOperationsPerHost) {
+        String operation = "virtual machines starting operation.";
+        checkVirtualMachines(virtualMachines, operation);
+        if(frontEndType == null){
+            throw new IllegalArgumentException("A null front-end type used for " + operation);
+        }
+        checkMaxParallelOperations(maxParallelOperationsPerHost, operation);
+
+        final VirtualMachineManager virtualMachineManager = this;
+        return performGroupedByHost(new ArrayList<>(virtualMachines), maxParallelOperationsPerHost,
+                "virtualtoolmanager-vm-start-",
+                virtualMachine -> virtualMachineManager.startVM(virtualMachine, frontEndType));
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#shutDownVMs(Collection)
+     * VirtualMachineManager::shutDownVMs(Collection)}.
+     * </div>
+     * <div>
+     * This method uses the implementation of method
+     * {@link #shutDownVMs(Collection, int)} with the default number of virtual
+     * machines shut down on one host machine at the same moment.
+     * </div>
+     * @param virtualMachines virtual machines which should be shut down
+     * @return list of results in the same order as the virtual machines were given
+     */
+    @Override
+    public List<OperationResult<VirtualMachine, Void>> shutDownVMs(Collection<VirtualMachine> virtualMachines) {
+        return shutDownVMs(virtualMachines, DEFAULT_MAX_PARALLEL_OPERATIONS_PER_HOST);
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#shutDownVMs(Collection, int)
+     * VirtualMachineManager::shutDownVMs(Collection, int)}.
+     * </div>
+     * <div>
+     * Each virtual machine is shut down by the method {@link #shutDownVM(VirtualMachine)},
+     * so the result of each virtual machine holds the same exception which
+     * would be thrown by that method.
+     * If there occurs any error in the given arguments, then there is thrown
+     * IllegalArgumentException - when the given collection or any of its virtual
+     * machines is <code>null</code> or when the given maximum number of parallel
+     * operations is not positive.
+     * </div>
+     * @param virtualMachines virtual machines which should be shut down
+     * @param maxParallelOperationsPerHost maximum number of virtual machines
+     * shut down on one host machine at the same moment
+     * @return list of results in the same order as the virtual machines were given
+     */
+    @Override
+    public List<OperationResult<VirtualMachine, Void>> shutDownVMs(Collection<VirtualMachine> virtualMachines,
+            int maxParallelOperationsPerHost) {
+        String operation = "virtual machines shutdown operation.";
+        checkVirtualMachines(virtualMachines, operation);
+        checkMaxParallelOperations(maxParallelOperationsPerHost, operation);
+
+        final VirtualMachineManager virtualMachineManager = this;
+        return performGroupedByHost(new ArrayList<>(virtualMachines), maxParallelOperationsPerHost,
+                "virtualtoolmanager-vm-shutdown-",
+                virtualMachine -> virtualMachineManager.shutDownVM(virtualMachine));
+    }
+
     /**
      * <div>
      * Method that imlements method
@@ -527,6 +757,87 @@ public class VirtualMachineManagerImpl implements VirtualMachineManager{
         
         return vmState;
     }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#getVMStates(PhysicalMachine)
+     * VirtualMachineManager#getVMStates(PhysicalMachine)}
+     * </div>
+     * <div>
+     * This method gets the actual states of all virtual machines of a particular
+     * physical machine by one query of VirtualBox, so it is preferred to calling
+     * the method {@link #getVMState(VirtualMachine)} for each virtual machine.
+     * The virtual machines themselves still have to be identified before
+     * the query, which takes one call of VirtualBox web server for each of them.
+     * If there occurs any error, then the following exceptions can be thrown:
+     * <ul>
+     * <li><strong>{@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException
+     * ConnectionFailureException} - </strong>thrown when there occured any connection
+     * problem (invalid physical machine attribute values, not running web server,
+     * network connection not working properly or at all) when the native VirtualBox
+     * manager object is being retrieved or when the physical machine is not
+     * connected
+     * <li><strong>{@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.UnknownVirtualMachineException
+     * UnknownVirtualMachineException} - </strong>thrown when there occured any
+     * error of VirtualBox while the virtual machines or their states were being
+     * retrieved
+     * <li><strong>IllegalArgumentException - </strong>thrown when the given
+     * physical machine is <code>null</code>
+     * </ul>
+     * </div>
+     * @param physicalMachine represents the physical machine whose virtual
+     * machines are queried
+     * @return map of actual virtual machine states as strings, the keys are
+     * the ids of virtual machines
+     */
+    @Override
+    public Map<UUID, String> getVMStates(PhysicalMachine physicalMachine) {
+        if(physicalMachine == null){
+            throw new IllegalArgumentException("A null physical machine used for "
+                    + "virtual machine states query operation.");
+        }
+
+        return getVMStates(physicalMachine, null);
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#getVMStates(Collection)
+     * VirtualMachineManager#getVMStates(Collection)}
+     * </div>
+     * <div>
+     * The virtual machines are grouped by their host machines and the states
+     * of virtual machines of one host machine are got by one query of VirtualBox,
+     * each virtual machine is looked up by one call of VirtualBox web server
+     * before the query.
+     * If there occurs any error, then the same exceptions as in the method
+     * {@link #getVMStates(PhysicalMachine)} can be thrown, IllegalArgumentException
+     * is thrown when the given collection or any of its virtual machines is
+     * <code>null</code>.
+     * </div>
+     * @param virtualMachines represents the queried virtual machines
+     * @return map of actual virtual machine states as strings, the keys are
+     * the ids of virtual machines
+     */
+    @Override
+    public Map<UUID, String> getVMStates(Collection<VirtualMachine> virtualMachines) {
+        checkVirtualMachines(virtualMachines, "virtual machine states query operation.");
+
+        Map<PhysicalMachine, List<VirtualMachine>> virtualMachinesByHost = new LinkedHashMap<>();
+        for(VirtualMachine virtualMachine : virtualMachines){
+            virtualMachinesByHost.computeIfAbsent(virtualMachine.getHostMachine(),
+                                                  host -> new ArrayList<>()).add(virtualMachine);
+        }
+
+        Map<UUID, String> vmStates = new LinkedHashMap<>();
+        for(Map.Entry<PhysicalMachine, List<VirtualMachine>> entry : virtualMachinesByHost.entrySet()){
+            vmStates.putAll(getVMStates(entry.getKey(), entry.getValue()));
+        }
+
+        return vmStates;
+    }
     
     private void setOutputStreams(PrintStream printStream){
         setOutputStreams(printStream, printStream);
@@ -537,6 +848,167 @@ public class VirtualMachineManagerImpl implements VirtualMachineManager{
         OutputHandler.setErrorOutputStream(stdErrOutput);        
     }
     
+    /**
+     * Performs the operation for each virtual machine. The virtual machines are
+     * grouped by their host machines, there are processed at most
+     * {@link #MAX_PARALLEL_HOSTS} host machines in parallel and on each of them
+     * there is processed at most the given number of virtual machines at once.
+     */
+    private static List<OperationResult<VirtualMachine, Void>> performGroupedByHost(
+            List<VirtualMachine> virtualMachines, final int maxParallelOperationsPerHost,
+            final String threadNamePrefix, final Consumer<VirtualMachine> operation){
+        //the positions of virtual machines are remembered, so the results can be
+        //returned in the original order (one virtual machine can be given more times)
+        Map<PhysicalMachine, List<Integer>> positionsByHost = new LinkedHashMap<>();
+        for(int i = 0; i < virtualMachines.size(); ++i){
+            PhysicalMachine hostMachine = virtualMachines.get(i).getHostMachine();
+            List<Integer> positions = positionsByHost.get(hostMachine);
+            if(positions == null){
+                positions = new ArrayList<>();
+                positionsByHost.put(hostMachine, positions);
+            }
+            positions.add(i);
+        }
+
+        List<List<VirtualMachine>> hostGroups = new ArrayList<>(positionsByHost.size());
+        for(List<Integer> positions : positionsByHost.values()){
+            List<VirtualMachine> hostGroup = new ArrayList<>(positions.size());
+            for(Integer position : positions){
+                hostGroup.add(virtualMachines.get(position));
+            }
+            hostGroups.add(hostGroup);
+        }
+
+        List<OperationResult<List<VirtualMachine>, List<OperationResult<VirtualMachine, Void>>>> hostResults =
+                ParallelOperations.perform(hostGroups, MAX_PARALLEL_HOSTS, 0L,
+                        "virtualtoolmanager-host-",
+                        hostGroup -> ParallelOperations.perform(hostGroup, maxParallelOperationsPerHost,
+                                0L, threadNamePrefix, virtualMachine -> {
+                                    operation.accept(virtualMachine);
+                                    return null;
+                                }, null),
+                        null);
+
+        List<OperationResult<VirtualMachine, Void>> results = new ArrayList<>(virtualMachines.size());
+        for(int i = 0; i < virtualMachines.size(); ++i){
+            results.add(null);
+        }
+        int hostIndex = 0;
+        for(List<Integer> positions : positionsByHost.values()){
+            OperationResult<List<VirtualMachine>, List<OperationResult<VirtualMachine, Void>>> hostResult =
+                    hostResults.get(hostIndex++);
+            for(int i = 0; i < positions.size(); ++i){
+                VirtualMachine virtualMachine = virtualMachines.get(positions.get(i));
+                //when the host machine could not be processed at all (e.g. there
+                //could not be created its threads), all its virtual machines fail
+                results.set(positions.get(i), (hostResult.isSuccessful() ? hostResult.getResult().get(i)
+                        : OperationResult.<VirtualMachine, Void>failure(virtualMachine, hostResult.getFailure())));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Gets the states of the given virtual machines (all virtual machines if
+     * null is given) of the physical machine by one query of VirtualBox.
+     */
+    private static Map<UUID, String> getVMStates(PhysicalMachine physicalMachine,
+            Collection<VirtualMachine> virtualMachines){
+        ConnectionManager connectionManager = new ConnectionManagerImpl();
+        if(!connectionManager.isConnected(physicalMachine)){
+            throw new ConnectionFailureException("Virtual machine states query "
+                    + "operation failure: There cannot be found out the states "
+                    + "of virtual machines on physical machine " + physicalMachine
+                    + ", because it is not connected.");
+        }
+
+        NativeVBoxAPIMachine nativeVBoxAPIMachine = new NativeVBoxAPIMachine();
+        try{
+            return nativeVBoxAPIMachine.getVMStates(physicalMachine, virtualMachines);
+        }catch(ConnectionFailureException ex){
+            connectionManager.disconnectFrom(physicalMachine);
+            throw ex;
+        }
+    }
+
+    private void checkVirtualMachines(Collection<VirtualMachine> virtualMachines, String operation){
+        if(virtualMachines == null){
+            throw new IllegalArgumentException("A null collection of virtual machines "
+                    + "used for " + operation);
+        }
+        for(VirtualMachine virtualMachine : virtualMachines){
+            if(virtualMachine == null){
+                throw new IllegalArgumentException("A null virtual machine used for " + operation);
+            }
+        }
+    }
+
+    private void checkMaxParallelOperations(int maxParallelOperations, String operation){
+        if(maxParallelOperations < 1){
+            throw new IllegalArgumentException("The maximum number of parallel "
+                    + "operations per host machine must be a positive number "
+                    + "for " + operation);
+        }
+    }
+
+    private void checkVMCanBeStarted(VirtualMachine virtualMachine, FrontEndType frontEndType,
+            ConnectionManager connectionManager){
+        if(virtualMachine == null){
+            throw new IllegalArgumentException("A null virtual machine used for "
+                    + "virtual machine starting operation.");
+        }
+        
+        if(frontEndType == null){
+            throw new IllegalArgumentException("A null front-end type used for "
+                    + "virtual machine starting operation.");
+        }
+        
+        if(!connectionManager.isConnected(virtualMachine.getHostMachine())){
+            throw new ConnectionFailureException("Virtual machine starting "
+                    + "operation failure: Virtual machine " + virtualMachine
+                    + " cannot be started, because its host machine "
+                    + virtualMachine.getHostMachine() + " is not connected.");
+        }
+    }
+    
+    private void checkVMCanBeShutDown(VirtualMachine virtualMachine, ConnectionManager connectionManager){
+        if(virtualMachine == null){
+            throw new IllegalArgumentException("A null virtual machine used for "
+                    + "virtual machine shutdown operation.");
+        }
+        
+        if(!connectionManager.isConnected(virtualMachine.getHostMachine())){
+            throw new ConnectionFailureException("Virtual machine shutdown "
+                    + "operation failure: Virtual machine " + virtualMachine
+                    + " cannot be shut down, because its host machine "
+                    + virtualMachine.getHostMachine() + " is not connected.");
+        }
+    }
+    
+    /**
+     * Disconnects the host machine of the virtual machine when the asynchronous
+     * operation failed because of the connection problem.
+     * @param failure failure of the asynchronous operation
+     */
+    private void disconnectOnConnectionFailure(Throwable failure, VirtualMachine virtualMachine,
+            ConnectionManager connectionManager){
+        Throwable cause = (failure instanceof CompletionException ? failure.getCause() : failure);
+        if(cause instanceof ConnectionFailureException){
+            try{
+                connectionManager.disconnectFrom(virtualMachine.getHostMachine());
+            }catch(RuntimeException ex){
+                //the future is completed with the original connection failure anyway
+            }
+        }
+    }
+    
+    private void checkExecutorIsNull(Executor executor, String operation){
+        if(executor == null){
+            throw new IllegalArgumentException("A null executor used for " + operation);
+        }
+    }
+    
     private void checkPortRuleIsNull(PortRule portRule, String operation){
         if(portRule == null) {
             throw new IllegalArgumentException("A null port rule used for " + operation);
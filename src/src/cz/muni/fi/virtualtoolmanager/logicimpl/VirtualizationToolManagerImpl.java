@@ -16,6 +16,7 @@
 package cz.muni.fi.virtualtoolmanager.logicimpl;
 
 import cz.muni.fi.virtualtoolmanager.pubapi.io.OutputHandler;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException;
@@ -25,9 +26,18 @@ import cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager;
 import cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager;
 import cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.CloneType;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * Class that provide the implementation of methods declared in
@@ -37,6 +47,8 @@ import java.util.UUID;
  * @author Tomáš Šmíd
  */
 public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
+    /** default maximum number of virtual machines shut down at the same moment */
+    static final int DEFAULT_MAX_PARALLEL_SHUTDOWNS = 8;
     /** Represents the physical machine with which the particular instance of
      * this class is associated, respectively this manager can manage all
      * virtual machines of this physical machine, but no others */ 
@@ -125,6 +137,8 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
             connectionManager.disconnectFrom(hostMachine);
             throw ex;
         }
+        VMInventoryCache.getInstance().invalidate(hostMachine);
+        VMLookupMissCache.getInstance().invalidate(hostMachine);
         
         outputHandler.printMessage("Virtual machine \"" + name + "\" has been "
                 + "registered successfully");
@@ -208,20 +222,51 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
                     + "machine " + hostMachine + " is not connected.");
         }
         
+        //the virtual machine which was recently not found is not looked up again
+        VMLookupMissCache missCache = VMLookupMissCache.getInstance();
+        if(missCache.isMissing(hostMachine, name)){
+            return null;
+        }
+        
+        long generation = missCache.getGeneration(hostMachine);
         NativeVBoxAPIManager nativeVBoxAPIManager = new NativeVBoxAPIManager();
         VirtualMachine virtualMachine;
         try{
             virtualMachine = nativeVBoxAPIManager.getVirtualMachine(hostMachine, name);
         }catch(UnknownVirtualMachineException ex){
+            missCache.put(hostMachine, name, generation);
+            forgetMissingVirtualMachine(hostMachine, name);
             return null;
         }catch (ConnectionFailureException ex) {
             connectionManager.disconnectFrom(hostMachine);
             throw ex;
         }
+        VMDirectory.getInstance().put(virtualMachine);
         
         return virtualMachine;
     }
 
+    /**
+     * Removes the virtual machine which was not found on the host machine
+     * from the directory of virtual machines.
+     * @param nameOrId represents the name or the id of the missing virtual machine
+     */
+    private static void forgetMissingVirtualMachine(PhysicalMachine hostMachine, String nameOrId) {
+        VMDirectory directory = VMDirectory.getInstance();
+        VirtualMachine knownVM = directory.get(nameOrId);
+        if(knownVM == null){
+            try{
+                knownVM = directory.get(UUID.fromString(nameOrId));
+            }catch(IllegalArgumentException ex){
+                //it is not an id
+            }
+        }
+        
+        if(knownVM != null && knownVM.getHostMachine().equals(hostMachine)){
+            directory.remove(knownVM.getId());
+        }
+    }
+
     /**
      * <div>
      * Method that implements the method
@@ -253,6 +298,103 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
      */
     @Override
     public List<VirtualMachine> getVirtualMachines() {
+        return getVirtualMachines(hostMachine, false);
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#getVirtualMachines(boolean)
+     * VirtualizationToolManager::getVirtualMachines(boolean)}.
+     * </div>
+     * <div>
+     * The virtual machines retrieved from the host machine are cached for
+     * a short time, so the following calls of this method do not query
+     * the VirtualBox web server again. The cached virtual machines are forgotten
+     * as soon as there is any virtual machine registered, removed or cloned by
+     * this API or the host machine is disconnected. If there are loaded
+     * the last known virtual machines of the host machine from the inventory
+     * snapshot, then they are returned until the actual ones are retrieved in
+     * the background.
+     * When more threads retrieve the virtual machines of the host machine at
+     * the same time, then there is just one retrieve whose result is shared
+     * by all of them.
+     * If there occurs error, then there can be thrown the same exceptions as
+     * by the method {@link #getVirtualMachines()}.
+     * </div>
+     * @param bypassCache true if the cached virtual machines should be ignored
+     * @return list of all registered virtual machines from the host machine
+     */
+    @Override
+    public List<VirtualMachine> getVirtualMachines(boolean bypassCache) {
+        return getVirtualMachines(hostMachine, bypassCache);
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#getVirtualMachines(Set)
+     * VirtualizationToolManager::getVirtualMachines(Set)}.
+     * </div>
+     * <div>
+     * If the cached virtual machines with at least the required attributes are
+     * valid, then they are returned with all their cached attributes. Otherwise
+     * only the required attributes are retrieved from the host machine, which
+     * saves several calls of VirtualBox web server for each virtual machine.
+     * Such virtual machines are cached for the following queries which require
+     * no other attributes.
+     * If there occurs error, then there can be thrown the same exceptions as
+     * by the method {@link #getVirtualMachines()}, IllegalArgumentException is
+     * thrown when the given set of attributes is <code>null</code>.
+     * </div>
+     * @param attributes required attributes of virtual machines
+     * @return list of all registered virtual machines from the host machine
+     */
+    @Override
+    public List<VirtualMachine> getVirtualMachines(Set<SearchCriterionType> attributes) {
+        if(attributes == null){
+            throw new IllegalArgumentException("A null set of attributes used for "
+                    + "all virtual machines retrieve operation.");
+        }
+        
+        return getVirtualMachines(hostMachine, false, attributes);
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#setConversionParallelism(int)
+     * VirtualizationToolManager::setConversionParallelism(int)}.
+     * </div>
+     * <div>
+     * The virtual machines of all host machines are converted by one shared
+     * bounded pool of threads, so the number just limits how many of its
+     * threads can convert the virtual machines of the host machine at once.
+     * IllegalArgumentException is thrown when the given number is negative.
+     * </div>
+     * @param parallelism maximum number of virtual machines converted at once
+     */
+    @Override
+    public void setConversionParallelism(int parallelism) {
+        NativeVBoxAPIManager.setConversionParallelism(hostMachine, parallelism);
+    }
+
+    /**
+     * Gets the virtual machines of the host machine, from the inventory cache
+     * if it is allowed and the cached virtual machines are still valid.
+     */
+    private static List<VirtualMachine> getVirtualMachines(PhysicalMachine hostMachine,
+            boolean bypassCache) {
+        return getVirtualMachines(hostMachine, bypassCache, EnumSet.allOf(SearchCriterionType.class));
+    }
+
+    /**
+     * Gets the virtual machines of the host machine with at least the required
+     * attributes, the cached virtual machines are used if they have them.
+     * The concurrent calls share one retrieve of the virtual machines.
+     */
+    private static List<VirtualMachine> getVirtualMachines(PhysicalMachine hostMachine,
+            boolean bypassCache, Set<SearchCriterionType> attributes) {
         ConnectionManager connectionManager = new ConnectionManagerImpl();
         
         if(!connectionManager.isConnected(hostMachine)){
@@ -262,18 +404,107 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
                     + "because it is not connected.");
         }
         
+        VMInventoryCache inventoryCache = VMInventoryCache.getInstance();
+        if(!bypassCache){
+            List<VirtualMachine> cachedVMs = inventoryCache.get(hostMachine, attributes);
+            if(cachedVMs != null){
+                return cachedVMs;
+            }
+            List<VirtualMachine> staleVMs = getStaleVirtualMachines(hostMachine);
+            if(staleVMs != null){
+                return staleVMs;
+            }
+        }
+        
+        //the concurrent callers share one retrieve of the same virtual machines
+        long generation = inventoryCache.getGeneration(hostMachine);
+        return VMInventoryFetches.getInstance().fetch(hostMachine, attributes, generation,
+                () -> fetchVirtualMachines(hostMachine, attributes, generation));
+    }
+
+    /**
+     * Retrieves the virtual machines of the host machine from the VirtualBox
+     * web server and stores them to the inventory cache together with
+     * the retrieved attributes. Only the virtual machines with all
+     * the attributes are stored to the directory.
+     * @param generation generation of the host machine got before the retrieve
+     * was required
+     */
+    private static List<VirtualMachine> fetchVirtualMachines(PhysicalMachine hostMachine,
+            Set<SearchCriterionType> attributes, long generation) {
+        boolean allAttributes = attributes.containsAll(EnumSet.allOf(SearchCriterionType.class));
+        VMInventoryCache inventoryCache = VMInventoryCache.getInstance();
         NativeVBoxAPIManager nativeVBoxAPIManager = new NativeVBoxAPIManager();
         List<VirtualMachine> virtualMachines;
         try{
-            virtualMachines = nativeVBoxAPIManager.getAllVirtualMachines(hostMachine);
+            virtualMachines = (allAttributes ? nativeVBoxAPIManager.getAllVirtualMachines(hostMachine)
+                    : nativeVBoxAPIManager.getAllVirtualMachines(hostMachine, attributes));
         }catch (ConnectionFailureException ex) {
-            connectionManager.disconnectFrom(hostMachine);
+            try{
+                new ConnectionManagerImpl().disconnectFrom(hostMachine);
+            }catch(RuntimeException disconnectionEx){
+                //the concurrent retrieve could have already disconnected the host machine,
+                //the caller should get the failure of this retrieve
+            }
             throw ex;
         }
         
+        if(allAttributes){
+            //the virtual machines retrieved before any change of them are not used
+            if(generation == inventoryCache.getGeneration(hostMachine)){
+                VMDirectory.getInstance().putAll(hostMachine, virtualMachines);
+            }
+            //the last known virtual machines are not needed anymore
+            InventorySnapshot.getInstance().remove(hostMachine);
+        }
+        inventoryCache.put(hostMachine, virtualMachines, attributes, generation);
         return virtualMachines;
     }
 
+    /**
+     * Gets the last known virtual machines of the host machine loaded from
+     * the inventory snapshot and starts their refresh in the background.
+     * The refresh is a long blocking retrieve, so it is performed by the shared
+     * operation pool and it never delays the short calls of the worker pool.
+     * @return the last known virtual machines, null if there are not any
+     */
+    private static List<VirtualMachine> getStaleVirtualMachines(final PhysicalMachine hostMachine) {
+        final InventorySnapshot inventorySnapshot = InventorySnapshot.getInstance();
+        List<VirtualMachine> staleVMs = inventorySnapshot.get(hostMachine);
+        if(staleVMs != null && inventorySnapshot.startRefresh(hostMachine)){
+            SharedExecutors.getOperationPool().execute(() -> {
+                try{
+                    getVirtualMachines(hostMachine, true);
+                }catch(RuntimeException ex){
+                    //the next query retrieves the virtual machines itself and reports the failure
+                }finally{
+                    inventorySnapshot.remove(hostMachine);
+                }
+            });
+        }
+        
+        return staleVMs;
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#isInventoryStale()
+     * VirtualizationToolManager::isInventoryStale()}.
+     * </div>
+     * <div>
+     * The last known virtual machines are forgotten as soon as the virtual
+     * machines are retrieved from the host machine, no matter whether
+     * the retrieve was successful or not.
+     * </div>
+     * @return true if the virtual machines returned by {@link #getVirtualMachines()}
+     * can be stale, false otherwise
+     */
+    @Override
+    public boolean isInventoryStale() {
+        return InventorySnapshot.getInstance().contains(hostMachine);
+    }
+
     /**
      * <div>
      * Method that implements the method
@@ -330,25 +561,8 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
     @Override
     public void removeVirtualMachine(VirtualMachine virtualMachine) {
         OutputHandler outputHandler = new OutputHandler();
-        
-        if(virtualMachine == null){
-            throw new IllegalArgumentException("A null virtual machine used for "
-                    + "virtual machine removal operation.");
-        }
-        
-        if(!virtualMachine.getHostMachine().equals(hostMachine)){
-            throw new IllegalArgumentException("Virtual machine with incorrect "
-                    + "physical machine used for virtual machine removal operation.");
-        }
-        
         ConnectionManager connectionManager = new ConnectionManagerImpl();
-        if(!connectionManager.isConnected(hostMachine)){
-            throw new ConnectionFailureException("Virtual machine removal "
-                    + "operation failure: Virtual machine " + virtualMachine
-                    + " cannot be removed, because the physical machine "
-                    + hostMachine + " on which the virtual machine is found is "
-                    + "not connected.");
-        }
+        checkVMCanBeRemoved(virtualMachine, connectionManager);
         
         outputHandler.printMessage("Removing virtual machine " + virtualMachine);
         
@@ -358,12 +572,88 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
         }catch (ConnectionFailureException ex){
             connectionManager.disconnectFrom(hostMachine);
             throw ex;
+        }finally{
+            //even the failed removal could have removed some of the linked clones
+            VMInventoryCache.getInstance().invalidate(hostMachine);
+            VMDirectory.getInstance().removeAll(hostMachine);
         }
         
         outputHandler.printMessage("Virtual machine " + virtualMachine 
                 + " removed successfully");
     }
 
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#removeVirtualMachineAsync(VirtualMachine)
+     * VirtualizationToolManager::removeVirtualMachineAsync(VirtualMachine)}.
+     * </div>
+     * <div>
+     * This method uses the implementation of method
+     * {@link #removeVirtualMachineAsync(VirtualMachine, Executor)} with
+     * the shared pool for virtual machine operations.
+     * </div>
+     * @param virtualMachine represents the virtual machine which should be
+     * removed
+     * @return future which is completed when the virtual machine is removed
+     */
+    @Override
+    public CompletableFuture<Void> removeVirtualMachineAsync(VirtualMachine virtualMachine) {
+        return removeVirtualMachineAsync(virtualMachine, SharedExecutors.getOperationPool());
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#removeVirtualMachineAsync(VirtualMachine, Executor)
+     * VirtualizationToolManager::removeVirtualMachineAsync(VirtualMachine, Executor)}.
+     * </div>
+     * <div>
+     * The given executor performs just the remote calls which check the virtual
+     * machine, remove its linked clones and start the deletion of its files,
+     * no thread is held while the files are being deleted. The returned future
+     * is completed exceptionally with the same exceptions which are thrown by
+     * the method {@link #removeVirtualMachine(VirtualMachine)}, but if the given
+     * executor is <code>null</code>, then there is thrown IllegalArgumentException
+     * immediately.
+     * </div>
+     * @param virtualMachine represents the virtual machine which should be
+     * removed
+     * @param executor executor which performs the remote calls before
+     * the deletion of files
+     * @return future which is completed when the virtual machine is removed
+     */
+    @Override
+    public CompletableFuture<Void> removeVirtualMachineAsync(final VirtualMachine virtualMachine,
+            Executor executor) {
+        checkExecutorIsNull(executor, "virtual machine removal operation.");
+        final OutputHandler outputHandler = new OutputHandler();
+        final ConnectionManager connectionManager = new ConnectionManagerImpl();
+        try{
+            checkVMCanBeRemoved(virtualMachine, connectionManager);
+        }catch(RuntimeException ex){
+            CompletableFuture<Void> removal = new CompletableFuture<>();
+            removal.completeExceptionally(ex);
+            return removal;
+        }
+        
+        outputHandler.printMessage("Removing virtual machine " + virtualMachine);
+        
+        return new NativeVBoxAPIManager().removeVirtualMachineAsync(virtualMachine, executor)
+                .whenComplete((ignored, ex) -> {
+                    if(ex != null){
+                        disconnectOnConnectionFailure(ex, connectionManager);
+                    }
+                    //even the failed removal could have removed some of the linked clones
+                    VMInventoryCache.getInstance().invalidate(hostMachine);
+                    VMDirectory.getInstance().removeAll(hostMachine);
+                    if(ex == null){
+                        outputHandler.printMessage("Virtual machine " + virtualMachine 
+                                + " removed successfully");
+                    }
+                });
+    }
+
     /**
      * <div>
      * Method that implements the method
@@ -418,30 +708,8 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
     @Override
     public VirtualMachine cloneVirtualMachine(VirtualMachine virtualMachine, CloneType cloneType) {
         OutputHandler outputHandler = new OutputHandler();
-        
-        if(virtualMachine == null){
-            throw new IllegalArgumentException("A null virtual machine used for "
-                    + "virtual machine cloning operation.");
-        }
-        
-        if(cloneType == null){
-            throw new IllegalArgumentException("A null clone type used for "
-                    + "virtual machine cloning operation.");
-        }
-        
-        if(!virtualMachine.getHostMachine().equals(hostMachine)){
-            throw new IllegalArgumentException("Virtual machine with incorrect "
-                    + "physical machine used for virtual machine cloning operation.");
-        }
-        
         ConnectionManager connectionManager = new ConnectionManagerImpl();
-        if(!connectionManager.isConnected(hostMachine)){
-            throw new ConnectionFailureException("Virtual machine cloning "
-                    + "operation failure: Virtual machine " + virtualMachine 
-                    + " cannot be cloned, because the physical machine "
-                    + hostMachine + " on which the virtual machine is found is "
-                    + "not connected.");
-        }
+        checkVMCanBeCloned(virtualMachine, cloneType, connectionManager);
         
         outputHandler.printMessage("Cloning virtual machine " + virtualMachine);
         
@@ -452,12 +720,91 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
         }catch (ConnectionFailureException ex){
             connectionManager.disconnectFrom(hostMachine);
             throw ex;
+        }finally{
+            //even the failed cloning could have left the snapshot or the clone registered
+            VMInventoryCache.getInstance().invalidate(hostMachine);
+            VMLookupMissCache.getInstance().invalidate(hostMachine);
         }
         
+        VMDirectory.getInstance().put(vmClone);
+        
         outputHandler.printMessage("Cloning operation finished successfully");
         return vmClone;
     }
 
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#cloneVirtualMachineAsync(VirtualMachine, CloneType)
+     * VirtualizationToolManager::cloneVirtualMachineAsync(VirtualMachine, CloneType)}.
+     * </div>
+     * <div>
+     * This method uses the implementation of method
+     * {@link #cloneVirtualMachineAsync(VirtualMachine, CloneType, Executor)} with
+     * the shared pool for virtual machine operations.
+     * </div>
+     * @param virtualMachine represents the virtual machine which should be cloned
+     * @param cloneType specifies the type of the final clone
+     * @return future which is completed with the virtual machine clone
+     */
+    @Override
+    public CompletableFuture<VirtualMachine> cloneVirtualMachineAsync(VirtualMachine virtualMachine,
+            CloneType cloneType) {
+        return cloneVirtualMachineAsync(virtualMachine, cloneType, SharedExecutors.getOperationPool());
+    }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#cloneVirtualMachineAsync(VirtualMachine, CloneType, Executor)
+     * VirtualizationToolManager::cloneVirtualMachineAsync(VirtualMachine, CloneType, Executor)}.
+     * </div>
+     * <div>
+     * The given executor performs just the remote calls which check the virtual
+     * machine, start the cloning and register the finished clone, no thread is
+     * held while the clone is being created. The returned future is completed
+     * exceptionally with the same exceptions which are thrown by the method
+     * {@link #cloneVirtualMachine(VirtualMachine, CloneType)}, but if the given
+     * executor is <code>null</code>, then there is thrown IllegalArgumentException
+     * immediately.
+     * </div>
+     * @param virtualMachine represents the virtual machine which should be cloned
+     * @param cloneType specifies the type of the final clone
+     * @param executor executor which performs the remote calls before and after
+     * the cloning
+     * @return future which is completed with the virtual machine clone
+     */
+    @Override
+    public CompletableFuture<VirtualMachine> cloneVirtualMachineAsync(final VirtualMachine virtualMachine,
+            final CloneType cloneType, Executor executor) {
+        checkExecutorIsNull(executor, "virtual machine cloning operation.");
+        final OutputHandler outputHandler = new OutputHandler();
+        final ConnectionManager connectionManager = new ConnectionManagerImpl();
+        try{
+            checkVMCanBeCloned(virtualMachine, cloneType, connectionManager);
+        }catch(RuntimeException ex){
+            CompletableFuture<VirtualMachine> cloning = new CompletableFuture<>();
+            cloning.completeExceptionally(ex);
+            return cloning;
+        }
+        
+        outputHandler.printMessage("Cloning virtual machine " + virtualMachine);
+        
+        return new NativeVBoxAPIManager().createVMCloneAsync(virtualMachine, cloneType, executor)
+                .whenComplete((vmClone, ex) -> {
+                    if(ex != null){
+                        disconnectOnConnectionFailure(ex, connectionManager);
+                    }
+                    //even the failed cloning could have left the snapshot or the clone registered
+                    VMInventoryCache.getInstance().invalidate(hostMachine);
+                    VMLookupMissCache.getInstance().invalidate(hostMachine);
+                    if(ex == null){
+                        VMDirectory.getInstance().put(vmClone);
+                        outputHandler.printMessage("Cloning operation finished successfully");
+                    }
+                });
+    }
+
     /**
      * <div>
      * Method that implements the method
@@ -465,12 +812,16 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
      * VirtualizationToolManager::close()}.
      * </div>
      * <div>
-     * This method is implemented using {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#getVMState(VirtualMachine)
-     * VirtualMachineManager::getVMState(VirtualMachine)} and
+     * This method is implemented using {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#getVMStates(Collection)
+     * VirtualMachineManager::getVMStates(Collection)} and
      * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualMachineManager#shutDownVM(VirtualMachine)
      * VirtualMachineManager::shutDownVM(VirtualMachine)}.
      * So this method shuts down all running virtual machines of a particular
-     * physical machine.
+     * physical machine, the states of all virtual machines are found out by
+     * one query. The virtual machines are shut down in parallel (at most
+     * 8 at the same moment), if there is any failure, then the first one
+     * (in the order of virtual machines) is thrown after all virtual machines
+     * are processed.
      * If error occurs, then the following exceptions can be thrown:
      * <ul>
      * <li><strong>
@@ -509,23 +860,15 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
         outputHandler.printMessage("Shutting down all virtual machines on "
                 + "physical machine " + hostMachine);
                 
-        List<VirtualMachine> virtualMachines;
         String errMsg = "Virtualization tool closing operation failure: Virtual "
                 + "machines could not be properly shut down -> ";
         try{
-            virtualMachines = getVirtualMachines();
-            if(!virtualMachines.isEmpty()){
-                VirtualMachineManager virtualMachineManager =
-                        new VirtualMachineManagerImpl();
-                for(VirtualMachine virtualMachine : virtualMachines){
-                    String vmState = virtualMachineManager.getVMState(virtualMachine);                
-                    switch(vmState){
-                        case "Running":
-                        case "Paused" :
-                        case "Stuck"  : virtualMachineManager.shutDownVM(virtualMachine);
-                                        break;
-                        default       : break;
-                    }
+            List<VirtualMachine> virtualMachines = getVirtualMachines(true);
+            List<OperationResult<VirtualMachine, String>> results =
+                    shutDownRunningVMs(hostMachine, virtualMachines, DEFAULT_MAX_PARALLEL_SHUTDOWNS, 0L);
+            for(OperationResult<VirtualMachine, String> result : results){
+                if(!result.isSuccessful()){
+                    throw result.getFailure();
                 }
             }
         }catch(UnknownVirtualMachineException ex){
@@ -539,7 +882,194 @@ public class VirtualizationToolManagerImpl implements VirtualizationToolManager{
         outputHandler.printMessage("Virtualization tool closing operation "
                 + "finished successfully.");
     }
+
+    /**
+     * <div>
+     * Method that implements the method
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#close(int, long)
+     * VirtualizationToolManager::close(int, long)}.
+     * </div>
+     * <div>
+     * The failures of particular virtual machines are not thrown, they are
+     * reported in the returned list. If there occurs any error before the virtual
+     * machines are processed, then the following exceptions can be thrown:
+     * <ul>
+     * <li><strong>IllegalArgumentException - </strong>thrown when the maximum
+     * number of parallel shutdowns is not positive or the timeout is negative
+     * <li><strong>
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException
+     * ConnectionFailureException} - </strong>thrown when the host machine is not
+     * connected or the list of its virtual machines or their states cannot be
+     * retrieved
+     * <li><strong>
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.UnknownVirtualMachineException
+     * UnknownVirtualMachineException} - </strong>thrown when there occurs any
+     * error of VirtualBox while the list of virtual machines or their states
+     * are being retrieved
+     * </ul>
+     * </div>
+     * @param maxParallelShutdowns maximum number of virtual machines which are
+     * being shut down at the same moment
+     * @param timeout time in milliseconds after which the operation is finished,
+     * 0 means there is no time limit
+     * @return list of results in the same order as the virtual machines are registered
+     */
+    @Override
+    public List<OperationResult<VirtualMachine, String>> close(int maxParallelShutdowns, long timeout) {
+        OutputHandler outputHandler = new OutputHandler();
+        ConnectionManager connectionManager = new ConnectionManagerImpl();
+
+        if(maxParallelShutdowns < 1){
+            throw new IllegalArgumentException("The maximum number of parallel "
+                    + "virtual machine shutdowns must be a positive number.");
+        }
+
+        if(timeout < 0){
+            throw new IllegalArgumentException("The timeout of virtualization "
+                    + "tool closing operation must not be negative.");
+        }
+
+        if(!connectionManager.isConnected(hostMachine)){
+            throw new ConnectionFailureException("Virtualization tool closing "
+                    + "operation failure: Virtual machines cannot be shut down, "
+                    + "because their host machine " + hostMachine + " is not "
+                    + "connected.");
+        }
+
+        outputHandler.printMessage("Shutting down all virtual machines on "
+                + "physical machine " + hostMachine);
+
+        List<OperationResult<VirtualMachine, String>> results =
+                shutDownRunningVMs(hostMachine, getVirtualMachines(true), maxParallelShutdowns, timeout);
+
+        outputHandler.printMessage("Virtualization tool closing operation "
+                + "finished.");
+
+        return results;
+    }
+
+    /**
+     * Shuts down all the given virtual machines which are running in parallel.
+     * The states of all virtual machines are found out by one query before.
+     * @param hostMachine physical machine on which the virtual machines are located
+     * @param virtualMachines virtual machines which should be shut down
+     * @param maxParallelShutdowns maximum number of virtual machines which are
+     * being shut down at the same moment
+     * @param timeout time in milliseconds after which the operation is finished,
+     * 0 means there is no time limit
+     * @return list of results in the same order as the virtual machines were given
+     */
+    private static List<OperationResult<VirtualMachine, String>> shutDownRunningVMs(
+            PhysicalMachine hostMachine, List<VirtualMachine> virtualMachines,
+            int maxParallelShutdowns, long timeout){
+        final VirtualMachineManager virtualMachineManager = new VirtualMachineManagerImpl();
+        if(virtualMachines.isEmpty()){
+            return new ArrayList<>();
+        }
+        //just the given virtual machines are queried, so the virtual machines
+        //of host machine are not listed again
+        final Map<UUID, String> vmStates = virtualMachineManager.getVMStates(virtualMachines);
+
+        return ParallelOperations.perform(virtualMachines, maxParallelShutdowns,
+                timeout, "virtualtoolmanager-vm-shutdown-",
+                virtualMachine -> shutDownRunningVM(virtualMachineManager, virtualMachine,
+                                                    vmStates.get(virtualMachine.getId())),
+                null);
+    }
+
+    /**
+     * Shuts down the virtual machine if it is running.
+     * @param virtualMachineManager manager used for virtual machine operations
+     * @param virtualMachine virtual machine which should be shut down
+     * @param vmState already found out state of the virtual machine, null if
+     * the state has to be found out
+     * @return state of the virtual machine before it was shut down
+     */
+    private static String shutDownRunningVM(VirtualMachineManager virtualMachineManager,
+            VirtualMachine virtualMachine, String vmState){
+        if(vmState == null){
+            //the virtual machine was not found by the bulk query (e.g. it was registered
+            //in the meantime), so its own query finds it or reports the failure
+            vmState = virtualMachineManager.getVMState(virtualMachine);
+        }
+        switch(vmState){
+            case "Running":
+            case "Paused" :
+            case "Stuck"  : virtualMachineManager.shutDownVM(virtualMachine);
+                            break;
+            default       : break;
+        }
+        return vmState;
+    }
+    
+    private void checkVMCanBeRemoved(VirtualMachine virtualMachine, ConnectionManager connectionManager){
+        if(virtualMachine == null){
+            throw new IllegalArgumentException("A null virtual machine used for "
+                    + "virtual machine removal operation.");
+        }
+        
+        if(!virtualMachine.getHostMachine().equals(hostMachine)){
+            throw new IllegalArgumentException("Virtual machine with incorrect "
+                    + "physical machine used for virtual machine removal operation.");
+        }
+        
+        if(!connectionManager.isConnected(hostMachine)){
+            throw new ConnectionFailureException("Virtual machine removal "
+                    + "operation failure: Virtual machine " + virtualMachine
+                    + " cannot be removed, because the physical machine "
+                    + hostMachine + " on which the virtual machine is found is "
+                    + "not connected.");
+        }
+    }
+    
+    private void checkVMCanBeCloned(VirtualMachine virtualMachine, CloneType cloneType,
+            ConnectionManager connectionManager){
+        if(virtualMachine == null){
+            throw new IllegalArgumentException("A null virtual machine used for "
+                    + "virtual machine cloning operation.");
+        }
+        
+        if(cloneType == null){
+            throw new IllegalArgumentException("A null clone type used for "
+                    + "virtual machine cloning operation.");
+        }
+        
+        if(!virtualMachine.getHostMachine().equals(hostMachine)){
+            throw new IllegalArgumentException("Virtual machine with incorrect "
+                    + "physical machine used for virtual machine cloning operation.");
+        }
+        
+        if(!connectionManager.isConnected(hostMachine)){
+            throw new ConnectionFailureException("Virtual machine cloning "
+                    + "operation failure: Virtual machine " + virtualMachine 
+                    + " cannot be cloned, because the physical machine "
+                    + hostMachine + " on which the virtual machine is found is "
+                    + "not connected.");
+        }
+    }
     
+    /**
+     * Disconnects the host machine when the asynchronous operation failed
+     * because of the connection problem.
+     * @param failure failure of the asynchronous operation
+     */
+    private void disconnectOnConnectionFailure(Throwable failure, ConnectionManager connectionManager){
+        Throwable cause = (failure instanceof CompletionException ? failure.getCause() : failure);
+        if(cause instanceof ConnectionFailureException){
+            try{
+                connectionManager.disconnectFrom(hostMachine);
+            }catch(RuntimeException ex){
+                //the future is completed with the original connection failure anyway
+            }
+        }
+    }
+    
+    private void checkExecutorIsNull(Executor executor, String operation){
+        if(executor == null){
+            throw new IllegalArgumentException("A null executor used for " + operation);
+        }
+    }
+
     private void setOutputStreams(PrintStream printStream){
         setOutputStreams(printStream, printStream);
     }
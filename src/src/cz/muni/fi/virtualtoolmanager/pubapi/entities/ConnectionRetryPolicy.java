@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.pubapi.entities;
+
+/**
+ * <div>
+ * Class that represents the policy of repeating the unsuccessful connection
+ * establishment attempts with a physical machine.
+ * </div>
+ * <div>
+ * <p>
+ * The waiting time before the n-th attempt (n &gt; 1) is computed as
+ * <code>initialDelay * backoffMultiplier^(n-2)</code>, but it is never longer
+ * than <code>maxDelay</code>. The computed waiting time is then randomly
+ * shortened or prolonged by at most <code>jitter</code> fraction of it, so that
+ * the physical machines, which were disconnected at the same moment, are not
+ * reconnected all at the same moment again.
+ * <p>
+ * For initializing an object of type this class there is used Builder pattern
+ * for easier usability and readibility the client code if this class is used.
+ * </div>
+ *
+ * @see cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager
+ * @see cz.muni.fi.virtualtoolmanager.logicimpl.ConnectionManagerImpl
+ *
+ * @author Tomáš Šmíd
+ */
+public final class ConnectionRetryPolicy {
+    /** Represents the maximum number of connection establishment attempts */
+    private final int maxAttempts;
+    /** Represents the waiting time in milliseconds before the second attempt */
+    private final long initialDelay;
+    /** Represents the multiplier of waiting time for each following attempt */
+    private final double backoffMultiplier;
+    /** Represents the maximum waiting time in milliseconds between two attempts */
+    private final long maxDelay;
+    /** Represents the fraction of waiting time by which can be the waiting
+     * time randomly shortened or prolonged */
+    private final double jitter;
+
+    /**
+     * Class that represents a key part of so called Builder pattern. Static class
+     * <code>Builder</code> is used only for more transparent, easier and faster set
+     * up of {@link cz.muni.fi.virtualtoolmanager.pubapi.entities.ConnectionRetryPolicy
+     * ConnectionRetryPolicy} attributes.
+     */
+    public static class Builder {
+        /** maximum number of attempts, optional - default value set up to 3 */
+        private int maxAttempts = 3;
+        /** waiting time before the second attempt, optional - default value set up to 2000 ms */
+        private long initialDelay = 2000L;
+        /** multiplier of waiting time, optional - default value set up to 2.0 */
+        private double backoffMultiplier = 2.0;
+        /** maximum waiting time, optional - default value set up to 30000 ms */
+        private long maxDelay = 30000L;
+        /** random fraction of waiting time, optional - default value set up to 0.2 */
+        private double jitter = 0.2;
+
+        /**
+         * Sets the maximum number of connection establishment attempts.
+         * @param value maximum number of attempts, must be positive
+         * @return instance of actual Builder class for more compact and dynamic
+         * building class
+         */
+        public Builder maxAttempts(int value){
+            if(value < 1){
+                throw new IllegalArgumentException("The maximum number of "
+                        + "connection attempts must be a positive number.");
+            }
+            maxAttempts = value;
+            return this;
+        }
+
+        /**
+         * Sets the waiting time before the second connection establishment attempt.
+         * @param value waiting time in milliseconds, must not be negative
+         * @return instance of actual Builder class for more compact and dynamic
+         * building class
+         */
+        public Builder initialDelay(long value){
+            if(value < 0){
+                throw new IllegalArgumentException("The waiting time between "
+                        + "connection attempts must not be negative.");
+            }
+            initialDelay = value;
+            return this;
+        }
+
+        /**
+         * Sets the multiplier of waiting time for each following attempt.
+         * @param value multiplier, must be at least 1.0
+         * @return instance of actual Builder class for more compact and dynamic
+         * building class
+         */
+        public Builder backoffMultiplier(double value){
+            if(value < 1.0){
+                throw new IllegalArgumentException("The backoff multiplier "
+                        + "must be at least 1.0.");
+            }
+            backoffMultiplier = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum waiting time between two connection establishment attempts.
+         * @param value maximum waiting time in milliseconds, must not be negative
+         * @return instance of actual Builder class for more compact and dynamic
+         * building class
+         */
+        public Builder maxDelay(long value){
+            if(value < 0){
+                throw new IllegalArgumentException("The maximum waiting time "
+                        + "between connection attempts must not be negative.");
+            }
+            maxDelay = value;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of waiting time by which can be the waiting time
+         * randomly shortened or prolonged.
+         * @param value fraction from the interval [0.0, 1.0], value 0.0 means
+         * no randomization
+         * @return instance of actual Builder class for more compact and dynamic
+         * building class
+         */
+        public Builder jitter(double value){
+            if(value < 0.0 || value > 1.0){
+                throw new IllegalArgumentException("The jitter must be "
+                        + "from the interval [0.0, 1.0].");
+            }
+            jitter = value;
+            return this;
+        }
+
+        /**
+         * Creates new connection retry policy with values of attributes set up by
+         * Builder class.
+         * @return new connection retry policy
+         */
+        public ConnectionRetryPolicy build(){
+            return new ConnectionRetryPolicy(this);
+        }
+    }
+
+    private ConnectionRetryPolicy(Builder builder){
+        this.maxAttempts = builder.maxAttempts;
+        this.initialDelay = builder.initialDelay;
+        this.backoffMultiplier = builder.backoffMultiplier;
+        this.maxDelay = builder.maxDelay;
+        this.jitter = builder.jitter;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    public double getBackoffMultiplier() {
+        return backoffMultiplier;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Gets the waiting time (without the random part) before the required
+     * connection establishment attempt.
+     * @param attempt order of the attempt, the first attempt has number 1
+     * @return waiting time in milliseconds, 0 for the first attempt
+     */
+    public long getDelayBeforeAttempt(int attempt){
+        if(attempt <= 1){
+            return 0L;
+        }
+        double delay = initialDelay * Math.pow(backoffMultiplier, attempt - 2);
+        return (delay >= maxDelay ? maxDelay : (long) delay);
+    }
+
+    /**
+     * Method is used to print information about this policy to string.
+     * @return string in form <code>"[Connection retry policy: maxAttempts=&lt;maxAttempts&gt;,
+     * initialDelay=&lt;initialDelay&gt;, backoffMultiplier=&lt;backoffMultiplier&gt;,
+     * maxDelay=&lt;maxDelay&gt;, jitter=&lt;jitter&gt;]"</code>
+     */
+    @Override
+    public String toString(){
+        return "[" + "Connection retry policy: maxAttempts=" + maxAttempts
+               + ", initialDelay=" + initialDelay + ", backoffMultiplier="
+               + backoffMultiplier + ", maxDelay=" + maxDelay + ", jitter="
+               + jitter + "]";
+    }
+}
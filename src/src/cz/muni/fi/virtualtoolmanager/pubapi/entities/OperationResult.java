@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.pubapi.entities;
+
+/**
+ * <div>
+ * Class that represents the outcome of one operation which was performed as
+ * a part of a bulk operation (e.g. connection of one physical machine within
+ * the connection of more physical machines at once).
+ * </div>
+ * <div>
+ * Each result holds the subject of the operation (e.g. physical machine which
+ * was being connected) and either the result of the successful operation or
+ * the exception which caused the operation failure.
+ * </div>
+ *
+ * @param <S> type of subject of the operation
+ * @param <R> type of result of the successful operation
+ *
+ * @see cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager
+ *
+ * @author Tomáš Šmíd
+ */
+public final class OperationResult<S, R> {
+    /** Represents the subject of the operation */
+    private final S subject;
+    /** Represents the result of the operation, null if the operation failed */
+    private final R result;
+    /** Represents the exception which caused the operation failure, null if
+     * the operation finished successfully */
+    private final RuntimeException failure;
+
+    private OperationResult(S subject, R result, RuntimeException failure){
+        this.subject = subject;
+        this.result = result;
+        this.failure = failure;
+    }
+
+    /**
+     * Creates the outcome of the successfully finished operation.
+     * @param <S> type of subject of the operation
+     * @param <R> type of result of the operation
+     * @param subject subject of the operation
+     * @param result result of the operation
+     * @return new operation result
+     */
+    public static <S, R> OperationResult<S, R> success(S subject, R result){
+        return new OperationResult<>(subject, result, null);
+    }
+
+    /**
+     * Creates the outcome of the failed operation.
+     * @param <S> type of subject of the operation
+     * @param <R> type of result of the operation
+     * @param subject subject of the operation
+     * @param failure exception which caused the operation failure
+     * @return new operation result
+     */
+    public static <S, R> OperationResult<S, R> failure(S subject, RuntimeException failure){
+        if(failure == null){
+            throw new IllegalArgumentException("A null exception used for "
+                    + "the failed operation result.");
+        }
+        return new OperationResult<>(subject, null, failure);
+    }
+
+    public S getSubject() {
+        return subject;
+    }
+
+    public R getResult() {
+        return result;
+    }
+
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Checks the operation finished successfully.
+     * @return <code>true</code> if the operation finished successfully,
+     * <code>false</code> otherwise
+     */
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+
+    /**
+     * Method is used to print information about this operation result to string.
+     * @return string in form <code>"[Operation result: subject=&lt;subject&gt;,
+     * result=&lt;result&gt;]"</code> or <code>"[Operation result: subject=&lt;subject&gt;,
+     * failure=&lt;failure&gt;]"</code>
+     */
+    @Override
+    public String toString(){
+        return "[" + "Operation result: subject=" + subject
+               + (isSuccessful() ? ", result=" + result : ", failure=" + failure) + "]";
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.pubapi.entities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <div>
+ * Class that represents the outcome of the search operation over all connected
+ * physical machines.
+ * </div>
+ * <div>
+ * Each result holds the matched virtual machines from the physical machines
+ * which responded in time and the failed result for each physical machine
+ * whose virtual machines could not be retrieved before the deadline or at all,
+ * so the result can be partial.
+ * </div>
+ *
+ * @see cz.muni.fi.virtualtoolmanager.pubapi.managers.SearchManager
+ *
+ * @author Tomáš Šmíd
+ */
+public final class SearchResult {
+    /** Represents the matched virtual machines */
+    private final List<VirtualMachine> virtualMachines;
+    /** Represents the physical machines which were not searched and the reasons */
+    private final List<OperationResult<PhysicalMachine, Void>> failures;
+
+    /**
+     * Creates the outcome of the search operation.
+     * @param virtualMachines matched virtual machines
+     * @param failures failed results of the physical machines which were not
+     * searched
+     */
+    public SearchResult(List<VirtualMachine> virtualMachines,
+            List<OperationResult<PhysicalMachine, Void>> failures){
+        if(virtualMachines == null || failures == null){
+            throw new IllegalArgumentException("A null list of virtual machines "
+                    + "or failures used for the search result.");
+        }
+        this.virtualMachines = Collections.unmodifiableList(new ArrayList<>(virtualMachines));
+        this.failures = Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    public List<VirtualMachine> getVirtualMachines() {
+        return virtualMachines;
+    }
+
+    public List<OperationResult<PhysicalMachine, Void>> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Gets the physical machines whose virtual machines were not searched.
+     * @return list of physical machines which timed out or failed
+     */
+    public List<PhysicalMachine> getFailedPhysicalMachines() {
+        List<PhysicalMachine> physicalMachines = new ArrayList<>(failures.size());
+        for(OperationResult<PhysicalMachine, Void> failure : failures){
+            physicalMachines.add(failure.getSubject());
+        }
+        return physicalMachines;
+    }
+
+    /**
+     * Checks the virtual machines of all connected physical machines were searched.
+     * @return <code>true</code> if there is no failed physical machine,
+     * <code>false</code> otherwise
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * Method is used to print information about this search result to string.
+     * @return string in form <code>"[Search result: virtualMachines=&lt;count&gt;,
+     * failedPhysicalMachines=&lt;physical machines&gt;]"</code>
+     */
+    @Override
+    public String toString(){
+        return "[" + "Search result: virtualMachines=" + virtualMachines.size()
+               + ", failedPhysicalMachines=" + getFailedPhysicalMachines() + "]";
+    }
+}
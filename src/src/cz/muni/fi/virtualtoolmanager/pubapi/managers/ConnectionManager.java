@@ -15,9 +15,16 @@
  */
 package cz.muni.fi.virtualtoolmanager.pubapi.managers;
 
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.ConnectionRetryPolicy;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.ClosingActionType;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.HostHealthState;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <div>
@@ -80,6 +87,91 @@ public interface ConnectionManager {
      */
     public VirtualizationToolManager connectTo(PhysicalMachine physicalMachine, long millis);
     
+    /**
+     * <div>
+     * Method that is same as {@link #connectTo(PhysicalMachine)}, but it does
+     * not block the calling thread. The connection is established in the
+     * background and the result is provided by the returned future.
+     * </div>
+     * <div>
+     * The unsuccessful connection establishment attempts are repeated according
+     * to the default connection retry policy
+     * (see {@link cz.muni.fi.virtualtoolmanager.pubapi.entities.ConnectionRetryPolicy.Builder
+     * ConnectionRetryPolicy.Builder}).
+     * </div>
+     * @param physicalMachine represents host machine which is going to get connected
+     * @return future which is completed with the manager of type
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager
+     * VirtualizationToolManager} for managing virtual machines on the newly
+     * connected physical machine or completed exceptionally when the physical
+     * machine cannot be connected
+     */
+    public CompletableFuture<VirtualizationToolManager> connectToAsync(PhysicalMachine physicalMachine);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #connectToAsync(PhysicalMachine)}, but with
+     * this method is possible to define the number of connection establishment
+     * attempts and the waiting time between them.
+     * </div>
+     * @param physicalMachine represents host machine which is going to get connected
+     * @param retryPolicy represents the policy determining the number of attempts
+     * and waiting time between each unsuccessful connection establishment attempt
+     * @return future which is completed with the manager of type
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager
+     * VirtualizationToolManager} for managing virtual machines on the newly
+     * connected physical machine or completed exceptionally when the physical
+     * machine cannot be connected
+     */
+    public CompletableFuture<VirtualizationToolManager> connectToAsync(PhysicalMachine physicalMachine,
+            ConnectionRetryPolicy retryPolicy);
+    
+    /**
+     * <div>
+     * Method that ensures the connection establishment with more physical
+     * machines at once. The physical machines are connected in parallel, so
+     * the whole operation takes about the same time as the connection of
+     * the slowest physical machine (if the number of physical machines is not
+     * greater than the maximum number of parallel connections).
+     * </div>
+     * <div>
+     * The failure of one physical machine connection does not affect the others,
+     * the outcome of each connection operation is reported separately.
+     * The unsuccessful connection establishment attempts are repeated according
+     * to the default connection retry policy.
+     * </div>
+     * @param physicalMachines represents host machines which are going to get connected
+     * @return list of connection results in the same order as the physical
+     * machines were given, each successful result holds the manager of type
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager
+     * VirtualizationToolManager}, each failed result holds the exception of type
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException
+     * ConnectionFailureException} or
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.IncompatibleVirtToolAPIVersionException
+     * IncompatibleVirtToolAPIVersionException}
+     */
+    public List<OperationResult<PhysicalMachine, VirtualizationToolManager>> connectToAll(
+            Collection<PhysicalMachine> physicalMachines);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #connectToAll(Collection)}, but with this
+     * method is possible to define the maximum number of physical machines
+     * which are being connected at the same moment and the policy of repeating
+     * the unsuccessful connection establishment attempts.
+     * </div>
+     * @param physicalMachines represents host machines which are going to get connected
+     * @param maxParallelConnections maximum number of physical machines being
+     * connected at the same moment
+     * @param retryPolicy represents the policy determining the number of attempts
+     * and waiting time between each unsuccessful connection establishment attempt
+     * @return list of connection results in the same order as the physical
+     * machines were given
+     */
+    public List<OperationResult<PhysicalMachine, VirtualizationToolManager>> connectToAll(
+            Collection<PhysicalMachine> physicalMachines, int maxParallelConnections,
+            ConnectionRetryPolicy retryPolicy);
+    
     /**
      * <div>
      * Method that ensures the disconnection of a particular physical machine.
@@ -116,16 +208,94 @@ public interface ConnectionManager {
      * <code>false</code> otherwise
      */
     public boolean isConnected(PhysicalMachine physicalMachine);
-    
+
+    /**
+     * <div>
+     * Method that gets the health state of the connected physical machine.
+     * </div>
+     * <div>
+     * The health of each connected physical machine is periodically checked
+     * in the background by a cheap heartbeat request. The physical machine
+     * which did not respond to more heartbeats in a row is considered to be
+     * down and the operations with it fail immediately instead of waiting for
+     * the connection timeout, until the physical machine responds again.
+     * </div>
+     * @param physicalMachine represents the queried physical machine
+     * @return health state of the physical machine found out by the last heartbeats
+     */
+    public HostHealthState getHostHealthState(PhysicalMachine physicalMachine);
+
+    /**
+     * <div>
+     * Method that gets the round-trip time of the last successful heartbeat
+     * with the connected physical machine.
+     * </div>
+     * @param physicalMachine represents the queried physical machine
+     * @return round-trip time in milliseconds, -1 if there has not been any
+     * successful heartbeat yet
+     */
+    public long getHostLatency(PhysicalMachine physicalMachine);
+
     /**
      * <div>
      * Method that gets all the connected physical machines at the moment of the
      * method call.
      * </div>
+     * <div>
+     * The returned list is an unmodifiable snapshot of the connected physical
+     * machines, so it can be safely iterated even if the other threads connect
+     * or disconnect physical machines at the same moment.
+     * </div>
      * @return list of all the connected physical machines
      */
     public List<PhysicalMachine> getConnectedPhysicalMachines();
     
+    /**
+     * <div>
+     * Method that saves the virtual machines of all connected physical machines
+     * to the snapshot file, so they can be loaded after the restart of application
+     * by the method {@link #loadInventorySnapshot(Path)}. The user passwords
+     * of physical machines are not saved.
+     * </div>
+     * @param snapshotFile represents the file to which the virtual machines are
+     * saved, its original content is replaced
+     * @return number of physical machines whose virtual machines were saved
+     */
+    public int saveInventorySnapshot(Path snapshotFile);
+    
+    /**
+     * <div>
+     * Method that loads the virtual machines saved by the method
+     * {@link #saveInventorySnapshot(Path)}. Until the virtual machines of
+     * a connected physical machine are retrieved from the physical machine for
+     * the first time, the loaded ones are returned immediately as stale (see
+     * {@link VirtualizationToolManager#isInventoryStale()
+     * VirtualizationToolManager::isInventoryStale()}) and the actual ones are
+     * retrieved in the background. The snapshot which is older than 1 day
+     * is not loaded.
+     * </div>
+     * @param snapshotFile represents the file from which the virtual machines
+     * are loaded
+     * @return number of physical machines whose virtual machines were loaded,
+     * 0 if the file does not exist or it is too old
+     */
+    public int loadInventorySnapshot(Path snapshotFile);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #loadInventorySnapshot(Path)}, but
+     * the snapshot is not loaded if it was saved earlier than the given
+     * maximum age ago.
+     * </div>
+     * @param snapshotFile represents the file from which the virtual machines
+     * are loaded
+     * @param maxAge represents the maximum age of the snapshot in milliseconds,
+     * 0 means the snapshot of any age is loaded
+     * @return number of physical machines whose virtual machines were loaded,
+     * 0 if the file does not exist or it is too old
+     */
+    public int loadInventorySnapshot(Path snapshotFile, long maxAge);
+    
     /**
      * <div>
      * Method that ensures the termination of the code, respectively after this method
@@ -134,4 +304,35 @@ public interface ConnectionManager {
      * </div>
      */
     public void close();
+
+    /**
+     * <div>
+     * Method that is same as {@link #close()}, but with this method is possible
+     * to define how many physical machines and how many virtual machines of one
+     * physical machine are processed in parallel and the time limit of the whole
+     * operation. The failure of one physical machine or one virtual machine does
+     * not affect the others, the outcome of each one is reported separately.
+     * </div>
+     * <div>
+     * The physical machines and virtual machines which are not finished before
+     * the timeout elapses are reported as failed with the exception of type
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.OperationTimeoutException
+     * OperationTimeoutException}. The physical machines whose disconnection has
+     * not been started before the timeout elapses are disconnected without shutting
+     * down their virtual machines, the physical machines which are being
+     * disconnected at that moment are left to finish the disconnection in the background.
+     * </div>
+     * @param maxParallelDisconnections maximum number of physical machines which
+     * are being disconnected at the same moment
+     * @param maxParallelShutdowns maximum number of virtual machines of one physical
+     * machine which are being shut down at the same moment
+     * @param timeout time in milliseconds after which the operation is finished,
+     * 0 means there is no time limit
+     * @return list of disconnection results of physical machines, each successful
+     * result holds the list of results of particular virtual machines (see
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager#close(int, long)
+     * VirtualizationToolManager::close(int, long)})
+     */
+    public List<OperationResult<PhysicalMachine, List<OperationResult<VirtualMachine, String>>>> close(
+            int maxParallelDisconnections, int maxParallelShutdowns, long timeout);
 }
@@ -16,10 +16,14 @@
 package cz.muni.fi.virtualtoolmanager.pubapi.managers;
 
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.SearchCriteria;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.SearchResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchMode;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * <div>
@@ -56,4 +60,89 @@ public interface SearchManager {
      */
     public List<VirtualMachine> search(SearchCriteria searchCriteria, SearchMode mode,
                                        List<SearchCriterionType> searchOrder);
+    
+    /**
+     * <div>
+     * Method that searches the virtual machines the same way as the method
+     * {@link #search(SearchCriteria, SearchMode, List)}, but the virtual
+     * machines of all connected physical machines are retrieved at the same
+     * time and there is waited for each physical machine at most the given time.
+     * </div>
+     * <div>
+     * The physical machines which do not respond in time or whose virtual
+     * machines cannot be retrieved are reported in the result, the virtual
+     * machines of the others are searched anyway.
+     * </div>
+     * @param searchCriteria represents the virtual machine properties which are
+     * required for the searched virtual machine
+     * @param mode specifies how precise the searching operation is
+     * @param searchOrder represents the priority of each search criterion
+     * @param hostTimeout time in milliseconds after which there is not waited
+     * for the virtual machines of physical machine anymore, 0 means there is
+     * waited until all the virtual machines are retrieved
+     * @return matched virtual machines and the physical machines which were
+     * not searched
+     */
+    public SearchResult search(SearchCriteria searchCriteria, SearchMode mode,
+                               List<SearchCriterionType> searchOrder, long hostTimeout);
+    
+    /**
+     * <div>
+     * Method that searches the virtual machines the same way as the method
+     * {@link #search(SearchCriteria, SearchMode, List, long)}, but it does not
+     * wait for the result. The matched virtual machines of each physical machine
+     * are given to the consumer as soon as the virtual machines of that physical
+     * machine are retrieved and filtered, so the first matches can be used
+     * before all physical machines respond.
+     * </div>
+     * <div>
+     * The consumer is never called by more threads at the same time and it is
+     * never called after the returned future is completed. In the tolerant mode
+     * the search criteria are evaluated for the virtual machines of each physical
+     * machine separately.
+     * </div>
+     * @param searchCriteria represents the virtual machine properties which are
+     * required for the searched virtual machine
+     * @param mode specifies how precise the searching operation is
+     * @param searchOrder represents the priority of each search criterion
+     * @param hostTimeout time in milliseconds after which there is not waited
+     * for the virtual machines of physical machine anymore, 0 means there is
+     * waited until all the virtual machines are retrieved
+     * @param matchConsumer consumer of the matched virtual machines
+     * @return future which is completed with all the matched virtual machines
+     * and the physical machines which were not searched, when all physical
+     * machines are searched or timed out
+     */
+    public CompletableFuture<SearchResult> searchAsync(SearchCriteria searchCriteria, SearchMode mode,
+            List<SearchCriterionType> searchOrder, long hostTimeout,
+            Consumer<VirtualMachine> matchConsumer);
+    
+    /**
+     * <div>
+     * Method that finds the virtual machine with the given id on any of
+     * the connected physical machines.
+     * </div>
+     * <div>
+     * The physical machine which owns the virtual machine is looked up in
+     * the directory of known virtual machines first, so there are not retrieved
+     * all virtual machines of all physical machines.
+     * </div>
+     * @param id represents the id of the searched virtual machine
+     * @return found virtual machine, <code>null</code> if there is no such
+     * virtual machine on any connected physical machine
+     */
+    public VirtualMachine findAnywhere(UUID id);
+    
+    /**
+     * <div>
+     * Method that finds the virtual machine with the given name on any of
+     * the connected physical machines the same way as the method
+     * {@link #findAnywhere(UUID)}. If there are more virtual machines with
+     * the same name, then any of them is returned.
+     * </div>
+     * @param name represents the name of the searched virtual machine
+     * @return found virtual machine, <code>null</code> if there is no such
+     * virtual machine on any connected physical machine
+     */
+    public VirtualMachine findAnywhere(String name);
 }
@@ -15,10 +15,17 @@
  */
 package cz.muni.fi.virtualtoolmanager.pubapi.managers;
 
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PortRule;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.FrontEndType;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * <div>
@@ -59,6 +66,140 @@ public interface VirtualMachineManager {
      */
     public void shutDownVM(VirtualMachine virtualMachine);
     
+    /**
+     * <div>
+     * Method that is same as {@link #startVM(VirtualMachine, FrontEndType)},
+     * but it does not block the calling thread. The short remote calls which
+     * launch the virtual machine are performed by the thread of the shared pool
+     * for virtual machine operations, no thread is held while the virtual
+     * machine is being started.
+     * </div>
+     * @param virtualMachine represents the virtual machine which is going to
+     * be started
+     * @param frontEndType represents the front-end type used for the virtual
+     * machine
+     * @return future which is completed when the virtual machine is running,
+     * or completed exceptionally with the exception which would be thrown by
+     * the method {@link #startVM(VirtualMachine, FrontEndType)}
+     */
+    public CompletableFuture<Void> startVMAsync(VirtualMachine virtualMachine, FrontEndType frontEndType);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #startVMAsync(VirtualMachine, FrontEndType)},
+     * but the remote calls which launch the virtual machine are performed
+     * by the given executor.
+     * </div>
+     * @param virtualMachine represents the virtual machine which is going to
+     * be started
+     * @param frontEndType represents the front-end type used for the virtual
+     * machine
+     * @param executor represents the executor which launches the virtual machine
+     * @return future which is completed when the virtual machine is running
+     */
+    public CompletableFuture<Void> startVMAsync(VirtualMachine virtualMachine, FrontEndType frontEndType,
+                                                Executor executor);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #shutDownVM(VirtualMachine)}, but it does
+     * not block the calling thread. The short remote calls which power
+     * the virtual machine down are performed by the thread of the shared pool
+     * for virtual machine operations, no thread is held while the virtual
+     * machine is being shut down.
+     * </div>
+     * @param virtualMachine represents the virtual machine which is going to be
+     * shut down
+     * @return future which is completed when the virtual machine is powered off,
+     * or completed exceptionally with the exception which would be thrown by
+     * the method {@link #shutDownVM(VirtualMachine)}
+     */
+    public CompletableFuture<Void> shutDownVMAsync(VirtualMachine virtualMachine);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #shutDownVMAsync(VirtualMachine)}, but
+     * the remote calls which power the virtual machine down are performed
+     * by the given executor.
+     * </div>
+     * @param virtualMachine represents the virtual machine which is going to be
+     * shut down
+     * @param executor represents the executor which powers the virtual machine down
+     * @return future which is completed when the virtual machine is powered off
+     */
+    public CompletableFuture<Void> shutDownVMAsync(VirtualMachine virtualMachine, Executor executor);
+    
+    /**
+     * <div>
+     * Method that starts all the given virtual machines in the mode specified
+     * by the given front-end type.
+     * </div>
+     * <div>
+     * The virtual machines are grouped by their host machines, the host machines
+     * are processed in parallel and there is started just a limited number of
+     * virtual machines on one host machine at the same moment. The failure of
+     * one virtual machine start-up does not affect the others, the outcome of
+     * each virtual machine is reported separately.
+     * </div>
+     * @param virtualMachines represents the virtual machines which are going
+     * to be started
+     * @param frontEndType represents the front-end type used for the virtual
+     * machines
+     * @return list of results in the same order as the virtual machines were given
+     */
+    public List<OperationResult<VirtualMachine, Void>> startVMs(Collection<VirtualMachine> virtualMachines,
+                                                                FrontEndType frontEndType);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #startVMs(Collection, FrontEndType)}, but
+     * the number of virtual machines started on one host machine at the same
+     * moment is given.
+     * </div>
+     * @param virtualMachines represents the virtual machines which are going
+     * to be started
+     * @param frontEndType represents the front-end type used for the virtual
+     * machines
+     * @param maxParallelOperationsPerHost maximum number of virtual machines
+     * which are being started on one host machine at the same moment
+     * @return list of results in the same order as the virtual machines were given
+     */
+    public List<OperationResult<VirtualMachine, Void>> startVMs(Collection<VirtualMachine> virtualMachines,
+                                                                FrontEndType frontEndType,
+                                                                int maxParallelOperationsPerHost);
+    
+    /**
+     * <div>
+     * Method that shuts down all the given virtual machines.
+     * </div>
+     * <div>
+     * The virtual machines are grouped by their host machines, the host machines
+     * are processed in parallel and there is shut down just a limited number of
+     * virtual machines on one host machine at the same moment. The failure of
+     * one virtual machine shutdown does not affect the others, the outcome of
+     * each virtual machine is reported separately.
+     * </div>
+     * @param virtualMachines represents the virtual machines which are going
+     * to be shut down
+     * @return list of results in the same order as the virtual machines were given
+     */
+    public List<OperationResult<VirtualMachine, Void>> shutDownVMs(Collection<VirtualMachine> virtualMachines);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #shutDownVMs(Collection)}, but the number
+     * of virtual machines shut down on one host machine at the same moment
+     * is given.
+     * </div>
+     * @param virtualMachines represents the virtual machines which are going
+     * to be shut down
+     * @param maxParallelOperationsPerHost maximum number of virtual machines
+     * which are being shut down on one host machine at the same moment
+     * @return list of results in the same order as the virtual machines were given
+     */
+    public List<OperationResult<VirtualMachine, Void>> shutDownVMs(Collection<VirtualMachine> virtualMachines,
+                                                                   int maxParallelOperationsPerHost);
+    
     /**
      * <div>
      * Method that ensures the addition of a new port-forwarding rule to a single
@@ -128,4 +269,29 @@ public interface VirtualMachineManager {
      */
     public String getVMState(VirtualMachine virtualMachine);
     
+    /**
+     * <div>
+     * Method that gets the actual states of all virtual machines of a particular
+     * physical machine at once.
+     * </div>
+     * @param physicalMachine represents the physical machine whose virtual
+     * machines are queried
+     * @return map of virtual machine states as strings, the keys are the ids
+     * of virtual machines
+     */
+    public Map<UUID, String> getVMStates(PhysicalMachine physicalMachine);
+    
+    /**
+     * <div>
+     * Method that gets the actual states of the given virtual machines at once
+     * (one query for each of their host machines). The virtual machines which
+     * are not registered on their host machines are not present in the result.
+     * </div>
+     * @param virtualMachines represents the virtual machines whose states
+     * should be got
+     * @return map of virtual machine states as strings, the keys are the ids
+     * of virtual machines
+     */
+    public Map<UUID, String> getVMStates(Collection<VirtualMachine> virtualMachines);
+    
 }
@@ -15,10 +15,15 @@
  */
 package cz.muni.fi.virtualtoolmanager.pubapi.managers;
 
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.CloneType;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * <div>
@@ -86,6 +91,60 @@ public interface VirtualizationToolManager {
      */
     public List<VirtualMachine> getVirtualMachines();
     
+    /**
+     * <div>
+     * Method that is same as {@link #getVirtualMachines()}, but it is possible
+     * to require the virtual machines to be retrieved from the physical machine
+     * even if there are recently retrieved virtual machines cached.
+     * </div>
+     * @param bypassCache represents whether the cached virtual machines should
+     * be ignored and the fresh ones retrieved
+     * @return list of all registered virtual machines from a particular physical
+     * machine
+     */
+    public List<VirtualMachine> getVirtualMachines(boolean bypassCache);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #getVirtualMachines()}, but only the given
+     * attributes of virtual machines are required. The id and the name of
+     * virtual machine are always present, the other attributes which are not
+     * required can be <code>null</code>.
+     * </div>
+     * @param attributes represents the required attributes of virtual machines
+     * @return list of all registered virtual machines from a particular physical
+     * machine
+     */
+    public List<VirtualMachine> getVirtualMachines(Set<SearchCriterionType> attributes);
+    
+    /**
+     * <div>
+     * Method that sets the maximum number of virtual machines of a particular
+     * physical machine which are converted at once while the virtual machines
+     * are being retrieved by {@link #getVirtualMachines()} (each attribute
+     * of virtual machine is one call of VirtualBox web server). The default
+     * number is 8.
+     * </div>
+     * @param parallelism represents the positive number of virtual machines,
+     * 1 means the virtual machines are converted one after another, 0 means
+     * the default number is used again
+     */
+    public void setConversionParallelism(int parallelism);
+    
+    /**
+     * <div>
+     * Method that checks whether the virtual machines of a particular physical
+     * machine returned by {@link #getVirtualMachines()} are the last known ones
+     * loaded from the inventory snapshot (see
+     * {@link ConnectionManager#loadInventorySnapshot(java.nio.file.Path)
+     * ConnectionManager::loadInventorySnapshot(Path)}), which have not been
+     * replaced by the virtual machines retrieved from the physical machine yet.
+     * </div>
+     * @return <code>true</code> if the returned virtual machines can be stale,
+     * <code>false</code> otherwise
+     */
+    public boolean isInventoryStale();
+    
     /**
      * <div>
      * Method that ensures the complete virtual machine removal from the physical
@@ -96,6 +155,35 @@ public interface VirtualizationToolManager {
      */
     public void removeVirtualMachine(VirtualMachine virtualMachine);
     
+    /**
+     * <div>
+     * Method that is same as {@link #removeVirtualMachine(VirtualMachine)},
+     * but it does not block the calling thread. The remote calls which start
+     * the removal are performed by the thread of the shared pool for virtual
+     * machine operations, no thread is held while the files of the virtual
+     * machine are being deleted.
+     * </div>
+     * @param virtualMachine represents the virtual machine which is going to be
+     * removed
+     * @return future which is completed when the virtual machine is removed,
+     * or completed exceptionally with the exception which would be thrown by
+     * the method {@link #removeVirtualMachine(VirtualMachine)}
+     */
+    public CompletableFuture<Void> removeVirtualMachineAsync(VirtualMachine virtualMachine);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #removeVirtualMachineAsync(VirtualMachine)},
+     * but the remote calls which start the removal are performed by the given
+     * executor.
+     * </div>
+     * @param virtualMachine represents the virtual machine which is going to be
+     * removed
+     * @param executor represents the executor which starts the removal
+     * @return future which is completed when the virtual machine is removed
+     */
+    public CompletableFuture<Void> removeVirtualMachineAsync(VirtualMachine virtualMachine, Executor executor);
+    
     /**
      * <div>
      * Method that creates the virtual machine clone from the given virtual
@@ -107,6 +195,37 @@ public interface VirtualizationToolManager {
      */
     public VirtualMachine cloneVirtualMachine(VirtualMachine virtualMachine, CloneType type);
     
+    /**
+     * <div>
+     * Method that is same as {@link #cloneVirtualMachine(VirtualMachine, CloneType)},
+     * but it does not block the calling thread. The remote calls which start
+     * the cloning and register the clone are performed by the thread of
+     * the shared pool for virtual machine operations, no thread is held while
+     * the clone is being created.
+     * </div>
+     * @param virtualMachine represents the virtual machine which will be cloned
+     * @param type represents the type of clone
+     * @return future which is completed with the newly created virtual machine
+     * clone, or completed exceptionally with the exception which would be thrown
+     * by the method {@link #cloneVirtualMachine(VirtualMachine, CloneType)}
+     */
+    public CompletableFuture<VirtualMachine> cloneVirtualMachineAsync(VirtualMachine virtualMachine, CloneType type);
+    
+    /**
+     * <div>
+     * Method that is same as {@link #cloneVirtualMachineAsync(VirtualMachine, CloneType)},
+     * but the remote calls which start the cloning and register the clone are
+     * performed by the given executor.
+     * </div>
+     * @param virtualMachine represents the virtual machine which will be cloned
+     * @param type represents the type of clone
+     * @param executor represents the executor which starts the cloning and
+     * registers the clone
+     * @return future which is completed with the newly created virtual machine clone
+     */
+    public CompletableFuture<VirtualMachine> cloneVirtualMachineAsync(VirtualMachine virtualMachine, CloneType type,
+                                                                      Executor executor);
+    
     /**
      * <div>
      * Method that ensures all running virtual machines on a particular physical
@@ -119,4 +238,29 @@ public interface VirtualizationToolManager {
      * </div>
      */
     public void close();
+
+    /**
+     * <div>
+     * Method that is same as {@link #close()}, but the virtual machines are shut
+     * down in parallel and the failure of one virtual machine shut down does
+     * not affect the others, the outcome of each virtual machine is reported
+     * separately.
+     * </div>
+     * <div>
+     * The virtual machines which are not finished before the timeout elapses
+     * are reported as failed with the exception of type
+     * {@link cz.muni.fi.virtualtoolmanager.pubapi.exceptions.OperationTimeoutException
+     * OperationTimeoutException} (the virtual machines which are being shut down
+     * at that moment are left to finish in the background).
+     * </div>
+     * @param maxParallelShutdowns maximum number of virtual machines which are
+     * being shut down at the same moment
+     * @param timeout time in milliseconds after which the operation is finished,
+     * 0 means there is no time limit
+     * @return list of results in the same order as the virtual machines are
+     * registered, each successful result holds the state of the virtual machine
+     * before the operation (only the virtual machines in state "Running", "Paused"
+     * or "Stuck" have been shut down)
+     */
+    public List<OperationResult<VirtualMachine, String>> close(int maxParallelShutdowns, long timeout);
 }
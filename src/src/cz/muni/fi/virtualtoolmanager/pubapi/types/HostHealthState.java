@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.pubapi.types;
+
+/**
+ * Enumeration class that is used for determining the health of a connected
+ * physical machine and its VirtualBox web server, as it was found out by
+ * the last heartbeats.
+ * 
+ * @see cz.muni.fi.virtualtoolmanager.pubapi.managers.ConnectionManager
+ * @see cz.muni.fi.virtualtoolmanager.logicimpl.ConnectionManagerImpl
+ * 
+ * @author Tomáš Šmíd
+ */
+public enum HostHealthState {
+    /** The VirtualBox web server responds in time */
+    HEALTHY,
+    /** The VirtualBox web server responds slowly or the last heartbeat
+     * failed, but the physical machine is not considered to be down yet */
+    DEGRADED,
+    /** The VirtualBox web server did not respond to more heartbeats in a row,
+     * the operations with its virtual machines fail immediately without
+     * waiting for the connection timeout */
+    DOWN
+}
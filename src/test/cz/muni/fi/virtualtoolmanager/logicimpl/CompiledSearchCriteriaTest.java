@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.SearchCriteria;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * This test class ensure unit testing of class CompiledSearchCriteria and
+ * is intended to be a pointer that class CompiledSearchCriteria works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+public class CompiledSearchCriteriaTest {
+
+    /**
+     * This test tests that the range of numeric criterion is computed from
+     * the required value and the maximum deviation.
+     */
+    @Test
+    public void compileNumericCriterion(){
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().sizeOfRAM(4096L).build();
+
+        CompiledSearchCriteria.Criterion criterion = CompiledSearchCriteria.compile(searchCriteria,
+                Arrays.asList(SearchCriterionType.RAM), 5).get(0);
+
+        assertTrue("RAM criterion should be numeric", criterion.isNumeric());
+        assertEquals("Lower bound should be the required value", 4096L, criterion.getLowerBound());
+        assertEquals("Upper bound should include the rounded deviation", 4301L, criterion.getUpperBound());
+    }
+}
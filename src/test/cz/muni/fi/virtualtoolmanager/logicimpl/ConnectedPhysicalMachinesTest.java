@@ -370,6 +370,94 @@ public class ConnectedPhysicalMachinesTest {
         assertListsEquals(expectedList, actualList);
     }
     
+    /**
+     * This test tests that if the method ConnectedPhysicalMachines::add() is
+     * called with a physical machine which is already connected, then this
+     * physical machine is not placed in the list of connected physical machines
+     * for the second time and the version of the list is not changed.
+     */
+    @Test
+    public void addAlreadyConnectedPhysicalMachine(){
+        //represents a physical machine which should be added twice
+        PhysicalMachine pm = new PMBuilder().build();
+        //physical machine pm is added to the list "physicalMachines" for after test cleanup
+        //and keeping the consistent environment for testing
+        physicalMachines.add(pm);
+        
+        sut.add(pm);
+        long version = sut.getVersion();
+        sut.add(pm);
+        
+        assertEquals("Physical machine " + pm.toString() + " should be in the list just once",
+                     1, sut.getConnectedPhysicalMachines().size());
+        assertEquals("Version should not be changed when the list is not changed", version, sut.getVersion());
+    }
+    
+    /**
+     * This test tests that the list returned by the method
+     * ConnectedPhysicalMachines::getConnectedPhysicalMachines() is an unmodifiable
+     * snapshot which is not affected by the following changes and the version
+     * of the list is changed with each change.
+     */
+    @Test
+    public void getConnectedPhysicalMachinesReturnsSnapshot(){
+        //represents the first of two connected physical machines
+        PhysicalMachine pm1 = new PMBuilder().build();
+        //represents the second of two connected physical machines 
+        PhysicalMachine pm2 = new PMBuilder().addressIP("10.0.0.10").build();
+        //physical machines are added to the list "physicalMachines" for after test cleanup
+        //and keeping the consistent environment for testing
+        physicalMachines.add(pm1);
+        physicalMachines.add(pm2);
+        
+        long version = sut.getVersion();
+        sut.add(pm1);
+        assertTrue("Version should be changed after physical machine addition", sut.getVersion() > version);
+        List<PhysicalMachine> snapshot = sut.getConnectedPhysicalMachines();
+        sut.add(pm2);
+        
+        assertEquals("Snapshot should not be affected by the following addition", 1, snapshot.size());
+        assertEquals("There should be two connected physical machines", 2, sut.getConnectedPhysicalMachines().size());
+        
+        exception.expect(UnsupportedOperationException.class);
+        snapshot.clear();
+    }
+    
+    /**
+     * This test tests that when more threads add the physical machines at the same
+     * moment, then no physical machine is lost.
+     */
+    @Test
+    public void addPhysicalMachinesConcurrently() throws Exception{
+        final int threadCount = 8;
+        final int pmsPerThread = 50;
+        Thread[] threads = new Thread[threadCount];
+        for(int t = 0; t < threadCount; ++t){
+            final int threadNumber = t;
+            threads[t] = new Thread(new Runnable(){
+                @Override
+                public void run(){
+                    for(int i = 0; i < pmsPerThread; ++i){
+                        sut.add(new PMBuilder().addressIP("10.0." + threadNumber + "." + i).build());
+                    }
+                }
+            });
+        }
+        for(int t = 0; t < threadCount; ++t){
+            //physical machines are added to the list "physicalMachines" for after test cleanup
+            for(int i = 0; i < pmsPerThread; ++i){
+                physicalMachines.add(new PMBuilder().addressIP("10.0." + t + "." + i).build());
+            }
+            threads[t].start();
+        }
+        for(Thread thread : threads){
+            thread.join();
+        }
+        
+        assertEquals("All physical machines should be connected", threadCount * pmsPerThread,
+                     sut.getConnectedPhysicalMachines().size());
+    }
+    
     private void assertListsEquals(List<PhysicalMachine> expList, List<PhysicalMachine> actList){
         assertEquals("Size of both lists should be same",expList.size(),actList.size());
         for(int i = 0; i < expList.size(); ++i){
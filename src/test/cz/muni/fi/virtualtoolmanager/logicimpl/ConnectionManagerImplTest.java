@@ -16,7 +16,10 @@
 package cz.muni.fi.virtualtoolmanager.logicimpl;
 
 import cz.muni.fi.virtualtoolmanager.pubapi.io.OutputHandler;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.ConnectionRetryPolicy;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.IncompatibleVirtToolAPIVersionException;
 import cz.muni.fi.virtualtoolmanager.pubapi.managers.VirtualizationToolManager;
@@ -26,6 +29,9 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -34,6 +40,7 @@ import org.junit.Rule;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -390,6 +397,125 @@ public class ConnectionManagerImplTest {
         verify(natAPIConMock, times(1)).connectTo(pm);
     }
     
+    /**
+     * This test tests that the method ConnectionManagerImpl::connectToAsync()
+     * returns a future which is completed with the object of type
+     * VirtualizationToolManager when the physical machine is connected successfully
+     * and the physical machine is placed in the list of connected physical machines.
+     */
+    @Test
+    public void connectToAsyncValidNotConnectedPhysicalMachine() throws Exception {
+        //represents a not connected physical machine which should be connected
+        PhysicalMachine pm = new PMBuilder().build();
+        
+        //this step ensures that the neccessary steps for physical machine connection are to be performed
+        when(conPhysMachMock.isConnected(pm)).thenReturn(false);
+        
+        CompletableFuture<VirtualizationToolManager> future = sut.connectToAsync(pm);
+        VirtualizationToolManager vtm = future.get(5, TimeUnit.SECONDS);
+        
+        assertNotNull("There should has been returned non-null object of type VirtualizationToolManager", vtm);
+        verify(natAPIConMock).connectTo(pm);
+        verify(conPhysMachMock).add(pm);
+    }
+    
+    /**
+     * This test tests that the method ConnectionManagerImpl::connectToAsync()
+     * makes just the number of attempts specified by the retry policy and when
+     * all of them fail, then the returned future is completed exceptionally with
+     * ConnectionFailureException and the physical machine is not connected.
+     */
+    @Test
+    public void connectToAsyncWithExhaustedAttempts() throws Exception {
+        //represents a physical machine with which there cannot be the connection established
+        PhysicalMachine pm = new PMBuilder().build();
+        //retry policy with short waiting times for faster testing
+        ConnectionRetryPolicy retryPolicy = new ConnectionRetryPolicy.Builder().maxAttempts(4)
+                .initialDelay(10L).backoffMultiplier(2.0).maxDelay(20L).build();
+        
+        //this step ensures that the neccessary steps for physical machine connection are to be performed
+        when(conPhysMachMock.isConnected(pm)).thenReturn(false);
+        //each connection attempt is unsuccessful
+        doThrow(new ConnectionFailureException()).when(natAPIConMock).connectTo(pm);
+        
+        CompletableFuture<VirtualizationToolManager> future = sut.connectToAsync(pm, retryPolicy);
+        try{
+            future.get(5, TimeUnit.SECONDS);
+            fail("The future should has been completed exceptionally");
+        }catch(ExecutionException ex){
+            assertTrue("The future should has been completed with ConnectionFailureException",
+                       ex.getCause() instanceof ConnectionFailureException);
+        }
+        
+        //checks there were made exactly 4 attempts and the physical machine was not connected
+        verify(natAPIConMock, times(4)).connectTo(pm);
+        verify(conPhysMachMock, never()).add(pm);
+    }
+    
+    /**
+     * This test tests that there is invoked IllegalArgumentException when
+     * the method ConnectionManagerImpl::connectToAsync() is called with a null
+     * retry policy.
+     */
+    @Test
+    public void connectToAsyncWithNullRetryPolicy(){
+        //represents a physical machine which should be connected
+        PhysicalMachine pm = new PMBuilder().build();
+        
+        exception.expect(IllegalArgumentException.class);
+        sut.connectToAsync(pm, null);
+    }
+    
+    /**
+     * This test tests that the method ConnectionManagerImpl::connectToAll()
+     * connects all given physical machines and the results are returned in
+     * the same order as the physical machines were given, even though one of
+     * the physical machines cannot be connected.
+     */
+    @Test
+    public void connectToAllWithOneIncompatiblePhysicalMachine(){
+        //represents physical machines which should be connected
+        PhysicalMachine pm1 = new PMBuilder().build();
+        PhysicalMachine pm2 = new PMBuilder().addressIP("10.0.0.2").build();
+        PhysicalMachine pm3 = new PMBuilder().addressIP("10.0.0.3").build();
+        //physical machine pm2 has an incorrect VirtualBox API version
+        doThrow(new IncompatibleVirtToolAPIVersionException()).when(natAPIConMock).connectTo(pm2);
+        
+        List<OperationResult<PhysicalMachine, VirtualizationToolManager>> results =
+                sut.connectToAll(Arrays.asList(pm1, pm2, pm3), 2, new ConnectionRetryPolicy.Builder().build());
+        
+        assertEquals("There should be returned the result for each physical machine", 3, results.size());
+        assertEquals("Results should be in the same order as physical machines", pm1, results.get(0).getSubject());
+        assertEquals("Results should be in the same order as physical machines", pm2, results.get(1).getSubject());
+        assertEquals("Results should be in the same order as physical machines", pm3, results.get(2).getSubject());
+        assertTrue("Physical machine " + pm1 + " should be connected", results.get(0).isSuccessful());
+        assertNotNull("There should be returned a manager for physical machine " + pm1, results.get(0).getResult());
+        assertFalse("Physical machine " + pm2 + " should not be connected", results.get(1).isSuccessful());
+        assertTrue("There should be reported IncompatibleVirtToolAPIVersionException",
+                   results.get(1).getFailure() instanceof IncompatibleVirtToolAPIVersionException);
+        assertTrue("Physical machine " + pm3 + " should be connected", results.get(2).isSuccessful());
+        
+        verify(conPhysMachMock).add(pm1);
+        verify(conPhysMachMock, never()).add(pm2);
+        verify(conPhysMachMock).add(pm3);
+    }
+    
+    /**
+     * This test tests that there is invoked IllegalArgumentException when
+     * the method ConnectionManagerImpl::connectToAll() is called with a collection
+     * containing a null physical machine and no physical machine is connected.
+     */
+    @Test
+    public void connectToAllWithNullPhysicalMachine(){
+        //represents a physical machine which should be connected
+        PhysicalMachine pm = new PMBuilder().build();
+        
+        exception.expect(IllegalArgumentException.class);
+        sut.connectToAll(Arrays.asList(pm, null));
+        
+        verify(natAPIConMock, never()).connectTo(any(PhysicalMachine.class));
+    }
+    
     /**
      * This test tests that there is invoked IllegalArgumentException when there
      * is made an attempt to disconnect from a physical machine, but closing
@@ -908,6 +1034,75 @@ public class ConnectionManagerImplTest {
         verify(sutl, never()).disconnectFrom(any(PhysicalMachine.class));
     }    
     
+    /**
+     * This test tests that the method ConnectionManagerImpl::close() with
+     * the limits of parallel operations disconnects all connected physical
+     * machines and reports the outcome of each of them separately, so the failure
+     * of one physical machine does not affect the others.
+     */
+    @Test
+    public void closeWithLimitsAndOneUnavailablePhysicalMachine(){
+        //represents a physical machine whose virtual machines should be shut down
+        PhysicalMachine corPM = new PMBuilder().build();
+        //represents a physical machine with which the connection is lost
+        PhysicalMachine incorPM = new PMBuilder().addressIP("10.12.11.9").build();
+        //results of virtual machines of the available physical machine
+        List<OperationResult<VirtualMachine, String>> vmResults = new ArrayList<>();
+        
+        when(conPhysMachMock.getConnectedPhysicalMachines()).thenReturn(Arrays.asList(corPM, incorPM));
+        when(conPhysMachMock.isConnected(corPM)).thenReturn(true);
+        when(conPhysMachMock.isConnected(incorPM)).thenReturn(true);
+        when(conPhysMachMock.remove(corPM)).thenReturn(true);
+        when(conPhysMachMock.remove(incorPM)).thenReturn(true);
+        doThrow(new ConnectionFailureException()).when(natAPIConMock).connectTo(incorPM);
+        when(vtmMock.close(2, 0L)).thenReturn(vmResults);
+        
+        List<OperationResult<PhysicalMachine, List<OperationResult<VirtualMachine, String>>>> results =
+                sut.close(4, 2, 0L);
+        
+        assertEquals("There should be a result for each physical machine", 2, results.size());
+        assertTrue("Available physical machine should be disconnected successfully", results.get(0).isSuccessful());
+        assertSame("There should be returned results of virtual machines", vmResults, results.get(0).getResult());
+        assertTrue("Unavailable physical machine should fail with ConnectionFailureException",
+                   results.get(1).getFailure() instanceof ConnectionFailureException);
+        //both physical machines are disconnected anyway
+        verify(conPhysMachMock).remove(corPM);
+        verify(conPhysMachMock).remove(incorPM);
+    }
+    
+    /**
+     * This test tests that the time left for the closing operation is passed to
+     * the shut down of virtual machines when there is the timeout used.
+     */
+    @Test
+    public void closeWithTimeout(){
+        //represents a physical machine which should be disconnected
+        PhysicalMachine pm = new PMBuilder().build();
+        
+        when(conPhysMachMock.getConnectedPhysicalMachines()).thenReturn(Arrays.asList(pm));
+        when(conPhysMachMock.isConnected(pm)).thenReturn(true);
+        when(conPhysMachMock.remove(pm)).thenReturn(true);
+        
+        List<OperationResult<PhysicalMachine, List<OperationResult<VirtualMachine, String>>>> results =
+                sut.close(1, 1, 60000L);
+        
+        assertTrue("Physical machine should be disconnected successfully", results.get(0).isSuccessful());
+        verify(vtmMock).close(eq(1), anyLong());
+        verify(vtmMock, never()).close(1, 0L);
+        verify(conPhysMachMock).remove(pm);
+    }
+    
+    /**
+     * This test tests that there is IllegalArgumentException invoked when
+     * the method ConnectionManagerImpl::close() is called with a non-positive
+     * maximum number of parallel operations.
+     */
+    @Test
+    public void closeWithInvalidMaxParallelDisconnections(){
+        exception.expect(IllegalArgumentException.class);
+        sut.close(0, 1, 0L);
+    }
+    
      /**
      * Class Builder for easier and faster creating and setting up new object
      * of type PhysicalMachine.
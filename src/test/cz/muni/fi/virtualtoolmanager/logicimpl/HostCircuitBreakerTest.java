@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import org.powermock.api.mockito.PowerMockito;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.virtualbox_4_3.VBoxException;
+import org.virtualbox_4_3.VirtualBoxManager;
+
+/**
+ * This test class ensure unit testing of class HostCircuitBreaker and
+ * is intended to be a pointer that class HostCircuitBreaker works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(VirtualBoxManager.class)
+public class HostCircuitBreakerTest {
+
+    private HostCircuitBreaker sut;
+    private VirtualBoxManager vbmMock;
+    private PhysicalMachine pm;
+
+    @Before
+    public void setUp(){
+        PowerMockito.mockStatic(VirtualBoxManager.class);
+        vbmMock = mock(VirtualBoxManager.class);
+        when(VirtualBoxManager.createInstance(null)).thenReturn(vbmMock);
+        pm = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        VBoxSessionPool.getInstance().clear();
+        sut = HostCircuitBreaker.getInstance();
+        sut.clear();
+    }
+
+    @After
+    public void cleanUp(){
+        sut.clear();
+        sut.setFailureThreshold(HostCircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+        sut.setProbeInterval(HostCircuitBreaker.DEFAULT_PROBE_INTERVAL);
+    }
+
+    /**
+     * This test tests that the circuit is opened after the failure threshold
+     * is reached and the following logon attempts are rejected without any
+     * connection attempt.
+     */
+    @Test
+    public void openAfterFailureThreshold(){
+        doThrow(VBoxException.class).when(vbmMock).connect("http://180.148.14.10:18083", "Jack", "tr1h15jk7");
+        VBoxSessionPool sessionPool = VBoxSessionPool.getInstance();
+
+        for(int i = 0; i < HostCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; ++i){
+            assertEquals("Circuit should be closed until the threshold is reached",
+                         HostCircuitBreaker.State.CLOSED, sut.getState(pm));
+            try{
+                sessionPool.open(pm);
+                fail("VBoxException should be thrown");
+            }catch(VBoxException ex){
+                //expected
+            }
+        }
+
+        assertEquals("Circuit should be open", HostCircuitBreaker.State.OPEN, sut.getState(pm));
+        try{
+            sessionPool.acquire(pm);
+            fail("VBoxException should be thrown for the open circuit");
+        }catch(VBoxException ex){
+            //expected
+        }
+        //rejected attempt does not wait for the connection timeout at all
+        verify(vbmMock, times(HostCircuitBreaker.DEFAULT_FAILURE_THRESHOLD))
+                .connect("http://180.148.14.10:18083", "Jack", "tr1h15jk7");
+    }
+
+    /**
+     * This test tests that the successful logon attempt resets the number
+     * of failed attempts in a row.
+     */
+    @Test
+    public void successResetsFailures(){
+        sut.setFailureThreshold(2);
+
+        sut.acquirePermission(pm);
+        sut.recordFailure(pm);
+        sut.acquirePermission(pm);
+        sut.recordSuccess(pm);
+        sut.acquirePermission(pm);
+        sut.recordFailure(pm);
+
+        assertEquals("Circuit should stay closed", HostCircuitBreaker.State.CLOSED, sut.getState(pm));
+    }
+
+    /**
+     * This test tests that after the probe interval elapses, there is permitted
+     * just one probe and the other attempts are rejected until its result is known.
+     */
+    @Test
+    public void halfOpenPermitsOneProbe(){
+        sut.setFailureThreshold(1);
+        sut.setProbeInterval(0L);
+        sut.acquirePermission(pm);
+        sut.recordFailure(pm);
+
+        sut.acquirePermission(pm);
+        assertEquals("Circuit should be half-open", HostCircuitBreaker.State.HALF_OPEN, sut.getState(pm));
+        assertTrue("Other attempts should be rejected during the probe", sut.isRejecting(pm));
+        try{
+            sut.acquirePermission(pm);
+            fail("VBoxException should be thrown during the probe");
+        }catch(VBoxException ex){
+            //expected
+        }
+
+        sut.recordSuccess(pm);
+        assertEquals("Successful probe should close the circuit",
+                     HostCircuitBreaker.State.CLOSED, sut.getState(pm));
+        assertFalse("Attempts should be permitted again", sut.isRejecting(pm));
+    }
+
+    /**
+     * This test tests that the failed probe opens the circuit again.
+     */
+    @Test
+    public void failedProbeOpensCircuit(){
+        sut.setFailureThreshold(1);
+        sut.acquirePermission(pm);
+        sut.recordFailure(pm);
+        sut.setProbeInterval(0L);
+        sut.acquirePermission(pm);
+        sut.setProbeInterval(HostCircuitBreaker.DEFAULT_PROBE_INTERVAL);
+
+        sut.recordFailure(pm);
+
+        assertEquals("Failed probe should open the circuit",
+                     HostCircuitBreaker.State.OPEN, sut.getState(pm));
+        assertTrue("Attempts should be rejected", sut.isRejecting(pm));
+    }
+}
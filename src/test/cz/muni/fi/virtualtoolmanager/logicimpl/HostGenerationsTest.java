@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * This test class ensure unit testing of class HostGenerations and
+ * is intended to be a pointer that class HostGenerations works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+public class HostGenerationsTest {
+
+    private HostGenerations sut;
+    private PhysicalMachine pm1;
+    private PhysicalMachine pm2;
+
+    @Before
+    public void setUp(){
+        pm1 = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        pm2 = new PhysicalMachine("180.148.14.11", "18083", "Jack", "tr1h15jk7");
+        sut = new HostGenerations();
+    }
+
+    /**
+     * This test tests that the increase of generation changes just
+     * the generation of its physical machine.
+     */
+    @Test
+    public void increase(){
+        long generation1 = sut.get(pm1);
+        long generation2 = sut.get(pm2);
+
+        sut.increase(pm1);
+
+        assertTrue("Generation should be changed", generation1 != sut.get(pm1));
+        assertEquals("Generation of another physical machine should not be changed",
+                     generation2, sut.get(pm2));
+    }
+
+    /**
+     * This test tests that no generation returns to any of its previous values
+     * after the generations are cleared.
+     */
+    @Test
+    public void clearNeverReturnsPreviousGeneration(){
+        long initialGeneration = sut.get(pm1);
+        sut.increase(pm1);
+        long increasedGeneration = sut.get(pm1);
+        long otherGeneration = sut.get(pm2);
+
+        sut.clear();
+
+        assertTrue("Generation should not return to initial value", initialGeneration != sut.get(pm1));
+        assertTrue("Generation should not return to increased value", increasedGeneration != sut.get(pm1));
+        assertTrue("Generation of another physical machine should be changed",
+                   otherGeneration != sut.get(pm2));
+    }
+}
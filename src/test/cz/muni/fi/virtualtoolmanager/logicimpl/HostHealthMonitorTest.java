@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.HostHealthState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import static org.mockito.Mockito.verify;
+import org.powermock.api.mockito.PowerMockito;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.virtualbox_4_3.ISession;
+import org.virtualbox_4_3.IVirtualBox;
+import org.virtualbox_4_3.SessionState;
+import org.virtualbox_4_3.VBoxException;
+import org.virtualbox_4_3.VirtualBoxManager;
+
+/**
+ * This test class ensure unit testing of class HostHealthMonitor and
+ * is intended to be a pointer that class HostHealthMonitor works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(VirtualBoxManager.class)
+public class HostHealthMonitorTest {
+
+    private HostHealthMonitor sut;
+    private VirtualBoxManager vbmMock;
+    private IVirtualBox vboxMock;
+    private PhysicalMachine pm;
+
+    @Before
+    public void setUp(){
+        PowerMockito.mockStatic(VirtualBoxManager.class);
+        vbmMock = mock(VirtualBoxManager.class);
+        vboxMock = mock(IVirtualBox.class);
+        ISession sessionMock = mock(ISession.class);
+        when(vbmMock.getSessionObject()).thenReturn(sessionMock);
+        when(sessionMock.getState()).thenReturn(SessionState.Unlocked);
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        when(vboxMock.getAPIVersion()).thenReturn("4_3");
+        when(VirtualBoxManager.createInstance(null)).thenReturn(vbmMock);
+        pm = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        ConnectedPhysicalMachines.getInstance().add(pm);
+        VBoxSessionPool.getInstance().clear();
+        HostCircuitBreaker.getInstance().clear();
+        sut = HostHealthMonitor.getInstance();
+        sut.clear();
+        //the heartbeats are performed only explicitly by the tests
+        sut.setHeartbeatInterval(0L);
+        sut.start(pm);
+    }
+
+    @After
+    public void cleanUp(){
+        sut.clear();
+        sut.setHeartbeatInterval(HostHealthMonitor.DEFAULT_HEARTBEAT_INTERVAL);
+        sut.setDegradedLatencyThreshold(HostHealthMonitor.DEFAULT_DEGRADED_LATENCY_THRESHOLD);
+        sut.setDownFailureThreshold(HostHealthMonitor.DEFAULT_DOWN_FAILURE_THRESHOLD);
+        ConnectedPhysicalMachines.getInstance().remove(pm);
+        VBoxSessionPool.getInstance().clear();
+    }
+
+    /**
+     * This test tests that the newly monitored physical machine is considered
+     * to be healthy and its latency is not known yet.
+     */
+    @Test
+    public void startMonitoring(){
+        assertEquals("Newly connected physical machine should be healthy",
+                     HostHealthState.HEALTHY, sut.getState(pm));
+        assertEquals("Latency should not be known before the first heartbeat",
+                     -1L, sut.getLatency(pm));
+    }
+
+    /**
+     * This test tests that the successful heartbeat keeps the physical machine
+     * healthy and records its round-trip time.
+     */
+    @Test
+    public void heartbeatWithRespondingPhysicalMachine(){
+        assertEquals("Physical machine should be healthy", HostHealthState.HEALTHY, sut.heartbeat(pm));
+        assertTrue("Latency should be recorded", sut.getLatency(pm) >= 0L);
+        verify(vboxMock).getAPIVersion();
+    }
+
+    /**
+     * This test tests that the physical machine whose heartbeat is slower than
+     * the latency threshold is considered to be degraded.
+     */
+    @Test
+    public void heartbeatWithSlowPhysicalMachine(){
+        when(vboxMock.getAPIVersion()).thenAnswer(invocation -> {
+            Thread.sleep(20);
+            return "4_3";
+        });
+        sut.setDegradedLatencyThreshold(5L);
+
+        assertEquals("Slow physical machine should be degraded",
+                     HostHealthState.DEGRADED, sut.heartbeat(pm));
+    }
+
+    /**
+     * This test tests that the physical machine is degraded after the first
+     * failed heartbeat and it is down after the second failed heartbeat in a row,
+     * and that the pool does not even try to connect to such physical machine.
+     */
+    @Test
+    public void heartbeatWithNotRespondingPhysicalMachine(){
+        when(vboxMock.getAPIVersion()).thenThrow(VBoxException.class);
+
+        assertEquals("Physical machine should be degraded after one failure",
+                     HostHealthState.DEGRADED, sut.heartbeat(pm));
+        assertEquals("Physical machine should be down after two failures",
+                     HostHealthState.DOWN, sut.heartbeat(pm));
+
+        //the broken session is not held by the pool
+        assertEquals("There should not be held any idle session", 0,
+                     VBoxSessionPool.getInstance().getIdleSessionsCount(pm));
+        try{
+            VBoxSessionPool.getInstance().acquire(pm);
+            fail("VBoxException should be thrown for the physical machine which is down");
+        }catch(VBoxException ex){
+            //expected
+        }
+    }
+
+    /**
+     * This test tests that the physical machine which is down becomes healthy
+     * again as soon as it responds to the heartbeat.
+     */
+    @Test
+    public void heartbeatWithRecoveredPhysicalMachine(){
+        when(vboxMock.getAPIVersion()).thenThrow(VBoxException.class)
+                                      .thenThrow(VBoxException.class)
+                                      .thenReturn("4_3");
+        sut.heartbeat(pm);
+        sut.heartbeat(pm);
+
+        assertEquals("Recovered physical machine should be healthy",
+                     HostHealthState.HEALTHY, sut.heartbeat(pm));
+        assertNotNull("Session with the recovered physical machine should be borrowed",
+                      VBoxSessionPool.getInstance().acquire(pm));
+    }
+
+    /**
+     * This test tests that after the monitoring is stopped, the physical machine
+     * is not checked anymore and its health record is forgotten.
+     */
+    @Test
+    public void stopMonitoring(){
+        when(vboxMock.getAPIVersion()).thenThrow(VBoxException.class);
+        sut.heartbeat(pm);
+        sut.heartbeat(pm);
+
+        sut.stop(pm);
+
+        assertEquals("Not monitored physical machine should be considered healthy",
+                     HostHealthState.HEALTHY, sut.getState(pm));
+        assertEquals("Not monitored physical machine should be considered healthy",
+                     HostHealthState.HEALTHY, sut.heartbeat(pm));
+    }
+
+    /**
+     * This test tests that the heartbeat which started before the physical
+     * machine was reconnected does not affect the health of the new connection.
+     */
+    @Test
+    public void heartbeatDuringReconnection(){
+        when(vboxMock.getAPIVersion()).thenAnswer(invocation -> {
+            //the physical machine is reconnected while the heartbeat is in progress
+            sut.start(pm);
+            throw new VBoxException("Connection refused");
+        });
+        sut.setDownFailureThreshold(1);
+
+        sut.heartbeat(pm);
+
+        assertEquals("Reconnected physical machine should stay healthy",
+                     HostHealthState.HEALTHY, sut.getState(pm));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * This test class ensure unit testing of class InventorySnapshotStore and
+ * is intended to be a pointer that class InventorySnapshotStore works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+public class InventorySnapshotStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private Path snapshotFile;
+    private PhysicalMachine pm;
+    private Map<PhysicalMachine, List<VirtualMachine>> inventories;
+
+    @Before
+    public void setUp() throws Exception {
+        snapshotFile = folder.getRoot().toPath().resolve("inventory.snapshot");
+        pm = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        VirtualMachine vm1 = new VirtualMachine.Builder(
+                UUID.fromString("793d084a-0189-4a55-a9c0-531c455aaab1"), "VirtualMachine_01", pm)
+                .countOfCPU(1L).countOfMonitors(1L).cpuExecutionCap(100L)
+                .hardDiskFreeSpaceSize(14286848000L).hardDiskTotalSize(21474836480L)
+                .sizeOfRAM(2048L).sizeOfVRAM(12L).typeOfOS("Linux").identifierOfOS("Fedora_64")
+                .build();
+        //virtual machine with only some attributes retrieved
+        VirtualMachine vm2 = new VirtualMachine.Builder(
+                UUID.fromString("793d084a-0189-4a55-a9c0-531c455aaab2"), "VirtualMachine_02", pm)
+                .sizeOfRAM(1024L).build();
+        inventories = new LinkedHashMap<>();
+        inventories.put(pm, Arrays.asList(vm1, vm2));
+    }
+
+    /**
+     * This test tests that the written virtual machines are read back with all
+     * their attributes and that the user password is not stored.
+     */
+    @Test
+    public void writeAndRead() throws Exception {
+        InventorySnapshotStore.write(snapshotFile, inventories);
+
+        Map<PhysicalMachine, List<VirtualMachine>> loaded = InventorySnapshotStore.read(snapshotFile);
+
+        assertEquals("There should be one physical machine", 1, loaded.size());
+        PhysicalMachine loadedPM = loaded.keySet().iterator().next();
+        assertEquals("Invalid IP address", pm.getAddressIP(), loadedPM.getAddressIP());
+        assertEquals("Invalid username", pm.getUsername(), loadedPM.getUsername());
+        assertEquals("User password should not be stored", "", loadedPM.getUserPassword());
+
+        List<VirtualMachine> expVMs = inventories.get(pm);
+        List<VirtualMachine> actVMs = loaded.get(loadedPM);
+        assertEquals("Invalid number of virtual machines", expVMs.size(), actVMs.size());
+        for(int i = 0; i < expVMs.size(); ++i){
+            VirtualMachine expVM = expVMs.get(i);
+            VirtualMachine actVM = actVMs.get(i);
+            assertEquals("Invalid id", expVM.getId(), actVM.getId());
+            assertEquals("Invalid name", expVM.getName(), actVM.getName());
+            assertEquals("Invalid count of CPUs", expVM.getCountOfCPU(), actVM.getCountOfCPU());
+            assertEquals("Invalid free space of hard disk", expVM.getHardDiskFreeSpaceSize(),
+                         actVM.getHardDiskFreeSpaceSize());
+            assertEquals("Invalid size of RAM", expVM.getSizeOfRAM(), actVM.getSizeOfRAM());
+            assertEquals("Invalid type of OS", expVM.getTypeOfOS(), actVM.getTypeOfOS());
+            assertEquals("Invalid identifier of OS", expVM.getIdentifierOfOS(), actVM.getIdentifierOfOS());
+        }
+    }
+
+    /**
+     * This test tests that the corrupted snapshot is not loaded.
+     */
+    @Test
+    public void readCorruptedSnapshot() throws Exception {
+        InventorySnapshotStore.write(snapshotFile, inventories);
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        bytes[bytes.length - 1] ^= 0x01;
+        Files.write(snapshotFile, bytes);
+
+        exception.expect(IOException.class);
+        InventorySnapshotStore.read(snapshotFile);
+    }
+
+    /**
+     * This test tests that the snapshot of unsupported version is not loaded.
+     */
+    @Test
+    public void readSnapshotWithUnsupportedVersion() throws Exception {
+        InventorySnapshotStore.write(snapshotFile, inventories);
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        ByteBuffer.wrap(bytes).putInt(4, InventorySnapshotStore.FORMAT_VERSION + 1);
+        Files.write(snapshotFile, bytes);
+
+        exception.expect(IOException.class);
+        InventorySnapshotStore.read(snapshotFile);
+    }
+
+    /**
+     * This test tests that the snapshot which is older than the maximum age
+     * is not loaded, but it is loaded without any maximum age.
+     */
+    @Test
+    public void readTooOldSnapshot() throws Exception {
+        InventorySnapshotStore.write(snapshotFile, inventories);
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        //the snapshot was saved 2 hours ago
+        ByteBuffer.wrap(bytes).putLong(8, System.currentTimeMillis() - 2L * 60L * 60L * 1000L);
+        Files.write(snapshotFile, bytes);
+
+        assertTrue("Too old snapshot should not be loaded",
+                   InventorySnapshotStore.read(snapshotFile, 60L * 60L * 1000L).isEmpty());
+        assertEquals("Snapshot should be loaded without maximum age", 1,
+                     InventorySnapshotStore.read(snapshotFile, 0L).size());
+    }
+}
@@ -68,6 +68,9 @@ public class NativeVBoxAPIConnectionTest {
         //there is always returned a mock object of type VirtualBoxManager in order to have easier and faster
         //testing when the static method VirtualBoxManager::createInstance() is called
         when(VirtualBoxManager.createInstance(null)).thenReturn(vbmMock);
+        //idle sessions from the previous tests must not be reused (they hold different mock objects)
+        VBoxSessionPool.getInstance().clear();
+        HostCircuitBreaker.getInstance().clear();
         sut = new NativeVBoxAPIConnection();
     }
     
@@ -26,7 +26,12 @@ import cz.muni.fi.virtualtoolmanager.pubapi.types.FrontEndType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -34,6 +39,8 @@ import org.junit.Rule;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import org.powermock.api.mockito.PowerMockito;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
@@ -78,6 +85,9 @@ public class NativeVBoxAPIMachineTest {
         vboxMock = mock(IVirtualBox.class);
         vboxMachineMock = mock(IMachine.class);
         when(VirtualBoxManager.createInstance(null)).thenReturn(vbmMock);
+        //idle sessions from the previous tests must not be reused (they hold different mock objects)
+        VBoxSessionPool.getInstance().clear();
+        HostCircuitBreaker.getInstance().clear();
         sut = new NativeVBoxAPIMachine();        
     }
 
@@ -175,6 +185,85 @@ public class NativeVBoxAPIMachineTest {
        sut.startVM(vm, FrontEndType.GUI);
     }
     
+    /**
+     * This test tests that the asynchronous start up uses the given executor
+     * just for launching the virtual machine process and the progress of
+     * the start up is queried by another thread.
+     * 
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void startVMAsyncIdealCase() throws Exception {
+       //represents a virtual machine which should be started
+       VirtualMachine vm = new VMBuilder().build();
+       //represents mock object of type ISession for easier and better test control
+       ISession sessionMock = mock(ISession.class);
+       //represents mock object of type IProgress for easier and better test control
+       IProgress progressMock = mock(IProgress.class);
+       final Thread callingThread = Thread.currentThread();
+       final List<Thread> pollingThreads = new CopyOnWriteArrayList<>();
+       final AtomicInteger polls = new AtomicInteger();
+       
+       when(vbmMock.getVBox()).thenReturn(vboxMock);
+       when(vboxMock.findMachine(vm.getId().toString())).thenReturn(vboxMachineMock);
+       when(vboxMachineMock.getAccessible()).thenReturn(true);
+       when(vboxMachineMock.getState()).thenReturn(MachineState.PoweredOff, MachineState.Running);
+       when(vbmMock.getSessionObject()).thenReturn(sessionMock);
+       when(vboxMachineMock.launchVMProcess(sessionMock, "gui", "")).thenReturn(progressMock);
+       //the start up is finished after the third query
+       when(progressMock.getCompleted()).thenAnswer(invocation -> {
+           pollingThreads.add(Thread.currentThread());
+           return polls.incrementAndGet() >= 3;
+       });
+       //value = 0 says the starting operation has been finished successfully
+       when(progressMock.getResultCode()).thenReturn(0);
+       
+       //the calling thread is used as the executor
+       CompletableFuture<Void> future = sut.startVMAsync(vm, FrontEndType.GUI, Runnable::run);
+       future.get();
+       
+       assertEquals("Progress should be queried until the start up is finished", 3, pollingThreads.size());
+       assertFalse("Progress should not be queried by the executor", pollingThreads.contains(callingThread));
+       verify(sessionMock).unlockMachine();
+    }
+    
+    /**
+     * This test tests that if the asynchronous VM starting operation is not
+     * finished successfully then the returned future is completed exceptionally
+     * with UnexpectedVMStateException exception.
+     * 
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void startVMAsyncUnsuccessfulOperation() throws Exception {
+       //represents a virtual machine which should be started
+       VirtualMachine vm = new VMBuilder().build();
+       //represents mock object of type ISession for easier and better test control
+       ISession sessionMock = mock(ISession.class);
+       //represents mock object of type IProgress for easier and better test control
+       IProgress progressMock = mock(IProgress.class);
+       
+       when(vbmMock.getVBox()).thenReturn(vboxMock);
+       when(vboxMock.findMachine(vm.getId().toString())).thenReturn(vboxMachineMock);
+       when(vboxMachineMock.getAccessible()).thenReturn(true);
+       when(vboxMachineMock.getState()).thenReturn(MachineState.PoweredOff);
+       when(vbmMock.getSessionObject()).thenReturn(sessionMock);
+       when(vboxMachineMock.launchVMProcess(sessionMock, "gui", "")).thenReturn(progressMock);
+       when(progressMock.getCompleted()).thenReturn(false, true);
+       //value = -421548 says the starting operation has not been finished successfully
+       when(progressMock.getResultCode()).thenReturn(-421548);
+       
+       CompletableFuture<Void> future = sut.startVMAsync(vm, FrontEndType.GUI, Runnable::run);
+       try{
+           future.get();
+           fail("ExecutionException should be thrown");
+       }catch(ExecutionException ex){
+           assertTrue("Cause should be UnexpectedVMStateException",
+                      ex.getCause() instanceof UnexpectedVMStateException);
+       }
+       verify(sessionMock, never()).unlockMachine();
+    }
+    
     /**
      * This test tests that there is thrown the UnknownVirtualMachineException
      * exception when the method NativeVBoxAPIMachine::startVM() is called for
@@ -1218,6 +1307,90 @@ public class NativeVBoxAPIMachineTest {
         sut.getPortRules(vm);
     }
     
+    /**
+     * This test tests that the states of all virtual machines of the physical
+     * machine are retrieved by one call of IVirtualBox::getMachineStates().
+     */
+    @Test
+    public void getVMStatesOfAllVirtualMachines() {
+        PhysicalMachine pm = new PMBuilder().build();
+        IMachine vboxMachineMock2 = mock(IMachine.class);
+        List<IMachine> vboxMachines = Arrays.asList(vboxMachineMock, vboxMachineMock2);
+        String id1 = "793d084a-0189-4a55-a9c0-531c455aaab1";
+        String id2 = "002d084a-0189-4a55-9ab7-531c455570a1";
+
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        when(vboxMock.getMachines()).thenReturn(vboxMachines);
+        when(vboxMachineMock.getId()).thenReturn(id1);
+        when(vboxMachineMock2.getId()).thenReturn(id2);
+        when(vboxMock.getMachineStates(vboxMachines))
+                .thenReturn(Arrays.asList(MachineState.Running, MachineState.PoweredOff));
+
+        Map<UUID, String> vmStates = sut.getVMStates(pm, null);
+
+        assertEquals("There should be a state for each virtual machine", 2, vmStates.size());
+        assertEquals("Invalid state", "Running", vmStates.get(UUID.fromString(id1)));
+        assertEquals("Invalid state", "PoweredOff", vmStates.get(UUID.fromString(id2)));
+        verify(vboxMachineMock, never()).getState();
+        verify(vboxMachineMock2, never()).getState();
+    }
+
+    /**
+     * This test tests that the given virtual machine which is not registered
+     * on the physical machine is not present in the result.
+     */
+    @Test
+    public void getVMStatesOfGivenVirtualMachinesWithUnknownVM() {
+        VirtualMachine vm1 = new VMBuilder().build();
+        VirtualMachine vm2 = new VMBuilder().id(UUID.fromString("002d084a-0189-4a55-9ab7-531c455570a1"))
+                                            .build();
+
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        when(vboxMock.findMachine(vm1.getId().toString())).thenReturn(vboxMachineMock);
+        VBoxException notFoundExMock = mock(VBoxException.class);
+        when(notFoundExMock.getResultCode()).thenReturn(0x80BB0001);
+        doThrow(notFoundExMock).when(vboxMock).findMachine(vm2.getId().toString());
+        when(vboxMock.getMachineStates(Arrays.asList(vboxMachineMock)))
+                .thenReturn(Arrays.asList(MachineState.Paused));
+
+        Map<UUID, String> vmStates = sut.getVMStates(vm1.getHostMachine(), Arrays.asList(vm1, vm2));
+
+        assertEquals("There should be a state just for the known virtual machine", 1, vmStates.size());
+        assertEquals("Invalid state", "Paused", vmStates.get(vm1.getId()));
+    }
+
+    /**
+     * This test tests that the failure of virtual machine lookup other than
+     * the unknown virtual machine (e.g. the broken connection) is not hidden
+     * as an empty result, but there is thrown the UnknownVirtualMachineException
+     * exception.
+     */
+    @Test
+    public void getVMStatesOfGivenVirtualMachinesWithLookupFailure() {
+        VirtualMachine vm1 = new VMBuilder().build();
+
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        doThrow(VBoxException.class).when(vboxMock).findMachine(vm1.getId().toString());
+
+        exception.expect(UnknownVirtualMachineException.class);
+        sut.getVMStates(vm1.getHostMachine(), Arrays.asList(vm1));
+    }
+
+    /**
+     * This test tests that there is thrown the ConnectionFailureException
+     * exception when the physical machine cannot be connected.
+     */
+    @Test
+    public void getVMStatesWithNetworkConnectionProblem() {
+        PhysicalMachine pm = new PMBuilder().build();
+        String url = "http://" + pm.getAddressIP() + ":" + pm.getPortOfVTWebServer();
+
+        doThrow(VBoxException.class).when(vbmMock).connect(url, pm.getUsername(), pm.getUserPassword());
+
+        exception.expect(ConnectionFailureException.class);
+        sut.getVMStates(pm, null);
+    }
+
     /**
      * Class Builder for easier and faster creating and setting up new object of
      * type PhysicalMachine.
@@ -22,14 +22,17 @@ import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureExceptio
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.UnexpectedVMStateException;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.UnknownVirtualMachineException;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.CloneType;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
 import java.io.File;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -46,6 +49,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.powermock.api.mockito.PowerMockito.doReturn;
 import org.virtualbox_4_3.CleanupMode;
 import org.virtualbox_4_3.CloneMode;
@@ -91,6 +95,10 @@ public class NativeVBoxAPIManagerTest {
         vbmMock = mock(VirtualBoxManager.class);
         vboxMock = mock(IVirtualBox.class);
         when(VirtualBoxManager.createInstance(null)).thenReturn(vbmMock);
+        //idle sessions from the previous tests must not be reused (they hold different mock objects)
+        VBoxSessionPool.getInstance().clear();
+        HostCircuitBreaker.getInstance().clear();
+        VMMetadataCache.getInstance().clear();
         sut = new NativeVBoxAPIManager();
     }
 
@@ -590,7 +598,9 @@ public class NativeVBoxAPIManagerTest {
         //represents mock object of type IMachine for better test control
         IMachine machineMocked2 = mock(IMachine.class);
         //represents mock object of type IGuestOSType for better test control
-        IGuestOSType guestOSTypeMocked = mock(IGuestOSType.class);
+        IGuestOSType guestOSTypeMocked1 = mock(IGuestOSType.class);
+        //represents mock object of type IGuestOSType for better test control
+        IGuestOSType guestOSTypeMocked2 = mock(IGuestOSType.class);
         //represents mock object of type IMedium for better test control
         IMedium mediumMocked1 = mock(IMedium.class);
         //represents mock object of type IMedium for better test control
@@ -614,16 +624,21 @@ public class NativeVBoxAPIManagerTest {
         when(vboxMock.getMachines()).thenReturn(vboxMachines);
         //mock object of type IGuestOSType is returned when the method IVirtualBox::getGuestOSType() is called
         //with OS type vmId of required virtual machine in order to control returned values of its methods
-        when(vboxMock.getGuestOSType(machineMocked1.getOSTypeId())).thenReturn(guestOSTypeMocked);
+        //(the virtual machines are converted in parallel, so each of them has its own OS type)
+        when(machineMocked1.getOSTypeId()).thenReturn("Fedora_64");
+        when(machineMocked2.getOSTypeId()).thenReturn("Win10_64");
+        when(vboxMock.getGuestOSType("Fedora_64")).thenReturn(guestOSTypeMocked1);
         //mock object of type IGuestOSType is returned when the method IVirtualBox::getGuestOSType() is called
         //with OS type vmId of required virtual machine in order to control returned values of its methods
-        when(vboxMock.getGuestOSType(machineMocked2.getOSTypeId())).thenReturn(guestOSTypeMocked);
+        when(vboxMock.getGuestOSType("Win10_64")).thenReturn(guestOSTypeMocked2);
         //for first virtual machine there should be returned string with value = "Linux" and for the second
         //one string with value = "MS-Windows" when the method IGuestOSType::getFamily() is called
-        when(guestOSTypeMocked.getFamilyId()).thenReturn("Linux").thenReturn("MS-Windows");
+        when(guestOSTypeMocked1.getFamilyId()).thenReturn("Linux");
+        when(guestOSTypeMocked2.getFamilyId()).thenReturn("MS-Windows");
         //for first virtual machine there should be returned string with value = "Fedora_64" and for second
         //one string with value = "Win10_64" when the method IGuestOSType::getId() is called
-        when(guestOSTypeMocked.getId()).thenReturn("Fedora_64").thenReturn("Win10_64");
+        when(guestOSTypeMocked1.getId()).thenReturn("Fedora_64");
+        when(guestOSTypeMocked2.getId()).thenReturn("Win10_64");
         //mock object of type IMedium is returned when the method IMachine::getMedium() is called with
         //particular arguments in order to control returned values of its methods
         when(machineMocked1.getMedium("SATA", 0, 0)).thenReturn(mediumMocked1);
@@ -741,6 +756,155 @@ public class NativeVBoxAPIManagerTest {
         sut.getAllVirtualMachines(pm);
     }
 
+    /**
+     * This test tests that the virtual machines are converted in parallel
+     * (at most the required number at once) and they are returned in the same
+     * order as VirtualBox returns them.
+     */
+    @Test
+    public void getVirtualMachinesWithParallelConversion() {
+        PhysicalMachine pm = new PMBuilder().build();
+        final AtomicInteger inProgress = new AtomicInteger();
+        final AtomicInteger maxInProgress = new AtomicInteger();
+        List<IMachine> vboxMachines = new ArrayList<>();
+        for(int i = 0; i < 6; ++i){
+            IMachine vboxMachineMock = mock(IMachine.class);
+            final String name = "VirtualMachine_0" + i;
+            when(vboxMachineMock.getId()).thenReturn("793d084a-0189-4a55-a9c0-531c455aaab" + i);
+            when(vboxMachineMock.getName()).thenAnswer(invocation -> {
+                maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+                Thread.sleep(50);
+                inProgress.decrementAndGet();
+                return name;
+            });
+            vboxMachines.add(vboxMachineMock);
+        }
+
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        when(vboxMock.getMachines()).thenReturn(vboxMachines);
+
+        NativeVBoxAPIManager.setConversionParallelism(pm, 3);
+        List<VirtualMachine> vmsList;
+        try{
+            vmsList = sut.getAllVirtualMachines(pm, EnumSet.noneOf(SearchCriterionType.class));
+        }finally{
+            NativeVBoxAPIManager.setConversionParallelism(pm, 0);
+        }
+
+        for(int i = 0; i < 6; ++i){
+            assertEquals("Virtual machines should be in the original order",
+                         "VirtualMachine_0" + i, vmsList.get(i).getName());
+        }
+        assertTrue("More virtual machines should be converted at once", maxInProgress.get() > 1);
+        assertTrue("At most 3 virtual machines should be converted at once", maxInProgress.get() <= 3);
+    }
+
+    /**
+     * This test tests that only the required attributes of virtual machines
+     * are retrieved from VirtualBox when the method
+     * NativeVBoxAPIManager::getAllVirtualMachines() is called with a projection.
+     */
+    @Test
+    public void getVirtualMachinesWithRequiredAttributesOnly() {
+        PhysicalMachine pm = new PMBuilder().build();
+        IMachine vboxMachineMock = mock(IMachine.class);
+
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        when(vboxMock.getMachines()).thenReturn(Arrays.asList(vboxMachineMock));
+        when(vboxMachineMock.getId()).thenReturn("793d084a-0189-4a55-a9c0-531c455aaab1");
+        when(vboxMachineMock.getName()).thenReturn("VirtualMachine_01");
+        when(vboxMachineMock.getMemorySize()).thenReturn(2048L);
+
+        List<VirtualMachine> vmsList = sut.getAllVirtualMachines(pm, EnumSet.of(SearchCriterionType.RAM));
+
+        assertEquals("There should be one virtual machine", 1, vmsList.size());
+        assertEquals("Invalid name", "VirtualMachine_01", vmsList.get(0).getName());
+        assertEquals("Invalid size of RAM", Long.valueOf(2048L), vmsList.get(0).getSizeOfRAM());
+        assertNull("Not required attribute should not be retrieved", vmsList.get(0).getCountOfCPU());
+        verify(vboxMachineMock, never()).getCPUCount();
+        verify(vboxMachineMock, never()).getMediumAttachmentsOfController(any(String.class));
+        verify(vboxMock, never()).getGuestOSType(any(String.class));
+    }
+
+    /**
+     * This test tests that the virtual machine without hard disk has both
+     * sizes of hard disk 0 no matter whether it is converted with all its
+     * attributes or only with the sizes of hard disk.
+     */
+    @Test
+    public void getVirtualMachinesWithoutHardDisk() {
+        PhysicalMachine pm = new PMBuilder().build();
+        IMachine vboxMachineMock = mock(IMachine.class);
+
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        when(vboxMock.getMachines()).thenReturn(Arrays.asList(vboxMachineMock));
+        when(vboxMachineMock.getId()).thenReturn("793d084a-0189-4a55-a9c0-531c455aaab1");
+        when(vboxMachineMock.getName()).thenReturn("VirtualMachine_01");
+        when(vboxMachineMock.getMediumAttachmentsOfController("SATA")).thenReturn(new ArrayList<>());
+
+        List<VirtualMachine> allAttributesVMs = sut.getAllVirtualMachines(pm);
+        List<VirtualMachine> projectedVMs = sut.getAllVirtualMachines(pm,
+                EnumSet.of(SearchCriterionType.HDD_TOTAL_SIZE, SearchCriterionType.HDD_FREE_SPACE));
+
+        for(VirtualMachine vm : Arrays.asList(allAttributesVMs.get(0), projectedVMs.get(0))){
+            assertEquals("Invalid total size of hard disk", Long.valueOf(0L), vm.getHardDiskTotalSize());
+            assertEquals("Invalid free space of hard disk", Long.valueOf(0L), vm.getHardDiskFreeSpaceSize());
+        }
+    }
+
+    /**
+     * This test tests that the guest OS type which is shared by more virtual
+     * machines is retrieved from VirtualBox only once, while the sizes of hard
+     * disk are retrieved for each virtual machine by each retrieve.
+     */
+    @Test
+    public void getVirtualMachinesWithCachedMetadata() {
+        PhysicalMachine pm = new PMBuilder().build();
+        IGuestOSType guestOSTypeMock = mock(IGuestOSType.class);
+        IMedium mediumMock = mock(IMedium.class);
+        IMediumAttachment medAttachMock = mock(IMediumAttachment.class);
+        List<IMachine> vboxMachines = new ArrayList<>();
+        for(int i = 0; i < 2; ++i){
+            IMachine vboxMachineMock = mock(IMachine.class);
+            when(vboxMachineMock.getId()).thenReturn("793d084a-0189-4a55-a9c0-531c455aaab" + i);
+            when(vboxMachineMock.getName()).thenReturn("VirtualMachine_0" + i);
+            when(vboxMachineMock.getOSTypeId()).thenReturn("Fedora_64");
+            when(vboxMachineMock.getMediumAttachmentsOfController("SATA")).thenReturn(Arrays.asList(medAttachMock));
+            when(vboxMachineMock.getMedium("SATA", 0, 0)).thenReturn(mediumMock);
+            vboxMachines.add(vboxMachineMock);
+        }
+
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        when(vboxMock.getMachines()).thenReturn(vboxMachines);
+        when(vboxMock.getGuestOSType("Fedora_64")).thenReturn(guestOSTypeMock);
+        when(guestOSTypeMock.getFamilyId()).thenReturn("Linux");
+        when(guestOSTypeMock.getId()).thenReturn("Fedora_64");
+        when(mediumMock.getLogicalSize()).thenReturn(21474836480L);
+        when(mediumMock.getSize()).thenReturn(7187988480L);
+
+        //the virtual machines converted at once could both miss the empty cache
+        NativeVBoxAPIManager.setConversionParallelism(pm, 1);
+        List<VirtualMachine> vmsList;
+        try{
+            vmsList = sut.getAllVirtualMachines(pm);
+            sut.getAllVirtualMachines(pm);
+        }finally{
+            NativeVBoxAPIManager.setConversionParallelism(pm, 0);
+        }
+
+        assertEquals("There should be two virtual machines", 2, vmsList.size());
+        for(VirtualMachine vm : vmsList){
+            assertEquals("Invalid type of OS", "Linux", vm.getTypeOfOS());
+            assertEquals("Invalid identifier of OS", "Fedora_64", vm.getIdentifierOfOS());
+            assertEquals("Invalid total size of hard disk", Long.valueOf(21474836480L), vm.getHardDiskTotalSize());
+            assertEquals("Invalid free space of hard disk", Long.valueOf(14286848000L), vm.getHardDiskFreeSpaceSize());
+        }
+        verify(vboxMock, times(1)).getGuestOSType("Fedora_64");
+        verify(mediumMock, times(4)).getLogicalSize();
+        verify(mediumMock, times(4)).getSize();
+        verify(mediumMock, never()).getId();
+    }
+
     /**
      * This test tests that a virtual machine which is like a standalone unit
      * (it means that virtual machine is not linked clone) is removed without
@@ -949,6 +1113,45 @@ public class NativeVBoxAPIManagerTest {
         verify(machineMocked, never()).deleteConfig(any(List.class));
     }
 
+    /**
+     * This test tests that the asynchronous removal deletes the configuration
+     * files once more without the storage mediums when the first deletion
+     * fails and the returned future is completed when the second deletion
+     * is finished.
+     * 
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void removeVirtualMachineAsyncWithFailedMediumsDeletion() throws Exception {
+        //represents a virtual machine which should be removed
+        VirtualMachine vm = new VMBuilder().build();
+        IMachine machineMocked = mock(IMachine.class);
+        //represents the progress of the deletion together with storage mediums
+        IProgress progressMock = mock(IProgress.class);
+        //represents the progress of the deletion without storage mediums
+        IProgress retryProgressMock = mock(IProgress.class);
+        List<IMedium> mediums = new ArrayList<>();
+
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        when(vboxMock.findMachine(vm.getId().toString())).thenReturn(machineMocked);
+        when(machineMocked.getAccessible()).thenReturn(true);
+        when(machineMocked.getState()).thenReturn(MachineState.PoweredOff);
+        //the virtual machine has no storage medium, so it has no linked clones
+        when(machineMocked.getMediumAttachmentsOfController("SATA")).thenReturn(new ArrayList<>());
+        when(machineMocked.unregister(CleanupMode.DetachAllReturnHardDisksOnly)).thenReturn(mediums);
+        when(machineMocked.deleteConfig(mediums)).thenReturn(progressMock);
+        when(machineMocked.deleteConfig(null)).thenReturn(retryProgressMock);
+        when(progressMock.getCompleted()).thenReturn(false, true);
+        when(progressMock.getResultCode()).thenReturn(-421548);
+        when(retryProgressMock.getCompleted()).thenReturn(false, true);
+        when(retryProgressMock.getResultCode()).thenReturn(0);
+
+        //there should not appear any exception nor error
+        sut.removeVirtualMachineAsync(vm, Runnable::run).get();
+
+        verify(machineMocked).deleteConfig(null);
+    }
+
     /**
      * This test tests that there should be invoked a ConnectionFailureException
      * exception if there appears any network connection problem while the
@@ -16,10 +16,13 @@
 package cz.muni.fi.virtualtoolmanager.logicimpl;
 
 import cz.muni.fi.virtualtoolmanager.pubapi.io.OutputHandler;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.SearchCriteria;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.SearchResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException;
+import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.OperationTimeoutException;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchMode;
 import java.io.ByteArrayOutputStream;
@@ -28,15 +31,23 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Rule;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
-import static org.powermock.api.mockito.PowerMockito.doReturn;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.doThrow;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
@@ -65,6 +76,8 @@ public class SearchManagerImplTest {
         conManMock = mock(ConnectionManagerImpl.class);
         whenNew(VirtualizationToolManagerImpl.class).withAnyArguments().thenReturn(vtmMock);
         whenNew(ConnectionManagerImpl.class).withNoArguments().thenReturn(conManMock);
+        VMInventoryCache.getInstance().clear();
+        VMDirectory.getInstance().clear();
         sut = new SearchManagerImpl();
     }
     
@@ -126,7 +139,7 @@ public class SearchManagerImplTest {
      * machines, then those virtual machines are returned as a result of the method call.
      */
     @Test
-    public void searchPreciselyWithSomeExistingVMsAndSomeMatch(){
+    public void searchPreciselyWithSomeExistingVMsAndSomeMatch() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -167,10 +180,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.ABSOLUTE_EQUALITY, searchOrder);
         
@@ -190,7 +204,7 @@ public class SearchManagerImplTest {
      * search criterion), and returned an empty list of found VMs.
      */
     @Test
-    public void searchPreciselyWithSomeExistingVMsAndNoMatchAfterFirstSearchCriteriaComparison(){
+    public void searchPreciselyWithSomeExistingVMsAndNoMatchAfterFirstSearchCriteriaComparison() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -229,10 +243,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.ABSOLUTE_EQUALITY, searchOrder);
         
@@ -247,7 +262,7 @@ public class SearchManagerImplTest {
      * and the different attribute value was found out in the last search round.
      */
     @Test
-    public void searchPreciselyWithSomeExistingVMsAndNoMatchAfterMoreSearchCriteriaComparisons(){
+    public void searchPreciselyWithSomeExistingVMsAndNoMatchAfterMoreSearchCriteriaComparisons() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -290,10 +305,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.ABSOLUTE_EQUALITY, searchOrder);
         
@@ -301,7 +317,7 @@ public class SearchManagerImplTest {
     }
     
     @Test
-    public void searchPreciselyWithNoExistingVMs(){
+    public void searchPreciselyWithNoExistingVMs() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -329,8 +345,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after all method calls there should be returned an empty list of available VMs from a particular PM
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.ABSOLUTE_EQUALITY, searchOrder);
         
@@ -343,7 +362,7 @@ public class SearchManagerImplTest {
      * this virtual machine is returned as a result of the search operation.
      */
     @Test
-    public void searchTolerantlyWithSomeExistingVMsAndSomePreciseMatch(){
+    public void searchTolerantlyWithSomeExistingVMsAndSomePreciseMatch() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -384,10 +403,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder);
         
@@ -409,7 +429,7 @@ public class SearchManagerImplTest {
      * VMs from 4. attempt are not included to the result of search operation.
      */
     @Test
-    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchAndCustomizedSearchOrder1(){
+    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchAndCustomizedSearchOrder1() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -457,10 +477,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder);
         
@@ -482,7 +503,7 @@ public class SearchManagerImplTest {
      * not included to the result of search operation.
      */
     @Test
-    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchCustomizedSearchOrder2(){
+    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchCustomizedSearchOrder2() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -532,10 +553,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder);
         
@@ -556,7 +578,7 @@ public class SearchManagerImplTest {
      * last successful attempt thus after 3. attempt.
      */
     @Test
-    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchCustomizedSearchOrder3(){
+    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchCustomizedSearchOrder3() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -606,10 +628,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder);
         
@@ -628,7 +651,7 @@ public class SearchManagerImplTest {
      * to the result of search operation.
      */
     @Test
-    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchAndDefaultSearchOrder1(){
+    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchAndDefaultSearchOrder1() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -670,10 +693,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, null);
         
@@ -693,7 +717,7 @@ public class SearchManagerImplTest {
      * in the result of search operation.
      */
     @Test
-    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchDefaultSearchOrder2(){
+    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchDefaultSearchOrder2() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -735,10 +759,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, null);
         
@@ -758,7 +783,7 @@ public class SearchManagerImplTest {
      * the last 3. attempt there is not found any VM.
      */
     @Test
-    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchDefaultSearchOrder3(){
+    public void searchTolerantlyWithSomeExistingVMsAndSomeImpreciseMatchDefaultSearchOrder3() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -800,10 +825,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, null);
         
@@ -820,7 +846,7 @@ public class SearchManagerImplTest {
      * precise number and this number increased by a set up deviation.
      */
     @Test
-    public void searchWithSetUpDeviationHDDFreeSpaceSize(){
+    public void searchWithSetUpDeviationHDDFreeSpaceSize() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -860,10 +886,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);        
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, null);
         
         Collections.sort(expVMs, vmComparator);
@@ -882,7 +909,7 @@ public class SearchManagerImplTest {
      * precise number and this number increased by a set up deviation.
      */
     @Test
-    public void searchWithSetUpDeviationHDDTotalSize(){
+    public void searchWithSetUpDeviationHDDTotalSize() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -922,10 +949,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);        
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, null);
         
         Collections.sort(expVMs, vmComparator);
@@ -944,7 +972,7 @@ public class SearchManagerImplTest {
      * increased by a set up deviation.
      */
     @Test
-    public void searchWithSetUpDeviationRAM(){
+    public void searchWithSetUpDeviationRAM() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -984,10 +1012,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);        
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, null);
         
         Collections.sort(expVMs, vmComparator);
@@ -1006,7 +1035,7 @@ public class SearchManagerImplTest {
      * increased by a set up deviation.
      */
     @Test
-    public void searchWithSetUpDeviationVRAM(){
+    public void searchWithSetUpDeviationVRAM() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -1046,10 +1075,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);        
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, null);
         
         Collections.sort(expVMs, vmComparator);
@@ -1189,7 +1219,7 @@ public class SearchManagerImplTest {
      * but instead of customized search order is used preset default search order.
      */
     @Test
-    public void searchWithNullSearchOrder(){
+    public void searchWithNullSearchOrder() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -1231,10 +1261,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, null);
         
@@ -1248,7 +1279,7 @@ public class SearchManagerImplTest {
      * order instead of the customized search order.
      */
     @Test
-    public void searchWithEmptySearchOrder(){
+    public void searchWithEmptySearchOrder() throws Exception {
        //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -1292,10 +1323,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder);
         
@@ -1309,7 +1341,7 @@ public class SearchManagerImplTest {
      * used the preset default search order instead of the customized search order.
      */
     @Test
-    public void searchWithNonemptySearchOrderFormedByNulls(){
+    public void searchWithNonemptySearchOrderFormedByNulls() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -1353,10 +1385,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder);
         
@@ -1370,7 +1403,7 @@ public class SearchManagerImplTest {
      * there are removed the null values from the used search order.
      */
     @Test
-    public void searchWithNonemptySearchOrderFormedByValidAndNullValues(){
+    public void searchWithNonemptySearchOrderFormedByValidAndNullValues() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -1418,10 +1451,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder);
         
@@ -1436,7 +1470,7 @@ public class SearchManagerImplTest {
      * according to filtered (without duplicity) customized search order.
      */
     @Test
-    public void searchWithNonemptySearchOrderFormedByValidDuplicitValues(){
+    public void searchWithNonemptySearchOrderFormedByValidDuplicitValues() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -1484,10 +1518,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder);
         
@@ -1502,7 +1537,7 @@ public class SearchManagerImplTest {
      * and VMs are searched according to filtered (without duplicity) customized search order.
      */
     @Test
-    public void searchWithNonemptySearchOrderFormedByValidDuplicitAndNullValues(){
+    public void searchWithNonemptySearchOrderFormedByValidDuplicitAndNullValues() throws Exception {
         //represent connected physical machines from which are retrieved all virtual machines
         PhysicalMachine pm1 = new PMBuilder().build();
         PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
@@ -1554,10 +1589,11 @@ public class SearchManagerImplTest {
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        when(vtmMock.getVirtualMachines()).thenReturn(vmsFromPM1).thenReturn(vmsFromPM2).thenReturn(vmsFromPM3);
+        //each connected physical machine returns just its own available VMs, no matter
+        //in which order the physical machines are searched
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        stubVirtualMachines(pm3, vmsFromPM3);
         
         List<VirtualMachine> actVMs = sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder);
         
@@ -1565,6 +1601,11 @@ public class SearchManagerImplTest {
         assertDeepVMsEquals(expVMs, actVMs);  
     }
     
+    /**
+     * This test tests that the connection problem of one physical machine does
+     * not stop the search, the virtual machines of the other physical machines
+     * are searched and the failed physical machine is reported in the result.
+     */
     @Test
     public void searchWithAnyConnectionProblemWhileRetrievingVMs() throws Exception{
         //represent connected physical machines from which are retrieved all virtual machines
@@ -1614,25 +1655,270 @@ public class SearchManagerImplTest {
                                                               SearchCriterionType.NAME);
         //represents a list of expected virtual machines (a result of search method call)
         List<VirtualMachine> expVMs = Arrays.asList(vm3);
-        NativeVBoxAPIManager natAPIManMock = mock(NativeVBoxAPIManager.class);
-        whenNew(NativeVBoxAPIManager.class).withNoArguments().thenReturn(natAPIManMock);
         ConnectionFailureException conFailExMock = mock(ConnectionFailureException.class);
         
         //there should be returned a list of connected PMs when the method
         //ConnectionManagerImpl::getConnectedPhysicalMachines() is called
         when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
-        //after the first call of the method VirtualizationToolManagerImpl::getVirtualMachines() there should
-        //returned a list of all available VMs from connected PM pm1, after the second call a list of all
-        //available VMs from connected PM pm2 and after the third call an empty list of VMs from connected PM pm3
-        doReturn(vmsFromPM1).doReturn(vmsFromPM2).doCallRealMethod().when(vtmMock).getVirtualMachines();
-        when(conManMock.isConnected(pm3)).thenReturn(true);
-        doThrow(conFailExMock).when(natAPIManMock).getAllVirtualMachines(pm3);
-        
-        exception.expect(ConnectionFailureException.class);
-        sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder);
+        //the connected physical machines pm1 and pm2 return their available VMs and the retrieve
+        //of VMs from pm3 fails because of the connection problem
+        stubVirtualMachines(pm1, vmsFromPM1);
+        stubVirtualMachines(pm2, vmsFromPM2);
+        VirtualizationToolManagerImpl vtmOfPM3Mock = mockVTMOf(pm3);
+        doThrow(conFailExMock).when(vtmOfPM3Mock).getVirtualMachines(anySetOf(SearchCriterionType.class));
+        
+        SearchResult result = sut.search(searchCriteria, SearchMode.TOLERANT, searchOrder, 0L);
+        
+        //checks the failed physical machine is reported and the others were searched
+        assertFalse("Search result should not be complete", result.isComplete());
+        assertEquals("There should be one failed physical machine", 1, result.getFailures().size());
+        assertSame("Failure should be the connection problem", conFailExMock,
+                   result.getFailures().get(0).getFailure());
+    }
+    
+    /**
+     * This test tests that the physical machine which does not respond in time
+     * is reported as failed and the virtual machines of the others are searched
+     * without waiting for it.
+     */
+    @Test
+    public void searchWithSlowPhysicalMachine() throws Exception {
+        PhysicalMachine pm1 = new PMBuilder().build();
+        PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
+        VirtualMachine vm1 = new VMBuilder().build();
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().name(vm1.getName()).build();
+
+        CountDownLatch pm2Released = new CountDownLatch(1);
+
+        when(conManMock.getConnectedPhysicalMachines()).thenReturn(Arrays.asList(pm1, pm2));
+        //pm1 returns immediately, pm2 responds only after the search is finished
+        stubVirtualMachines(pm1, Arrays.asList(vm1));
+        VirtualizationToolManagerImpl vtmOfPM2Mock = mockVTMOf(pm2);
+        when(vtmOfPM2Mock.getVirtualMachines(anySetOf(SearchCriterionType.class)))
+                .thenAnswer(invocation -> {
+                    pm2Released.await(5, TimeUnit.SECONDS);
+                    return new ArrayList<VirtualMachine>();
+                });
+
+        SearchResult result = sut.search(searchCriteria, SearchMode.ABSOLUTE_EQUALITY, null, 200L);
+        pm2Released.countDown();
+
+        assertEquals("There should be one failed physical machine", 1, result.getFailures().size());
+        assertTrue("Slow physical machine should time out",
+                   result.getFailures().get(0).getFailure() instanceof OperationTimeoutException);
+        assertDeepVMsEquals(Arrays.asList(vm1), result.getVirtualMachines());
     }
     
 
+    /**
+     * This test tests that the physical machine waiting for a free thread does
+     * not time out when there are searched more than 16 physical machines.
+     */
+    @Test
+    public void searchWithMorePhysicalMachinesThanThreads() throws Exception {
+        List<PhysicalMachine> connectedPMs = new ArrayList<>();
+        for(int i = 0; i < 17; ++i){
+            connectedPMs.add(new PMBuilder().addressIP("102.10.91." + (i + 10)).build());
+        }
+        PhysicalMachine lastPM = connectedPMs.get(16);
+        VirtualMachine vm1 = new VMBuilder().hostMachine(lastPM).build();
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().name(vm1.getName()).build();
+        CountDownLatch pmsReleased = new CountDownLatch(1);
+
+        when(conManMock.getConnectedPhysicalMachines()).thenReturn(connectedPMs);
+        //the first 16 physical machines take all the threads for much longer than
+        //their time, so the last one is queried only after that time
+        for(PhysicalMachine physicalMachine : connectedPMs.subList(0, 16)){
+            VirtualizationToolManagerImpl pmVTMMock = mockVTMOf(physicalMachine);
+            when(pmVTMMock.getVirtualMachines(anySetOf(SearchCriterionType.class)))
+                    .thenAnswer(invocation -> {
+                        pmsReleased.await(1, TimeUnit.SECONDS);
+                        return new ArrayList<VirtualMachine>();
+                    });
+        }
+        stubVirtualMachines(lastPM, Arrays.asList(vm1));
+
+        SearchResult result = sut.search(searchCriteria, SearchMode.ABSOLUTE_EQUALITY, null, 200L);
+        pmsReleased.countDown();
+
+        assertEquals("Busy physical machines should fail", 16, result.getFailures().size());
+        for(OperationResult<PhysicalMachine, Void> failure : result.getFailures()){
+            assertTrue("Busy physical machine should time out",
+                       failure.getFailure() instanceof OperationTimeoutException);
+            assertTrue("Last physical machine should not time out", !lastPM.equals(failure.getSubject()));
+        }
+        assertDeepVMsEquals(Arrays.asList(vm1), result.getVirtualMachines());
+    }
+
+    /**
+     * This test tests that there are required only the attributes of virtual
+     * machines which are specified in the search criteria.
+     */
+    @Test
+    public void searchRetrievesOnlySearchedAttributes(){
+        PhysicalMachine pm1 = new PMBuilder().build();
+        VirtualMachine vm1 = new VMBuilder().build();
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().typeOfOS("Linux").sizeOfRAM(4096L).build();
+
+        when(conManMock.getConnectedPhysicalMachines()).thenReturn(Arrays.asList(pm1));
+        when(vtmMock.getVirtualMachines(anySetOf(SearchCriterionType.class))).thenReturn(Arrays.asList(vm1));
+
+        sut.search(searchCriteria, SearchMode.ABSOLUTE_EQUALITY, null);
+
+        verify(vtmMock).getVirtualMachines(EnumSet.of(SearchCriterionType.OS_TYPE, SearchCriterionType.RAM));
+    }
+
+    /**
+     * This test tests that the matched virtual machines of each physical machine
+     * are given to the consumer and the completed search result contains all
+     * of them.
+     */
+    @Test
+    public void searchAsyncStreamsMatchedVMs() throws Exception {
+        PhysicalMachine pm1 = new PMBuilder().build();
+        PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
+        VirtualMachine vm1 = new VMBuilder().build();
+        VirtualMachine vm2 = new VMBuilder().id(UUID.fromString("000d084a-0189-4a55-a9b7-531c455570a1"))
+                                            .hostMachine(pm2).build();
+        VirtualMachine vm3 = new VMBuilder().id(UUID.fromString("000d0815-aa89-bbcd-a9b7-531c455570a1"))
+                                            .typeOfOS("MS-Windows").hostMachine(pm2).build();
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().typeOfOS("Linux").build();
+        List<VirtualMachine> consumedVMs = Collections.synchronizedList(new ArrayList<VirtualMachine>());
+
+        when(conManMock.getConnectedPhysicalMachines()).thenReturn(Arrays.asList(pm1, pm2));
+        stubVirtualMachines(pm1, Arrays.asList(vm1));
+        stubVirtualMachines(pm2, Arrays.asList(vm2, vm3));
+
+        SearchResult result = sut.searchAsync(searchCriteria, SearchMode.ABSOLUTE_EQUALITY, null,
+                                              0L, consumedVMs::add).get(5, TimeUnit.SECONDS);
+
+        List<VirtualMachine> expVMs = new ArrayList<>(Arrays.asList(vm1, vm2));
+        List<VirtualMachine> actVMs = new ArrayList<>(result.getVirtualMachines());
+        List<VirtualMachine> actConsumedVMs = new ArrayList<>(consumedVMs);
+        Collections.sort(expVMs, vmComparator);
+        Collections.sort(actVMs, vmComparator);
+        Collections.sort(actConsumedVMs, vmComparator);
+
+        assertTrue("Search result should be complete", result.isComplete());
+        assertDeepVMsEquals(expVMs, actVMs);
+        assertDeepVMsEquals(expVMs, actConsumedVMs);
+    }
+
+    /**
+     * This test tests that the physical machine which does not respond
+     * in time is reported as failed by the asynchronous search and its matched
+     * virtual machines are never given to the consumer.
+     */
+    @Test
+    public void searchAsyncWithSlowPhysicalMachine() throws Exception {
+        PhysicalMachine pm1 = new PMBuilder().build();
+        PhysicalMachine pm2 = new PMBuilder().addressIP("102.10.91.12").build();
+        VirtualMachine vm1 = new VMBuilder().build();
+        VirtualMachine vm2 = new VMBuilder().id(UUID.fromString("000d084a-0189-4a55-a9b7-531c455570a1"))
+                                            .hostMachine(pm2).build();
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().typeOfOS("Linux").build();
+        List<VirtualMachine> consumedVMs = Collections.synchronizedList(new ArrayList<VirtualMachine>());
+
+        CountDownLatch pm2Released = new CountDownLatch(1);
+        CountDownLatch pm2Queried = new CountDownLatch(1);
+        AtomicReference<Thread> pm2SearchThread = new AtomicReference<>();
+
+        when(conManMock.getConnectedPhysicalMachines()).thenReturn(Arrays.asList(pm1, pm2));
+        //pm1 returns immediately, pm2 responds only after the search is finished
+        stubVirtualMachines(pm1, Arrays.asList(vm1));
+        VirtualizationToolManagerImpl vtmOfPM2Mock = mockVTMOf(pm2);
+        when(vtmOfPM2Mock.getVirtualMachines(anySetOf(SearchCriterionType.class)))
+                .thenAnswer(invocation -> {
+                    pm2SearchThread.set(Thread.currentThread());
+                    pm2Queried.countDown();
+                    pm2Released.await(5, TimeUnit.SECONDS);
+                    return Arrays.asList(vm2);
+                });
+
+        SearchResult result = sut.searchAsync(searchCriteria, SearchMode.ABSOLUTE_EQUALITY, null,
+                                              200L, consumedVMs::add).get(5, TimeUnit.SECONDS);
+        //the late matches of pm2 must not reach the consumer, the search thread
+        //ends as soon as the search of pm2 is finished
+        pm2Released.countDown();
+        assertTrue("Slow physical machine should be queried", pm2Queried.await(5, TimeUnit.SECONDS));
+        pm2SearchThread.get().join(5000L);
+        assertFalse("Search of slow physical machine should be finished", pm2SearchThread.get().isAlive());
+
+        assertEquals("There should be one failed physical machine", 1, result.getFailures().size());
+        assertEquals("Slow physical machine should fail", pm2, result.getFailures().get(0).getSubject());
+        assertTrue("Slow physical machine should time out",
+                   result.getFailures().get(0).getFailure() instanceof OperationTimeoutException);
+        assertDeepVMsEquals(Arrays.asList(vm1), result.getVirtualMachines());
+        assertDeepVMsEquals(Arrays.asList(vm1), new ArrayList<>(consumedVMs));
+    }
+
+    /**
+     * This test tests that there is thrown IllegalArgumentException immediately
+     * when there is used a null consumer of matched virtual machines.
+     */
+    @Test
+    public void searchAsyncWithNullConsumer(){
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().typeOfOS("Linux").build();
+
+        exception.expect(IllegalArgumentException.class);
+        sut.searchAsync(searchCriteria, SearchMode.ABSOLUTE_EQUALITY, null, 0L, null);
+    }
+
+    /**
+     * This test tests that the virtual machine known from the directory of
+     * a connected physical machine is returned without querying any physical machine.
+     */
+    @Test
+    public void findAnywhereKnownVirtualMachine(){
+        VirtualMachine vm1 = new VMBuilder().build();
+        VMDirectory.getInstance().put(vm1);
+
+        when(conManMock.isConnected(vm1.getHostMachine())).thenReturn(true);
+
+        assertEquals("Known virtual machine should be returned", vm1, sut.findAnywhere(vm1.getId()));
+        assertEquals("Known virtual machine should be returned", vm1, sut.findAnywhere(vm1.getName()));
+        verify(vtmMock, never()).findVirtualMachineByName(any(String.class));
+    }
+
+    /**
+     * This test tests that the unknown virtual machine is searched on
+     * the connected physical machines until it is found.
+     */
+    @Test
+    public void findAnywhereUnknownVirtualMachine(){
+        PhysicalMachine pm1 = new PMBuilder().build();
+        PhysicalMachine pm2 = new PMBuilder().addressIP("10.0.0.2").build();
+        VirtualMachine vm1 = new VMBuilder().build();
+
+        when(conManMock.getConnectedPhysicalMachines()).thenReturn(Arrays.asList(pm1, pm2));
+        when(vtmMock.findVirtualMachineByName(vm1.getId().toString())).thenReturn(null).thenReturn(vm1);
+
+        assertEquals("Virtual machine from the second physical machine should be returned",
+                     vm1, sut.findAnywhere(vm1.getId()));
+        verify(vtmMock, times(2)).findVirtualMachineByName(vm1.getId().toString());
+    }
+
+    /**
+     * Creates the mock of VirtualizationToolManagerImpl which is used just
+     * for the given physical machine.
+     */
+    private VirtualizationToolManagerImpl mockVTMOf(PhysicalMachine physicalMachine) throws Exception {
+        VirtualizationToolManagerImpl pmVTMMock = mock(VirtualizationToolManagerImpl.class);
+        whenNew(VirtualizationToolManagerImpl.class).withArguments(physicalMachine).thenReturn(pmVTMMock);
+        return pmVTMMock;
+    }
+
+    /**
+     * Sets up the virtual machines returned from the given physical machine,
+     * the physical machines are searched concurrently, so the virtual machines
+     * must not depend on the order of calls.
+     */
+    private void stubVirtualMachines(PhysicalMachine physicalMachine,
+            List<VirtualMachine> virtualMachines) throws Exception {
+        VirtualizationToolManagerImpl pmVTMMock = mockVTMOf(physicalMachine);
+        when(pmVTMMock.getVirtualMachines(anySetOf(SearchCriterionType.class))).thenReturn(virtualMachines);
+    }
+
     /**
      * Class Builder for easier and faster creating and setting up new object of
      * type PhysicalMachine.
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import org.powermock.api.mockito.PowerMockito;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.virtualbox_4_3.ISession;
+import org.virtualbox_4_3.IVirtualBox;
+import org.virtualbox_4_3.SessionState;
+import org.virtualbox_4_3.VBoxException;
+import org.virtualbox_4_3.VirtualBoxManager;
+
+/**
+ * This test class ensure unit testing of class VBoxSessionPool and
+ * is intended to be a pointer that class VBoxSessionPool works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(VirtualBoxManager.class)
+public class VBoxSessionPoolTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private VBoxSessionPool sut;
+    private VirtualBoxManager vbmMock;
+    private ISession sessionMock;
+    private PhysicalMachine pm;
+
+    @Before
+    public void setUp(){
+        PowerMockito.mockStatic(VirtualBoxManager.class);
+        vbmMock = mock(VirtualBoxManager.class);
+        sessionMock = mock(ISession.class);
+        //session which does not hold any virtual machine locked is reusable
+        when(vbmMock.getSessionObject()).thenReturn(sessionMock);
+        when(sessionMock.getState()).thenReturn(SessionState.Unlocked);
+        when(VirtualBoxManager.createInstance(null)).thenReturn(vbmMock);
+        pm = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        //sessions are held only for the connected physical machines
+        ConnectedPhysicalMachines.getInstance().add(pm);
+        sut = VBoxSessionPool.getInstance();
+        sut.clear();
+        HostCircuitBreaker.getInstance().clear();
+    }
+
+    @After
+    public void cleanUp(){
+        ConnectedPhysicalMachines.getInstance().remove(pm);
+        sut.clear();
+        sut.setMaxIdleSessions(VBoxSessionPool.DEFAULT_MAX_IDLE_SESSIONS);
+        sut.setIdleTimeout(VBoxSessionPool.DEFAULT_IDLE_TIMEOUT);
+        sut.setValidationInterval(VBoxSessionPool.DEFAULT_VALIDATION_INTERVAL);
+        sut.setMaxSessions(VBoxSessionPool.DEFAULT_MAX_SESSIONS);
+        sut.setSessionWaitTimeout(VBoxSessionPool.DEFAULT_SESSION_WAIT_TIMEOUT);
+        HostCircuitBreaker.getInstance().clear();
+        HostCircuitBreaker.getInstance().setFailureThreshold(HostCircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+        HostCircuitBreaker.getInstance().setProbeInterval(HostCircuitBreaker.DEFAULT_PROBE_INTERVAL);
+    }
+
+    /**
+     * This test tests that if there is no idle session for the physical machine,
+     * then the method VBoxSessionPool::acquire() establishes a new one.
+     */
+    @Test
+    public void acquireWithEmptyPool(){
+        VirtualBoxManager vbm = sut.acquire(pm);
+
+        assertSame("There should be returned a newly created session", vbmMock, vbm);
+        verify(vbmMock).connect("http://180.148.14.10:18083", "Jack", "tr1h15jk7");
+    }
+
+    /**
+     * This test tests that the session which was given back to the pool is
+     * borrowed again by the next call of method VBoxSessionPool::acquire()
+     * and there is not made any new logon.
+     */
+    @Test
+    public void acquireReusesReleasedSession(){
+        VirtualBoxManager vbm = sut.acquire(pm);
+        sut.release(pm, vbm);
+
+        assertEquals("There should be held one idle session", 1, sut.getIdleSessionsCount(pm));
+        assertSame("The idle session should be reused", vbm, sut.acquire(pm));
+        assertEquals("There should not be held any idle session", 0, sut.getIdleSessionsCount(pm));
+        //there was made just one logon and no logoff
+        verify(vbmMock, times(1)).connect("http://180.148.14.10:18083", "Jack", "tr1h15jk7");
+        verify(vbmMock, never()).disconnect();
+    }
+
+    /**
+     * This test tests that if the connection with the physical machine cannot
+     * be established, then the session is cleaned up and the original
+     * VBoxException is propagated to the caller.
+     */
+    @Test
+    public void acquireWithConnectionFailure(){
+        doThrow(VBoxException.class).when(vbmMock).connect("http://180.148.14.10:18083", "Jack", "tr1h15jk7");
+
+        try{
+            sut.acquire(pm);
+            fail("VBoxException should be thrown");
+        }catch(VBoxException ex){
+            //expected
+        }
+        verify(vbmMock).disconnect();
+        verify(vbmMock).cleanup();
+    }
+
+    /**
+     * This test tests that the probe of the open circuit which fails with
+     * an error opens the circuit again instead of leaving it half open.
+     */
+    @Test
+    public void acquireWithErrorDuringProbe(){
+        HostCircuitBreaker circuitBreaker = HostCircuitBreaker.getInstance();
+        circuitBreaker.setFailureThreshold(1);
+        circuitBreaker.setProbeInterval(0L);
+        doThrow(VBoxException.class).doThrow(StackOverflowError.class)
+                .when(vbmMock).connect("http://180.148.14.10:18083", "Jack", "tr1h15jk7");
+        try{
+            sut.acquire(pm);
+            fail("VBoxException should be thrown");
+        }catch(VBoxException ex){
+            //expected, the circuit is open
+        }
+
+        try{
+            sut.acquire(pm);
+            fail("StackOverflowError should be thrown");
+        }catch(StackOverflowError ex){
+            //expected
+        }
+        assertEquals("Circuit should be opened again after the failed probe",
+                     HostCircuitBreaker.State.OPEN, circuitBreaker.getState(pm));
+    }
+
+    /**
+     * This test tests that there is IllegalArgumentException invoked when
+     * the method VBoxSessionPool::acquire() is called with a null physical machine.
+     */
+    @Test
+    public void acquireWithNullPhysicalMachine(){
+        exception.expect(IllegalArgumentException.class);
+        sut.acquire(null);
+    }
+
+    /**
+     * This test tests that the session whose session object still holds
+     * a virtual machine locked is not given back to the pool, but it is logged off.
+     */
+    @Test
+    public void releaseLockedSession(){
+        when(sessionMock.getState()).thenReturn(SessionState.Locked);
+
+        sut.release(pm, sut.acquire(pm));
+
+        assertEquals("Locked session should not be held", 0, sut.getIdleSessionsCount(pm));
+        verify(vbmMock).disconnect();
+        verify(vbmMock).cleanup();
+    }
+
+    /**
+     * This test tests that the session of a physical machine which is not
+     * connected (anymore) is not given back to the pool, but it is logged off.
+     */
+    @Test
+    public void releaseSessionOfNotConnectedPhysicalMachine(){
+        VirtualBoxManager vbm = sut.acquire(pm);
+        ConnectedPhysicalMachines.getInstance().remove(pm);
+
+        sut.release(pm, vbm);
+
+        assertEquals("Session of disconnected physical machine should not be held",
+                     0, sut.getIdleSessionsCount(pm));
+        verify(vbmMock).disconnect();
+    }
+
+    /**
+     * This test tests that there is held at most the maximum number of idle
+     * sessions for one physical machine and the redundant ones are logged off.
+     */
+    @Test
+    public void releaseMoreSessionsThanMaxIdleSessions(){
+        VirtualBoxManager vbm2 = mock(VirtualBoxManager.class);
+        when(vbm2.getSessionObject()).thenReturn(sessionMock);
+        sut.setMaxIdleSessions(1);
+
+        sut.release(pm, vbmMock);
+        sut.release(pm, vbm2);
+
+        assertEquals("There should be held just one idle session", 1, sut.getIdleSessionsCount(pm));
+        //the most recently returned session is kept, the older one is logged off
+        verify(vbmMock).disconnect();
+        verify(vbm2, never()).disconnect();
+        assertSame("The most recently returned session should be borrowed", vbm2, sut.acquire(pm));
+    }
+
+    /**
+     * This test tests that the idle session which exceeded the idle timeout
+     * is logged off and not borrowed anymore.
+     */
+    @Test
+    public void acquireAfterIdleTimeout() throws Exception{
+        VirtualBoxManager vbmOld = mock(VirtualBoxManager.class);
+        when(vbmOld.getSessionObject()).thenReturn(sessionMock);
+        sut.setIdleTimeout(0L);
+
+        sut.release(pm, vbmOld);
+        Thread.sleep(5);
+
+        assertSame("There should be established a new session", vbmMock, sut.acquire(pm));
+        verify(vbmOld).disconnect();
+        verify(vbmOld).cleanup();
+    }
+
+    /**
+     * This test tests that the session which was idle longer than the validation
+     * interval is validated before it is borrowed and if it is not valid
+     * anymore, then a new session is established instead.
+     */
+    @Test
+    public void acquireWithInvalidIdleSession() throws Exception{
+        VirtualBoxManager vbmOld = mock(VirtualBoxManager.class);
+        IVirtualBox vboxMock = mock(IVirtualBox.class);
+        when(vbmOld.getSessionObject()).thenReturn(sessionMock);
+        when(vbmOld.getVBox()).thenReturn(vboxMock);
+        //web server session timed out
+        when(vboxMock.getAPIVersion()).thenThrow(VBoxException.class);
+        sut.setValidationInterval(0L);
+
+        sut.release(pm, vbmOld);
+        Thread.sleep(5);
+
+        assertSame("There should be established a new session", vbmMock, sut.acquire(pm));
+        verify(vbmOld).disconnect();
+    }
+
+    /**
+     * This test tests that the method VBoxSessionPool::closeSessions() logs off
+     * all idle sessions of the physical machine.
+     */
+    @Test
+    public void closeSessions(){
+        sut.release(pm, sut.acquire(pm));
+
+        sut.closeSessions(pm);
+
+        assertEquals("There should not be held any idle session", 0, sut.getIdleSessionsCount(pm));
+        verify(vbmMock).disconnect();
+        verify(vbmMock).cleanup();
+    }
+
+    /**
+     * This test tests that there is not logged on more than the maximum number
+     * of sessions of one physical machine and the session which is given back
+     * can be borrowed again.
+     */
+    @Test
+    public void acquireMoreSessionsThanMaxSessions(){
+        sut.setMaxSessions(1);
+        sut.setSessionWaitTimeout(50L);
+
+        VirtualBoxManager vbm = sut.acquire(pm);
+        try{
+            sut.acquire(pm);
+            fail("VBoxException should be thrown");
+        }catch(VBoxException ex){
+            //expected
+        }
+        sut.release(pm, vbm);
+
+        assertSame("The session given back should be borrowed", vbm, sut.acquire(pm));
+        verify(vbmMock, times(1)).connect("http://180.148.14.10:18083", "Jack", "tr1h15jk7");
+    }
+
+    /**
+     * This test tests that the thread waiting for a session of the physical
+     * machine with the maximum number of sessions gets the place of the session
+     * which is logged off.
+     */
+    @Test
+    public void acquireWaitsForInvalidatedSession() throws Exception{
+        sut.setMaxSessions(1);
+        VirtualBoxManager vbm = sut.acquire(pm);
+        //the session is logged off before or while the next one is waited for
+        Thread invalidator = new Thread(() -> sut.invalidate(vbm));
+        invalidator.start();
+
+        assertSame("There should be established a new session", vbmMock, sut.acquire(pm));
+        invalidator.join();
+        verify(vbmMock, times(2)).connect("http://180.148.14.10:18083", "Jack", "tr1h15jk7");
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.virtualbox_4_3.IEvent;
+import org.virtualbox_4_3.IEventListener;
+import org.virtualbox_4_3.IEventSource;
+import org.virtualbox_4_3.IMachine;
+import org.virtualbox_4_3.IProgress;
+import org.virtualbox_4_3.ISession;
+import org.virtualbox_4_3.IVirtualBox;
+import org.virtualbox_4_3.MachineState;
+import org.virtualbox_4_3.SessionState;
+import org.virtualbox_4_3.VBoxEventType;
+import org.virtualbox_4_3.VBoxException;
+import org.virtualbox_4_3.VirtualBoxManager;
+
+/**
+ * This test class ensure unit testing of class VBoxStateWaiter and
+ * is intended to be a pointer that class VBoxStateWaiter works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(VirtualBoxManager.class)
+public class VBoxStateWaiterTest {
+
+    private VirtualBoxManager vbmMock;
+    private IVirtualBox vboxMock;
+    private IEventSource eventSourceMock;
+    private IEventListener listenerMock;
+
+    @Before
+    public void setUp(){
+        vbmMock = mock(VirtualBoxManager.class);
+        vboxMock = mock(IVirtualBox.class);
+        eventSourceMock = mock(IEventSource.class);
+        listenerMock = mock(IEventListener.class);
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        when(vboxMock.getEventSource()).thenReturn(eventSourceMock);
+        when(eventSourceMock.createListener()).thenReturn(listenerMock);
+    }
+
+    /**
+     * This test tests that there is not registered any listener when
+     * the virtual machine is already in the required state.
+     */
+    @Test
+    public void waitForMachineStateAlreadyReached(){
+        IMachine machineMock = mock(IMachine.class);
+        when(machineMock.getState()).thenReturn(MachineState.Running);
+
+        VBoxStateWaiter.waitForMachineState(vbmMock, machineMock, MachineState.Running);
+
+        verify(eventSourceMock, never()).createListener();
+    }
+
+    /**
+     * This test tests that the state of the virtual machine is queried again
+     * after each event and the listener is unregistered at the end.
+     */
+    @Test
+    public void waitForMachineStateDrivenByEvents(){
+        IMachine machineMock = mock(IMachine.class);
+        IEvent eventMock = mock(IEvent.class);
+        when(machineMock.getState()).thenReturn(MachineState.Starting, MachineState.Starting,
+                                                MachineState.Running);
+        when(eventSourceMock.getEvent(listenerMock, 1000)).thenReturn(eventMock);
+        List<VBoxEventType> types = new ArrayList<>();
+        types.add(VBoxEventType.OnMachineStateChanged);
+
+        VBoxStateWaiter.waitForMachineState(vbmMock, machineMock, MachineState.Running);
+
+        verify(eventSourceMock).registerListener(listenerMock, types, false);
+        verify(eventSourceMock, times(2)).eventProcessed(listenerMock, eventMock);
+        verify(eventSourceMock).unregisterListener(listenerMock);
+        verify(machineMock, times(3)).getState();
+    }
+
+    /**
+     * This test tests that the state of the session is polled when the events
+     * are not available.
+     */
+    @Test
+    public void waitForSessionUnlockedWithoutEvents(){
+        ISession sessionMock = mock(ISession.class);
+        when(sessionMock.getState()).thenReturn(SessionState.Unlocking, SessionState.Unlocking,
+                                                SessionState.Unlocked);
+        when(eventSourceMock.createListener()).thenThrow(VBoxException.class);
+
+        VBoxStateWaiter.waitForSessionUnlocked(vbmMock, sessionMock);
+
+        verify(sessionMock, times(3)).getState();
+        verify(eventSourceMock, never()).registerListener(any(IEventListener.class),
+                anyListOf(VBoxEventType.class), eq(false));
+    }
+
+    /**
+     * This test tests that there is waited for the progress completion by
+     * the blocking call of the web server instead of the repeated queries.
+     */
+    @Test
+    public void waitForCompletion(){
+        IProgress progressMock = mock(IProgress.class);
+        when(progressMock.getCompleted()).thenReturn(false, false, true);
+
+        VBoxStateWaiter.waitForCompletion(progressMock);
+
+        verify(progressMock).waitForCompletion(200);
+        verify(progressMock).waitForCompletion(400);
+        verify(progressMock, times(2)).waitForCompletion(anyInt());
+    }
+}
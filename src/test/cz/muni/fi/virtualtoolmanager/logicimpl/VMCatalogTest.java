@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.SearchCriteria;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchMode;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * This test class ensure unit testing of class VMCatalog and
+ * is intended to be a pointer that class VMCatalog works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+public class VMCatalogTest {
+
+    private PhysicalMachine pm1;
+    private PhysicalMachine pm2;
+    private VirtualMachine vm1;
+    private VirtualMachine vm2;
+    private VirtualMachine vm3;
+    private VirtualMachine vm4;
+
+    @Before
+    public void setUp(){
+        pm1 = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        pm2 = new PhysicalMachine("180.148.14.11", "18083", "Jack", "tr1h15jk7");
+        vm1 = new VirtualMachine.Builder(UUID.fromString("793d084a-0189-4a55-a9b7-531c455570a1"),
+                "VirtualMachine_01", pm1).sizeOfRAM(4096L).typeOfOS("Linux").build();
+        vm2 = new VirtualMachine.Builder(UUID.fromString("000d084a-0189-4a55-a9b7-531c455570a1"),
+                "VirtualMachine_02", pm1).sizeOfRAM(4300L).typeOfOS("Linux").build();
+        vm3 = new VirtualMachine.Builder(UUID.fromString("000d0815-aa89-bbcd-a9b7-531c455570a1"),
+                "VirtualMachine_03", pm1).sizeOfRAM(8192L).typeOfOS("MS-Windows").build();
+        vm4 = new VirtualMachine.Builder(UUID.fromString("111d0815-aa89-bbcd-a9b7-531c455570a1"),
+                "VirtualMachine_04", pm2).typeOfOS("Linux").build();
+    }
+
+    /**
+     * This test tests that the criterion which is not matched by any virtual
+     * machine ends the search in the absolute equality mode, but it is ignored
+     * in the tolerant mode.
+     */
+    @Test
+    public void filterWithUnmatchedCriterion(){
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().typeOfOS("Linux")
+                                                                    .name("VirtualMachine_99")
+                                                                    .sizeOfRAM(4096L).build();
+        CompiledSearchCriteria compiledCriteria = CompiledSearchCriteria.compile(searchCriteria,
+                Arrays.asList(SearchCriterionType.OS_TYPE, SearchCriterionType.NAME,
+                              SearchCriterionType.RAM), 5);
+        VMCatalog catalog = VMCatalog.of(Arrays.asList(vm1, vm2, vm3));
+
+        assertTrue("No virtual machine should be matched precisely",
+                   catalog.filter(compiledCriteria, SearchMode.ABSOLUTE_EQUALITY).isEmpty());
+        assertEquals("Unmatched criterion should be ignored in the tolerant mode",
+                     Arrays.asList(vm1, vm2), catalog.filter(compiledCriteria, SearchMode.TOLERANT));
+    }
+
+    /**
+     * This test tests that the catalogs of more physical machines are searched
+     * as one catalog and the virtual machine without the searched attribute
+     * is not matched.
+     */
+    @Test
+    public void filterMoreCatalogs(){
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().typeOfOS("Linux")
+                                                                    .sizeOfRAM(4096L).build();
+        CompiledSearchCriteria compiledCriteria = CompiledSearchCriteria.compile(searchCriteria,
+                Arrays.asList(SearchCriterionType.OS_TYPE, SearchCriterionType.RAM), 5);
+        VMCatalog catalog1 = VMCatalog.of(Arrays.asList(vm3, vm2, vm1));
+        VMCatalog catalog2 = VMCatalog.of(Arrays.asList(vm4));
+
+        assertEquals("Virtual machines should be matched in the order of catalogs",
+                     Arrays.asList(vm2, vm1), VMCatalog.filter(Arrays.asList(catalog1, catalog2),
+                                                               compiledCriteria, SearchMode.ABSOLUTE_EQUALITY));
+        assertTrue("Virtual machine without RAM size should not be matched",
+                   catalog2.filter(compiledCriteria, SearchMode.ABSOLUTE_EQUALITY).isEmpty());
+    }
+
+    /**
+     * This test tests that the range criterion matches just the virtual
+     * machines whose values are within the bounds including the bounds.
+     */
+    @Test
+    public void selectRange(){
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().sizeOfRAM(4096L).build();
+        CompiledSearchCriteria.Criterion criterion = CompiledSearchCriteria.compile(searchCriteria,
+                Arrays.asList(SearchCriterionType.RAM), 5).get(0);
+        VMCatalog catalog = VMCatalog.of(Arrays.asList(vm3, vm4, vm2, vm1));
+
+        BitSet matches = catalog.select(criterion);
+
+        assertEquals("Only virtual machines within the range should be matched", 2, matches.cardinality());
+        assertTrue("Virtual machine with the lower bound should be matched", matches.get(3));
+        assertTrue("Virtual machine below the upper bound should be matched", matches.get(2));
+    }
+
+    /**
+     * This test tests that all the virtual machines with equal values are
+     * matched by the range criterion and the virtual machine with the missing
+     * value is never matched.
+     */
+    @Test
+    public void selectRangeWithEqualAndMissingValues(){
+        VirtualMachine vm5 = new VirtualMachine.Builder(UUID.fromString("222d0815-aa89-bbcd-a9b7-531c455570a1"),
+                "VirtualMachine_05", pm1).sizeOfRAM(4096L).typeOfOS("Linux").build();
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().sizeOfRAM(4096L).build();
+        CompiledSearchCriteria.Criterion criterion = CompiledSearchCriteria.compile(searchCriteria,
+                Arrays.asList(SearchCriterionType.RAM), 5).get(0);
+        VMCatalog catalog = VMCatalog.of(Arrays.asList(vm4, vm1, vm5, vm2, vm3));
+
+        BitSet matches = catalog.select(criterion);
+
+        assertEquals("Only virtual machines within the range should be matched", 3, matches.cardinality());
+        assertFalse("Virtual machine without RAM size should not be matched", matches.get(0));
+        assertTrue("Virtual machine with the lower bound should be matched", matches.get(1));
+        assertTrue("Virtual machine with the equal value should be matched", matches.get(2));
+        assertTrue("Virtual machine below the upper bound should be matched", matches.get(3));
+    }
+
+    /**
+     * This test tests that the removed virtual machine is not matched anymore
+     * and the original catalog stays unchanged.
+     */
+    @Test
+    public void withoutVirtualMachine(){
+        SearchCriteria searchCriteria = new SearchCriteria.Builder().typeOfOS("Linux").build();
+        CompiledSearchCriteria compiledCriteria = CompiledSearchCriteria.compile(searchCriteria,
+                Arrays.asList(SearchCriterionType.OS_TYPE), 5);
+        VMCatalog catalog = VMCatalog.of(Arrays.asList(vm1, vm2, vm3));
+
+        VMCatalog newCatalog = catalog.without(vm1.getId());
+
+        assertEquals("Removed virtual machine should not be matched",
+                     Arrays.asList(vm2), newCatalog.filter(compiledCriteria, SearchMode.ABSOLUTE_EQUALITY));
+        assertEquals("Removed virtual machine should not be in the catalog",
+                     Arrays.asList(vm2, vm3), newCatalog.getVirtualMachines());
+        assertEquals("Original catalog should not be changed",
+                     Arrays.asList(vm1, vm2), catalog.filter(compiledCriteria, SearchMode.ABSOLUTE_EQUALITY));
+        assertSame("Catalog without unknown virtual machine should be the same",
+                   newCatalog, newCatalog.without(vm4.getId()));
+    }
+}
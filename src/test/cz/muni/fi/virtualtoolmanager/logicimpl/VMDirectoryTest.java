@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import java.util.Arrays;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * This test class ensure unit testing of class VMDirectory and
+ * is intended to be a pointer that class VMDirectory works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+public class VMDirectoryTest {
+
+    private VMDirectory sut;
+    private PhysicalMachine pm1;
+    private PhysicalMachine pm2;
+    private VirtualMachine vm1;
+    private VirtualMachine vm2;
+
+    @Before
+    public void setUp(){
+        pm1 = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        pm2 = new PhysicalMachine("180.148.14.11", "18083", "Jack", "tr1h15jk7");
+        vm1 = new VirtualMachine.Builder(
+                UUID.fromString("793d084a-0189-4a55-a9b7-531c455570a1"), "VirtualMachine_01", pm1).build();
+        vm2 = new VirtualMachine.Builder(
+                UUID.fromString("793d084a-0189-4a55-a9b7-531c455570a2"), "VirtualMachine_02", pm1).build();
+        sut = VMDirectory.getInstance();
+        sut.clear();
+    }
+
+    @After
+    public void cleanUp(){
+        sut.clear();
+    }
+
+    /**
+     * This test tests that the virtual machines are found by their id and name
+     * and the newly retrieved virtual machines of physical machine replace
+     * the known ones.
+     */
+    @Test
+    public void putAllReplacesVirtualMachinesOfPhysicalMachine(){
+        sut.putAll(pm1, Arrays.asList(vm1, vm2));
+
+        assertEquals("Virtual machine should be found by id", vm1, sut.get(vm1.getId()));
+        assertEquals("Virtual machine should be found by name", vm2, sut.get("VirtualMachine_02"));
+
+        sut.putAll(pm1, Arrays.asList(vm2));
+        assertNull("Virtual machine which is not present anymore should be forgotten", sut.get(vm1.getId()));
+        assertNull("Virtual machine which is not present anymore should be forgotten",
+                   sut.get("VirtualMachine_01"));
+        assertEquals("Present virtual machine should stay known", vm2, sut.get(vm2.getId()));
+    }
+
+    /**
+     * This test tests that the virtual machine which was moved to another
+     * physical machine is owned just by the new one.
+     */
+    @Test
+    public void putVirtualMachineOfAnotherPhysicalMachine(){
+        sut.put(vm1);
+        VirtualMachine movedVM = new VirtualMachine.Builder(vm1.getId(), "VirtualMachine_01", pm2).build();
+        sut.put(movedVM);
+
+        assertEquals("Virtual machine should be owned by the new physical machine",
+                     pm2, sut.get(vm1.getId()).getHostMachine());
+        sut.removeAll(pm1);
+        assertNotNull("Virtual machine of the new physical machine should stay known", sut.get(vm1.getId()));
+        sut.removeAll(pm2);
+        assertNull("Virtual machine of the disconnected physical machine should be forgotten",
+                   sut.get("VirtualMachine_01"));
+    }
+}
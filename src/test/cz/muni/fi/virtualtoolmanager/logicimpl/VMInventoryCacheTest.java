@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * This test class ensure unit testing of class VMInventoryCache and
+ * is intended to be a pointer that class VMInventoryCache works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+public class VMInventoryCacheTest {
+
+    private VMInventoryCache sut;
+    private PhysicalMachine pm;
+    private List<VirtualMachine> vms;
+
+    @Before
+    public void setUp(){
+        pm = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        vms = Arrays.asList(new VirtualMachine.Builder(
+                UUID.fromString("793d084a-0189-4a55-a9b7-531c455570a1"), "VirtualMachine_01", pm).build());
+        sut = VMInventoryCache.getInstance();
+        sut.clear();
+    }
+
+    @After
+    public void cleanUp(){
+        sut.setTimeToLive(VMInventoryCache.DEFAULT_TIME_TO_LIVE);
+        sut.clear();
+    }
+
+    /**
+     * This test tests that the stored inventory is returned until the physical
+     * machine is invalidated.
+     */
+    @Test
+    public void putAndInvalidate(){
+        sut.put(pm, vms, sut.getGeneration(pm));
+
+        assertEquals("Stored inventory should be returned", vms, sut.get(pm));
+
+        sut.invalidate(pm);
+        assertNull("Invalidated inventory should not be returned", sut.get(pm));
+    }
+
+    /**
+     * This test tests that the inventory whose retrieve started before
+     * the invalidation is not stored.
+     */
+    @Test
+    public void putAfterInvalidation(){
+        long generation = sut.getGeneration(pm);
+        sut.invalidate(pm);
+        sut.put(pm, vms, generation);
+
+        assertNull("Inventory retrieved before invalidation should not be stored", sut.get(pm));
+    }
+
+    /**
+     * This test tests that the inventory of the removed (disconnected) physical
+     * machine is forgotten and the inventory whose retrieve started before
+     * the removal is not stored, even though the generation of physical machine
+     * is not held anymore.
+     */
+    @Test
+    public void putAfterRemoval(){
+        sut.invalidate(pm);
+        long generation = sut.getGeneration(pm);
+        sut.put(pm, vms, generation);
+        sut.remove(pm);
+
+        assertNull("Inventory of removed physical machine should not be returned", sut.get(pm));
+        sut.put(pm, vms, generation);
+        assertNull("Inventory retrieved before removal should not be stored", sut.get(pm));
+    }
+
+    /**
+     * This test tests that the inventory is not returned after its time to live
+     * elapses.
+     */
+    @Test
+    public void getAfterTimeToLive() throws Exception {
+        sut.setTimeToLive(10L);
+        sut.put(pm, vms, sut.getGeneration(pm));
+        Thread.sleep(20L);
+
+        assertNull("Expired inventory should not be returned", sut.get(pm));
+    }
+
+    /**
+     * This test tests that the catalog of the cached inventory is shared until
+     * the inventory changes.
+     */
+    @Test
+    public void getCatalogUntilInvalidation(){
+        assertNull("There should be no catalog without inventory", sut.getCatalog(pm));
+
+        sut.put(pm, vms, sut.getGeneration(pm));
+        VMCatalog catalog = sut.getCatalog(pm);
+
+        assertEquals("Catalog should contain the cached virtual machines", vms, catalog.getVirtualMachines());
+        assertSame("Catalog should be shared", catalog, sut.getCatalog(pm));
+
+        sut.invalidate(pm);
+        assertNull("Invalidated inventory should not have any catalog", sut.getCatalog(pm));
+    }
+
+    /**
+     * This test tests that the removal of virtual machine keeps the catalog
+     * of inventory up to date.
+     */
+    @Test
+    public void getCatalogAfterRemoval(){
+        sut.put(pm, vms, sut.getGeneration(pm));
+        VMCatalog catalog = sut.getCatalog(pm);
+
+        sut.removeVirtualMachine(pm, vms.get(0).getId());
+
+        assertTrue("Removed virtual machine should not be in the catalog",
+                   sut.getCatalog(pm).getVirtualMachines().isEmpty());
+        assertEquals("Original catalog should not be changed", vms, catalog.getVirtualMachines());
+    }
+
+    /**
+     * This test tests that the inventory with only some attributes is returned
+     * only for the queries which require no other attributes and that it does
+     * not replace the inventory with all attributes.
+     */
+    @Test
+    public void putProjection(){
+        Set<SearchCriterionType> attributes = EnumSet.of(SearchCriterionType.RAM, SearchCriterionType.VRAM);
+
+        sut.put(pm, vms, attributes, sut.getGeneration(pm));
+
+        assertEquals("Projection should be returned for its attributes", vms,
+                     sut.get(pm, EnumSet.of(SearchCriterionType.RAM)));
+        assertNotNull("Projection catalog should be returned for its attributes",
+                      sut.getCatalog(pm, attributes));
+        assertNull("Projection should not be returned for other attributes",
+                   sut.get(pm, EnumSet.of(SearchCriterionType.CPU_COUNT)));
+        assertNull("Projection should not be returned as complete inventory", sut.get(pm));
+
+        sut.put(pm, vms, sut.getGeneration(pm));
+        sut.put(pm, vms, attributes, sut.getGeneration(pm));
+        assertEquals("Projection should not replace complete inventory", vms, sut.get(pm));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * This test class ensure unit testing of class VMInventoryFetches and
+ * is intended to be a pointer that class VMInventoryFetches works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+public class VMInventoryFetchesTest {
+
+    private VMInventoryFetches sut;
+    private PhysicalMachine pm;
+    private List<VirtualMachine> vms;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp(){
+        pm = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        vms = Arrays.asList(new VirtualMachine.Builder(
+                UUID.fromString("793d084a-0189-4a55-a9b7-531c455570a1"), "VirtualMachine_01", pm).build());
+        sut = VMInventoryFetches.getInstance();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void cleanUp(){
+        executor.shutdownNow();
+    }
+
+    /**
+     * This test tests that the concurrent retrieves of the same inventory are
+     * performed just once and all the callers get its result.
+     */
+    @Test
+    public void concurrentFetchesAreShared() throws Exception {
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch fetchAllowed = new CountDownLatch(1);
+        AtomicInteger fetchCount = new AtomicInteger();
+
+        Future<List<VirtualMachine>> first = executor.submit(() ->
+                sut.fetch(pm, EnumSet.allOf(SearchCriterionType.class), 0L, () -> {
+                    fetchCount.incrementAndGet();
+                    fetchStarted.countDown();
+                    try{
+                        fetchAllowed.await();
+                    }catch(InterruptedException ex){
+                        Thread.currentThread().interrupt();
+                    }
+                    return vms;
+                }));
+        assertTrue("First retrieve should be started", fetchStarted.await(5, TimeUnit.SECONDS));
+
+        Future<List<VirtualMachine>> second = executor.submit(() ->
+                sut.fetch(pm, EnumSet.of(SearchCriterionType.RAM), 0L, () -> {
+                    fetchCount.incrementAndGet();
+                    return vms;
+                }));
+        //the second caller has to join the retrieve before it is finished
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(sut.waiters() == 0 && System.nanoTime() < deadline){
+            Thread.yield();
+        }
+        assertEquals("Second caller should wait for the first retrieve", 1, sut.waiters());
+        fetchAllowed.countDown();
+
+        assertEquals("First caller should get the retrieved inventory", vms, first.get(5, TimeUnit.SECONDS));
+        assertEquals("Second caller should get the retrieved inventory", vms, second.get(5, TimeUnit.SECONDS));
+        assertEquals("Inventory should be retrieved just once", 1, fetchCount.get());
+        assertEquals("There should not be any retrieve in progress", 0, sut.size());
+        assertEquals("There should not be any waiting caller", 0, sut.waiters());
+    }
+
+    /**
+     * This test tests that the retrieve with another generation of physical
+     * machine is not shared.
+     */
+    @Test
+    public void fetchWithAnotherGenerationIsNotShared() throws Exception {
+        AtomicInteger fetchCount = new AtomicInteger();
+
+        sut.fetch(pm, EnumSet.allOf(SearchCriterionType.class), 0L, () -> {
+            fetchCount.incrementAndGet();
+            return sut.fetch(pm, EnumSet.allOf(SearchCriterionType.class), 1L, () -> {
+                fetchCount.incrementAndGet();
+                return vms;
+            });
+        });
+
+        assertEquals("Inventory should be retrieved twice", 2, fetchCount.get());
+    }
+
+    /**
+     * This test tests that the exception thrown by the retrieve is thrown
+     * to the caller and the retrieve is not remembered.
+     */
+    @Test
+    public void failedFetch(){
+        try{
+            sut.fetch(pm, EnumSet.allOf(SearchCriterionType.class), 0L, () -> {
+                throw new IllegalStateException("failure");
+            });
+            fail("The exception of retrieve should be thrown");
+        }catch(IllegalStateException ex){
+            assertEquals("failure", ex.getMessage());
+        }
+        assertEquals("There should not be any retrieve in progress", 0, sut.size());
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import org.powermock.api.mockito.PowerMockito;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.virtualbox_4_3.IEvent;
+import org.virtualbox_4_3.IEventListener;
+import org.virtualbox_4_3.IEventSource;
+import org.virtualbox_4_3.IVirtualBox;
+import org.virtualbox_4_3.VBoxEventType;
+import org.virtualbox_4_3.VBoxException;
+import org.virtualbox_4_3.VirtualBoxManager;
+import org.virtualbox_4_3.jaxws.VboxPortType;
+
+/**
+ * This test class ensure unit testing of class VMInventoryWatcher and
+ * is intended to be a pointer that class VMInventoryWatcher works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(VirtualBoxManager.class)
+public class VMInventoryWatcherTest {
+
+    private VMInventoryWatcher sut;
+    private VMInventoryCache inventoryCache;
+    private IEventSource eventSourceMock;
+    private IEventListener listenerMock;
+    private PhysicalMachine pm;
+    private List<VirtualMachine> vms;
+
+    @Before
+    public void setUp(){
+        PowerMockito.mockStatic(VirtualBoxManager.class);
+        VirtualBoxManager vbmMock = mock(VirtualBoxManager.class);
+        IVirtualBox vboxMock = mock(IVirtualBox.class);
+        eventSourceMock = mock(IEventSource.class);
+        listenerMock = mock(IEventListener.class);
+        when(VirtualBoxManager.createInstance(null)).thenReturn(vbmMock);
+        when(vbmMock.getVBox()).thenReturn(vboxMock);
+        when(vboxMock.getEventSource()).thenReturn(eventSourceMock);
+        when(eventSourceMock.createListener()).thenReturn(listenerMock);
+        pm = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        vms = Arrays.asList(new VirtualMachine.Builder(
+                UUID.fromString("793d084a-0189-4a55-a9b7-531c455570a1"), "VirtualMachine_01", pm).build());
+        VBoxSessionPool.getInstance().clear();
+        HostCircuitBreaker.getInstance().clear();
+        inventoryCache = VMInventoryCache.getInstance();
+        inventoryCache.clear();
+        sut = VMInventoryWatcher.getInstance();
+        sut.clear();
+        //the fetches are performed only explicitly by the tests
+        sut.setFetchInterval(0L);
+        sut.start(pm);
+    }
+
+    @After
+    public void cleanUp(){
+        sut.clear();
+        sut.setFetchInterval(VMInventoryWatcher.DEFAULT_FETCH_INTERVAL);
+        inventoryCache.setTimeToLive(VMInventoryCache.DEFAULT_TIME_TO_LIVE);
+        inventoryCache.clear();
+        VMDirectory.getInstance().clear();
+        VBoxSessionPool.getInstance().clear();
+    }
+
+    /**
+     * This test tests that the first fetch registers the listener and
+     * the inventory of the watched physical machine does not expire.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void fetchRegistersListener() throws Exception {
+        ArgumentCaptor<List> eventTypes = ArgumentCaptor.forClass(List.class);
+        assertTrue("Physical machine should be watched", sut.fetch(pm));
+        verify(eventSourceMock).registerListener(eq(listenerMock), eventTypes.capture(), eq(false));
+        assertFalse("Changes of machine state should not be watched",
+                    eventTypes.getValue().contains(VBoxEventType.OnMachineStateChanged));
+
+        inventoryCache.setTimeToLive(10L);
+        inventoryCache.put(pm, vms, inventoryCache.getGeneration(pm));
+        Thread.sleep(20L);
+        assertEquals("Inventory of watched physical machine should not expire", vms, inventoryCache.get(pm));
+    }
+
+    /**
+     * This test tests that the event reporting the change of virtual machine
+     * evicts the inventory and the virtual machines in the directory.
+     */
+    @Test
+    public void fetchWithMachineDataChangedEvent(){
+        sut.fetch(pm);
+        inventoryCache.put(pm, vms, inventoryCache.getGeneration(pm));
+        VMDirectory.getInstance().put(vms.get(0));
+        IEvent eventMock = mock(IEvent.class);
+        when(eventMock.getType()).thenReturn(VBoxEventType.OnMachineDataChanged);
+        when(eventSourceMock.getEvent(listenerMock, 0)).thenReturn(eventMock).thenReturn(null);
+
+        sut.fetch(pm);
+
+        assertNull("Inventory should be evicted", inventoryCache.get(pm));
+        assertNull("Virtual machine should be removed from the directory",
+                   VMDirectory.getInstance().get(vms.get(0).getId()));
+        verify(eventSourceMock).eventProcessed(listenerMock, eventMock);
+    }
+
+    /**
+     * This test tests that the event reporting the change of medium evicts
+     * the inventory, but not the guest OS types.
+     */
+    @Test
+    public void fetchWithMediumChangedEvent(){
+        VMMetadataCache metadataCache = VMMetadataCache.getInstance();
+        metadataCache.clear();
+        sut.fetch(pm);
+        inventoryCache.put(pm, vms, inventoryCache.getGeneration(pm));
+        metadataCache.putGuestOSType(pm, "Fedora_64", "Linux", "Fedora_64");
+        IEvent eventMock = mock(IEvent.class);
+        when(eventMock.getType()).thenReturn(VBoxEventType.OnMediumChanged);
+        when(eventSourceMock.getEvent(listenerMock, 0)).thenReturn(eventMock).thenReturn(null);
+
+        sut.fetch(pm);
+
+        assertNull("Inventory should be evicted", inventoryCache.get(pm));
+        assertNotNull("Guest OS type should stay cached", metadataCache.getGuestOSType(pm, "Fedora_64"));
+        metadataCache.clear();
+    }
+
+    /**
+     * This test tests that the unregistration following the eviction is still
+     * applied to the directory by the same fetch.
+     */
+    @Test
+    public void fetchWithUnregistrationAfterEviction(){
+        VMDirectory directory = VMDirectory.getInstance();
+        VirtualMachine vm = vms.get(0);
+        sut.fetch(pm);
+        IEvent changedEventMock = mock(IEvent.class);
+        when(changedEventMock.getType()).thenReturn(VBoxEventType.OnMachineDataChanged);
+        //the unregistration event is read through the port of web service
+        IEvent unregisteredEventMock = mock(IEvent.class);
+        VboxPortType portMock = mock(VboxPortType.class);
+        when(unregisteredEventMock.getType()).thenReturn(VBoxEventType.OnMachineRegistered);
+        when(unregisteredEventMock.getWrapped()).thenReturn("event-1");
+        when(unregisteredEventMock.getRemoteWSPort()).thenReturn(portMock);
+        when(portMock.iMachineRegisteredEventGetRegistered("event-1")).thenReturn(false);
+        when(portMock.iMachineEventGetMachineId("event-1")).thenReturn(vm.getId().toString());
+        //the concurrent retrieve puts the virtual machine back after the eviction
+        when(eventSourceMock.getEvent(listenerMock, 0)).thenReturn(changedEventMock)
+                .thenAnswer(invocation -> {
+                    directory.put(vm);
+                    return unregisteredEventMock;
+                }).thenReturn(null);
+
+        sut.fetch(pm);
+
+        assertNull("Virtual machine should be removed from the directory", directory.get(vm.getId()));
+        verify(eventSourceMock).eventProcessed(listenerMock, unregisteredEventMock);
+    }
+
+    /**
+     * This test tests that when the events cannot be fetched, the inventory is
+     * evicted and the listener is registered again by the next fetch.
+     */
+    @Test
+    public void fetchWithBrokenListener(){
+        sut.fetch(pm);
+        inventoryCache.put(pm, vms, inventoryCache.getGeneration(pm));
+        when(eventSourceMock.getEvent(listenerMock, 0)).thenThrow(VBoxException.class).thenReturn(null);
+
+        assertFalse("Physical machine should not be watched", sut.fetch(pm));
+        assertNull("Inventory should be evicted", inventoryCache.get(pm));
+
+        assertTrue("Physical machine should be watched again", sut.fetch(pm));
+        verify(eventSourceMock, times(2)).createListener();
+    }
+
+    /**
+     * This test tests that after the watching is stopped, the listener is
+     * unregistered and there are not fetched any events anymore.
+     */
+    @Test
+    public void stopWatching(){
+        sut.fetch(pm);
+
+        sut.stop(pm);
+
+        verify(eventSourceMock, timeout(1000)).unregisterListener(listenerMock);
+        assertFalse("Physical machine should not be watched", sut.fetch(pm));
+    }
+}
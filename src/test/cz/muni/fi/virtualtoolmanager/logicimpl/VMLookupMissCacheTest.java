@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * This test class ensure unit testing of class VMLookupMissCache and
+ * is intended to be a pointer that class VMLookupMissCache works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+public class VMLookupMissCacheTest {
+
+    private VMLookupMissCache sut;
+    private PhysicalMachine pm1;
+    private PhysicalMachine pm2;
+
+    @Before
+    public void setUp(){
+        pm1 = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        pm2 = new PhysicalMachine("180.148.14.11", "18083", "Jack", "tr1h15jk7");
+        sut = VMLookupMissCache.getInstance();
+        sut.clear();
+    }
+
+    @After
+    public void cleanUp(){
+        sut.setTimeToLive(VMLookupMissCache.DEFAULT_TIME_TO_LIVE);
+        sut.clear();
+    }
+
+    /**
+     * This test tests that the stored miss is valid only for its physical
+     * machine and only until the physical machine is invalidated.
+     */
+    @Test
+    public void putAndInvalidate(){
+        sut.put(pm1, "VirtualMachine_01", sut.getGeneration(pm1));
+
+        assertTrue("Stored miss should be valid", sut.isMissing(pm1, "VirtualMachine_01"));
+        assertFalse("Miss should not be valid for another physical machine",
+                    sut.isMissing(pm2, "VirtualMachine_01"));
+
+        sut.invalidate(pm1);
+        assertFalse("Invalidated miss should not be valid", sut.isMissing(pm1, "VirtualMachine_01"));
+    }
+
+    /**
+     * This test tests that the miss which was found out before the invalidation
+     * is not stored.
+     */
+    @Test
+    public void putAfterInvalidation(){
+        long generation = sut.getGeneration(pm1);
+        sut.invalidate(pm1);
+        sut.put(pm1, "VirtualMachine_01", generation);
+
+        assertFalse("Miss found out before invalidation should not be stored",
+                    sut.isMissing(pm1, "VirtualMachine_01"));
+    }
+
+    /**
+     * This test tests that the miss is not valid after its time to live elapses.
+     */
+    @Test
+    public void isMissingAfterTimeToLive() throws Exception {
+        sut.setTimeToLive(10L);
+        sut.put(pm1, "VirtualMachine_01", sut.getGeneration(pm1));
+        Thread.sleep(20L);
+
+        assertFalse("Expired miss should not be valid", sut.isMissing(pm1, "VirtualMachine_01"));
+    }
+
+    /**
+     * This test tests that the miss found out before the physical machine was
+     * disconnected is not stored, but the following misses are.
+     */
+    @Test
+    public void putAfterRemoval(){
+        long generation = sut.getGeneration(pm1);
+        sut.remove(pm1);
+        sut.put(pm1, "VirtualMachine_01", generation);
+
+        assertFalse("Miss found out before removal should not be stored",
+                    sut.isMissing(pm1, "VirtualMachine_01"));
+
+        sut.put(pm1, "VirtualMachine_01", sut.getGeneration(pm1));
+        assertTrue("Miss found out after removal should be stored", sut.isMissing(pm1, "VirtualMachine_01"));
+    }
+}
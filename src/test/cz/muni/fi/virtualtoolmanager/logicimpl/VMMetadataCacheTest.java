@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 Tomáš Šmíd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cz.muni.fi.virtualtoolmanager.logicimpl;
+
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * This test class ensure unit testing of class VMMetadataCache and
+ * is intended to be a pointer that class VMMetadataCache works as expected.
+ *
+ * @author Tomáš Šmíd
+ */
+public class VMMetadataCacheTest {
+
+    private VMMetadataCache sut;
+    private PhysicalMachine pm1;
+    private PhysicalMachine pm2;
+
+    @Before
+    public void setUp(){
+        pm1 = new PhysicalMachine("180.148.14.10", "18083", "Jack", "tr1h15jk7");
+        pm2 = new PhysicalMachine("180.148.14.11", "18083", "Jack", "tr1h15jk7");
+        sut = VMMetadataCache.getInstance();
+        sut.clear();
+    }
+
+    @After
+    public void cleanUp(){
+        sut.clear();
+    }
+
+    /**
+     * This test tests that the guest OS type is held just for its physical
+     * machine until the physical machine is invalidated.
+     */
+    @Test
+    public void guestOSTypeUntilInvalidation(){
+        sut.putGuestOSType(pm1, "Fedora_64", "Linux", "Fedora_64");
+
+        assertEquals("Guest OS type should be cached", "Linux",
+                     sut.getGuestOSType(pm1, "Fedora_64").getFamilyId());
+        assertNull("Guest OS type should not be returned for another physical machine",
+                   sut.getGuestOSType(pm2, "Fedora_64"));
+
+        sut.invalidate(pm1);
+        assertNull("Guest OS type of invalidated physical machine should not be returned",
+                   sut.getGuestOSType(pm1, "Fedora_64"));
+    }
+}
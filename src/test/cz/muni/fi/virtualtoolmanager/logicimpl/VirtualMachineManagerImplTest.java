@@ -16,6 +16,7 @@
 package cz.muni.fi.virtualtoolmanager.logicimpl;
 
 import cz.muni.fi.virtualtoolmanager.pubapi.io.OutputHandler;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PortRule;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
@@ -32,8 +33,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -49,6 +56,7 @@ import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 import static org.powermock.api.mockito.PowerMockito.doThrow;
+import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
@@ -1656,6 +1664,234 @@ public class VirtualMachineManagerImplTest {
         verify(conManMock).disconnectFrom(vm.getHostMachine());
     }
 
+    /**
+     * This test tests that the asynchronous start-up is performed by the shared
+     * pool for virtual machine operations without the blocking start-up and
+     * the returned future is completed when the virtual machine is started.
+     */
+    @Test
+    public void startVMAsyncIdealCase() throws Exception {
+        //represents a virtual machine which should be started
+        VirtualMachine vm = new VMBuilder().build();
+        CompletableFuture<Void> start = new CompletableFuture<>();
+
+        when(conManMock.isConnected(vm.getHostMachine())).thenReturn(true);
+        when(natAPIMachMock.startVMAsync(vm, FrontEndType.GUI, SharedExecutors.getOperationPool())).thenReturn(start);
+
+        CompletableFuture<Void> future = sut.startVMAsync(vm, FrontEndType.GUI);
+
+        assertFalse("Future should not be completed before the virtual machine is running", future.isDone());
+        start.complete(null);
+        future.get();
+        verify(natAPIMachMock, never()).startVM(any(VirtualMachine.class), any(FrontEndType.class));
+    }
+
+    /**
+     * This test tests that the host machine is disconnected when the asynchronous
+     * start-up fails because of the connection problem.
+     */
+    @Test
+    public void startVMAsyncWithConnectionFailure() throws Exception {
+        //represents a virtual machine which should be started
+        VirtualMachine vm = new VMBuilder().build();
+        CompletableFuture<Void> start = new CompletableFuture<>();
+        start.completeExceptionally(new ConnectionFailureException("Connection failure"));
+
+        when(conManMock.isConnected(vm.getHostMachine())).thenReturn(true);
+        when(natAPIMachMock.startVMAsync(vm, FrontEndType.GUI, SharedExecutors.getOperationPool())).thenReturn(start);
+
+        CompletableFuture<Void> future = sut.startVMAsync(vm, FrontEndType.GUI);
+        try{
+            future.get();
+            fail("ExecutionException should be thrown");
+        }catch(ExecutionException ex){
+            assertTrue("Cause should be ConnectionFailureException",
+                       ex.getCause() instanceof ConnectionFailureException);
+        }
+        verify(conManMock).disconnectFrom(vm.getHostMachine());
+    }
+
+    /**
+     * This test tests that the error of asynchronous shutdown is not thrown
+     * to the caller, but the returned future is completed exceptionally.
+     */
+    @Test
+    public void shutDownVMAsyncWithNotConnectedPM() throws Exception {
+        //represents a virtual machine which should be shut down
+        VirtualMachine vm = new VMBuilder().build();
+
+        //the host machine is not connected
+        when(conManMock.isConnected(vm.getHostMachine())).thenReturn(false);
+
+        CompletableFuture<Void> future = sut.shutDownVMAsync(vm, Runnable::run);
+
+        assertTrue("Future should be completed exceptionally", future.isCompletedExceptionally());
+        try{
+            future.get();
+            fail("ExecutionException should be thrown");
+        }catch(ExecutionException ex){
+            assertTrue("Cause should be ConnectionFailureException",
+                       ex.getCause() instanceof ConnectionFailureException);
+        }
+        verify(natAPIMachMock, never()).shutDownVM(any(VirtualMachine.class));
+        verify(natAPIMachMock, never()).shutDownVMAsync(any(VirtualMachine.class), any(Executor.class));
+    }
+
+    /**
+     * This test tests that there is invoked IllegalArgumentException when there
+     * is made an attempt to start a virtual machine asynchronously by a null executor.
+     */
+    @Test
+    public void startVMAsyncWithNullExecutor(){
+        //represents a virtual machine which should be started
+        VirtualMachine vm = new VMBuilder().build();
+
+        exception.expect(IllegalArgumentException.class);
+        sut.startVMAsync(vm, FrontEndType.GUI, null);
+    }
+
+    /**
+     * This test tests that the virtual machines of more host machines are
+     * started and the result of each virtual machine is reported separately
+     * in the order in which the virtual machines were given.
+     */
+    @Test
+    public void startVMsWithOneNotConnectedHost(){
+        PhysicalMachine otherHost = new PMBuilder().addressIP("10.0.0.2").build();
+        VirtualMachine vm1 = new VMBuilder().name("VM_01").build();
+        VirtualMachine vm2 = new VMBuilder().name("VM_02").hostMachine(otherHost)
+                .id(UUID.fromString("793d084a-0189-4a55-a9b7-531c455570a2")).build();
+        VirtualMachine vm3 = new VMBuilder().name("VM_03")
+                .id(UUID.fromString("793d084a-0189-4a55-a9b7-531c455570a3")).build();
+
+        when(conManMock.isConnected(vm1.getHostMachine())).thenReturn(true);
+        when(conManMock.isConnected(otherHost)).thenReturn(false);
+
+        List<OperationResult<VirtualMachine, Void>> results =
+                sut.startVMs(Arrays.asList(vm1, vm2, vm3), FrontEndType.HEADLESS);
+
+        assertEquals("There should be result for each virtual machine", 3, results.size());
+        assertSame("Results should be in the given order", vm1, results.get(0).getSubject());
+        assertSame("Results should be in the given order", vm2, results.get(1).getSubject());
+        assertSame("Results should be in the given order", vm3, results.get(2).getSubject());
+        assertTrue("Virtual machine on connected host should be started", results.get(0).isSuccessful());
+        assertTrue("Virtual machine on not connected host should fail",
+                   results.get(1).getFailure() instanceof ConnectionFailureException);
+        assertTrue("Virtual machine on connected host should be started", results.get(2).isSuccessful());
+        verify(natAPIMachMock).startVM(vm1, FrontEndType.HEADLESS);
+        verify(natAPIMachMock).startVM(vm3, FrontEndType.HEADLESS);
+        verify(natAPIMachMock, never()).startVM(vm2, FrontEndType.HEADLESS);
+    }
+
+    /**
+     * This test tests that there is never shut down more virtual machines
+     * of one host machine at the same moment than the given limit.
+     */
+    @Test
+    public void shutDownVMsWithLimitPerHost(){
+        List<VirtualMachine> vms = new ArrayList<>();
+        for(int i = 0; i < 6; ++i){
+            vms.add(new VMBuilder().name("VM_0" + i)
+                    .id(UUID.fromString("793d084a-0189-4a55-a9b7-531c45557" + i + "00")).build());
+        }
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        when(conManMock.isConnected(vms.get(0).getHostMachine())).thenReturn(true);
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(30);
+            running.decrementAndGet();
+            return null;
+        }).when(natAPIMachMock).shutDownVM(any(VirtualMachine.class));
+
+        List<OperationResult<VirtualMachine, Void>> results = sut.shutDownVMs(vms, 2);
+
+        for(OperationResult<VirtualMachine, Void> result : results){
+            assertTrue("Each virtual machine should be shut down", result.isSuccessful());
+        }
+        assertTrue("There should not be shut down more than 2 virtual machines at once",
+                   maxRunning.get() <= 2);
+    }
+
+    /**
+     * This test tests that there is invoked IllegalArgumentException when there
+     * is made an attempt to start a collection containing a null virtual machine.
+     */
+    @Test
+    public void startVMsWithNullVM(){
+        exception.expect(IllegalArgumentException.class);
+        sut.startVMs(Arrays.asList(new VMBuilder().build(), null), FrontEndType.GUI);
+    }
+
+    /**
+     * This test tests that the states of the given virtual machines are got
+     * by one query for each of their host machines and all of them are returned.
+     */
+    @Test
+    public void getVMStatesGroupedByHost(){
+        PhysicalMachine pm2 = new PMBuilder().addressIP("180.148.14.11").build();
+        VirtualMachine vm1 = new VMBuilder().build();
+        VirtualMachine vm2 = new VMBuilder().id(UUID.fromString("002d084a-0189-4a55-9ab7-531c455570a1"))
+                                            .hostMachine(pm2).build();
+        VirtualMachine vm3 = new VMBuilder().id(UUID.fromString("003d084a-0189-4a55-9ab7-531c455570a1"))
+                                            .build();
+        Map<UUID, String> statesOfPM1 = new HashMap<>();
+        statesOfPM1.put(vm1.getId(), "Running");
+        statesOfPM1.put(vm3.getId(), "Saved");
+
+        when(conManMock.isConnected(any(PhysicalMachine.class))).thenReturn(true);
+        when(natAPIMachMock.getVMStates(vm1.getHostMachine(), Arrays.asList(vm1, vm3))).thenReturn(statesOfPM1);
+        when(natAPIMachMock.getVMStates(pm2, Arrays.asList(vm2)))
+                .thenReturn(Collections.singletonMap(vm2.getId(), "PoweredOff"));
+
+        Map<UUID, String> vmStates = sut.getVMStates(Arrays.asList(vm1, vm2, vm3));
+
+        assertEquals("There should be a state for each virtual machine", 3, vmStates.size());
+        assertEquals("Invalid state", "Running", vmStates.get(vm1.getId()));
+        assertEquals("Invalid state", "PoweredOff", vmStates.get(vm2.getId()));
+        assertEquals("Invalid state", "Saved", vmStates.get(vm3.getId()));
+        verify(natAPIMachMock, never()).getVMState(any(VirtualMachine.class));
+    }
+
+    /**
+     * This test tests that there is invoked ConnectionFailureException when
+     * the connection with the physical machine is lost while the states of its
+     * virtual machines are being queried and the physical machine is disconnected.
+     */
+    @Test
+    public void getVMStatesWithSuddenNetworkConnectionLoss(){
+        PhysicalMachine pm = new PMBuilder().build();
+        ConnectionFailureException conFailExMock = mock(ConnectionFailureException.class);
+
+        when(conManMock.isConnected(pm)).thenReturn(true);
+        doThrow(conFailExMock).when(natAPIMachMock).getVMStates(pm, null);
+
+        try{
+            sut.getVMStates(pm);
+            fail("ConnectionFailureException should be thrown");
+        }catch(ConnectionFailureException ex){
+            //expected
+        }
+
+        verify(conManMock).disconnectFrom(pm);
+    }
+
+    /**
+     * This test tests that there is invoked ConnectionFailureException when
+     * there is made an attempt to query the states of virtual machines of
+     * a physical machine which is not connected.
+     */
+    @Test
+    public void getVMStatesOnDisconnectedPhysicalMachine(){
+        PhysicalMachine pm = new PMBuilder().build();
+
+        when(conManMock.isConnected(pm)).thenReturn(false);
+
+        exception.expect(ConnectionFailureException.class);
+        sut.getVMStates(pm);
+    }
+
     /**
      * Class Builder for easier and faster creating and setting up new object of
      * type PhysicalMachine.
@@ -16,19 +16,30 @@
 package cz.muni.fi.virtualtoolmanager.logicimpl;
 
 import cz.muni.fi.virtualtoolmanager.pubapi.io.OutputHandler;
+import cz.muni.fi.virtualtoolmanager.pubapi.entities.OperationResult;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.PhysicalMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.entities.VirtualMachine;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.ConnectionFailureException;
+import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.OperationTimeoutException;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.UnexpectedVMStateException;
 import cz.muni.fi.virtualtoolmanager.pubapi.exceptions.UnknownVirtualMachineException;
 import cz.muni.fi.virtualtoolmanager.pubapi.types.CloneType;
+import cz.muni.fi.virtualtoolmanager.pubapi.types.SearchCriterionType;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -39,6 +50,7 @@ import org.junit.runner.RunWith;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.doReturn;
 import static org.powermock.api.mockito.PowerMockito.doThrow;
@@ -80,6 +92,9 @@ public class VirtualizationToolManagerImplTest {
         whenNew(NativeVBoxAPIManager.class).withNoArguments().thenReturn(natAPIManMock);
         whenNew(ConnectionManagerImpl.class).withNoArguments().thenReturn(conManMock);
         whenNew(NativeVBoxAPIMachine.class).withNoArguments().thenReturn(natAPIMachMock);
+        VMInventoryCache.getInstance().clear();
+        VMLookupMissCache.getInstance().clear();
+        InventorySnapshot.getInstance().clear();
         sut = new VirtualizationToolManagerImpl(hostMachine);
         OutputHandler.setOutputStream(new PrintStream(outContent));
         OutputHandler.setErrorOutputStream(new PrintStream(errContent));
@@ -306,6 +321,32 @@ public class VirtualizationToolManagerImplTest {
         assertNull("The returned virtual machine object should be null", actVM);
     }
 
+    /**
+     * This test tests that the repeated retrieve of virtual machine which was
+     * not found is answered without the call of VirtualBox web server until
+     * there is registered a virtual machine on the physical machine.
+     */
+    @Test
+    public void findVirtualMachineByNameRepeatedMiss(){
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        doThrow(new UnknownVirtualMachineException()).when(natAPIManMock)
+                .getVirtualMachine(hostMachine, "VirtualMachine_99");
+
+        assertNull("The returned virtual machine object should be null",
+                   sut.findVirtualMachineByName("VirtualMachine_99"));
+        assertNull("The returned virtual machine object should be null",
+                   sut.findVirtualMachineByName("VirtualMachine_99"));
+        //checks the missing virtual machine has been looked up just once
+        verify(natAPIManMock, times(1)).getVirtualMachine(hostMachine, "VirtualMachine_99");
+
+        when(natAPIManMock.registerVirtualMachine(hostMachine, "VirtualMachine_99")).thenReturn(true);
+        sut.registerVirtualMachine("VirtualMachine_99");
+        sut.findVirtualMachineByName("VirtualMachine_99");
+
+        //checks the virtual machine has been looked up again after the registration
+        verify(natAPIManMock, times(2)).getVirtualMachine(hostMachine, "VirtualMachine_99");
+    }
+
     /**
      * This test tests that there is invoked IllegalArgumentException when there
      * is made an attempt to retrieve a virtual machine by a null id.
@@ -584,6 +625,28 @@ public class VirtualizationToolManagerImplTest {
         verify(conManMock).disconnectFrom(hostMachine);
     }
 
+    /**
+     * This test tests that the failure of retrieve is given to the caller even
+     * if the host machine has already been disconnected by another thread,
+     * so the disconnection fails.
+     */
+    @Test
+    public void getVirtualMachinesWithConcurrentDisconnection(){
+        ConnectionFailureException retrieveFailure = new ConnectionFailureException("Retrieve failure");
+
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        doThrow(retrieveFailure).when(natAPIManMock).getAllVirtualMachines(hostMachine);
+        doThrow(new ConnectionFailureException("Not connected")).when(conManMock).disconnectFrom(hostMachine);
+
+        try{
+            sut.getVirtualMachines();
+            fail("ConnectionFailureException should be thrown");
+        }catch(ConnectionFailureException ex){
+            assertSame("The failure of retrieve should be thrown", retrieveFailure, ex);
+        }
+        verify(conManMock).disconnectFrom(hostMachine);
+    }
+
     /**
      * This test tests that the required virtual machine is successfully removed
      * when all important values are valid and that there appears an informing
@@ -1120,6 +1183,287 @@ public class VirtualizationToolManagerImplTest {
     
     
 
+    /**
+     * This test tests that the method VirtualizationToolManagerImpl::close()
+     * finds out the states of all virtual machines by one query and does not
+     * query the state of each virtual machine separately.
+     */
+    @Test
+    public void closeWithBulkVMStatesQuery(){
+        VirtualMachine vm1 = new VMBuilder().build();
+        VirtualMachine vm2 = new VMBuilder().name("VirtualMachine_02")
+                                            .id(UUID.fromString("002d084a-0189-4a55-9ab7-531c455570a1"))
+                                            .build();
+        Map<UUID, String> vmStates = new HashMap<>();
+        vmStates.put(vm1.getId(), "Stuck");
+        vmStates.put(vm2.getId(), "PoweredOff");
+
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        when(natAPIManMock.getAllVirtualMachines(hostMachine)).thenReturn(Arrays.asList(vm1, vm2));
+        when(natAPIMachMock.getVMStates(hostMachine, Arrays.asList(vm1, vm2))).thenReturn(vmStates);
+
+        List<OperationResult<VirtualMachine, String>> results = sut.close(2, 0L);
+
+        assertEquals("Stuck virtual machine should be reported", "Stuck", results.get(0).getResult());
+        assertEquals("Powered off virtual machine should be reported", "PoweredOff", results.get(1).getResult());
+        verify(natAPIMachMock).shutDownVM(vm1);
+        verify(natAPIMachMock, never()).shutDownVM(vm2);
+        verify(natAPIMachMock, never()).getVMState(any(VirtualMachine.class));
+    }
+
+    /**
+     * This test tests that the method VirtualizationToolManagerImpl::close()
+     * with the limit of parallel shutdowns processes all virtual machines and
+     * reports the outcome of each of them separately, so the failure of one
+     * virtual machine does not affect the others.
+     */
+    @Test
+    public void closeWithLimitAndOneUnknownVM(){
+        VirtualMachine vm1 = new VMBuilder().build();
+        VirtualMachine vm2 = new VMBuilder().name("VirtualMachine_02")
+                                            .id(UUID.fromString("002d084a-0189-4a55-9ab7-531c455570a1"))
+                                            .build();
+        VirtualMachine vm3 = new VMBuilder().name("VirtualMachine_03")
+                                            .id(UUID.fromString("003d084a-0189-4a55-9ab7-531c455570a1"))
+                                            .build();
+        List<VirtualMachine> vms = Arrays.asList(vm1,vm2,vm3);
+        
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        when(natAPIManMock.getAllVirtualMachines(hostMachine)).thenReturn(vms);
+        when(natAPIMachMock.getVMState(vm1)).thenReturn("Running");
+        doThrow(new UnknownVirtualMachineException()).when(natAPIMachMock).getVMState(vm2);
+        when(natAPIMachMock.getVMState(vm3)).thenReturn("PoweredOff");
+        
+        List<OperationResult<VirtualMachine, String>> results = sut.close(2, 0L);
+        
+        assertEquals("There should be a result for each virtual machine", 3, results.size());
+        assertEquals("Running virtual machine should be reported", "Running", results.get(0).getResult());
+        assertTrue("Unknown virtual machine should fail with UnknownVirtualMachineException",
+                   results.get(1).getFailure() instanceof UnknownVirtualMachineException);
+        assertEquals("Powered off virtual machine should be reported", "PoweredOff", results.get(2).getResult());
+        verify(natAPIMachMock).shutDownVM(vm1);
+        verify(natAPIMachMock, never()).shutDownVM(vm3);
+    }
+    
+    /**
+     * This test tests that the virtual machine whose shut down is not finished
+     * before the timeout elapses is reported as failed with OperationTimeoutException.
+     */
+    @Test
+    public void closeWithTimeout(){
+        VirtualMachine vm1 = new VMBuilder().build();
+        
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        when(natAPIManMock.getAllVirtualMachines(hostMachine)).thenReturn(Arrays.asList(vm1));
+        when(natAPIMachMock.getVMState(vm1)).thenAnswer(invocation -> {
+            Thread.sleep(500);
+            return "PoweredOff";
+        });
+        
+        List<OperationResult<VirtualMachine, String>> results = sut.close(1, 20L);
+        
+        assertTrue("Virtual machine should fail with OperationTimeoutException",
+                   results.get(0).getFailure() instanceof OperationTimeoutException);
+    }
+    
+    /**
+     * This test tests that there is IllegalArgumentException invoked when
+     * the method VirtualizationToolManagerImpl::close() is called with a negative timeout.
+     */
+    @Test
+    public void closeWithNegativeTimeout(){
+        exception.expect(IllegalArgumentException.class);
+        sut.close(1, -1L);
+    }
+    
+    /**
+     * This test tests that the asynchronous cloning operation is performed by
+     * the given executor and the returned future is completed with the clone.
+     */
+    @Test
+    public void cloneVirtualMachineAsyncWithGivenExecutor() throws Exception {
+        //represents a virtual machine which should be cloned
+        VirtualMachine origVM = new VMBuilder().build();
+        //represents a virtual machine clone which should be returned as a result of cloning operation
+        VirtualMachine expVMClone = new VMBuilder().name(origVM + "_FullClone1")
+                .id(UUID.fromString("793d084a-0189-4a55-a9c0-531c455aaab"))
+                .build();
+        Executor executor = Runnable::run;
+
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        when(natAPIManMock.createVMCloneAsync(origVM, CloneType.FULL_FROM_ALL_STATES, executor))
+                .thenReturn(CompletableFuture.completedFuture(expVMClone));
+
+        CompletableFuture<VirtualMachine> future =
+                sut.cloneVirtualMachineAsync(origVM, CloneType.FULL_FROM_ALL_STATES, executor);
+
+        assertDeepVMsEquals(expVMClone, future.get());
+        verify(natAPIManMock, never()).createVMClone(any(VirtualMachine.class), any(CloneType.class));
+    }
+
+    /**
+     * This test tests that the error of asynchronous removal is not thrown to
+     * the caller, but the returned future is completed exceptionally.
+     */
+    @Test
+    public void removeVirtualMachineAsyncWithNonexistentVM() throws Exception {
+        //represents a virtual machine which should be removed
+        VirtualMachine vm = new VMBuilder().build();
+
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        CompletableFuture<Void> removal = new CompletableFuture<>();
+        removal.completeExceptionally(new UnknownVirtualMachineException("Unknown virtual machine"));
+        when(natAPIManMock.removeVirtualMachineAsync(vm, SharedExecutors.getOperationPool())).thenReturn(removal);
+
+        CompletableFuture<Void> future = sut.removeVirtualMachineAsync(vm);
+        try{
+            future.get();
+            fail("ExecutionException should be thrown");
+        }catch(ExecutionException ex){
+            assertTrue("Cause should be UnknownVirtualMachineException",
+                       ex.getCause() instanceof UnknownVirtualMachineException);
+        }
+    }
+
+    /**
+     * This test tests that the virtual machines are retrieved from the physical
+     * machine just once and the following calls get the cached ones, unless
+     * the cache is bypassed.
+     */
+    @Test
+    public void getVirtualMachinesFromCache(){
+        List<VirtualMachine> expVMs = Arrays.asList(new VMBuilder().build());
+
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        when(natAPIManMock.getAllVirtualMachines(hostMachine)).thenReturn(expVMs);
+
+        sut.getVirtualMachines();
+        List<VirtualMachine> actVMs = sut.getVirtualMachines();
+
+        assertDeepVMsEquals(expVMs, actVMs);
+        verify(natAPIManMock, times(1)).getAllVirtualMachines(hostMachine);
+
+        sut.getVirtualMachines(true);
+        verify(natAPIManMock, times(2)).getAllVirtualMachines(hostMachine);
+    }
+
+    /**
+     * This test tests that the virtual machines with only some attributes are
+     * cached for the queries which require no other attributes, and that
+     * the cached virtual machines with all attributes are used for any required
+     * attributes.
+     */
+    @Test
+    public void getVirtualMachinesWithRequiredAttributes(){
+        List<VirtualMachine> expVMs = Arrays.asList(new VMBuilder().build());
+        Set<SearchCriterionType> attributes = EnumSet.of(SearchCriterionType.RAM);
+        Set<SearchCriterionType> otherAttributes = EnumSet.of(SearchCriterionType.VRAM);
+
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        when(natAPIManMock.getAllVirtualMachines(hostMachine, attributes)).thenReturn(expVMs);
+        when(natAPIManMock.getAllVirtualMachines(hostMachine, otherAttributes)).thenReturn(expVMs);
+        when(natAPIManMock.getAllVirtualMachines(hostMachine)).thenReturn(expVMs);
+
+        sut.getVirtualMachines(attributes);
+        sut.getVirtualMachines(attributes);
+        verify(natAPIManMock, times(1)).getAllVirtualMachines(hostMachine, attributes);
+
+        sut.getVirtualMachines(otherAttributes);
+        verify(natAPIManMock, times(1)).getAllVirtualMachines(hostMachine, otherAttributes);
+
+        sut.getVirtualMachines();
+        verify(natAPIManMock, times(1)).getAllVirtualMachines(hostMachine);
+        List<VirtualMachine> actVMs = sut.getVirtualMachines(attributes);
+
+        assertDeepVMsEquals(expVMs, actVMs);
+        verify(natAPIManMock, times(1)).getAllVirtualMachines(hostMachine, attributes);
+    }
+
+    /**
+     * This test tests that the number of virtual machines converted at once
+     * applies just to the host machine and that 0 restores the default number.
+     */
+    @Test
+    public void setConversionParallelism(){
+        PhysicalMachine otherMachine = new PMBuilder().addressIP("10.0.0.2").build();
+
+        sut.setConversionParallelism(3);
+        try{
+            assertEquals("Invalid number for the host machine", 3,
+                         NativeVBoxAPIManager.getConversionParallelism(hostMachine));
+            assertEquals("Other host machine should use the default number",
+                         NativeVBoxAPIManager.DEFAULT_CONVERSION_PARALLELISM,
+                         NativeVBoxAPIManager.getConversionParallelism(otherMachine));
+        }finally{
+            sut.setConversionParallelism(0);
+        }
+        assertEquals("Default number should be used again", NativeVBoxAPIManager.DEFAULT_CONVERSION_PARALLELISM,
+                     NativeVBoxAPIManager.getConversionParallelism(hostMachine));
+    }
+
+    /**
+     * This test tests that the last known virtual machines loaded from
+     * the inventory snapshot are returned at once as stale and they are replaced
+     * by the virtual machines retrieved in the background.
+     */
+    @Test
+    public void getVirtualMachinesFromInventorySnapshot() throws Exception {
+        //the loaded physical machine has no password
+        PhysicalMachine loadedPM = new PhysicalMachine(hostMachine.getAddressIP(),
+                hostMachine.getPortOfVTWebServer(), hostMachine.getUsername(), "");
+        VirtualMachine staleVM = new VirtualMachine.Builder(UUID.fromString("793d084a-0189-4a55-a9c0-531c455aaab1"),
+                                                            "VirtualMachine_Stale", loadedPM).sizeOfRAM(1024L).build();
+        Map<PhysicalMachine, List<VirtualMachine>> snapshot = new HashMap<>();
+        snapshot.put(loadedPM, Arrays.asList(staleVM));
+        InventorySnapshot.getInstance().load(snapshot);
+        List<VirtualMachine> expVMs = Arrays.asList(new VMBuilder().build());
+        final CountDownLatch refreshAllowed = new CountDownLatch(1);
+
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        when(natAPIManMock.getAllVirtualMachines(hostMachine)).thenAnswer(invocation -> {
+            refreshAllowed.await();
+            return expVMs;
+        });
+
+        assertTrue("Virtual machines should be stale", sut.isInventoryStale());
+        List<VirtualMachine> staleVMs = sut.getVirtualMachines();
+        assertEquals("Last known virtual machine should be returned", "VirtualMachine_Stale",
+                     staleVMs.get(0).getName());
+        assertEquals("Last known virtual machine should have the connected host machine",
+                     hostMachine, staleVMs.get(0).getHostMachine());
+
+        refreshAllowed.countDown();
+        for(int i = 0; i < 200 && sut.isInventoryStale(); ++i){
+            Thread.sleep(10L);
+        }
+        assertFalse("Virtual machines should be refreshed", sut.isInventoryStale());
+        assertDeepVMsEquals(expVMs, sut.getVirtualMachines());
+        verify(natAPIManMock, times(1)).getAllVirtualMachines(hostMachine);
+    }
+
+    /**
+     * This test tests that the cached virtual machines are forgotten after
+     * there is created a virtual machine clone.
+     */
+    @Test
+    public void getVirtualMachinesAfterCloning(){
+        VirtualMachine origVM = new VMBuilder().build();
+        VirtualMachine vmClone = new VMBuilder().name(origVM + "_FullClone1")
+                .id(UUID.fromString("793d084a-0189-4a55-a9c0-531c455aaab"))
+                .build();
+
+        when(conManMock.isConnected(hostMachine)).thenReturn(true);
+        when(natAPIManMock.getAllVirtualMachines(hostMachine)).thenReturn(Arrays.asList(origVM))
+                                                             .thenReturn(Arrays.asList(origVM, vmClone));
+        when(natAPIManMock.createVMClone(origVM, CloneType.FULL_FROM_ALL_STATES)).thenReturn(vmClone);
+
+        sut.getVirtualMachines();
+        sut.cloneVirtualMachine(origVM, CloneType.FULL_FROM_ALL_STATES);
+        List<VirtualMachine> actVMs = sut.getVirtualMachines();
+
+        assertDeepVMsEquals(Arrays.asList(origVM, vmClone), actVMs);
+    }
+
     /**
      * Class Builder for easier and faster creating and setting up new object of
      * type PhysicalMachine.